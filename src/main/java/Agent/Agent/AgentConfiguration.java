@@ -0,0 +1,220 @@
+package Agent.Agent;
+
+import Agent.MessageHandler.DispatchMode;
+import Agent.MessageSending.FlushPolicy;
+import Agent.MessageHandler.OverflowPolicy;
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.nio.file.Path;
+
+/**
+ * Tuning options for an {@link AgentConnectionHandler}. A new instance holds the defaults.
+ */
+@Getter
+public class AgentConfiguration
+{
+    private DispatchMode dispatchMode = DispatchMode.SESSION_SERIAL;
+    private int mailboxCapacity = 1024;
+    private OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+    private long maxOutstandingBytes = 16 * 1024 * 1024;
+    private int maxOutstandingMessages = 1024;
+    private boolean directBuffers = false;
+    private int pooledBuffersPerSize = 64;
+    private boolean coalesceWrites = true;
+    private FlushPolicy flushPolicy = new FlushPolicy();
+    private Path outboxDirectory = null;
+    private int outboxSegmentSize = 16 * 1024 * 1024;
+    private long outboxMaxBytes = 256 * 1024 * 1024;
+
+
+    /**
+     * Sets how inbound WebSocket events are dispatched, see {@link DispatchMode}.
+     *
+     * @param dispatchMode the dispatch mode
+     * @return this configuration
+     */
+    public AgentConfiguration setDispatchMode(@NonNull DispatchMode dispatchMode)
+    {
+        this.dispatchMode = dispatchMode;
+        return this;
+    }
+
+
+    /**
+     * Sets the maximum number of inbound messages queued per connection in {@link DispatchMode#SESSION_SERIAL}.
+     *
+     * @param mailboxCapacity the mailbox capacity, at least 1
+     * @return this configuration
+     */
+    public AgentConfiguration setMailboxCapacity(int mailboxCapacity)
+    {
+        if (mailboxCapacity < 1)
+        {
+            throw new IllegalArgumentException("Mailbox capacity must be at least 1");
+        }
+
+        this.mailboxCapacity = mailboxCapacity;
+        return this;
+    }
+
+
+    /**
+     * Sets what happens to an inbound message that arrives at a full mailbox, see {@link OverflowPolicy}.
+     *
+     * @param overflowPolicy the overflow policy
+     * @return this configuration
+     */
+    public AgentConfiguration setOverflowPolicy(@NonNull OverflowPolicy overflowPolicy)
+    {
+        this.overflowPolicy = overflowPolicy;
+        return this;
+    }
+
+
+    /**
+     * Sets the maximum number of bytes per connection that have been handed to the WebSocket but not written yet.
+     * Sends beyond this cap fail with a {@link Agent.Exceptions.BackpressureException}.
+     *
+     * @param maxOutstandingBytes the byte cap, at least 1
+     * @return this configuration
+     */
+    public AgentConfiguration setMaxOutstandingBytes(long maxOutstandingBytes)
+    {
+        if (maxOutstandingBytes < 1)
+        {
+            throw new IllegalArgumentException("Max outstanding bytes must be at least 1");
+        }
+
+        this.maxOutstandingBytes = maxOutstandingBytes;
+        return this;
+    }
+
+
+    /**
+     * Sets the maximum number of messages per connection that have been handed to the WebSocket but not written yet.
+     * Sends beyond this cap fail with a {@link Agent.Exceptions.BackpressureException}.
+     *
+     * @param maxOutstandingMessages the message cap, at least 1
+     * @return this configuration
+     */
+    public AgentConfiguration setMaxOutstandingMessages(int maxOutstandingMessages)
+    {
+        if (maxOutstandingMessages < 1)
+        {
+            throw new IllegalArgumentException("Max outstanding messages must be at least 1");
+        }
+
+        this.maxOutstandingMessages = maxOutstandingMessages;
+        return this;
+    }
+
+
+    /**
+     * Sets whether outbound messages are serialized into direct rather than heap buffers.
+     *
+     * @param directBuffers true to use direct buffers
+     * @return this configuration
+     */
+    public AgentConfiguration setDirectBuffers(boolean directBuffers)
+    {
+        this.directBuffers = directBuffers;
+        return this;
+    }
+
+
+    /**
+     * Sets the number of idle outbound buffers kept per size class, shared by the connections of a handler.
+     *
+     * @param pooledBuffersPerSize the number of idle buffers kept per size class, 0 disables pooling
+     * @return this configuration
+     */
+    public AgentConfiguration setPooledBuffersPerSize(int pooledBuffersPerSize)
+    {
+        if (pooledBuffersPerSize < 0)
+        {
+            throw new IllegalArgumentException("Pooled buffers per size must not be negative");
+        }
+
+        this.pooledBuffersPerSize = pooledBuffersPerSize;
+        return this;
+    }
+
+
+    /**
+     * Sets whether outbound frames of a connection are queued and flushed together by a single writer, rather than
+     * handed to the WebSocket by each sending thread.
+     *
+     * @param coalesceWrites true to coalesce outbound frames
+     * @return this configuration
+     */
+    public AgentConfiguration setCoalesceWrites(boolean coalesceWrites)
+    {
+        this.coalesceWrites = coalesceWrites;
+        return this;
+    }
+
+
+    /**
+     * Sets when coalesced outbound frames are flushed, see {@link FlushPolicy}.
+     *
+     * @param flushPolicy the flush policy
+     * @return this configuration
+     */
+    public AgentConfiguration setFlushPolicy(@NonNull FlushPolicy flushPolicy)
+    {
+        this.flushPolicy = flushPolicy;
+        return this;
+    }
+
+
+    /**
+     * Sets the directory of the store-and-forward outboxes. Authenticated connections store their outbound messages in
+     * an outbox per MRN below this directory while disconnected, and replay them once reconnected.
+     *
+     * @param outboxDirectory the outbox directory, or null to disable the outbox
+     * @return this configuration
+     */
+    public AgentConfiguration setOutboxDirectory(Path outboxDirectory)
+    {
+        this.outboxDirectory = outboxDirectory;
+        return this;
+    }
+
+
+    /**
+     * Sets the size of each segment file of an outbox, which also caps the size of a stored message.
+     *
+     * @param outboxSegmentSize the segment size in bytes, at least 64 KiB
+     * @return this configuration
+     */
+    public AgentConfiguration setOutboxSegmentSize(int outboxSegmentSize)
+    {
+        if (outboxSegmentSize < 64 * 1024)
+        {
+            throw new IllegalArgumentException("Outbox segment size must be at least 64 KiB");
+        }
+
+        this.outboxSegmentSize = outboxSegmentSize;
+        return this;
+    }
+
+
+    /**
+     * Sets the disk budget of each outbox. Once it is reached, sends fail with an {@link Agent.Exceptions.OutboxFullException}
+     * until stored messages have been replayed or have expired.
+     *
+     * @param outboxMaxBytes the disk budget in bytes, at least two segments
+     * @return this configuration
+     */
+    public AgentConfiguration setOutboxMaxBytes(long outboxMaxBytes)
+    {
+        if (outboxMaxBytes < 1)
+        {
+            throw new IllegalArgumentException("Outbox max bytes must be at least 1");
+        }
+
+        this.outboxMaxBytes = outboxMaxBytes;
+        return this;
+    }
+}
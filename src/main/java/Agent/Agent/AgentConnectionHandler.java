@@ -3,6 +3,7 @@ package Agent.Agent;
 import Agent.Connections.IConnection;
 import Agent.ServiceDiscovery.mDNSRouterDiscoveryService;
 import Agent.Utils.ExecutorFactory;
+import Agent.Utils.WorkerPool;
 import Agent.Connections.IAnonymousConnection;
 import Agent.Connections.IAuthenticatedConnection;
 import Agent.Exceptions.AgentConnectionHandlerInitException;
@@ -29,6 +30,8 @@ public class AgentConnectionHandler implements IAgentConnectionHandler
 {
     private final ImDNSRouterDiscoveryService discoveryService;
     private final IWebSocketConnectionManager connectionManager;
+    private final Executor workerPool;
+    private final boolean ownsWorkerPool;
 
 
     /**
@@ -40,18 +43,54 @@ public class AgentConnectionHandler implements IAgentConnectionHandler
      */
     AgentConnectionHandler(InetAddress address) throws AgentConnectionHandlerInitException
     {
-        Executor executor = ExecutorFactory.createWorkerPool();
+        this(address, new AgentConfiguration());
+    }
+
+
+    /**
+     * Constructor for the AgentConnectionHandler class that takes an InetAddress and an {@link AgentConfiguration}.
+     *
+     * @param address       An InetAddress object representing the address to listen on for router discovery and WebSocket connections.
+     * @param configuration The configuration to apply to the connections of this handler.
+     * @throws AgentConnectionHandlerInitException if there is an error initializing the AgentConnectionHandler.
+     */
+    AgentConnectionHandler(InetAddress address, AgentConfiguration configuration) throws AgentConnectionHandlerInitException
+    {
+        this(address, configuration, ExecutorFactory.createWorkerPool(), true);
+    }
+
+
+    /**
+     * Constructor for the AgentConnectionHandler class that takes an InetAddress, an {@link AgentConfiguration} and the worker pool to use.
+     * The worker pool is owned by the caller and is not shut down when the handler is closed.
+     *
+     * @param address       An InetAddress object representing the address to listen on for router discovery and WebSocket connections.
+     * @param configuration The configuration to apply to the connections of this handler.
+     * @param workerPool    The worker pool used for discovery and for dispatching inbound events.
+     * @throws AgentConnectionHandlerInitException if there is an error initializing the AgentConnectionHandler.
+     */
+    AgentConnectionHandler(InetAddress address, AgentConfiguration configuration, Executor workerPool) throws AgentConnectionHandlerInitException
+    {
+        this(address, configuration, workerPool, false);
+    }
+
+
+    private AgentConnectionHandler(InetAddress address, AgentConfiguration configuration, Executor workerPool, boolean ownsWorkerPool) throws AgentConnectionHandlerInitException
+    {
+        this.workerPool = workerPool;
+        this.ownsWorkerPool = ownsWorkerPool;
 
         try
         {
-            discoveryService = new mDNSRouterDiscoveryService(address, executor);
+            discoveryService = new mDNSRouterDiscoveryService(address, workerPool);
         }
         catch (IOException ex)
         {
+            shutdownWorkerPool();
             throw new AgentConnectionHandlerInitException("Failed to init agent connection handler", ex);
         }
 
-        connectionManager = new WebSocketConnectionManager(address, executor);
+        connectionManager = new WebSocketConnectionManager(address, workerPool, configuration);
     }
 
 
@@ -118,6 +157,7 @@ public class AgentConnectionHandler implements IAgentConnectionHandler
     {
         discoveryService.close();
         connectionManager.close();
+        shutdownWorkerPool();
     }
 
 
@@ -131,4 +171,27 @@ public class AgentConnectionHandler implements IAgentConnectionHandler
     {
         return connectionManager.getConnections();
     }
+
+
+    /**
+     * Get the worker pool used by this handler, e.g. to read its {@link WorkerPool#getStatistics() statistics}.
+     *
+     * @return The worker pool.
+     */
+    public Executor getWorkerPool()
+    {
+        return workerPool;
+    }
+
+
+    /**
+     * Shut down the worker pool if it was created by this handler.
+     */
+    private void shutdownWorkerPool()
+    {
+        if (ownsWorkerPool && workerPool instanceof WorkerPool pool)
+        {
+            pool.shutdown();
+        }
+    }
 }
@@ -2,11 +2,13 @@ package Agent.Agent;
 
 import Agent.Exceptions.AgentConnectionHandlerInitException;
 import Agent.Utils.NetworkUtils;
+import Agent.Utils.WorkerPool;
 
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 
 /**
  * Factory class for creating instances of the {@link IAgentConnectionHandler}. Maintains a map of existing connection handlers
@@ -66,6 +68,55 @@ public class AgentConnectionHandlerFactory
         return create(inetAddress);
     }
 
+    /**
+     * Creates a new instance of the {@link IAgentConnectionHandler} with the provided address and configuration.
+     * Handlers created with an explicit configuration are not shared, every call creates a new instance.
+     *
+     * @param address       The address of the interface to use to discover routers and connect to them.
+     * @param configuration The configuration to apply to the connections of the handler.
+     * @return A new instance of the {@link IAgentConnectionHandler}.
+     * @throws AgentConnectionHandlerInitException if there is an error initializing the connection handler.
+     */
+    public static IAgentConnectionHandler create(String address, AgentConfiguration configuration) throws AgentConnectionHandlerInitException
+    {
+        InetAddress inetAddress;
+        try
+        {
+            inetAddress = NetworkUtils.resolveInetAddress(address);
+        }
+        catch (UnknownHostException ex)
+        {
+            throw new AgentConnectionHandlerInitException("Failed to resolve InetAddress for " + address, ex);
+        }
+        return new AgentConnectionHandler(inetAddress, configuration);
+    }
+
+
+    /**
+     * Creates a new instance of the {@link IAgentConnectionHandler} with the provided address, configuration and worker pool.
+     * The worker pool is shared with the caller, who remains responsible for shutting it down. Handlers created this way are not shared.
+     *
+     * @param address       The address of the interface to use to discover routers and connect to them.
+     * @param configuration The configuration to apply to the connections of the handler.
+     * @param workerPool    The worker pool used for discovery and for dispatching inbound events, e.g. a {@link WorkerPool}.
+     * @return A new instance of the {@link IAgentConnectionHandler}.
+     * @throws AgentConnectionHandlerInitException if there is an error initializing the connection handler.
+     */
+    public static IAgentConnectionHandler create(String address, AgentConfiguration configuration, Executor workerPool) throws AgentConnectionHandlerInitException
+    {
+        InetAddress inetAddress;
+        try
+        {
+            inetAddress = NetworkUtils.resolveInetAddress(address);
+        }
+        catch (UnknownHostException ex)
+        {
+            throw new AgentConnectionHandlerInitException("Failed to resolve InetAddress for " + address, ex);
+        }
+        return new AgentConnectionHandler(inetAddress, configuration, workerPool);
+    }
+
+
     /**
      * Creates a new instance of the {@link IAgentConnectionHandler}  with the provided InetAddress.
      *
@@ -1,12 +1,12 @@
 package Agent.Connections;
 
 import Agent.Exceptions.ConnectException;
+import Agent.MessageSending.SessionWriter;
 import Agent.Subscriptions.ISubscribeListener;
 import Agent.Subscriptions.ISubjectSubscriptionHandler;
 import Agent.WebSocket.DisconnectionHook;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
-import org.eclipse.jetty.websocket.api.Session;
 
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
@@ -23,13 +23,13 @@ public class AnonymousConnection extends Connection implements IAnonymousConnect
     /**
      * Creates a new SMMPAnonConnection instance.
      *
-     * @param session             The underlying WebSocket session.
+     * @param writer              The writer of the underlying WebSocket session.
      * @param disconnectionHook   A hook to be called when the connection is disconnected.
      * @param subscriptionHandler The handler for subject subscriptions.
      */
-    public AnonymousConnection(Session session, DisconnectionHook disconnectionHook, ISubjectSubscriptionHandler subscriptionHandler)
+    public AnonymousConnection(SessionWriter writer, DisconnectionHook disconnectionHook, ISubjectSubscriptionHandler subscriptionHandler)
     {
-        super(session, disconnectionHook);
+        super(writer, disconnectionHook);
         this.connectionStatus = ConnectionStatus.CONNECTED_ANONYMOUS;
         this.subscriptionHandler = subscriptionHandler;
     }
@@ -1,14 +1,17 @@
 package Agent.Connections;
 
 import Agent.Exceptions.ConnectException;
+import Agent.MessageSending.DirectMessageRequest;
 import Agent.MessageSending.IMMTPMessageSender;
 import Agent.MessageSending.MMTPSendingListener;
+import Agent.MessageSending.PayloadWriter;
+import Agent.MessageSending.PublishRequest;
+import Agent.MessageSending.SessionWriter;
 import Agent.Subscriptions.IDmSubscriptionHandler;
 import Agent.Subscriptions.ISubscribeListener;
 import Agent.WebSocket.DisconnectionHook;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
-import org.eclipse.jetty.websocket.api.Session;
 
 import java.time.Instant;
 import java.util.List;
@@ -29,14 +32,14 @@ public class AuthenticatedConnection extends AnonymousConnection implements IAut
     /**
      * Creates a new SMMPAuthConnection instance.
      *
-     * @param session             The underlying WebSocket session.
+     * @param writer              The writer of the underlying WebSocket session.
      * @param disconnectionHook   A hook to be called when the connection is disconnected.
      * @param subscriptionHandler The subject subscription handler.
      * @param messageSender       The MTTP message sender.
      */
-    public AuthenticatedConnection(Session session, DisconnectionHook disconnectionHook, IDmSubscriptionHandler subscriptionHandler, IMMTPMessageSender messageSender)
+    public AuthenticatedConnection(SessionWriter writer, DisconnectionHook disconnectionHook, IDmSubscriptionHandler subscriptionHandler, IMMTPMessageSender messageSender)
     {
-        super(session, disconnectionHook, subscriptionHandler);
+        super(writer, disconnectionHook, subscriptionHandler);
         this.connectionStatus = ConnectionStatus.CONNECTED_AUTHENTICATED;
         this.subscriptionHandler = subscriptionHandler;
         this.messageSender = messageSender;
@@ -90,11 +93,11 @@ public class AuthenticatedConnection extends AnonymousConnection implements IAut
      * @param payload     The payload of the message.
      * @param expires     The expiration time of the message.
      * @param listener    The message send listener.
-     * @throws ConnectException If the connection is not alive.
+     * @throws ConnectException If the connection is not alive and has no outbox.
      */
     public void sendDirect(@NonNull String destination, @NonNull byte[] payload, Instant expires, @NonNull MMTPSendingListener listener) throws ConnectException
     {
-        checkConnectionAlive();
+        checkCanSend();
         log.info("Sending direct message to destination: {}", destination);
         sendDirect(List.of(destination), payload, expires, listener);
     }
@@ -107,11 +110,11 @@ public class AuthenticatedConnection extends AnonymousConnection implements IAut
      * @param payload The payload of the message.
      * @param expires The expiration time of the message.
      * @return A completable future that completes when the message is sent.
-     * @throws ConnectException If the connection is not alive.
+     * @throws ConnectException If the connection is not alive and has no outbox.
      */
     public CompletableFuture<String> sendDirect(@NonNull String destination, byte[] payload, Instant expires) throws ConnectException
     {
-        checkConnectionAlive();
+        checkCanSend();
         log.info("Sending direct message to subject: {}", destination);
         return sendDirect(List.of(destination), payload, expires);
     }
@@ -124,11 +127,11 @@ public class AuthenticatedConnection extends AnonymousConnection implements IAut
      * @param payload      The payload of the message.
      * @param expires      The expiration time of the message.
      * @param listener     The message send listener.
-     * @throws ConnectException If the connection is not alive.
+     * @throws ConnectException If the connection is not alive and has no outbox.
      */
     public void sendDirect(@NonNull List<String> destinations, @NonNull byte[] payload, Instant expires, @NonNull MMTPSendingListener listener) throws ConnectException
     {
-        checkConnectionAlive();
+        checkCanSend();
         log.info("Sending direct message to destinations: {}", destinations);
         messageSender.sendDirectMessage(destinations, payload, expires, listener);
     }
@@ -141,11 +144,11 @@ public class AuthenticatedConnection extends AnonymousConnection implements IAut
      * @param payload      The payload of the message.
      * @param expires      The expiration time of the message.
      * @return A completable future that completes when the message is sent.
-     * @throws ConnectException If the connection is not alive.
+     * @throws ConnectException If the connection is not alive and has no outbox.
      */
     public CompletableFuture<String> sendDirect(@NonNull List<String> destinations, @NonNull byte[] payload, Instant expires) throws ConnectException
     {
-        checkConnectionAlive();
+        checkCanSend();
         log.info("Sending direct message to destinations: {}", destinations);
         return messageSender.sendDirectMessage(destinations, payload, expires);
     }
@@ -158,11 +161,11 @@ public class AuthenticatedConnection extends AnonymousConnection implements IAut
      * @param payload  The payload of the message.
      * @param expires  The expiration time of the message.
      * @param listener The message send listener.
-     * @throws ConnectException If the connection is not alive.
+     * @throws ConnectException If the connection is not alive and has no outbox.
      */
     public void publish(@NonNull String subject, @NonNull byte[] payload, Instant expires, @NonNull MMTPSendingListener listener) throws ConnectException
     {
-        checkConnectionAlive();
+        checkCanSend();
         log.info("Publishing message to subject: {}", subject);
         messageSender.publish(subject, payload, expires, listener);
     }
@@ -175,12 +178,90 @@ public class AuthenticatedConnection extends AnonymousConnection implements IAut
      * @param payload The payload of the message.
      * @param expires The expiration time of the message.
      * @return A completable future that completes when the message is sent.
-     * @throws ConnectException If the connection is not alive.
+     * @throws ConnectException If the connection is not alive and has no outbox.
      */
     public CompletableFuture<String> publish(@NonNull String subject, @NonNull byte[] payload, Instant expires) throws ConnectException
     {
-        checkConnectionAlive();
+        checkCanSend();
         log.info("Publishing message to subject: {}", subject);
         return messageSender.publish(subject, payload, expires);
     }
+
+
+    /**
+     * Sends a direct message to a list of destinations asynchronously, with a payload that is written straight into the envelope.
+     *
+     * @param destinations The destinations of the message.
+     * @param payload      The writer of the payload of the message.
+     * @param expires      The expiration time of the message.
+     * @return A completable future that completes when the message is sent.
+     * @throws ConnectException If the connection is not alive and has no outbox.
+     */
+    public CompletableFuture<String> sendDirect(@NonNull List<String> destinations, @NonNull PayloadWriter payload, Instant expires) throws ConnectException
+    {
+        checkCanSend();
+        log.info("Sending direct message to destinations: {}", destinations);
+        return messageSender.sendDirectMessage(destinations, payload, expires);
+    }
+
+
+    /**
+     * Publishes a message to a subject asynchronously, with a payload that is written straight into the envelope.
+     *
+     * @param subject The subject of the message.
+     * @param payload The writer of the payload of the message.
+     * @param expires The expiration time of the message.
+     * @return A completable future that completes when the message is sent.
+     * @throws ConnectException If the connection is not alive and has no outbox.
+     */
+    public CompletableFuture<String> publish(@NonNull String subject, @NonNull PayloadWriter payload, Instant expires) throws ConnectException
+    {
+        checkCanSend();
+        log.info("Publishing message to subject: {}", subject);
+        return messageSender.publish(subject, payload, expires);
+    }
+
+
+    /**
+     * Sends a batch of direct messages, written back to back with a single flush.
+     *
+     * @param requests The messages to send.
+     * @return A completable future per message, in the order of the requests, that completes when the message is sent.
+     * @throws ConnectException If the connection is not alive and has no outbox.
+     */
+    public List<CompletableFuture<String>> sendDirectBatch(@NonNull List<DirectMessageRequest> requests) throws ConnectException
+    {
+        checkCanSend();
+        log.info("Sending a batch of {} direct messages", requests.size());
+        return messageSender.sendDirectBatch(requests);
+    }
+
+
+    /**
+     * Publishes a batch of messages, written back to back with a single flush.
+     *
+     * @param requests The messages to publish.
+     * @return A completable future per message, in the order of the requests, that completes when the message is sent.
+     * @throws ConnectException If the connection is not alive and has no outbox.
+     */
+    public List<CompletableFuture<String>> publishBatch(@NonNull List<PublishRequest> requests) throws ConnectException
+    {
+        checkCanSend();
+        log.info("Publishing a batch of {} messages", requests.size());
+        return messageSender.publishBatch(requests);
+    }
+
+
+    /**
+     * Checks whether a message can be sent: the connection is alive, or its messages are stored in an outbox while it is not.
+     *
+     * @throws ConnectException If the connection is not alive and has no outbox.
+     */
+    private void checkCanSend() throws ConnectException
+    {
+        if (!messageSender.isStoreAndForward())
+        {
+            checkConnectionAlive();
+        }
+    }
 }
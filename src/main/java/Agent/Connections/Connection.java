@@ -2,6 +2,8 @@ package Agent.Connections;
 
 
 import Agent.Exceptions.ConnectException;
+import Agent.MessageSending.OutboundStatistics;
+import Agent.MessageSending.SessionWriter;
 import Agent.WebSocket.DisconnectionHook;
 import org.eclipse.jetty.websocket.api.Session;
 
@@ -16,6 +18,7 @@ public abstract class Connection implements IConnection
 {
     protected String connectionID;
     protected Session session;
+    protected SessionWriter writer;
     protected DisconnectionHook disconnectionHook;
     protected ConnectionStatus connectionStatus;
 
@@ -23,13 +26,14 @@ public abstract class Connection implements IConnection
     /**
      * Creates a new Connection instance.
      *
-     * @param session The underlying WebSocket session.
-     * @param hook    A hook to be called when the connection is disconnected.
+     * @param writer The writer of the underlying WebSocket session.
+     * @param hook   A hook to be called when the connection is disconnected.
      */
-    public Connection(Session session, DisconnectionHook hook)
+    public Connection(SessionWriter writer, DisconnectionHook hook)
     {
         this.connectionID = UUID.randomUUID().toString();
-        this.session = session;
+        this.session = writer.getSession();
+        this.writer = writer;
         this.disconnectionHook = hook;
     }
 
@@ -92,6 +96,18 @@ public abstract class Connection implements IConnection
     }
 
 
+    /**
+     * Returns a snapshot of the outbound counters of the connection, e.g. its queue depth and flush batch sizes.
+     *
+     * @return The outbound statistics of the connection.
+     */
+    @Override
+    public OutboundStatistics getOutboundStatistics()
+    {
+        return writer.getStatistics();
+    }
+
+
     /**
      * Disconnects the connection with no status code and no reason (Jetty will use something default).
      */
@@ -1,7 +1,10 @@
 package Agent.Connections;
 
 import Agent.Exceptions.ConnectException;
+import Agent.MessageSending.DirectMessageRequest;
 import Agent.MessageSending.MMTPSendingListener;
+import Agent.MessageSending.PayloadWriter;
+import Agent.MessageSending.PublishRequest;
 import Agent.Subscriptions.ISubscribeListener;
 
 import java.time.Instant;
@@ -25,4 +28,12 @@ public interface IAuthenticatedConnection extends IAnonymousConnection
     void publish(String subject, byte[] payload, Instant expires, MMTPSendingListener listener) throws ConnectException;
 
     CompletableFuture<String> publish(String subject, byte[] payload, Instant expires) throws ConnectException;
+
+    CompletableFuture<String> sendDirect(List<String> destinations, PayloadWriter payload, Instant expires) throws ConnectException;
+
+    CompletableFuture<String> publish(String subject, PayloadWriter payload, Instant expires) throws ConnectException;
+
+    List<CompletableFuture<String>> sendDirectBatch(List<DirectMessageRequest> requests) throws ConnectException;
+
+    List<CompletableFuture<String>> publishBatch(List<PublishRequest> requests) throws ConnectException;
 }
\ No newline at end of file
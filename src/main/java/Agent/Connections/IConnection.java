@@ -1,5 +1,7 @@
 package Agent.Connections;
 
+import Agent.MessageSending.OutboundStatistics;
+
 /**
  * An interface representing a connection to the edge router.
  */
@@ -35,6 +37,13 @@ public interface IConnection
 
     ConnectionStatus getConnectionStatus();
 
+    /**
+     * Returns a snapshot of the outbound counters of the connection, e.g. its queue depth and flush batch sizes.
+     *
+     * @return The outbound statistics of the connection.
+     */
+    OutboundStatistics getOutboundStatistics();
+
     /**
      * Returns whether the connection is authenticated.
      *
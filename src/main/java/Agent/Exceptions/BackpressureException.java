@@ -0,0 +1,23 @@
+package Agent.Exceptions;
+
+/**
+ * Signals that a message was not sent because the session already has the maximum number of messages or bytes
+ * waiting to be written. The caller should back off and retry once earlier sends have completed.
+ */
+public class BackpressureException extends SendingException
+{
+    public BackpressureException()
+    {
+        super("Too many outstanding writes on the session");
+    }
+
+    public BackpressureException(String message)
+    {
+        super(message);
+    }
+
+    public BackpressureException(String message, Throwable cause)
+    {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,23 @@
+package Agent.Exceptions;
+
+/**
+ * Signals that a message could not be stored in the outbox because the outbox has reached its disk budget,
+ * even after expired and delivered messages were removed.
+ */
+public class OutboxFullException extends SendingException
+{
+    public OutboxFullException()
+    {
+        super("The outbox is full");
+    }
+
+    public OutboxFullException(String message)
+    {
+        super(message);
+    }
+
+    public OutboxFullException(String message, Throwable cause)
+    {
+        super(message, cause);
+    }
+}
@@ -7,7 +7,6 @@ import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
 
 import java.time.Instant;
-import java.util.concurrent.Executor;
 
 /**
  * Handles direct application messages.
@@ -18,9 +17,9 @@ public class DirectMessageHandler extends SubjectCastMessageHandler
     private final DirectMessageListener iDmMessageListener;
 
 
-    public DirectMessageHandler(@NonNull DirectMessageListener iDmMessageListener, @NonNull Executor executor)
+    public DirectMessageHandler(@NonNull DirectMessageListener iDmMessageListener)
     {
-        super(iDmMessageListener, executor);
+        super(iDmMessageListener);
         this.iDmMessageListener = iDmMessageListener;
     }
 
@@ -48,7 +47,7 @@ public class DirectMessageHandler extends SubjectCastMessageHandler
         var destinations = message.getRecipientsList();
         var sender = message.getSender();
         var expires = Instant.ofEpochSecond(message.getExpires().getSeconds(), message.getExpires().getNanos());
-        var content = message.getPayload().toByteArray();
+        var content = message.getPayload();
 
         iDmMessageListener.onDirectMessage(messageId, destinations, sender, expires, content);
     }
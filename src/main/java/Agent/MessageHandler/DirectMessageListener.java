@@ -1,5 +1,7 @@
 package Agent.MessageHandler;
 
+import com.google.protobuf.ByteString;
+
 import java.time.Instant;
 import java.util.List;
 
@@ -18,4 +20,22 @@ public interface DirectMessageListener extends SubjectMessageListener
      * @param message      the message content
      */
     void onDirectMessage(String messageId, List<String> destinations, String sender, Instant expires, byte[] message);
+
+
+    /**
+     * Called when a direct application message is received, with the message content as a read-only view of the
+     * received frame. The default implementation copies the content and calls
+     * {@link #onDirectMessage(String, List, String, Instant, byte[])}, override it to avoid the copy.
+     * Retaining the view keeps the whole frame reachable.
+     *
+     * @param messageId    the ID of the message
+     * @param destinations the destinations of the message
+     * @param sender       the sender of the message
+     * @param expires      the expiration time of the message
+     * @param message      the message content
+     */
+    default void onDirectMessage(String messageId, List<String> destinations, String sender, Instant expires, ByteString message)
+    {
+        onDirectMessage(messageId, destinations, sender, expires, message.toByteArray());
+    }
 }
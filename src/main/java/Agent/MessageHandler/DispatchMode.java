@@ -0,0 +1,23 @@
+package Agent.MessageHandler;
+
+/**
+ * An enum that represents how inbound WebSocket events are dispatched to the message handler and the adapter.
+ */
+public enum DispatchMode
+{
+    /**
+     * Handle events directly on the Jetty I/O thread. Lowest latency, but a slow adapter stalls the connection.
+     */
+    INLINE,
+
+    /**
+     * Hand every event to the worker pool. Events of a connection may be handled concurrently and out of order.
+     */
+    WORKER_POOL,
+
+    /**
+     * Hand events to the worker pool, but handle the events of a connection one at a time and in arrival order,
+     * through a bounded per-connection mailbox. This is the default.
+     */
+    SESSION_SERIAL
+}
@@ -1,7 +1,5 @@
 package Agent.MessageHandler;
 
-import java.util.concurrent.Executor;
-
 /**
  * Factory class for creating {@link MessageHandler} instances.
  */
@@ -11,18 +9,17 @@ public class MessageHandlerFactory
      * Creates a new {@link MessageHandler} instance.
      *
      * @param messageListener the message listener to handle application messages
-     * @param executor        the executor to execute tasks asynchronously
      * @return a new {@link MessageHandler} instance
      */
-    public static MessageHandler createMessageHandler(SubjectMessageListener messageListener, Executor executor)
+    public static MessageHandler createMessageHandler(SubjectMessageListener messageListener)
     {
         if (messageListener instanceof DirectMessageListener)
         {
-            return new DirectMessageHandler((DirectMessageListener) messageListener, executor);
+            return new DirectMessageHandler((DirectMessageListener) messageListener);
         }
         else
         {
-            return new SubjectCastMessageHandler(messageListener, executor);
+            return new SubjectCastMessageHandler(messageListener);
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,28 @@
+package Agent.MessageHandler;
+
+/**
+ * An enum that represents what happens when a message arrives at a full session mailbox.
+ */
+public enum OverflowPolicy
+{
+    /**
+     * Block the Jetty thread delivering the message until there is room, which stops reading from the connection
+     * and pushes back on the router through TCP flow control.
+     */
+    BLOCK,
+
+    /**
+     * Drop the oldest queued message to make room for the new one.
+     */
+    DROP_OLDEST,
+
+    /**
+     * Drop the new message.
+     */
+    DROP_NEWEST,
+
+    /**
+     * Drop the new message and close the connection.
+     */
+    DISCONNECT
+}
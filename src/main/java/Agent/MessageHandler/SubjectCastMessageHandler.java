@@ -4,6 +4,7 @@ package Agent.MessageHandler;
 import Agent.MMTP.MessageFormats.DirectApplicationMessage;
 import Agent.MMTP.MessageFormats.ProtocolMessage;
 import Agent.MMTP.MessageFormats.SubjectCastApplicationMessage;
+import Agent.Utils.ProtobufUtils;
 import Agent.Utils.Validators.MMTPValidationException;
 import Agent.Utils.Validators.MMTPValidator;
 import com.google.protobuf.InvalidProtocolBufferException;
@@ -12,28 +13,25 @@ import lombok.extern.slf4j.Slf4j;
 
 
 import java.time.Instant;
-import java.util.concurrent.Executor;
 
 /**
- * Handles subject-cast application messages.
+ * Handles subject-cast application messages. Messages are handled on the calling thread, dispatching to other threads
+ * is done once, by the WebSocket handler, according to the configured {@link DispatchMode}.
  */
 @Slf4j
 public class SubjectCastMessageHandler implements MessageHandler
 {
     private final SubjectMessageListener messageListener;
-    private final Executor executor;
 
 
     /**
      * Creates a new instance of the {@link SubjectCastMessageHandler} class.
      *
      * @param messageListener the message listener to handle subject-cast messages
-     * @param executor        the executor to execute tasks asynchronously
      */
-    public SubjectCastMessageHandler(@NonNull SubjectMessageListener messageListener, @NonNull Executor executor)
+    public SubjectCastMessageHandler(@NonNull SubjectMessageListener messageListener)
     {
         this.messageListener = messageListener;
-        this.executor = executor;
     }
 
 
@@ -46,12 +44,13 @@ public class SubjectCastMessageHandler implements MessageHandler
      */
     public void handleMessage(@NonNull byte[] payload, int offset, int len)
     {
-        executor.execute(() -> processMessageInternal(payload, offset, len));
+        processMessageInternal(payload, offset, len);
     }
 
 
     /**
      * Processes the message payload and determines the message type, then calls the appropriate handler method.
+     * The payload is parsed in place, the content handed to the listener is a view of the payload array.
      *
      * @param payload the payload of the message
      * @param offset  the offset within the payload where the message content starts
@@ -59,25 +58,22 @@ public class SubjectCastMessageHandler implements MessageHandler
      */
     private void processMessageInternal(@NonNull byte[] payload, int offset, int len)
     {
-        byte[] message = new byte[len];
-        System.arraycopy(payload, offset, message, 0, len);
-
         try
         {
-            var protocolMessage = ProtocolMessage.parseFrom(message);
+            var protocolMessage = ProtocolMessage.parser().parseFrom(ProtobufUtils.aliasingInput(payload, offset, len));
             var type = protocolMessage.getType();
 
             switch (type)
             {
                 case DIRECT_APPLICATION_MESSAGE ->
                 {
-                    var directApplicationMessage = DirectApplicationMessage.parseFrom(protocolMessage.getContent());
+                    var directApplicationMessage = DirectApplicationMessage.parser().parseFrom(ProtobufUtils.aliasingInput(protocolMessage.getContent()));
                     processDirectApplicationMessage(directApplicationMessage);
                 }
 
                 case SUBJECT_CAST_APPLICATION_MESSAGE ->
                 {
-                    var subjectCastApplicationMessage = SubjectCastApplicationMessage.parseFrom(protocolMessage.getContent());
+                    var subjectCastApplicationMessage = SubjectCastApplicationMessage.parser().parseFrom(ProtobufUtils.aliasingInput(protocolMessage.getContent()));
                     processSubjectCastApplicationMessage(subjectCastApplicationMessage);
                 }
 
@@ -125,7 +121,7 @@ public class SubjectCastMessageHandler implements MessageHandler
         var sender = message.getSender();
         var expires = Instant.ofEpochSecond(message.getExpires().getSeconds(), message.getExpires().getNanos());
         var subject = message.getSubject();
-        var content = message.getPayload().toByteArray();
+        var content = message.getPayload();
 
         messageListener.onSubjectCastMessage(messageId, sender, subject, expires, content);
     }
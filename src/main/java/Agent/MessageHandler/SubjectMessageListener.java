@@ -1,5 +1,7 @@
 package Agent.MessageHandler;
 
+import com.google.protobuf.ByteString;
+
 import java.time.Instant;
 
 /**
@@ -17,4 +19,22 @@ public interface SubjectMessageListener
      * @param message   the message content
      */
     void onSubjectCastMessage(String messageId, String sender, String subject, Instant expires, byte[] message);
+
+
+    /**
+     * Called when a subject-cast message is received, with the message content as a read-only view of the received
+     * frame. The default implementation copies the content and calls
+     * {@link #onSubjectCastMessage(String, String, String, Instant, byte[])}, override it to avoid the copy.
+     * Retaining the view keeps the whole frame reachable.
+     *
+     * @param messageId the ID of the message
+     * @param sender    the sender of the message
+     * @param subject   the subject of the message
+     * @param expires   the expiration time of the message
+     * @param message   the message content
+     */
+    default void onSubjectCastMessage(String messageId, String sender, String subject, Instant expires, ByteString message)
+    {
+        onSubjectCastMessage(messageId, sender, subject, expires, message.toByteArray());
+    }
 }
@@ -0,0 +1,48 @@
+package Agent.MessageSending;
+
+import com.google.protobuf.UnsafeByteOperations;
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.time.Instant;
+import java.util.List;
+
+
+/**
+ * A direct message to send as part of a batch, see {@link IMMTPMessageSender#sendDirectBatch(List)}.
+ */
+@Getter
+public class DirectMessageRequest
+{
+    private final List<String> destinations;
+    private final PayloadWriter payload;
+    private final Instant expires;
+
+
+    /**
+     * Constructs a new {@link DirectMessageRequest}. The payload is not copied and must not be modified until the message has been sent.
+     *
+     * @param destinations the destinations of the message
+     * @param payload      the payload of the message
+     * @param expires      the expiration time of the message
+     */
+    public DirectMessageRequest(@NonNull List<String> destinations, @NonNull byte[] payload, Instant expires)
+    {
+        this(destinations, PayloadWriter.of(UnsafeByteOperations.unsafeWrap(payload)), expires);
+    }
+
+
+    /**
+     * Constructs a new {@link DirectMessageRequest} with a payload that is written straight into the envelope.
+     *
+     * @param destinations the destinations of the message
+     * @param payload      the writer of the payload of the message
+     * @param expires      the expiration time of the message
+     */
+    public DirectMessageRequest(@NonNull List<String> destinations, @NonNull PayloadWriter payload, Instant expires)
+    {
+        this.destinations = destinations;
+        this.payload = payload;
+        this.expires = expires;
+    }
+}
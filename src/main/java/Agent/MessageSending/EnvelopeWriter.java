@@ -0,0 +1,97 @@
+package Agent.MessageSending;
+
+import Agent.MMTP.MessageFormats.MessageType;
+import Agent.MMTP.MessageFormats.ProtocolMessage;
+import Agent.Utils.BufferPool;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.MessageLite;
+import com.google.protobuf.WireFormat;
+import lombok.NonNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Serializes an MMTP {@link ProtocolMessage} and the application message inside it in a single pass into a pooled buffer.
+ * <p>
+ * The application message is given as a header, the message without its payload, and a {@link PayloadWriter}.
+ * The nested sizes are computed once up front, after which the envelope, the header fields and the payload field are
+ * written back to back. Since protobuf merges repeated occurrences of a message, a header followed by its payload field
+ * is the same encoding as the full message, so the result is byte for byte what {@code ProtocolMessage.toByteArray()}
+ * would produce.
+ */
+public class EnvelopeWriter
+{
+    private final BufferPool bufferPool;
+
+
+    /**
+     * Creates a new envelope writer.
+     *
+     * @param bufferPool the pool the buffers are taken from
+     */
+    public EnvelopeWriter(@NonNull BufferPool bufferPool)
+    {
+        this.bufferPool = bufferPool;
+    }
+
+
+    /**
+     * Writes an MMTP protocol message of the given type around an application message.
+     *
+     * @param type               the type of the protocol message
+     * @param header             the application message without its payload
+     * @param payloadFieldNumber the field number of the payload in the application message
+     * @param payload            the payload of the application message
+     * @return a pooled buffer holding the protocol message, to be handed back with {@link #release(ByteBuffer)}
+     * @throws IOException if the payload could not be written
+     */
+    public ByteBuffer write(@NonNull MessageType type, @NonNull MessageLite header, int payloadFieldNumber, @NonNull PayloadWriter payload) throws IOException
+    {
+        int payloadSize = payload.getSerializedSize();
+        int contentSize = header.getSerializedSize() + CodedOutputStream.computeTagSize(payloadFieldNumber) + CodedOutputStream.computeUInt32SizeNoTag(payloadSize) + payloadSize;
+        int typeSize = type.getNumber() == 0 ? 0 : CodedOutputStream.computeEnumSize(ProtocolMessage.TYPE_FIELD_NUMBER, type.getNumber());
+        int size = typeSize + CodedOutputStream.computeTagSize(ProtocolMessage.CONTENT_FIELD_NUMBER) + CodedOutputStream.computeUInt32SizeNoTag(contentSize) + contentSize;
+
+        ByteBuffer buffer = bufferPool.acquire(size);
+
+        try
+        {
+            CodedOutputStream output = CodedOutputStream.newInstance(buffer);
+
+            if (typeSize > 0)
+            {
+                output.writeEnum(ProtocolMessage.TYPE_FIELD_NUMBER, type.getNumber());
+            }
+
+            output.writeTag(ProtocolMessage.CONTENT_FIELD_NUMBER, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+            output.writeUInt32NoTag(contentSize);
+            header.writeTo(output);
+            output.writeTag(payloadFieldNumber, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+            output.writeUInt32NoTag(payloadSize);
+            payload.writeTo(output);
+            output.flush();
+            output.checkNoSpaceLeft();
+        }
+
+        catch (IOException | RuntimeException ex)
+        {
+            bufferPool.release(buffer);
+            throw ex;
+        }
+
+        buffer.flip();
+        return buffer;
+    }
+
+
+    /**
+     * Hands a buffer returned by {@link #write(MessageType, MessageLite, int, PayloadWriter)} back to the pool.
+     *
+     * @param buffer the buffer
+     */
+    public void release(@NonNull ByteBuffer buffer)
+    {
+        bufferPool.release(buffer);
+    }
+}
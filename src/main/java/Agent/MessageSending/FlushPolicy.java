@@ -0,0 +1,72 @@
+package Agent.MessageSending;
+
+import lombok.Getter;
+
+/**
+ * Decides when the coalescing writer of a session flushes the frames it has gathered, see {@link SessionWriter}.
+ * A batch is flushed once it holds the maximum number of messages or bytes, or once its oldest frame has waited
+ * for the maximum linger time. A new instance holds the defaults, which never hold a frame back to wait for more:
+ * the writer flushes whatever has queued up while it was busy.
+ */
+@Getter
+public class FlushPolicy
+{
+    private int maxBatchMessages = 64;
+    private int maxBatchBytes = 64 * 1024;
+    private long maxLingerMicros = 0;
+
+
+    /**
+     * Sets the maximum number of frames flushed together.
+     *
+     * @param maxBatchMessages the message limit, at least 1
+     * @return this policy
+     */
+    public FlushPolicy setMaxBatchMessages(int maxBatchMessages)
+    {
+        if (maxBatchMessages < 1)
+        {
+            throw new IllegalArgumentException("Max batch messages must be at least 1");
+        }
+
+        this.maxBatchMessages = maxBatchMessages;
+        return this;
+    }
+
+
+    /**
+     * Sets the number of bytes after which the gathered frames are flushed. A batch always holds at least one frame,
+     * however large.
+     *
+     * @param maxBatchBytes the byte limit, at least 1
+     * @return this policy
+     */
+    public FlushPolicy setMaxBatchBytes(int maxBatchBytes)
+    {
+        if (maxBatchBytes < 1)
+        {
+            throw new IllegalArgumentException("Max batch bytes must be at least 1");
+        }
+
+        this.maxBatchBytes = maxBatchBytes;
+        return this;
+    }
+
+
+    /**
+     * Sets how long a frame may wait for more frames to fill its batch before it is flushed anyway.
+     *
+     * @param maxLingerMicros the linger time in microseconds, 0 to never wait
+     * @return this policy
+     */
+    public FlushPolicy setMaxLingerMicros(long maxLingerMicros)
+    {
+        if (maxLingerMicros < 0)
+        {
+            throw new IllegalArgumentException("Max linger must not be negative");
+        }
+
+        this.maxLingerMicros = maxLingerMicros;
+        return this;
+    }
+}
@@ -54,4 +54,63 @@ public interface IMMTPMessageSender
      * exception on failure
      */
     CompletableFuture<String> publish(String subject, byte[] payload, Instant expires);
-}
\ No newline at end of file
+
+
+    /**
+     * Sends a directed message to the specified destinations with a payload that is written straight into the envelope.
+     * Returns a {@code CompletableFuture} that completes with the message ID once the message has been written or with an
+     * exception on failure.
+     *
+     * @param destinations a list of destination MMSIs
+     * @param payload the writer of the message payload
+     * @param expires the expiration time
+     * @return a {@code CompletableFuture} that completes with the message ID on success or with an
+     * exception on failure
+     */
+    CompletableFuture<String> sendDirectMessage(List<String> destinations, PayloadWriter payload, Instant expires);
+
+
+    /**
+     * Publishes a subject-cast message with a payload that is written straight into the envelope.
+     * Returns a {@code CompletableFuture} that completes with the message ID once the message has been written or with an
+     * exception on failure.
+     *
+     * @param subject the message subject
+     * @param payload the writer of the message payload
+     * @param expires the expiration time
+     * @return a {@code CompletableFuture} that completes with the message ID on success or with an
+     * exception on failure
+     */
+    CompletableFuture<String> publish(String subject, PayloadWriter payload, Instant expires);
+
+
+    /**
+     * Sends a batch of directed messages. The messages are validated and serialized in one pass, and written back to back
+     * with a single flush. A message that fails validation or is rejected by backpressure does not affect the others.
+     *
+     * @param requests the messages to send
+     * @return a {@code CompletableFuture} per message, in the order of the requests, that completes with the message ID on
+     * success or with an exception on failure
+     */
+    List<CompletableFuture<String>> sendDirectBatch(List<DirectMessageRequest> requests);
+
+
+    /**
+     * Publishes a batch of subject-cast messages. The messages are validated and serialized in one pass, and written back to back
+     * with a single flush. A message that fails validation or is rejected by backpressure does not affect the others.
+     *
+     * @param requests the messages to publish
+     * @return a {@code CompletableFuture} per message, in the order of the requests, that completes with the message ID on
+     * success or with an exception on failure
+     */
+    List<CompletableFuture<String>> publishBatch(List<PublishRequest> requests);
+
+
+    /**
+     * Returns whether messages are stored in an outbox while the session is closed, and replayed once a new
+     * session is established, rather than failing.
+     *
+     * @return true if messages are stored while disconnected
+     */
+    boolean isStoreAndForward();
+}
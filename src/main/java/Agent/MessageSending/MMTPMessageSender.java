@@ -4,20 +4,21 @@ package Agent.MessageSending;
 import Agent.MMTP.MessageFormats.DirectApplicationMessage;
 import Agent.MMTP.MessageFormats.MessageType;
 import Agent.MMTP.MessageFormats.SubjectCastApplicationMessage;
-import Agent.Utils.ProtocolMessageUtils;
+import Agent.Exceptions.OutboxFullException;
+import Agent.Outbox.Outbox;
 import Agent.Utils.MMTPUtils;
 import Agent.Utils.Validators.MMTPValidationException;
 import Agent.Utils.Validators.MMTPValidator;
+import com.google.protobuf.UnsafeByteOperations;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
-import org.eclipse.jetty.websocket.api.Session;
 
+import java.nio.ByteBuffer;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
-import java.util.concurrent.Executor;
-import java.util.function.Supplier;
 
 
 /**
@@ -28,22 +29,39 @@ import java.util.function.Supplier;
 @Slf4j
 public class MMTPMessageSender implements IMMTPMessageSender
 {
-    private final Session session;
+    private final SessionWriter writer;
+    private final EnvelopeWriter envelopeWriter;
     private final String maritimeResourceName;
-    private final Executor executor;
+    private final Outbox outbox;
 
     /**
-     * Creates a new instance of {@code MMMTPMessageSender} with the given session, maritime resource name, and executor.
+     * Creates a new instance of {@code MMMTPMessageSender} with the given session writer, envelope writer and maritime resource name.
+     * Messages are written asynchronously, the returned futures complete once the message has been written to the socket.
      *
-     * @param session               the WebSocket session used for sending MMTP messages
+     * @param writer                the writer of the WebSocket session used for sending MMTP messages
+     * @param envelopeWriter        the writer used to serialize the messages into pooled buffers
      * @param maritimeResourceName  the name of the maritime resource (the MRN) that is sending the messages
-     * @param executor              the executor used for asynchronous message sending
      */
-    public MMTPMessageSender(@NonNull Session session, @NonNull String maritimeResourceName, @NonNull Executor executor)
+    public MMTPMessageSender(@NonNull SessionWriter writer, @NonNull EnvelopeWriter envelopeWriter, @NonNull String maritimeResourceName)
     {
-        this.session = session;
+        this(writer, envelopeWriter, maritimeResourceName, null);
+    }
+
+    /**
+     * Creates a new instance of {@code MMMTPMessageSender} that stores messages in the given outbox while the session is closed,
+     * or while earlier stored messages are being replayed. The future of a stored message completes once it has been stored.
+     *
+     * @param writer                the writer of the WebSocket session used for sending MMTP messages
+     * @param envelopeWriter        the writer used to serialize the messages into pooled buffers
+     * @param maritimeResourceName  the name of the maritime resource (the MRN) that is sending the messages
+     * @param outbox                the outbox of the MRN, or null to fail sends while the session is closed
+     */
+    public MMTPMessageSender(@NonNull SessionWriter writer, @NonNull EnvelopeWriter envelopeWriter, @NonNull String maritimeResourceName, Outbox outbox)
+    {
+        this.writer = writer;
+        this.envelopeWriter = envelopeWriter;
         this.maritimeResourceName = maritimeResourceName;
-        this.executor = executor;
+        this.outbox = outbox;
     }
 
     /**
@@ -57,49 +75,62 @@ public class MMTPMessageSender implements IMMTPMessageSender
     @Override
     public void sendDirectMessage(@NonNull List<String> destinations, @NonNull byte[] payload, Instant expires, @NonNull MMTPSendingListener sendListener)
     {
-        executeAsync(() ->
-        {
-            try
-            {
-                DirectApplicationMessage message = prepareDirectMessage(destinations, payload, expires);
-                ProtocolMessageUtils.buildAndSendProtocolMessage(session, MessageType.DIRECT_APPLICATION_MESSAGE, message.toByteString());
-                log.debug("Sent direct message with ID {} to destinations {}", message.getId(), destinations);
-                sendListener.onSuccess(message.getId());
-            }
-            catch (Exception ex)
-            {
-                log.error("Failed to send direct message: {}", ex.getMessage());
-                sendListener.onFailure(ex);
-            }
-        });
+        notifyListener(sendDirectMessage(destinations, payload, expires), sendListener);
     }
 
     /**
      * Sends a direct MMTP application message to the given destinations with the given payload and expiration time,
      * returning a CompletableFuture that completes with the message ID when the message has been sent.
+     * The payload is copied into the outbound buffer before this method returns.
      *
      * @param destinations  the list of destination IDs to send the message to
      * @param payload       the payload of the message
      * @param expires       the time at which the message expires
-     * @return              a CompletableFuture that completes with the message ID when the message has been sent
+     * @return              a CompletableFuture that completes with the message ID when the message has been sent,
+     *                      or completes exceptionally with a {@link Agent.Exceptions.BackpressureException} if the session has too many outstanding writes
      */
     @Override
     public CompletableFuture<String> sendDirectMessage(@NonNull List<String> destinations, @NonNull byte[] payload, Instant expires)
     {
-        return executeAsync(() ->
+        return sendDirectMessage(destinations, PayloadWriter.of(UnsafeByteOperations.unsafeWrap(payload)), expires);
+    }
+
+    /**
+     * Sends a direct MMTP application message to the given destinations with a payload that is written straight into the envelope.
+     *
+     * @param destinations  the list of destination IDs to send the message to
+     * @param payload       the writer of the payload of the message
+     * @param expires       the time at which the message expires
+     * @return              a CompletableFuture that completes with the message ID when the message has been sent,
+     *                      or completes exceptionally with a {@link Agent.Exceptions.BackpressureException} if the session has too many outstanding writes
+     */
+    @Override
+    public CompletableFuture<String> sendDirectMessage(@NonNull List<String> destinations, @NonNull PayloadWriter payload, Instant expires)
+    {
+        DirectApplicationMessage message;
+        ByteBuffer buffer;
+
+        try
         {
-            try
-            {
-                DirectApplicationMessage message = prepareDirectMessage(destinations, payload, expires);
-                ProtocolMessageUtils.buildAndSendProtocolMessage(session, MessageType.DIRECT_APPLICATION_MESSAGE, message.toByteString());
-                log.debug("Sent direct message with ID {} to destinations {}", message.getId(), destinations);
-                return message.getId();
-            }
-            catch (Exception ex)
+            message = prepareDirectMessage(destinations, payload.getSerializedSize(), expires);
+            buffer = envelopeWriter.write(MessageType.DIRECT_APPLICATION_MESSAGE, message, DirectApplicationMessage.PAYLOAD_FIELD_NUMBER, payload);
+        }
+        catch (Exception ex)
+        {
+            log.error("Failed to send direct message: {}", ex.getMessage());
+            return CompletableFuture.failedFuture(ex);
+        }
+
+        return write(buffer, expires).handle((ignored, ex) ->
+        {
+            if (ex != null)
             {
                 log.error("Failed to send direct message: {}", ex.getMessage());
                 throw new CompletionException(ex);
             }
+
+            log.debug("Sent direct message with ID {} to destinations {}", message.getId(), destinations);
+            return message.getId();
         });
     }
 
@@ -114,137 +145,347 @@ public class MMTPMessageSender implements IMMTPMessageSender
     @Override
     public void publish(@NonNull String subject, @NonNull byte[] payload, Instant expires, @NonNull MMTPSendingListener sendListener)
     {
-        executeAsync(() ->
+        notifyListener(publish(subject, payload, expires), sendListener);
+    }
+
+    /**
+     * Publishes a subject-cast application message to the specified subject.
+     * The payload is copied into the outbound buffer before this method returns.
+     *
+     * @param subject The subject of the message.
+     * @param payload The payload of the message.
+     * @param expires The expiration time of the message.
+     * @return A CompletableFuture that completes with the ID of the published message once it has been written,
+     *         or completes exceptionally with a SendingException if the message could not be sent
+     *         (a {@link Agent.Exceptions.BackpressureException} if the session has too many outstanding writes).
+     */
+    @Override
+    public CompletableFuture<String> publish(@NonNull String subject, @NonNull byte[] payload, Instant expires)
+    {
+        return publish(subject, PayloadWriter.of(UnsafeByteOperations.unsafeWrap(payload)), expires);
+    }
+
+    /**
+     * Publishes a subject-cast application message to the specified subject with a payload that is written straight into the envelope.
+     *
+     * @param subject The subject of the message.
+     * @param payload The writer of the payload of the message.
+     * @param expires The expiration time of the message.
+     * @return A CompletableFuture that completes with the ID of the published message once it has been written,
+     *         or completes exceptionally with a SendingException if the message could not be sent
+     *         (a {@link Agent.Exceptions.BackpressureException} if the session has too many outstanding writes).
+     */
+    @Override
+    public CompletableFuture<String> publish(@NonNull String subject, @NonNull PayloadWriter payload, Instant expires)
+    {
+        SubjectCastApplicationMessage message;
+        ByteBuffer buffer;
+
+        try
+        {
+            message = prepareSubjectCastMessage(subject, payload.getSerializedSize(), expires);
+            buffer = envelopeWriter.write(MessageType.SUBJECT_CAST_APPLICATION_MESSAGE, message, SubjectCastApplicationMessage.PAYLOAD_FIELD_NUMBER, payload);
+        }
+        catch (Exception ex)
+        {
+            log.error("Failed to publish message: {}", ex.getMessage());
+            return CompletableFuture.failedFuture(ex);
+        }
+
+        return write(buffer, expires).handle((ignored, ex) ->
+        {
+            if (ex != null)
+            {
+                log.error("Failed to publish message: {}", ex.getMessage());
+                throw new CompletionException(ex);
+            }
+
+            log.debug("Published message with ID {} to subject {}", message.getId(), subject);
+            return message.getId();
+        });
+    }
+
+
+    /**
+     * Sends a batch of direct MMTP application messages. All messages are validated and serialized before any is written,
+     * then written back to back with a single flush. A message that fails validation fails on its own.
+     *
+     * @param requests The messages to send.
+     * @return A CompletableFuture per message, in the order of the requests, that completes with the message ID when the message has been sent,
+     *         or completes exceptionally if the message could not be sent.
+     */
+    @Override
+    public List<CompletableFuture<String>> sendDirectBatch(@NonNull List<DirectMessageRequest> requests)
+    {
+        List<CompletableFuture<String>> results = new ArrayList<>(requests.size());
+        List<String> messageIds = new ArrayList<>(requests.size());
+        List<Instant> expires = new ArrayList<>(requests.size());
+        List<ByteBuffer> buffers = new ArrayList<>(requests.size());
+
+        for (DirectMessageRequest request : requests)
         {
             try
             {
-                SubjectCastApplicationMessage message = prepareSubjectCastMessage(subject, payload, expires);
-                ProtocolMessageUtils.buildAndSendProtocolMessage(session, MessageType.SUBJECT_CAST_APPLICATION_MESSAGE, message.toByteString());
-                log.debug("Published message with ID {} to subject {}", message.getId(), subject);
-                sendListener.onSuccess(message.getId());
+                PayloadWriter payload = request.getPayload();
+                DirectApplicationMessage message = prepareDirectMessage(request.getDestinations(), payload.getSerializedSize(), request.getExpires());
+                buffers.add(envelopeWriter.write(MessageType.DIRECT_APPLICATION_MESSAGE, message, DirectApplicationMessage.PAYLOAD_FIELD_NUMBER, payload));
+                messageIds.add(message.getId());
+                expires.add(request.getExpires());
+                results.add(null);
             }
             catch (Exception ex)
             {
-                log.error("Failed to publish message: {}", ex.getMessage());
-                sendListener.onFailure(ex);
+                log.error("Failed to send direct message: {}", ex.getMessage());
+                results.add(CompletableFuture.failedFuture(ex));
             }
-        });
+        }
+
+        writeBatch(results, messageIds, expires, buffers);
+        log.debug("Sent a batch of {} direct messages", buffers.size());
+        return results;
     }
 
+
     /**
-     * Publishes a subject-cast application message to the specified subject.
+     * Publishes a batch of subject-cast application messages. All messages are validated and serialized before any is written,
+     * then written back to back with a single flush. A message that fails validation fails on its own.
      *
-     * @param subject The subject of the message.
-     * @param payload The payload of the message.
-     * @param expires The expiration time of the message.
-     * @return A CompletableFuture that completes with the ID of the published message if the message was sent successfully,
-     *         or completes exceptionally with a SendingException if the message could not be sent.
+     * @param requests The messages to publish.
+     * @return A CompletableFuture per message, in the order of the requests, that completes with the message ID when the message has been sent,
+     *         or completes exceptionally if the message could not be sent.
      */
     @Override
-    public CompletableFuture<String> publish(@NonNull String subject, @NonNull byte[] payload, Instant expires)
+    public List<CompletableFuture<String>> publishBatch(@NonNull List<PublishRequest> requests)
     {
-        return executeAsync(() ->
+        List<CompletableFuture<String>> results = new ArrayList<>(requests.size());
+        List<String> messageIds = new ArrayList<>(requests.size());
+        List<Instant> expires = new ArrayList<>(requests.size());
+        List<ByteBuffer> buffers = new ArrayList<>(requests.size());
+
+        for (PublishRequest request : requests)
         {
             try
             {
-                SubjectCastApplicationMessage message = prepareSubjectCastMessage(subject, payload, expires);
-                ProtocolMessageUtils.buildAndSendProtocolMessage(session, MessageType.SUBJECT_CAST_APPLICATION_MESSAGE, message.toByteString());
-                log.debug("Published message with ID {} to subject {}", message.getId(), subject);
-                return message.getId();
+                PayloadWriter payload = request.getPayload();
+                SubjectCastApplicationMessage message = prepareSubjectCastMessage(request.getSubject(), payload.getSerializedSize(), request.getExpires());
+                buffers.add(envelopeWriter.write(MessageType.SUBJECT_CAST_APPLICATION_MESSAGE, message, SubjectCastApplicationMessage.PAYLOAD_FIELD_NUMBER, payload));
+                messageIds.add(message.getId());
+                expires.add(request.getExpires());
+                results.add(null);
             }
             catch (Exception ex)
             {
                 log.error("Failed to publish message: {}", ex.getMessage());
-                throw new CompletionException(ex);
+                results.add(CompletableFuture.failedFuture(ex));
             }
-        });
+        }
+
+        writeBatch(results, messageIds, expires, buffers);
+        log.debug("Published a batch of {} messages", buffers.size());
+        return results;
     }
 
 
     /**
-     * Executes the specified runnable asynchronously.
+     * Writes the serialized messages of a batch and fills in their futures. The buffers are handed back to the pool as their writes complete.
+     * Messages the outbox takes are stored rather than written.
      *
-     * @param task The task to execute.
+     * @param results The futures of the batch, null for each message that was serialized.
+     * @param messageIds The IDs of the serialized messages.
+     * @param expires The expiration times of the serialized messages.
+     * @param buffers The serialized messages, in the same order as their IDs.
      */
-    private void executeAsync(Runnable task)
+    private void writeBatch(List<CompletableFuture<String>> results, List<String> messageIds, List<Instant> expires, List<ByteBuffer> buffers)
     {
-        executor.execute(task);
+        List<CompletableFuture<Void>> writes = new ArrayList<>(buffers.size());
+        List<ByteBuffer> unstored = new ArrayList<>(buffers.size());
+
+        for (int i = 0; i < buffers.size(); i++)
+        {
+            CompletableFuture<Void> stored = store(buffers.get(i), expires.get(i));
+            writes.add(stored);
+
+            if (stored == null)
+            {
+                unstored.add(buffers.get(i));
+            }
+        }
+
+        if (!unstored.isEmpty())
+        {
+            List<CompletableFuture<Void>> written = writer.writeBatch(unstored);
+
+            for (int i = 0, next = 0; i < writes.size(); i++)
+            {
+                if (writes.get(i) == null)
+                {
+                    writes.set(i, written.get(next++));
+                }
+            }
+        }
+
+        int next = 0;
+
+        for (int i = 0; i < results.size(); i++)
+        {
+            if (results.get(i) == null)
+            {
+                ByteBuffer buffer = buffers.get(next);
+                String messageId = messageIds.get(next);
+
+                results.set(i, writes.get(next++).handle((ignored, ex) ->
+                {
+                    envelopeWriter.release(buffer);
+
+                    if (ex != null)
+                    {
+                        log.error("Failed to send message with ID {}: {}", messageId, ex.getMessage());
+                        throw new CompletionException(ex);
+                    }
+
+                    return messageId;
+                }));
+            }
+        }
     }
 
 
     /**
-     * Executes the specified supplier asynchronously and returns a CompletableFuture containing its result.
+     * Writes a pooled buffer to the session, or stores it in the outbox, and hands it back to the pool once the write has completed.
      *
-     * @param task The task to execute.
-     * @param <T> The type of the result.
-     * @return A CompletableFuture containing the result of the task.
+     * @param buffer The buffer to write.
+     * @param expires The expiration time of the message.
+     * @return A future that completes once the buffer has been written or stored.
      */
-    private <T> CompletableFuture<T> executeAsync(Supplier<T> task)
+    private CompletableFuture<Void> write(ByteBuffer buffer, Instant expires)
     {
-        return CompletableFuture.supplyAsync(task, executor);
+        CompletableFuture<Void> stored = store(buffer, expires);
+        return (stored != null ? stored : writer.write(buffer)).whenComplete((ignored, ex) -> envelopeWriter.release(buffer));
     }
 
 
     /**
-     * Prepares a direct application message to the specified destinations with the given payload and expiration time.
+     * Stores a serialized message in the outbox if the outbox takes it.
+     *
+     * @param buffer The serialized message.
+     * @param expires The expiration time of the message.
+     * @return A completed future if the message was stored, a failed future if the outbox is full, or null if the message should be written.
+     */
+    private CompletableFuture<Void> store(ByteBuffer buffer, Instant expires)
+    {
+        if (outbox == null)
+        {
+            return null;
+        }
+
+        try
+        {
+            return outbox.store(writer, buffer, expires) ? CompletableFuture.completedFuture(null) : null;
+        }
+
+        catch (OutboxFullException ex)
+        {
+            return CompletableFuture.failedFuture(ex);
+        }
+    }
+
+
+    /**
+     * Returns whether messages are stored in an outbox while the session is closed.
+     *
+     * @return true if this sender has an outbox
+     */
+    @Override
+    public boolean isStoreAndForward()
+    {
+        return outbox != null;
+    }
+
+
+    /**
+     * Calls the listener once the send has completed.
+     *
+     * @param send The future of the send.
+     * @param sendListener The listener to call.
+     */
+    private void notifyListener(CompletableFuture<String> send, MMTPSendingListener sendListener)
+    {
+        send.whenComplete((messageId, ex) ->
+        {
+            if (ex == null)
+            {
+                sendListener.onSuccess(messageId);
+            }
+            else
+            {
+                sendListener.onFailure(ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex);
+            }
+        });
+    }
+
+
+    /**
+     * Prepares a direct application message to the specified destinations with the given payload size and expiration time.
+     * The message does not hold the payload, the payload is written separately by the {@link EnvelopeWriter}.
      *
      * @param destinations The destinations of the message.
-     * @param payload The payload of the message.
+     * @param payloadSize The size of the payload of the message.
      * @param expires The expiration time of the message.
-     * @return The prepared direct application message.
+     * @return The prepared direct application message, without its payload.
      * @throws Exception if there was an error preparing the message.
      */
-    private DirectApplicationMessage prepareDirectMessage(@NonNull List<String> destinations, @NonNull byte[] payload, Instant expires) throws Exception
+    private DirectApplicationMessage prepareDirectMessage(@NonNull List<String> destinations, int payloadSize, Instant expires) throws Exception
     {
-        return createAndValidateDirectApplicationMessage(destinations, payload, expires);
+        return createAndValidateDirectApplicationMessage(destinations, payloadSize, expires);
     }
 
 
     /**
-     * Prepares a subject-cast application message to the specified subject with the given payload and expiration time.
+     * Prepares a subject-cast application message to the specified subject with the given payload size and expiration time.
+     * The message does not hold the payload, the payload is written separately by the {@link EnvelopeWriter}.
      *
      * @param subject The subject of the message.
-     * @param payload The payload of the message.
+     * @param payloadSize The size of the payload of the message.
      * @param expires The expiration time of the message.
-     * @return The prepared subject-cast application message.
+     * @return The prepared subject-cast application message, without its payload.
      * @throws Exception if there was an error preparing the message.
      */
-    private SubjectCastApplicationMessage prepareSubjectCastMessage(@NonNull String subject, @NonNull byte[] payload, Instant expires) throws Exception
+    private SubjectCastApplicationMessage prepareSubjectCastMessage(@NonNull String subject, int payloadSize, Instant expires) throws Exception
     {
-        return createAndValidateSubjectCastApplicationMessage(subject, payload, expires);
+        return createAndValidateSubjectCastApplicationMessage(subject, payloadSize, expires);
     }
 
 
     /**
-     * Creates and validates a direct application message to the specified destinations with the given payload and expiration time.
+     * Creates and validates a direct application message to the specified destinations with the given payload size and expiration time.
      *
      * @param destinations The destinations of the message.
-     * @param payload The payload of the message.
+     * @param payloadSize The size of the payload of the message.
      * @param expires The expiration time of the message.
-     * @return The created and validated direct application message.
+     * @return The created and validated direct application message, without its payload.
      * @throws MMTPValidationException if the message failed validation.
      */
-    private DirectApplicationMessage createAndValidateDirectApplicationMessage(@NonNull List<String> destinations, @NonNull byte[] payload, Instant expires) throws MMTPValidationException
+    private DirectApplicationMessage createAndValidateDirectApplicationMessage(@NonNull List<String> destinations, int payloadSize, Instant expires) throws MMTPValidationException
     {
-        DirectApplicationMessage message = MMTPUtils.createDirectApplicationMessage(destinations, maritimeResourceName, payload, expires);
-        MMTPValidator.validate(message);
+        DirectApplicationMessage message = MMTPUtils.createDirectApplicationMessageHeader(destinations, maritimeResourceName, expires);
+        MMTPValidator.validate(message, payloadSize);
         return message;
     }
 
 
     /**
-     * Creates and validates a subject-cast application message to the specified subject with the given payload and expiration time.
+     * Creates and validates a subject-cast application message to the specified subject with the given payload size and expiration time.
      *
      * @param subject The subject of the message.
-     * @param payload The payload of the message.
+     * @param payloadSize The size of the payload of the message.
      * @param expires The expiration time of the message.
-     * @return The created and validated subject-cast application message.
+     * @return The created and validated subject-cast application message, without its payload.
      * @throws MMTPValidationException if the message failed validation.
      */
-    private SubjectCastApplicationMessage createAndValidateSubjectCastApplicationMessage(@NonNull String subject, @NonNull byte[] payload, Instant expires) throws MMTPValidationException
+    private SubjectCastApplicationMessage createAndValidateSubjectCastApplicationMessage(@NonNull String subject, int payloadSize, Instant expires) throws MMTPValidationException
     {
-        SubjectCastApplicationMessage message = MMTPUtils.createSubjectCastApplicationMessage(subject, maritimeResourceName, payload, expires);
-        MMTPValidator.validate(message);
+        SubjectCastApplicationMessage message = MMTPUtils.createSubjectCastApplicationMessageHeader(subject, maritimeResourceName, expires);
+        MMTPValidator.validate(message, payloadSize);
         return message;
     }
 }
\ No newline at end of file
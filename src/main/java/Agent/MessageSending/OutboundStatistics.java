@@ -0,0 +1,52 @@
+package Agent.MessageSending;
+
+import Agent.Utils.Histogram;
+import lombok.Getter;
+
+/**
+ * An immutable snapshot of the counters and histograms of the {@link SessionWriter} of a connection.
+ * The histograms are only recorded by a coalescing writer: the queue depth when a batch is flushed, the number of
+ * frames in each batch, and how long the oldest frame of each batch waited, in microseconds.
+ */
+@Getter
+public class OutboundStatistics
+{
+    private final int queuedMessages;
+    private final int outstandingMessages;
+    private final long outstandingBytes;
+    private final long rejectedWrites;
+    private final Histogram queueDepth;
+    private final Histogram batchSize;
+    private final Histogram lingerMicros;
+
+
+    /**
+     * Constructs a new {@link OutboundStatistics}.
+     *
+     * @param queuedMessages      the number of frames waiting to be handed to Jetty
+     * @param outstandingMessages the number of frames accepted but not yet written
+     * @param outstandingBytes    the number of bytes accepted but not yet written
+     * @param rejectedWrites      the number of writes rejected by backpressure
+     * @param queueDepth          the queue depth at each flush
+     * @param batchSize           the number of frames in each flush
+     * @param lingerMicros        the time the oldest frame of each flush waited, in microseconds
+     */
+    public OutboundStatistics(int queuedMessages, int outstandingMessages, long outstandingBytes, long rejectedWrites, Histogram queueDepth, Histogram batchSize, Histogram lingerMicros)
+    {
+        this.queuedMessages = queuedMessages;
+        this.outstandingMessages = outstandingMessages;
+        this.outstandingBytes = outstandingBytes;
+        this.rejectedWrites = rejectedWrites;
+        this.queueDepth = queueDepth;
+        this.batchSize = batchSize;
+        this.lingerMicros = lingerMicros;
+    }
+
+
+    @Override
+    public String toString()
+    {
+        return "OutboundStatistics{queuedMessages=" + queuedMessages + ", outstandingMessages=" + outstandingMessages + ", outstandingBytes=" + outstandingBytes
+                + ", rejectedWrites=" + rejectedWrites + ", queueDepth=" + queueDepth + ", batchSize=" + batchSize + ", lingerMicros=" + lingerMicros + "}";
+    }
+}
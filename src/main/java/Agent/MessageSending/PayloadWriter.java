@@ -0,0 +1,83 @@
+package Agent.MessageSending;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.MessageLite;
+import lombok.NonNull;
+
+import java.io.IOException;
+
+/**
+ * The payload of an outbound MMTP application message, written straight into the envelope by the {@link EnvelopeWriter}.
+ * Lets an upper layer nest its own message in the MMTP envelope without serializing it to an intermediate array first.
+ */
+public interface PayloadWriter
+{
+    /**
+     * Returns the number of bytes {@link #writeTo(CodedOutputStream)} will write.
+     *
+     * @return the size of the payload
+     */
+    int getSerializedSize();
+
+
+    /**
+     * Writes the payload.
+     *
+     * @param output the stream to write to
+     * @throws IOException if the payload could not be written
+     */
+    void writeTo(CodedOutputStream output) throws IOException;
+
+
+    /**
+     * Returns a payload writer for the given bytes.
+     *
+     * @param payload the payload
+     * @return a payload writer that writes the bytes as they are
+     */
+    static PayloadWriter of(@NonNull ByteString payload)
+    {
+        return new PayloadWriter()
+        {
+            @Override
+            public int getSerializedSize()
+            {
+                return payload.size();
+            }
+
+
+            @Override
+            public void writeTo(CodedOutputStream output) throws IOException
+            {
+                output.writeRawBytes(payload);
+            }
+        };
+    }
+
+
+    /**
+     * Returns a payload writer for the given message, which is serialized straight into the envelope.
+     *
+     * @param payload the message
+     * @return a payload writer that writes the serialized message
+     */
+    static PayloadWriter of(@NonNull MessageLite payload)
+    {
+        return new PayloadWriter()
+        {
+            @Override
+            public int getSerializedSize()
+            {
+                return payload.getSerializedSize();
+            }
+
+
+            @Override
+            public void writeTo(CodedOutputStream output) throws IOException
+            {
+                payload.writeTo(output);
+            }
+        };
+    }
+}
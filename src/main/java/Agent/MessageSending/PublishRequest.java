@@ -0,0 +1,47 @@
+package Agent.MessageSending;
+
+import com.google.protobuf.UnsafeByteOperations;
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.time.Instant;
+
+
+/**
+ * A subject-cast message to publish as part of a batch, see {@link IMMTPMessageSender#publishBatch(java.util.List)}.
+ */
+@Getter
+public class PublishRequest
+{
+    private final String subject;
+    private final PayloadWriter payload;
+    private final Instant expires;
+
+
+    /**
+     * Constructs a new {@link PublishRequest}. The payload is not copied and must not be modified until the message has been sent.
+     *
+     * @param subject the subject of the message
+     * @param payload the payload of the message
+     * @param expires the expiration time of the message
+     */
+    public PublishRequest(@NonNull String subject, @NonNull byte[] payload, Instant expires)
+    {
+        this(subject, PayloadWriter.of(UnsafeByteOperations.unsafeWrap(payload)), expires);
+    }
+
+
+    /**
+     * Constructs a new {@link PublishRequest} with a payload that is written straight into the envelope.
+     *
+     * @param subject the subject of the message
+     * @param payload the writer of the payload of the message
+     * @param expires the expiration time of the message
+     */
+    public PublishRequest(@NonNull String subject, @NonNull PayloadWriter payload, Instant expires)
+    {
+        this.subject = subject;
+        this.payload = payload;
+        this.expires = expires;
+    }
+}
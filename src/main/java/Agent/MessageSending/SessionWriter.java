@@ -0,0 +1,557 @@
+package Agent.MessageSending;
+
+import Agent.Exceptions.BackpressureException;
+import Agent.Exceptions.SendingException;
+import Agent.Utils.Histogram;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.jetty.websocket.api.BatchMode;
+import org.eclipse.jetty.websocket.api.RemoteEndpoint;
+import org.eclipse.jetty.websocket.api.Session;
+import org.eclipse.jetty.websocket.api.WriteCallback;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Writes binary frames to a WebSocket session without blocking the calling thread.
+ * <p>
+ * Every outbound frame of a session goes through its writer, since Jetty does not allow a blocking send while another
+ * send is pending. The writer caps the number of messages and bytes accepted but not written yet.
+ * A write beyond either cap fails straight away with a {@link BackpressureException}. A single message larger than
+ * the byte cap is still accepted when nothing else is outstanding.
+ * <p>
+ * A writer created with a {@link FlushPolicy} coalesces: writes are queued, and a single drain task hands the queued
+ * frames to Jetty in batch mode and flushes them together, so Jetty gathers them into as few socket writes as it can.
+ * The policy decides how many frames go into a batch and how long a frame may wait for company. Without a policy,
+ * each write is handed to Jetty by the calling thread, and only {@link #writeBatch(List)} is flushed as a batch.
+ * Single writes then share a read lock and never see the endpoint in batch mode, a batch takes the write lock.
+ */
+@Slf4j
+public class SessionWriter
+{
+    private static final int IDLE = 0;
+    private static final int DRAINING = 1;
+    private static final int LINGERING = 2;
+
+    @Getter
+    private final Session session;
+    private final long maxOutstandingBytes;
+    private final int maxOutstandingMessages;
+    private final AtomicLong outstandingBytes = new AtomicLong();
+    private final AtomicInteger outstandingMessages = new AtomicInteger();
+    private final LongAdder rejectedWrites = new LongAdder();
+    private final ReadWriteLock batchLock = new ReentrantReadWriteLock();
+
+    private final FlushPolicy flushPolicy;
+    private final Executor drainExecutor;
+    private final Queue<PendingFrame> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queuedMessages = new AtomicInteger();
+    private final AtomicLong queuedBytes = new AtomicLong();
+    private final AtomicInteger drainState = new AtomicInteger(IDLE);
+    private final Histogram queueDepth = new Histogram();
+    private final Histogram batchSize = new Histogram();
+    private final Histogram lingerMicros = new Histogram();
+
+
+    /**
+     * Creates a new writer for the given session, that hands each write to Jetty on the calling thread.
+     *
+     * @param session                the session to write to
+     * @param maxOutstandingBytes    the maximum number of bytes accepted but not yet written
+     * @param maxOutstandingMessages the maximum number of messages accepted but not yet written
+     */
+    public SessionWriter(@NonNull Session session, long maxOutstandingBytes, int maxOutstandingMessages)
+    {
+        this.session = session;
+        this.maxOutstandingBytes = maxOutstandingBytes;
+        this.maxOutstandingMessages = maxOutstandingMessages;
+        this.flushPolicy = null;
+        this.drainExecutor = null;
+    }
+
+
+    /**
+     * Creates a new coalescing writer for the given session.
+     *
+     * @param session                the session to write to
+     * @param maxOutstandingBytes    the maximum number of bytes accepted but not yet written, queued frames included
+     * @param maxOutstandingMessages the maximum number of messages accepted but not yet written, queued frames included
+     * @param flushPolicy            decides when the queued frames are flushed
+     * @param drainExecutor          runs the task that drains the queue
+     */
+    public SessionWriter(@NonNull Session session, long maxOutstandingBytes, int maxOutstandingMessages, @NonNull FlushPolicy flushPolicy, @NonNull Executor drainExecutor)
+    {
+        this.session = session;
+        this.maxOutstandingBytes = maxOutstandingBytes;
+        this.maxOutstandingMessages = maxOutstandingMessages;
+        this.flushPolicy = flushPolicy;
+        this.drainExecutor = drainExecutor;
+    }
+
+
+    /**
+     * Writes the remaining bytes of the buffer as a single binary frame. The buffer must not be modified until the
+     * returned future has completed.
+     *
+     * @param buffer the bytes to write
+     * @return a future that completes once Jetty has written the frame, or completes exceptionally with a
+     * {@link BackpressureException} if the session is saturated, or a {@link SendingException} if the write failed
+     */
+    public CompletableFuture<Void> write(@NonNull ByteBuffer buffer)
+    {
+        if (flushPolicy != null)
+        {
+            CompletableFuture<Void> future = enqueue(buffer);
+            scheduleDrain();
+            return future;
+        }
+
+        batchLock.readLock().lock();
+
+        try
+        {
+            return send(buffer);
+        }
+
+        finally
+        {
+            batchLock.readLock().unlock();
+        }
+    }
+
+
+    /**
+     * Writes the remaining bytes of each buffer as a binary frame, and flushes the frames together. Each buffer is admitted
+     * or rejected on its own, as with {@link #write(ByteBuffer)}. The buffers must not be modified until their futures have completed.
+     *
+     * @param buffers the frames to write, in order
+     * @return a future per buffer, in the same order, that completes once Jetty has written the frame, or completes exceptionally
+     * with a {@link BackpressureException} if the session is saturated, or a {@link SendingException} if the write failed
+     */
+    public List<CompletableFuture<Void>> writeBatch(@NonNull List<ByteBuffer> buffers)
+    {
+        List<CompletableFuture<Void>> futures = new ArrayList<>(buffers.size());
+
+        if (flushPolicy != null)
+        {
+            for (ByteBuffer buffer : buffers)
+            {
+                futures.add(enqueue(buffer));
+            }
+
+            scheduleDrain();
+            return futures;
+        }
+
+        RemoteEndpoint remote = session.getRemote();
+        batchLock.writeLock().lock();
+
+        try
+        {
+            BatchMode mode = remote.getBatchMode();
+            remote.setBatchMode(BatchMode.ON);
+
+            try
+            {
+                for (ByteBuffer buffer : buffers)
+                {
+                    futures.add(send(buffer));
+                }
+
+                remote.flush();
+            }
+
+            finally
+            {
+                remote.setBatchMode(mode);
+            }
+        }
+
+        catch (IOException | RuntimeException ex)
+        {
+            log.warn("Failed to flush a batch of {} messages", buffers.size(), ex);
+
+            while (futures.size() < buffers.size())
+            {
+                futures.add(CompletableFuture.failedFuture(new SendingException("Failed to write message", ex)));
+            }
+        }
+
+        finally
+        {
+            batchLock.writeLock().unlock();
+        }
+
+        return futures;
+    }
+
+
+    /**
+     * Returns the number of bytes accepted that have not been written yet.
+     *
+     * @return the outstanding bytes
+     */
+    public long getOutstandingBytes()
+    {
+        return outstandingBytes.get();
+    }
+
+
+    /**
+     * Returns the number of messages accepted that have not been written yet.
+     *
+     * @return the outstanding messages
+     */
+    public int getOutstandingMessages()
+    {
+        return outstandingMessages.get();
+    }
+
+
+    /**
+     * Returns the number of writes that failed with a {@link BackpressureException}.
+     *
+     * @return the number of rejected writes
+     */
+    public long getRejectedWrites()
+    {
+        return rejectedWrites.sum();
+    }
+
+
+    /**
+     * Returns a snapshot of the counters and histograms of this writer. The histograms stay empty unless the writer coalesces.
+     *
+     * @return the statistics of this writer
+     */
+    public OutboundStatistics getStatistics()
+    {
+        return new OutboundStatistics(queuedMessages.get(), outstandingMessages.get(), outstandingBytes.get(), rejectedWrites.sum(),
+                queueDepth.copy(), batchSize.copy(), lingerMicros.copy());
+    }
+
+
+    /**
+     * Hands a single frame to Jetty, if there is room for it.
+     *
+     * @param buffer the bytes to write
+     * @return a future that completes once Jetty has written the frame
+     */
+    private CompletableFuture<Void> send(ByteBuffer buffer)
+    {
+        int length = buffer.remaining();
+
+        if (!reserve(length))
+        {
+            return reject();
+        }
+
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        transmit(buffer, length, future);
+        return future;
+    }
+
+
+    /**
+     * Queues a single frame for the drain task, if there is room for it.
+     *
+     * @param buffer the bytes to write
+     * @return a future that completes once Jetty has written the frame
+     */
+    private CompletableFuture<Void> enqueue(ByteBuffer buffer)
+    {
+        int length = buffer.remaining();
+
+        if (!reserve(length))
+        {
+            return reject();
+        }
+
+        PendingFrame frame = new PendingFrame(buffer, length, System.nanoTime());
+        queuedBytes.addAndGet(length);
+        queuedMessages.incrementAndGet();
+        queue.add(frame);
+        return frame.future;
+    }
+
+
+    /**
+     * Starts the drain task unless it is already running, or cuts its linger short if a full batch has queued up.
+     */
+    private void scheduleDrain()
+    {
+        if (drainState.compareAndSet(IDLE, DRAINING) || (isBatchFull() && drainState.compareAndSet(LINGERING, DRAINING)))
+        {
+            startDrain();
+        }
+    }
+
+
+    /**
+     * Runs the drain task on the drain executor, or on the calling thread if the executor is saturated.
+     */
+    private void startDrain()
+    {
+        runOnDrainExecutor(this::drain);
+    }
+
+
+    /**
+     * Runs a task on the drain executor, or on the calling thread if the executor is saturated, so a drain that is due
+     * is never lost to a rejection.
+     *
+     * @param task the task to run
+     */
+    private void runOnDrainExecutor(Runnable task)
+    {
+        try
+        {
+            drainExecutor.execute(task);
+        }
+
+        catch (RejectedExecutionException ex)
+        {
+            task.run();
+        }
+    }
+
+
+    /**
+     * Called when the linger time of the oldest queued frame has passed. Drains the queue unless another thread already does.
+     */
+    private void onLingerExpired()
+    {
+        if (drainState.compareAndSet(LINGERING, DRAINING))
+        {
+            drain();
+        }
+    }
+
+
+    /**
+     * Flushes queued frames in batches until the queue is empty or the oldest frame may still linger.
+     * Only one thread drains at a time, it owns the endpoint while the drain state is {@link #DRAINING}.
+     */
+    private void drain()
+    {
+        long lingerNanos = TimeUnit.MICROSECONDS.toNanos(flushPolicy.getMaxLingerMicros());
+
+        while (true)
+        {
+            PendingFrame oldest = queue.peek();
+
+            if (oldest == null)
+            {
+                drainState.set(IDLE);
+
+                if (queue.isEmpty() || !drainState.compareAndSet(IDLE, DRAINING))
+                {
+                    return;
+                }
+
+                continue;
+            }
+
+            long wait = oldest.enqueuedNanos + lingerNanos - System.nanoTime();
+
+            if (wait > 0 && !isBatchFull())
+            {
+                drainState.set(LINGERING);
+
+                if (!isBatchFull() || !drainState.compareAndSet(LINGERING, DRAINING))
+                {
+                    CompletableFuture.delayedExecutor(wait, TimeUnit.NANOSECONDS, this::runOnDrainExecutor).execute(this::onLingerExpired);
+                    return;
+                }
+            }
+
+            flush();
+        }
+    }
+
+
+    /**
+     * Takes a batch of frames off the queue, hands them to Jetty in batch mode and flushes them.
+     */
+    private void flush()
+    {
+        queueDepth.record(queuedMessages.get());
+        List<PendingFrame> batch = new ArrayList<>(Math.min(flushPolicy.getMaxBatchMessages(), queuedMessages.get()));
+        long bytes = 0;
+        PendingFrame frame;
+
+        while (batch.size() < flushPolicy.getMaxBatchMessages() && (batch.isEmpty() || bytes < flushPolicy.getMaxBatchBytes()) && (frame = queue.poll()) != null)
+        {
+            batch.add(frame);
+            bytes += frame.length;
+        }
+
+        queuedMessages.addAndGet(-batch.size());
+        queuedBytes.addAndGet(-bytes);
+        batchSize.record(batch.size());
+        lingerMicros.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - batch.get(0).enqueuedNanos));
+
+        RemoteEndpoint remote = session.getRemote();
+        int transmitted = 0;
+
+        try
+        {
+            remote.setBatchMode(BatchMode.ON);
+
+            for (PendingFrame pending : batch)
+            {
+                transmit(pending.buffer, pending.length, pending.future);
+                transmitted++;
+            }
+
+            remote.flush();
+        }
+
+        catch (IOException | RuntimeException ex)
+        {
+            log.warn("Failed to flush a batch of {} messages", batch.size(), ex);
+
+            for (PendingFrame pending : batch.subList(transmitted, batch.size()))
+            {
+                release(pending.length);
+                pending.future.completeExceptionally(new SendingException("Failed to write message", ex));
+            }
+        }
+    }
+
+
+    /**
+     * Hands a reserved frame to Jetty and completes its future once it has been written.
+     *
+     * @param buffer the bytes to write
+     * @param length the length of the frame
+     * @param future the future of the frame
+     */
+    private void transmit(ByteBuffer buffer, int length, CompletableFuture<Void> future)
+    {
+        try
+        {
+            session.getRemote().sendBytes(buffer, new WriteCallback()
+            {
+                @Override
+                public void writeSuccess()
+                {
+                    release(length);
+                    future.complete(null);
+                }
+
+
+                @Override
+                public void writeFailed(Throwable ex)
+                {
+                    release(length);
+                    future.completeExceptionally(new SendingException("Failed to write message", ex));
+                }
+            });
+        }
+
+        catch (RuntimeException ex)
+        {
+            release(length);
+            future.completeExceptionally(new SendingException("Failed to write message", ex));
+        }
+    }
+
+
+    /**
+     * Returns whether the queued frames fill a batch.
+     *
+     * @return true if a batch can be flushed straight away
+     */
+    private boolean isBatchFull()
+    {
+        return queuedMessages.get() >= flushPolicy.getMaxBatchMessages() || queuedBytes.get() >= flushPolicy.getMaxBatchBytes();
+    }
+
+
+    /**
+     * Counts and fails a write that did not fit.
+     *
+     * @return a future that has failed with a {@link BackpressureException}
+     */
+    private CompletableFuture<Void> reject()
+    {
+        rejectedWrites.increment();
+        return CompletableFuture.failedFuture(new BackpressureException(
+                "Session has " + outstandingMessages.get() + " messages and " + outstandingBytes.get() + " bytes waiting to be written"));
+    }
+
+
+    /**
+     * Reserves room for a message, rolling the reservation back if it would exceed either cap.
+     *
+     * @param length the length of the message
+     * @return true if the message may be written
+     */
+    private boolean reserve(int length)
+    {
+        if (outstandingMessages.incrementAndGet() > maxOutstandingMessages)
+        {
+            outstandingMessages.decrementAndGet();
+            return false;
+        }
+
+        long bytes = outstandingBytes.addAndGet(length);
+
+        if (bytes > maxOutstandingBytes && bytes != length)
+        {
+            outstandingBytes.addAndGet(-length);
+            outstandingMessages.decrementAndGet();
+            return false;
+        }
+
+        return true;
+    }
+
+
+    /**
+     * Releases the room held by a message that has been written or has failed.
+     *
+     * @param length the length of the message
+     */
+    private void release(int length)
+    {
+        outstandingBytes.addAndGet(-length);
+        outstandingMessages.decrementAndGet();
+    }
+
+
+    /**
+     * A frame waiting in the queue of a coalescing writer.
+     */
+    private static class PendingFrame
+    {
+        private final ByteBuffer buffer;
+        private final int length;
+        private final long enqueuedNanos;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+
+        private PendingFrame(ByteBuffer buffer, int length, long enqueuedNanos)
+        {
+            this.buffer = buffer;
+            this.length = length;
+            this.enqueuedNanos = enqueuedNanos;
+        }
+    }
+}
@@ -0,0 +1,777 @@
+package Agent.Outbox;
+
+import Agent.Exceptions.OutboxFullException;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * An append-only log of records, stored in fixed size memory-mapped segment files.
+ * <p>
+ * Each record holds an expiry time and an opaque payload. Records are read back in the order they were appended,
+ * and expired records are skipped. Reading does not remove a record, {@link #commit(Entry)} does: it persists the read
+ * position in the header of the segment, and deletes segments that have been read completely. When the log reaches its
+ * disk budget, {@link #compact(long)} rewrites the full segments without their expired and read records.
+ * <p>
+ * A segment file starts with a 16 byte header: a magic number, a version and the read position. It is followed by
+ * records of a length, a CRC32C checksum, the expiry time in epoch milliseconds and the payload. A zero length ends the
+ * segment, so on open the records are recovered by scanning each segment up to the first zero length or bad checksum.
+ * <p>
+ * Appends are written to the page cache, which survives a crash of the process but not of the machine unless
+ * {@link #force()} is called. The log is not thread safe beyond its own methods being synchronized.
+ */
+@Slf4j
+public class MappedSegmentLog implements Closeable
+{
+    private static final int MAGIC = 0x4D4D534F;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int READ_POSITION_OFFSET = 8;
+    private static final int RECORD_HEADER_SIZE = 16;
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String COMPACT_SUFFIX = ".seg.compact";
+    private static final String COMPACTION_MARKER = "compaction.commit";
+
+    private final Path directory;
+    private final int segmentSize;
+    private final int maxSegments;
+    private final Deque<Segment> segments = new ArrayDeque<>();
+    private long nextSegmentId;
+    private boolean pinned;
+    private long expiredRecords;
+
+
+    /**
+     * Opens the log in the given directory, recovering the records of existing segments.
+     *
+     * @param directory   the directory of the segment files, created if missing
+     * @param segmentSize the size of each segment file in bytes
+     * @param maxBytes    the disk budget of the log, at least two segments
+     * @throws IOException if the directory or a segment could not be opened
+     */
+    public MappedSegmentLog(@NonNull Path directory, int segmentSize, long maxBytes) throws IOException
+    {
+        if (segmentSize < HEADER_SIZE + RECORD_HEADER_SIZE + 1)
+        {
+            throw new IllegalArgumentException("Segment size is too small");
+        }
+
+        if (maxBytes < 2L * segmentSize)
+        {
+            throw new IllegalArgumentException("Max bytes must hold at least two segments");
+        }
+
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.maxSegments = (int) Math.min(Integer.MAX_VALUE, maxBytes / segmentSize);
+
+        Files.createDirectories(directory);
+        recoverCompaction();
+        openSegments();
+
+        if (segments.isEmpty())
+        {
+            segments.add(Segment.create(segmentPath(nextSegmentId), nextSegmentId++, segmentSize));
+        }
+    }
+
+
+    /**
+     * Appends a record to the log.
+     *
+     * @param payload       the payload of the record, its remaining bytes are copied
+     * @param expiresMillis the epoch millisecond after which the record is skipped, or {@link Long#MAX_VALUE}
+     * @throws OutboxFullException if the record does not fit in a segment, or the log is at its disk budget
+     * @throws IOException         if a new segment could not be created
+     */
+    public synchronized void append(@NonNull ByteBuffer payload, long expiresMillis) throws OutboxFullException, IOException
+    {
+        int recordSize = RECORD_HEADER_SIZE + payload.remaining();
+
+        if (recordSize > segmentSize - HEADER_SIZE)
+        {
+            throw new OutboxFullException("Message of " + payload.remaining() + " bytes does not fit in an outbox segment");
+        }
+
+        Segment active = segments.peekLast();
+
+        if (active.remaining() < recordSize)
+        {
+            active = roll();
+        }
+
+        active.append(payload, expiresMillis);
+    }
+
+
+    /**
+     * Reads up to the given number of unexpired records from the read position, without removing them. Expired records
+     * before the first unexpired record are removed straight away, an expired record after it ends the read. The log is pinned until {@link #commit(Entry)} or
+     * {@link #unpin()} is called, and is not compacted while pinned.
+     *
+     * @param nowMillis  the current epoch millisecond
+     * @param maxEntries the maximum number of records to read
+     * @return the records, in order, whose payloads are read-only views of the segments
+     */
+    public synchronized List<Entry> read(long nowMillis, int maxEntries)
+    {
+        List<Entry> entries = new ArrayList<>();
+
+        for (Segment segment : segments)
+        {
+            int position = segment.readPosition;
+
+            while (position < segment.writePosition && entries.size() < maxEntries)
+            {
+                int length = segment.buffer.getInt(position);
+                long expiresMillis = segment.buffer.getLong(position + 8);
+                int end = position + RECORD_HEADER_SIZE + length;
+
+                if (expiresMillis <= nowMillis)
+                {
+                    if (!entries.isEmpty())
+                    {
+                        break;
+                    }
+
+                    expiredRecords++;
+                    segment.setReadPosition(end);
+                }
+
+                else
+                {
+                    ByteBuffer payload = segment.buffer.asReadOnlyBuffer();
+                    payload.limit(end).position(position + RECORD_HEADER_SIZE);
+                    entries.add(new Entry(segment.id, end, expiresMillis, payload.slice()));
+                }
+
+                position = end;
+            }
+
+            if (entries.size() >= maxEntries || position < segment.writePosition)
+            {
+                break;
+            }
+        }
+
+        dropReadSegments();
+        pinned = !entries.isEmpty();
+        return entries;
+    }
+
+
+    /**
+     * Removes the given record and every record before it, and unpins the log.
+     *
+     * @param entry the last record to remove, as returned by {@link #read(long, int)}
+     */
+    public synchronized void commit(@NonNull Entry entry)
+    {
+        for (Segment segment : segments)
+        {
+            if (segment.id < entry.segmentId)
+            {
+                segment.setReadPosition(segment.writePosition);
+            }
+
+            else if (segment.id == entry.segmentId)
+            {
+                segment.setReadPosition(Math.max(segment.readPosition, entry.endPosition));
+            }
+        }
+
+        pinned = false;
+        dropReadSegments();
+    }
+
+
+    /**
+     * Unpins the log without removing any record.
+     */
+    public synchronized void unpin()
+    {
+        pinned = false;
+    }
+
+
+    /**
+     * Returns whether the log holds no unread records, expired or not.
+     *
+     * @return true if the log is empty
+     */
+    public synchronized boolean isEmpty()
+    {
+        for (Segment segment : segments)
+        {
+            if (segment.readPosition < segment.writePosition)
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+
+    /**
+     * Returns whether the records returned by the last {@link #read(long, int)} have not been committed yet.
+     *
+     * @return true if the log is pinned
+     */
+    public synchronized boolean isPinned()
+    {
+        return pinned;
+    }
+
+
+    /**
+     * Returns the number of records that expired before they were read, and were removed or compacted away.
+     *
+     * @return the number of expired records
+     */
+    public synchronized long getExpiredRecords()
+    {
+        return expiredRecords;
+    }
+
+
+    /**
+     * Returns the number of segment files of the log.
+     *
+     * @return the number of segments
+     */
+    public synchronized int getSegmentCount()
+    {
+        return segments.size();
+    }
+
+
+    /**
+     * Rewrites the full segments without their read and expired records, if that frees at least one segment.
+     * The new segments are written next to the old ones and swapped in through a commit marker, so a crash part way
+     * leaves either the old or the new segments. Does nothing while the log is pinned.
+     *
+     * @param nowMillis the current epoch millisecond
+     * @return true if segments were freed
+     * @throws IOException if the new segments could not be written
+     */
+    public synchronized boolean compact(long nowMillis) throws IOException
+    {
+        if (pinned || segments.size() < 3)
+        {
+            return false;
+        }
+
+        List<Segment> full = new ArrayList<>(segments);
+        Segment active = full.remove(full.size() - 1);
+        List<int[]> records = new ArrayList<>();
+        int needed = 1;
+        int fill = HEADER_SIZE;
+
+        for (int i = 0; i < full.size(); i++)
+        {
+            Segment segment = full.get(i);
+
+            for (int position = segment.readPosition; position < segment.writePosition; )
+            {
+                int end = position + RECORD_HEADER_SIZE + segment.buffer.getInt(position);
+
+                if (segment.buffer.getLong(position + 8) > nowMillis)
+                {
+                    records.add(new int[]{i, position, end});
+
+                    if (fill + (end - position) > segmentSize)
+                    {
+                        needed++;
+                        fill = HEADER_SIZE;
+                    }
+
+                    fill += end - position;
+                }
+
+                position = end;
+            }
+        }
+
+        if (needed >= full.size())
+        {
+            return false;
+        }
+
+        List<Segment> compacted = new ArrayList<>(needed);
+        compacted.add(Segment.create(compactPath(full.get(0).id), full.get(0).id, segmentSize));
+        long dropped = 0;
+
+        for (Segment segment : full)
+        {
+            dropped += segment.countRecords();
+        }
+
+        for (int[] record : records)
+        {
+            Segment source = full.get(record[0]);
+            Segment target = compacted.get(compacted.size() - 1);
+
+            if (target.remaining() < record[2] - record[1])
+            {
+                long id = full.get(compacted.size()).id;
+                target = Segment.create(compactPath(id), id, segmentSize);
+                compacted.add(target);
+            }
+
+            ByteBuffer payload = source.buffer.duplicate();
+            payload.limit(record[2]).position(record[1] + RECORD_HEADER_SIZE);
+            target.append(payload, source.buffer.getLong(record[1] + 8));
+        }
+
+        for (Segment segment : compacted)
+        {
+            segment.buffer.force();
+        }
+
+        Files.write(directory.resolve(COMPACTION_MARKER), List.of(compacted.size() + " " + full.stream().map(segment -> Long.toString(segment.id)).collect(Collectors.joining(" "))));
+
+        for (Segment segment : full)
+        {
+            segment.delete();
+        }
+
+        for (Segment segment : compacted)
+        {
+            segment.moveTo(segmentPath(segment.id));
+        }
+
+        Files.delete(directory.resolve(COMPACTION_MARKER));
+
+        expiredRecords += dropped - records.size();
+        segments.clear();
+        segments.addAll(compacted);
+        segments.add(active);
+        log.debug("Compacted {} outbox segments into {} in {}", full.size(), compacted.size(), directory);
+        return true;
+    }
+
+
+    /**
+     * Forces the appended records to disk.
+     */
+    public synchronized void force()
+    {
+        for (Segment segment : segments)
+        {
+            segment.buffer.force();
+        }
+    }
+
+
+    /**
+     * Forces the appended records to disk and closes the segment files.
+     *
+     * @throws IOException if a segment file could not be closed
+     */
+    @Override
+    public synchronized void close() throws IOException
+    {
+        force();
+
+        for (Segment segment : segments)
+        {
+            segment.channel.close();
+        }
+
+        segments.clear();
+    }
+
+
+    /**
+     * Seals the active segment and starts a new one, making room first if the log is at its disk budget.
+     *
+     * @return the new active segment
+     * @throws OutboxFullException if no room could be made
+     * @throws IOException         if the new segment could not be created
+     */
+    private Segment roll() throws OutboxFullException, IOException
+    {
+        dropReadSegments();
+
+        if (segments.size() >= maxSegments && !compact(System.currentTimeMillis()))
+        {
+            throw new OutboxFullException("The outbox in " + directory + " has reached its limit of " + maxSegments + " segments");
+        }
+
+        Segment segment = Segment.create(segmentPath(nextSegmentId), nextSegmentId++, segmentSize);
+        segments.add(segment);
+        return segment;
+    }
+
+
+    /**
+     * Deletes the segments before the active one that have been read completely, and rewinds the active segment
+     * if it has been read completely and is the only segment.
+     */
+    private void dropReadSegments()
+    {
+        while (segments.size() > 1 && segments.peekFirst().isRead())
+        {
+            segments.pollFirst().delete();
+        }
+
+        Segment active = segments.peekLast();
+
+        if (segments.size() == 1 && active.isRead() && active.writePosition > HEADER_SIZE && !pinned)
+        {
+            active.rewind();
+        }
+    }
+
+
+    /**
+     * Opens the segment files of the directory in order, deleting those that have been read completely.
+     *
+     * @throws IOException if the directory could not be listed or a segment could not be opened
+     */
+    private void openSegments() throws IOException
+    {
+        List<Path> paths;
+
+        try (Stream<Path> files = Files.list(directory))
+        {
+            paths = files.filter(path -> path.getFileName().toString().endsWith(SEGMENT_SUFFIX)).sorted().collect(Collectors.toList());
+        }
+
+        for (Path path : paths)
+        {
+            String name = path.getFileName().toString();
+            long id = Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+            nextSegmentId = Math.max(nextSegmentId, id + 1);
+            Segment segment = Segment.open(path, id);
+
+            if (segment == null)
+            {
+                log.error("Outbox segment {} is corrupt, deleting it", path);
+                Files.delete(path);
+            }
+
+            else
+            {
+                segments.add(segment);
+            }
+        }
+
+        dropReadSegments();
+    }
+
+
+    /**
+     * Completes or rolls back a compaction that was interrupted by a crash. If the commit marker exists, the new
+     * segments were complete: any that have not been moved in place yet replace their old segment, and the old segments
+     * without a replacement are deleted. Without the marker, the new segments are incomplete and deleted.
+     *
+     * @throws IOException if the directory could not be cleaned up
+     */
+    private void recoverCompaction() throws IOException
+    {
+        Path marker = directory.resolve(COMPACTION_MARKER);
+
+        if (Files.exists(marker))
+        {
+            String[] fields = Files.readAllLines(marker).get(0).trim().split(" ");
+            int compacted = Integer.parseInt(fields[0]);
+
+            for (int i = 1; i < fields.length; i++)
+            {
+                long id = Long.parseLong(fields[i]);
+
+                if (i <= compacted && Files.exists(compactPath(id)))
+                {
+                    Files.move(compactPath(id), segmentPath(id), StandardCopyOption.REPLACE_EXISTING);
+                }
+
+                else if (i > compacted)
+                {
+                    Files.deleteIfExists(segmentPath(id));
+                }
+            }
+
+            Files.delete(marker);
+            log.warn("Completed an interrupted compaction of the outbox in {}", directory);
+        }
+
+        try (Stream<Path> files = Files.list(directory))
+        {
+            for (Path path : files.filter(path -> path.getFileName().toString().endsWith(COMPACT_SUFFIX)).collect(Collectors.toList()))
+            {
+                Files.delete(path);
+            }
+        }
+    }
+
+
+    private Path segmentPath(long id)
+    {
+        return directory.resolve(String.format("%016d", id) + SEGMENT_SUFFIX);
+    }
+
+
+    private Path compactPath(long id)
+    {
+        return directory.resolve(String.format("%016d", id) + COMPACT_SUFFIX);
+    }
+
+
+    /**
+     * A record read from the log.
+     */
+    public static class Entry
+    {
+        private final long segmentId;
+        private final int endPosition;
+        private final long expiresMillis;
+        private final ByteBuffer payload;
+
+
+        private Entry(long segmentId, int endPosition, long expiresMillis, ByteBuffer payload)
+        {
+            this.segmentId = segmentId;
+            this.endPosition = endPosition;
+            this.expiresMillis = expiresMillis;
+            this.payload = payload;
+        }
+
+
+        /**
+         * Gets the epoch millisecond after which the record expires.
+         *
+         * @return the expiry time
+         */
+        public long getExpiresMillis()
+        {
+            return expiresMillis;
+        }
+
+
+        /**
+         * Gets a read-only view of the payload. It stays valid after the record has been committed.
+         *
+         * @return the payload
+         */
+        public ByteBuffer getPayload()
+        {
+            return payload;
+        }
+    }
+
+
+    /**
+     * A memory-mapped segment file.
+     */
+    private static class Segment
+    {
+        private final long id;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        private Path path;
+        private int writePosition;
+        private int readPosition;
+
+
+        private Segment(long id, Path path, FileChannel channel, MappedByteBuffer buffer)
+        {
+            this.id = id;
+            this.path = path;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+
+
+        /**
+         * Creates a new, empty segment file.
+         */
+        private static Segment create(Path path, long id, int size) throws IOException
+        {
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            Segment segment = new Segment(id, path, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+            segment.buffer.putInt(0, MAGIC);
+            segment.buffer.putInt(4, VERSION);
+            segment.writePosition = HEADER_SIZE;
+            segment.setReadPosition(HEADER_SIZE);
+            return segment;
+        }
+
+
+        /**
+         * Opens an existing segment file and recovers its records, or returns null if it is not a segment.
+         */
+        private static Segment open(Path path, long id) throws IOException
+        {
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            long size = channel.size();
+
+            if (size < HEADER_SIZE + RECORD_HEADER_SIZE || size > Integer.MAX_VALUE)
+            {
+                channel.close();
+                return null;
+            }
+
+            Segment segment = new Segment(id, path, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+
+            if (segment.buffer.getInt(0) != MAGIC || segment.buffer.getInt(4) != VERSION)
+            {
+                channel.close();
+                return null;
+            }
+
+            segment.writePosition = segment.scan();
+            segment.readPosition = Math.min(Math.max(segment.buffer.getInt(READ_POSITION_OFFSET), HEADER_SIZE), segment.writePosition);
+            return segment;
+        }
+
+
+        /**
+         * Returns the position after the last intact record.
+         */
+        private int scan()
+        {
+            int position = HEADER_SIZE;
+            CRC32C crc = new CRC32C();
+
+            while (position + RECORD_HEADER_SIZE <= buffer.capacity())
+            {
+                int length = buffer.getInt(position);
+
+                if (length <= 0 || length > buffer.capacity() - position - RECORD_HEADER_SIZE)
+                {
+                    break;
+                }
+
+                ByteBuffer record = buffer.duplicate();
+                record.limit(position + RECORD_HEADER_SIZE + length).position(position + 8);
+                crc.reset();
+                crc.update(record);
+
+                if ((int) crc.getValue() != buffer.getInt(position + 4))
+                {
+                    break;
+                }
+
+                position += RECORD_HEADER_SIZE + length;
+            }
+
+            return position;
+        }
+
+
+        /**
+         * Appends a record. The length is written last, and a zero length after the record ends the segment.
+         */
+        private void append(ByteBuffer payload, long expiresMillis)
+        {
+            int length = payload.remaining();
+            int position = writePosition;
+            buffer.putLong(position + 8, expiresMillis);
+            ByteBuffer target = buffer.duplicate();
+            target.position(position + RECORD_HEADER_SIZE);
+            target.put(payload.duplicate());
+
+            ByteBuffer record = buffer.duplicate();
+            record.limit(position + RECORD_HEADER_SIZE + length).position(position + 8);
+            CRC32C crc = new CRC32C();
+            crc.update(record);
+            buffer.putInt(position + 4, (int) crc.getValue());
+
+            writePosition = position + RECORD_HEADER_SIZE + length;
+
+            if (writePosition + 4 <= buffer.capacity())
+            {
+                buffer.putInt(writePosition, 0);
+            }
+
+            buffer.putInt(position, length);
+        }
+
+
+        private int remaining()
+        {
+            return buffer.capacity() - writePosition;
+        }
+
+
+        private boolean isRead()
+        {
+            return readPosition >= writePosition;
+        }
+
+
+        private int countRecords()
+        {
+            int count = 0;
+
+            for (int position = readPosition; position < writePosition; position += RECORD_HEADER_SIZE + buffer.getInt(position))
+            {
+                count++;
+            }
+
+            return count;
+        }
+
+
+        private void setReadPosition(int readPosition)
+        {
+            this.readPosition = readPosition;
+            buffer.putInt(READ_POSITION_OFFSET, readPosition);
+        }
+
+
+        /**
+         * Empties the segment so it can be written from the start again.
+         */
+        private void rewind()
+        {
+            buffer.putInt(HEADER_SIZE, 0);
+            writePosition = HEADER_SIZE;
+            setReadPosition(HEADER_SIZE);
+        }
+
+
+        private void moveTo(Path target) throws IOException
+        {
+            Files.move(path, target, StandardCopyOption.REPLACE_EXISTING);
+            path = target;
+        }
+
+
+        /**
+         * Closes and deletes the segment file. The mapping stays valid until it is garbage collected, so payloads
+         * that are still being written keep their bytes. A failed delete is retried when the log is next opened.
+         */
+        private void delete()
+        {
+            try
+            {
+                channel.close();
+                Files.deleteIfExists(path);
+            }
+
+            catch (IOException ex)
+            {
+                log.warn("Failed to delete outbox segment {}", path, ex);
+            }
+        }
+    }
+}
@@ -0,0 +1,338 @@
+package Agent.Outbox;
+
+import Agent.Exceptions.BackpressureException;
+import Agent.Exceptions.OutboxFullException;
+import Agent.MessageSending.SessionWriter;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A durable store-and-forward outbox for the outbound MMTP messages of one maritime resource (MRN).
+ * <p>
+ * While the MRN has no open session, its serialized messages are appended to a {@link MappedSegmentLog} instead of
+ * being sent. When a new session is attached, the stored messages are replayed to it in order, in windows that are
+ * flushed together, skipping those that have expired meanwhile. Messages sent during the replay are stored behind
+ * the replayed ones, so the order of all messages is kept. Once the log is empty, messages go straight to the session again.
+ */
+@Slf4j
+public class Outbox implements Closeable
+{
+    private static final int REPLAY_WINDOW = 256;
+    private static final long BACKPRESSURE_RETRY_MILLIS = 10;
+
+    private enum State
+    {
+        STORING,
+        REPLAYING,
+        LIVE
+    }
+
+    @Getter
+    private final String maritimeResourceName;
+    private final MappedSegmentLog segmentLog;
+    private final Executor executor;
+    private final LongAdder storedMessages = new LongAdder();
+    private final LongAdder replayedMessages = new LongAdder();
+    private State state = State.STORING;
+    private SessionWriter current;
+    private boolean closed;
+
+
+    /**
+     * Opens the outbox of the given MRN, recovering the messages stored by an earlier run.
+     *
+     * @param maritimeResourceName the MRN whose messages the outbox stores
+     * @param directory            the directory of the outbox
+     * @param segmentSize          the size of each segment file in bytes
+     * @param maxBytes             the disk budget of the outbox
+     * @param executor             the executor that continues the replay once a window has been written
+     * @throws IOException if the outbox could not be opened
+     */
+    public Outbox(@NonNull String maritimeResourceName, @NonNull Path directory, int segmentSize, long maxBytes, @NonNull Executor executor) throws IOException
+    {
+        this.maritimeResourceName = maritimeResourceName;
+        this.segmentLog = new MappedSegmentLog(directory, segmentSize, maxBytes);
+        this.executor = executor;
+    }
+
+
+    /**
+     * Returns the directory of the outbox of an MRN below a base directory.
+     *
+     * @param baseDirectory        the directory holding the outboxes of all MRNs
+     * @param maritimeResourceName the MRN
+     * @return the directory of the outbox
+     */
+    public static Path directoryFor(@NonNull Path baseDirectory, @NonNull String maritimeResourceName)
+    {
+        return baseDirectory.resolve(maritimeResourceName.replaceAll("[^A-Za-z0-9._-]", "_"));
+    }
+
+
+    /**
+     * Stores a serialized message if it may not be sent straight away: when the session of the sender has closed,
+     * or stored messages are waiting to be replayed.
+     *
+     * @param from    the writer the message would otherwise be sent with
+     * @param frame   the serialized message, its remaining bytes are copied if it is stored
+     * @param expires the expiration time of the message, or null if it does not expire
+     * @return true if the message was stored, false if the caller should send it, which it also should once the outbox is closed
+     * @throws OutboxFullException if the message should be stored but the outbox is full
+     */
+    public boolean store(@NonNull SessionWriter from, @NonNull ByteBuffer frame, Instant expires) throws OutboxFullException
+    {
+        SessionWriter replayTo = null;
+
+        synchronized (this)
+        {
+            if (closed || (state == State.LIVE && from == current && from.getSession().isOpen()))
+            {
+                return false;
+            }
+
+            try
+            {
+                segmentLog.append(frame, expires == null ? Long.MAX_VALUE : expires.toEpochMilli());
+            }
+
+            catch (IOException ex)
+            {
+                throw new OutboxFullException("Failed to store message in the outbox", ex);
+            }
+
+            storedMessages.increment();
+
+            if (state == State.LIVE)
+            {
+                if (current.getSession().isOpen())
+                {
+                    state = State.REPLAYING;
+                    replayTo = current;
+                }
+
+                else
+                {
+                    log.info("Session of {} closed, storing outbound messages in the outbox", maritimeResourceName);
+                    state = State.STORING;
+                }
+            }
+        }
+
+        if (replayTo != null)
+        {
+            replay(replayTo);
+        }
+
+        return true;
+    }
+
+
+    /**
+     * Attaches a new session, and replays the stored messages to it.
+     *
+     * @param writer the writer of the new session
+     */
+    public void attach(@NonNull SessionWriter writer)
+    {
+        synchronized (this)
+        {
+            if (closed)
+            {
+                return;
+            }
+
+            current = writer;
+            state = State.REPLAYING;
+        }
+
+        replay(writer);
+    }
+
+
+    /**
+     * Returns the number of messages stored since the outbox was opened.
+     *
+     * @return the number of stored messages
+     */
+    public long getStoredMessages()
+    {
+        return storedMessages.sum();
+    }
+
+
+    /**
+     * Returns the number of stored messages replayed since the outbox was opened.
+     *
+     * @return the number of replayed messages
+     */
+    public long getReplayedMessages()
+    {
+        return replayedMessages.sum();
+    }
+
+
+    /**
+     * Returns the number of stored messages that expired before they could be replayed.
+     *
+     * @return the number of expired messages
+     */
+    public long getExpiredMessages()
+    {
+        return segmentLog.getExpiredRecords();
+    }
+
+
+    /**
+     * Forces the stored messages to disk and closes the outbox.
+     *
+     * @throws IOException if the outbox could not be closed
+     */
+    @Override
+    public synchronized void close() throws IOException
+    {
+        if (!closed)
+        {
+            closed = true;
+            current = null;
+            segmentLog.close();
+        }
+    }
+
+
+    /**
+     * Writes the next window of stored messages to the given session, and continues with the next window once it has
+     * been written. A window still being written to an earlier session continues with the current session when it completes.
+     *
+     * @param writer the writer of the session to replay to
+     */
+    private void replay(SessionWriter writer)
+    {
+        List<MappedSegmentLog.Entry> window;
+
+        synchronized (this)
+        {
+            if (closed || writer != current || state != State.REPLAYING || segmentLog.isPinned())
+            {
+                return;
+            }
+
+            window = segmentLog.read(System.currentTimeMillis(), REPLAY_WINDOW);
+
+            if (window.isEmpty())
+            {
+                log.debug("Outbox of {} is empty, sending directly", maritimeResourceName);
+                state = State.LIVE;
+                return;
+            }
+        }
+
+        // The WebSocket masks outbound frames in place, so the stored messages are copied rather than sent from the log.
+        List<ByteBuffer> frames = new ArrayList<>(window.size());
+
+        for (MappedSegmentLog.Entry entry : window)
+        {
+            ByteBuffer payload = entry.getPayload();
+            ByteBuffer frame = ByteBuffer.allocate(payload.remaining());
+            frame.put(payload.duplicate()).flip();
+            frames.add(frame);
+        }
+
+        List<CompletableFuture<Void>> writes = writer.writeBatch(frames);
+        CompletableFuture.allOf(writes.toArray(new CompletableFuture<?>[0]))
+                .handleAsync((ignored, ex) -> onWindowWritten(writer, window, writes), executor);
+    }
+
+
+    /**
+     * Removes the messages of a window that were written, and decides how to continue.
+     *
+     * @param writer the writer of the session the window was written to
+     * @param window the messages of the window
+     * @param writes the futures of the writes of the window
+     * @return null
+     */
+    private Void onWindowWritten(SessionWriter writer, List<MappedSegmentLog.Entry> window, List<CompletableFuture<Void>> writes)
+    {
+        int written = 0;
+        Throwable failure = null;
+
+        while (written < writes.size() && failure == null)
+        {
+            try
+            {
+                writes.get(written).join();
+                written++;
+            }
+
+            catch (CompletionException ex)
+            {
+                failure = ex.getCause();
+            }
+        }
+
+        SessionWriter next;
+        boolean retry = false;
+
+        synchronized (this)
+        {
+            if (closed)
+            {
+                return null;
+            }
+
+            if (written > 0)
+            {
+                segmentLog.commit(window.get(written - 1));
+                replayedMessages.add(written);
+            }
+
+            else
+            {
+                segmentLog.unpin();
+            }
+
+            next = current;
+
+            if (failure != null && writer == current)
+            {
+                if (failure instanceof BackpressureException)
+                {
+                    retry = true;
+                }
+
+                else
+                {
+                    log.warn("Replay of the outbox of {} stopped, storing outbound messages until the next session", maritimeResourceName, failure);
+                    state = State.STORING;
+                    return null;
+                }
+            }
+        }
+
+        if (retry)
+        {
+            CompletableFuture.delayedExecutor(BACKPRESSURE_RETRY_MILLIS, TimeUnit.MILLISECONDS, executor).execute(() -> replay(next));
+        }
+
+        else if (next != null)
+        {
+            replay(next);
+        }
+
+        return null;
+    }
+}
@@ -3,10 +3,10 @@ package Agent.Subscriptions;
 import Agent.MMTP.MessageFormats.MessageType;
 import Agent.MMTP.MessageFormats.Register;
 import Agent.MMTP.MessageFormats.Unregister;
+import Agent.MessageSending.SessionWriter;
 import Agent.Utils.ProtocolMessageUtils;
 import com.google.protobuf.ByteString;
 import lombok.NonNull;
-import org.eclipse.jetty.websocket.api.Session;
 
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executor;
@@ -22,14 +22,14 @@ public class DmSubscriptionHandler extends SubjectSubscriptionHandler implements
     private final AtomicBoolean subscribedToDM = new AtomicBoolean(false);
 
     /**
-     * Constructs a new DmSubscriptionHandler with the given session and executor.
+     * Constructs a new DmSubscriptionHandler with the given session writer and executor.
      *
-     * @param session  the session to use for subscriptions
+     * @param writer   the writer of the session to use for subscriptions
      * @param executor the executor to use for performing subscription operations
      */
-    public DmSubscriptionHandler(@NonNull Session session, @NonNull Executor executor)
+    public DmSubscriptionHandler(@NonNull SessionWriter writer, @NonNull Executor executor)
     {
-        super(session, executor);
+        super(writer, executor);
     }
 
     /**
@@ -46,20 +46,25 @@ public class DmSubscriptionHandler extends SubjectSubscriptionHandler implements
     {
         executor.execute(() ->
         {
-            try
+            if (!subscribedToDM.compareAndSet(false, true))
             {
-                if (subscribedToDM.compareAndSet(false, true))
-                {
-                    ByteString data = Register.newBuilder().setWantDirectMessages(true).build().toByteString();
-                    ProtocolMessageUtils.buildAndSendProtocolMessage(session, MessageType.REGISTER, data);
-                }
                 listener.onSuccess();
+                return;
             }
-            catch (Exception e)
+
+            ByteString data = Register.newBuilder().setWantDirectMessages(true).build().toByteString();
+            ProtocolMessageUtils.buildAndSendProtocolMessage(writer, MessageType.REGISTER, data).whenComplete((ignored, e) ->
             {
-                subscribedToDM.set(false);
-                listener.onFailure(e);
-            }
+                if (e == null)
+                {
+                    listener.onSuccess();
+                }
+                else
+                {
+                    subscribedToDM.set(false);
+                    listener.onFailure(e);
+                }
+            });
         });
     }
 
@@ -108,20 +113,25 @@ public class DmSubscriptionHandler extends SubjectSubscriptionHandler implements
     {
         executor.execute(() ->
         {
-            try
+            if (!subscribedToDM.compareAndSet(true, false))
             {
-                if (subscribedToDM.compareAndSet(true, false))
-                {
-                    ByteString data = Unregister.newBuilder().setWantDirectMessages(true).build().toByteString();
-                    ProtocolMessageUtils.buildAndSendProtocolMessage(session, MessageType.UNREGISTER, data);
-                }
                 listener.onSuccess();
+                return;
             }
-            catch (Exception e)
+
+            ByteString data = Unregister.newBuilder().setWantDirectMessages(true).build().toByteString();
+            ProtocolMessageUtils.buildAndSendProtocolMessage(writer, MessageType.UNREGISTER, data).whenComplete((ignored, e) ->
             {
-                subscribedToDM.set(true);
-                listener.onFailure(e);
-            }
+                if (e == null)
+                {
+                    listener.onSuccess();
+                }
+                else
+                {
+                    subscribedToDM.set(true);
+                    listener.onFailure(e);
+                }
+            });
         });
     }
 
@@ -4,13 +4,12 @@ package Agent.Subscriptions;
 import Agent.MMTP.MessageFormats.MessageType;
 import Agent.MMTP.MessageFormats.Register;
 import Agent.MMTP.MessageFormats.Unregister;
+import Agent.MessageSending.SessionWriter;
 import Agent.Utils.ProtocolMessageUtils;
 import Agent.Utils.SubjectValidator;
 import com.google.protobuf.ByteString;
 import lombok.NonNull;
-import org.eclipse.jetty.websocket.api.Session;
 
-import java.io.IOException;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
@@ -27,18 +26,18 @@ public class SubjectSubscriptionHandler implements ISubjectSubscriptionHandler
 {
     private final Set<String> subscriptions = new ConcurrentSkipListSet<>();
     protected final Executor executor;
-    protected final Session session;
+    protected final SessionWriter writer;
 
 
     /**
-     * Constructs a new instance of the {@link SubjectSubscriptionHandler} class with the given session and executor.
+     * Constructs a new instance of the {@link SubjectSubscriptionHandler} class with the given session writer and executor.
      *
-     * @param session  the session to use for subscribing and unsubscribing
+     * @param writer   the writer of the session to use for subscribing and unsubscribing
      * @param executor the executor to use for running subscription and unsubscription tasks
      */
-    public SubjectSubscriptionHandler(@NonNull Session session, @NonNull Executor executor)
+    public SubjectSubscriptionHandler(@NonNull SessionWriter writer, @NonNull Executor executor)
     {
-        this.session = session;
+        this.writer = writer;
         this.executor = executor;
     }
 
@@ -58,22 +57,27 @@ public class SubjectSubscriptionHandler implements ISubjectSubscriptionHandler
     {
         executor.execute(() ->
         {
-            try
+            List<String> newSubjects = subjects.stream().filter(SubjectValidator::validate).filter(subscriptions::add).collect(Collectors.toList());
+            if (newSubjects.isEmpty())
             {
-                List<String> newSubjects = subjects.stream().filter(SubjectValidator::validate).filter(subscriptions::add).collect(Collectors.toList());
-                if (!newSubjects.isEmpty())
-                {
-                    ByteString data = Register.newBuilder().addAllInterests(newSubjects).build().toByteString();
-                    ProtocolMessageUtils.buildAndSendProtocolMessage(session, MessageType.REGISTER, data);
-                }
                 listener.onSuccess();
+                return;
             }
 
-            catch (IOException ex)
+            ByteString data = Register.newBuilder().addAllInterests(newSubjects).build().toByteString();
+            ProtocolMessageUtils.buildAndSendProtocolMessage(writer, MessageType.REGISTER, data).whenComplete((ignored, ex) ->
             {
-                System.out.println("Failed to send subscription message: " + ex.getCause());
-                listener.onFailure(ex);
-            }
+                if (ex == null)
+                {
+                    listener.onSuccess();
+                }
+
+                else
+                {
+                    System.out.println("Failed to send subscription message: " + ex.getCause());
+                    listener.onFailure(ex);
+                }
+            });
         });
     }
 
@@ -127,20 +131,25 @@ public class SubjectSubscriptionHandler implements ISubjectSubscriptionHandler
     {
         executor.execute(() ->
         {
-            try
+            List<String> removedSubjects = subjects.stream().filter(subscriptions::remove).collect(Collectors.toList());
+            if (removedSubjects.isEmpty())
             {
-                List<String> removedSubjects = subjects.stream().filter(subscriptions::remove).collect(Collectors.toList());
-                if (!removedSubjects.isEmpty())
-                {
-                    ByteString data = Unregister.newBuilder().addAllInterests(removedSubjects).build().toByteString();
-                    ProtocolMessageUtils.buildAndSendProtocolMessage(session, MessageType.UNREGISTER, data);
-                }
                 listener.onSuccess();
+                return;
             }
-            catch (Exception e)
+
+            ByteString data = Unregister.newBuilder().addAllInterests(removedSubjects).build().toByteString();
+            ProtocolMessageUtils.buildAndSendProtocolMessage(writer, MessageType.UNREGISTER, data).whenComplete((ignored, e) ->
             {
-                listener.onFailure(e);
-            }
+                if (e == null)
+                {
+                    listener.onSuccess();
+                }
+                else
+                {
+                    listener.onFailure(e);
+                }
+            });
         });
     }
 
@@ -0,0 +1,154 @@
+package Agent.Utils;
+
+import lombok.NonNull;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A pool of byte buffers in power of two size classes, from 1 KiB up to 4 MiB.
+ * Requests larger than the largest size class are allocated and dropped as usual.
+ * <p>
+ * A buffer taken with {@link #acquire(int)} must be handed back with {@link #release(ByteBuffer)} once nothing
+ * reads it anymore, and must not be touched afterwards.
+ */
+public class BufferPool
+{
+    private static final int MIN_SHIFT = 10;
+    private static final int MAX_SHIFT = 22;
+
+    private final boolean direct;
+    private final int maxBuffersPerClass;
+    private final Queue<ByteBuffer>[] buffers;
+    private final AtomicInteger[] pooled;
+    private final LongAdder allocations = new LongAdder();
+    private final LongAdder reuses = new LongAdder();
+
+
+    /**
+     * Creates a new buffer pool.
+     *
+     * @param direct             whether to pool direct buffers rather than heap buffers
+     * @param maxBuffersPerClass the maximum number of idle buffers kept per size class
+     */
+    @SuppressWarnings("unchecked")
+    public BufferPool(boolean direct, int maxBuffersPerClass)
+    {
+        this.direct = direct;
+        this.maxBuffersPerClass = maxBuffersPerClass;
+        this.buffers = (Queue<ByteBuffer>[]) new Queue<?>[MAX_SHIFT - MIN_SHIFT + 1];
+        this.pooled = new AtomicInteger[buffers.length];
+
+        for (int i = 0; i < buffers.length; i++)
+        {
+            buffers[i] = new ConcurrentLinkedQueue<>();
+            pooled[i] = new AtomicInteger();
+        }
+    }
+
+
+    /**
+     * Takes a buffer with room for at least the given number of bytes. The position of the buffer is 0 and its
+     * limit is the requested size.
+     *
+     * @param size the number of bytes needed
+     * @return the buffer
+     */
+    public ByteBuffer acquire(int size)
+    {
+        int sizeClass = sizeClass(size);
+
+        if (sizeClass < 0)
+        {
+            allocations.increment();
+            return allocate(size);
+        }
+
+        ByteBuffer buffer = buffers[sizeClass].poll();
+
+        if (buffer == null)
+        {
+            allocations.increment();
+            buffer = allocate(1 << (sizeClass + MIN_SHIFT));
+        }
+
+        else
+        {
+            pooled[sizeClass].decrementAndGet();
+            reuses.increment();
+        }
+
+        buffer.clear().limit(size);
+        return buffer;
+    }
+
+
+    /**
+     * Hands a buffer back to the pool. Buffers that do not belong to a size class, or that would exceed the number of
+     * idle buffers kept, are dropped.
+     *
+     * @param buffer the buffer
+     */
+    public void release(@NonNull ByteBuffer buffer)
+    {
+        int capacity = buffer.capacity();
+        int sizeClass = sizeClass(capacity);
+
+        if (sizeClass < 0 || capacity != 1 << (sizeClass + MIN_SHIFT) || buffer.isDirect() != direct)
+        {
+            return;
+        }
+
+        if (pooled[sizeClass].incrementAndGet() > maxBuffersPerClass)
+        {
+            pooled[sizeClass].decrementAndGet();
+            return;
+        }
+
+        buffers[sizeClass].offer(buffer);
+    }
+
+
+    /**
+     * Returns the number of buffers allocated because no pooled buffer was available.
+     *
+     * @return the number of allocations
+     */
+    public long getAllocations()
+    {
+        return allocations.sum();
+    }
+
+
+    /**
+     * Returns the number of requests served from the pool.
+     *
+     * @return the number of reuses
+     */
+    public long getReuses()
+    {
+        return reuses.sum();
+    }
+
+
+    /**
+     * Finds the smallest size class that holds the given number of bytes.
+     *
+     * @param size the number of bytes
+     * @return the index of the size class, or -1 if the size is larger than the largest size class
+     */
+    private static int sizeClass(int size)
+    {
+        int shift = size <= 1 << MIN_SHIFT ? MIN_SHIFT : 32 - Integer.numberOfLeadingZeros(size - 1);
+        return shift > MAX_SHIFT ? -1 : shift - MIN_SHIFT;
+    }
+
+
+    private ByteBuffer allocate(int capacity)
+    {
+        return direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+    }
+}
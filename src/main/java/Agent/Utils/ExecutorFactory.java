@@ -1,6 +1,6 @@
 package Agent.Utils;
 
-import java.util.concurrent.*;
+import lombok.NonNull;
 
 /**
  * A factory for creating worker thread pools.
@@ -13,13 +13,22 @@ public class ExecutorFactory
     /**
      * Creates a worker thread pool using the optimal number of threads for the current system.
      *
-     * @return an {@link Executor} instance representing the worker thread pool.
+     * @return a {@link WorkerPool} instance representing the worker thread pool.
      */
-    public static Executor createWorkerPool()
+    public static WorkerPool createWorkerPool()
     {
-        int numOfCores = Runtime.getRuntime().availableProcessors();
-        int minCores = numOfCores/4;
-        int maxCores = numOfCores*2;
-        return new ThreadPoolExecutor(minCores, maxCores, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+        return createWorkerPool(new WorkerPoolConfiguration());
+    }
+
+
+    /**
+     * Creates a worker thread pool with the given configuration.
+     *
+     * @param configuration the sizing and behaviour of the pool
+     * @return a {@link WorkerPool} instance representing the worker thread pool.
+     */
+    public static WorkerPool createWorkerPool(@NonNull WorkerPoolConfiguration configuration)
+    {
+        return new WorkerPool(configuration);
     }
 }
@@ -0,0 +1,387 @@
+package Agent.Utils;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A hashed timing wheel for large numbers of coarse timers that are mostly cancelled before they expire,
+ * such as retransmission timers.
+ * <p>
+ * The wheel is an array of buckets, each a doubly linked list of timeouts, and a single daemon thread advances it by
+ * one bucket per tick. A timeout is placed in the bucket of its deadline, along with the number of full turns of the
+ * wheel left before it is due, so scheduling and cancelling are O(1) regardless of the number of pending timeouts.
+ * New and cancelled timeouts are handed to the wheel thread through lock-free queues, so callers never contend on a
+ * lock. Expired tasks run on the given executor, and expire up to one tick late.
+ */
+@Slf4j
+public class HashedWheelTimer implements Closeable
+{
+    private final long tickNanos;
+    private final Bucket[] wheel;
+    private final int mask;
+    private final Executor taskExecutor;
+    private final Queue<Timeout> pending = new ConcurrentLinkedQueue<>();
+    private final Queue<Timeout> cancelled = new ConcurrentLinkedQueue<>();
+    private final AtomicLong pendingTimeouts = new AtomicLong();
+    private final Thread worker;
+    private final long startTime;
+    private volatile boolean closed;
+    private long tick;
+
+
+    /**
+     * Creates a new timer and starts its thread.
+     *
+     * @param tickDuration the duration of a tick, the resolution of the timer
+     * @param unit         the unit of the tick duration
+     * @param wheelSize    the number of buckets, rounded up to a power of two
+     * @param taskExecutor the executor that expired tasks run on
+     * @param threadName   the name of the thread of the timer
+     */
+    public HashedWheelTimer(long tickDuration, @NonNull TimeUnit unit, int wheelSize, @NonNull Executor taskExecutor, @NonNull String threadName)
+    {
+        if (tickDuration < 1)
+        {
+            throw new IllegalArgumentException("Tick duration must be at least 1");
+        }
+
+        if (wheelSize < 1 || wheelSize > 1 << 30)
+        {
+            throw new IllegalArgumentException("Wheel size must be between 1 and 2^30");
+        }
+
+        int size = Integer.highestOneBit(wheelSize - 1 == 0 ? 1 : (wheelSize - 1) << 1);
+        this.tickNanos = unit.toNanos(tickDuration);
+        this.wheel = new Bucket[size];
+        this.mask = size - 1;
+        this.taskExecutor = taskExecutor;
+
+        for (int i = 0; i < size; i++)
+        {
+            wheel[i] = new Bucket();
+        }
+
+        this.startTime = System.nanoTime();
+        this.worker = new Thread(this::run, threadName);
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+
+    /**
+     * Schedules a task to run once the given delay has passed.
+     *
+     * @param task  the task to run
+     * @param delay the delay
+     * @param unit  the unit of the delay
+     * @return the timeout, which can be cancelled
+     * @throws RejectedExecutionException if the timer has been closed
+     */
+    public Timeout schedule(@NonNull Runnable task, long delay, @NonNull TimeUnit unit)
+    {
+        if (closed)
+        {
+            throw new RejectedExecutionException("Timer has been closed");
+        }
+
+        Timeout timeout = new Timeout(this, task, System.nanoTime() + Math.max(0, unit.toNanos(delay)) - startTime);
+        pendingTimeouts.incrementAndGet();
+        pending.add(timeout);
+        return timeout;
+    }
+
+
+    /**
+     * Returns the number of timeouts that have been scheduled, and have neither expired nor been cancelled.
+     *
+     * @return the number of pending timeouts
+     */
+    public long getPendingTimeouts()
+    {
+        return pendingTimeouts.get();
+    }
+
+
+    /**
+     * Stops the timer. Pending timeouts never expire.
+     */
+    @Override
+    public void close()
+    {
+        closed = true;
+        worker.interrupt();
+    }
+
+
+    /**
+     * Advances the wheel one bucket per tick until the timer is closed.
+     */
+    private void run()
+    {
+        while (!closed)
+        {
+            long deadline = tickNanos * (tick + 1);
+            long sleepNanos = deadline - (System.nanoTime() - startTime);
+
+            if (sleepNanos > 0)
+            {
+                try
+                {
+                    TimeUnit.NANOSECONDS.sleep(sleepNanos);
+                }
+
+                catch (InterruptedException ex)
+                {
+                    continue;
+                }
+            }
+
+            removeCancelled();
+            transferPending();
+            expire(wheel[(int) (tick & mask)], deadline);
+            tick++;
+        }
+    }
+
+
+    /**
+     * Unlinks the cancelled timeouts from their buckets.
+     */
+    private void removeCancelled()
+    {
+        Timeout timeout;
+
+        while ((timeout = cancelled.poll()) != null)
+        {
+            if (timeout.bucket != null)
+            {
+                timeout.bucket.remove(timeout);
+            }
+        }
+    }
+
+
+    /**
+     * Places the newly scheduled timeouts in the buckets of their deadlines.
+     */
+    private void transferPending()
+    {
+        Timeout timeout;
+
+        while ((timeout = pending.poll()) != null)
+        {
+            if (timeout.state != Timeout.INIT)
+            {
+                continue;
+            }
+
+            long dueTick = timeout.deadline / tickNanos;
+            timeout.remainingRounds = (dueTick - tick) / wheel.length;
+            wheel[(int) (Math.max(dueTick, tick) & mask)].add(timeout);
+        }
+    }
+
+
+    /**
+     * Expires the timeouts of a bucket that are due by the given deadline, and counts down the rounds of the others.
+     */
+    private void expire(Bucket bucket, long deadline)
+    {
+        Timeout timeout = bucket.head;
+
+        while (timeout != null)
+        {
+            Timeout next = timeout.next;
+
+            if (timeout.remainingRounds <= 0)
+            {
+                bucket.remove(timeout);
+
+                if (timeout.deadline <= deadline)
+                {
+                    timeout.expire();
+                }
+
+                else
+                {
+                    log.warn("Timeout with deadline {} ns placed in the wrong bucket at {} ns", timeout.deadline, deadline);
+                }
+            }
+
+            else if (timeout.state == Timeout.CANCELLED)
+            {
+                bucket.remove(timeout);
+            }
+
+            else
+            {
+                timeout.remainingRounds--;
+            }
+
+            timeout = next;
+        }
+    }
+
+
+    /**
+     * A scheduled task.
+     */
+    public static final class Timeout
+    {
+        private static final int INIT = 0;
+        private static final int CANCELLED = 1;
+        private static final int EXPIRED = 2;
+        private static final AtomicIntegerFieldUpdater<Timeout> STATE = AtomicIntegerFieldUpdater.newUpdater(Timeout.class, "state");
+
+        private final HashedWheelTimer timer;
+        private final Runnable task;
+        private final long deadline;
+        private volatile int state = INIT;
+        private long remainingRounds;
+        private Timeout next;
+        private Timeout previous;
+        private Bucket bucket;
+
+
+        private Timeout(HashedWheelTimer timer, Runnable task, long deadline)
+        {
+            this.timer = timer;
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+
+        /**
+         * Cancels the timeout, so its task does not run. The timeout is removed from the wheel on the next tick.
+         *
+         * @return true if it was cancelled, false if it had already expired or been cancelled
+         */
+        public boolean cancel()
+        {
+            if (!STATE.compareAndSet(this, INIT, CANCELLED))
+            {
+                return false;
+            }
+
+            timer.pendingTimeouts.decrementAndGet();
+            timer.cancelled.add(this);
+            return true;
+        }
+
+
+        /**
+         * Returns whether the timeout has been cancelled.
+         *
+         * @return true if cancelled
+         */
+        public boolean isCancelled()
+        {
+            return state == CANCELLED;
+        }
+
+
+        /**
+         * Returns whether the timeout has expired, and its task has been handed to the executor.
+         *
+         * @return true if expired
+         */
+        public boolean isExpired()
+        {
+            return state == EXPIRED;
+        }
+
+
+        /**
+         * Hands the task to the executor, unless the timeout has been cancelled.
+         */
+        private void expire()
+        {
+            if (!STATE.compareAndSet(this, INIT, EXPIRED))
+            {
+                return;
+            }
+
+            timer.pendingTimeouts.decrementAndGet();
+
+            try
+            {
+                timer.taskExecutor.execute(task);
+            }
+
+            catch (RejectedExecutionException ex)
+            {
+                log.warn("Expired timer task was rejected by its executor", ex);
+            }
+        }
+    }
+
+
+    /**
+     * A bucket of the wheel, only accessed by the thread of the timer.
+     */
+    private static final class Bucket
+    {
+        private Timeout head;
+        private Timeout tail;
+
+
+        private void add(Timeout timeout)
+        {
+            timeout.bucket = this;
+
+            if (head == null)
+            {
+                head = tail = timeout;
+            }
+
+            else
+            {
+                tail.next = timeout;
+                timeout.previous = tail;
+                tail = timeout;
+            }
+        }
+
+
+        private void remove(Timeout timeout)
+        {
+            if (timeout.bucket != this)
+            {
+                return;
+            }
+
+            if (timeout.previous != null)
+            {
+                timeout.previous.next = timeout.next;
+            }
+
+            else
+            {
+                head = timeout.next;
+            }
+
+            if (timeout.next != null)
+            {
+                timeout.next.previous = timeout.previous;
+            }
+
+            else
+            {
+                tail = timeout.previous;
+            }
+
+            timeout.next = null;
+            timeout.previous = null;
+            timeout.bucket = null;
+        }
+    }
+}
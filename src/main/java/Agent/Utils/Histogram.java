@@ -0,0 +1,167 @@
+package Agent.Utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A concurrent histogram of non-negative long values, recorded into power-of-two buckets.
+ * Recording is a few atomic increments, so it is cheap enough for hot paths. Percentiles are reported as the upper
+ * bound of the bucket they fall in, so they are accurate to within a factor of two.
+ */
+public class Histogram
+{
+    private static final int BUCKETS = 65;
+
+    private final AtomicLongArray counts;
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+
+    /**
+     * Constructs a new, empty {@link Histogram}.
+     */
+    public Histogram()
+    {
+        this.counts = new AtomicLongArray(BUCKETS);
+    }
+
+
+    /**
+     * Records a value. Negative values are recorded as 0.
+     *
+     * @param value the value to record
+     */
+    public void record(long value)
+    {
+        long recorded = Math.max(0, value);
+        counts.incrementAndGet(bucketOf(recorded));
+        count.incrementAndGet();
+        sum.addAndGet(recorded);
+        max.accumulateAndGet(recorded, Math::max);
+    }
+
+
+    /**
+     * Returns the number of recorded values.
+     *
+     * @return the number of values
+     */
+    public long getCount()
+    {
+        return count.get();
+    }
+
+
+    /**
+     * Returns the largest recorded value.
+     *
+     * @return the largest value, or 0 if nothing has been recorded
+     */
+    public long getMax()
+    {
+        return max.get();
+    }
+
+
+    /**
+     * Returns the mean of the recorded values.
+     *
+     * @return the mean, or 0 if nothing has been recorded
+     */
+    public double getMean()
+    {
+        long recorded = count.get();
+        return recorded == 0 ? 0 : (double) sum.get() / recorded;
+    }
+
+
+    /**
+     * Returns an upper bound of the value below which the given percentage of the recorded values fall.
+     *
+     * @param percentile the percentile, between 0 and 100
+     * @return the upper bound of the bucket holding the percentile, never more than the largest recorded value
+     */
+    public long getValueAtPercentile(double percentile)
+    {
+        if (percentile < 0 || percentile > 100)
+        {
+            throw new IllegalArgumentException("Percentile must be between 0 and 100");
+        }
+
+        long recorded = count.get();
+
+        if (recorded == 0)
+        {
+            return 0;
+        }
+
+        long target = Math.max(1, (long) Math.ceil(recorded * percentile / 100));
+        long seen = 0;
+
+        for (int bucket = 0; bucket < BUCKETS; bucket++)
+        {
+            seen += counts.get(bucket);
+
+            if (seen >= target)
+            {
+                return Math.min(upperBoundOf(bucket), max.get());
+            }
+        }
+
+        return max.get();
+    }
+
+
+    /**
+     * Returns a copy of this histogram that does not change when more values are recorded here.
+     *
+     * @return a copy of this histogram
+     */
+    public Histogram copy()
+    {
+        Histogram copy = new Histogram();
+
+        for (int bucket = 0; bucket < BUCKETS; bucket++)
+        {
+            copy.counts.set(bucket, counts.get(bucket));
+        }
+
+        copy.count.set(count.get());
+        copy.sum.set(sum.get());
+        copy.max.set(max.get());
+        return copy;
+    }
+
+
+    @Override
+    public String toString()
+    {
+        return "Histogram{count=" + getCount() + ", mean=" + String.format("%.1f", getMean()) + ", p50=" + getValueAtPercentile(50)
+                + ", p99=" + getValueAtPercentile(99) + ", max=" + getMax() + "}";
+    }
+
+
+    /**
+     * Returns the bucket of a value, 0 for 0 and otherwise the number of significant bits of the value.
+     *
+     * @param value the value
+     * @return the bucket index
+     */
+    private static int bucketOf(long value)
+    {
+        return 64 - Long.numberOfLeadingZeros(value);
+    }
+
+
+    /**
+     * Returns the largest value that falls in a bucket.
+     *
+     * @param bucket the bucket index
+     * @return the upper bound of the bucket
+     */
+    private static long upperBoundOf(int bucket)
+    {
+        return bucket >= 63 ? Long.MAX_VALUE : (1L << bucket) - 1;
+    }
+}
@@ -3,12 +3,11 @@ package Agent.Utils;
 
 import Agent.MMTP.MessageFormats.DirectApplicationMessage;
 import Agent.MMTP.MessageFormats.SubjectCastApplicationMessage;
-import com.google.protobuf.ByteString;
 import com.google.protobuf.Timestamp;
+import com.google.protobuf.UnsafeByteOperations;
 
 import java.time.Instant;
 import java.util.List;
-import java.util.UUID;
 
 public class MMTPUtils
 {
@@ -23,23 +22,24 @@ public class MMTPUtils
      */
     public static SubjectCastApplicationMessage createSubjectCastApplicationMessage(String subject, String sender, byte[] payload, Instant expires)
     {
-        SubjectCastApplicationMessage.Builder builder = SubjectCastApplicationMessage.newBuilder();
-        String messageId = UUID.randomUUID().toString();
-
-        builder.setId(messageId)
-                .setSubject(subject)
-                .setSender(sender);
+        return subjectCastApplicationMessageBuilder(subject, sender, expires)
+                .setPayload(UnsafeByteOperations.unsafeWrap(payload))
+                .build();
+    }
 
-        if (expires != null)
-        {
-            builder.setExpires(Timestamp.newBuilder()
-                    .setSeconds(expires.getEpochSecond())
-                    .setNanos(expires.getNano())
-                    .build());
-        }
 
-        builder.setPayload(ByteString.copyFrom(payload));
-        return builder.build();
+    /**
+     * This method is used to create a SubjectCastApplicationMessage object without a payload,
+     * for writing the payload separately with an {@link Agent.MessageSending.EnvelopeWriter}.
+     *
+     * @param subject The subject to send the message to.
+     * @param sender The sender of the message.
+     * @param expires The expiration time of the message.
+     * @return SubjectCastApplicationMessage The created SubjectCastApplicationMessage object, without a payload.
+     */
+    public static SubjectCastApplicationMessage createSubjectCastApplicationMessageHeader(String subject, String sender, Instant expires)
+    {
+        return subjectCastApplicationMessageBuilder(subject, sender, expires).build();
     }
 
 
@@ -53,9 +53,50 @@ public class MMTPUtils
      * @return DirectApplicationMessage The created DirectApplicationMessage object.
      */
     public static DirectApplicationMessage createDirectApplicationMessage(List<String> destinations, String sender, byte[] payload, Instant expires)
+    {
+        return directApplicationMessageBuilder(destinations, sender, expires)
+                .setPayload(UnsafeByteOperations.unsafeWrap(payload))
+                .build();
+    }
+
+
+    /**
+     * This method is used to create a DirectApplicationMessage object without a payload,
+     * for writing the payload separately with an {@link Agent.MessageSending.EnvelopeWriter}.
+     *
+     * @param destinations The list of destinations to send the message to.
+     * @param sender       The sender of the message.
+     * @param expires      The expiration time of the message.
+     * @return DirectApplicationMessage The created DirectApplicationMessage object, without a payload.
+     */
+    public static DirectApplicationMessage createDirectApplicationMessageHeader(List<String> destinations, String sender, Instant expires)
+    {
+        return directApplicationMessageBuilder(destinations, sender, expires).build();
+    }
+
+
+    private static SubjectCastApplicationMessage.Builder subjectCastApplicationMessageBuilder(String subject, String sender, Instant expires)
+    {
+        SubjectCastApplicationMessage.Builder builder = SubjectCastApplicationMessage.newBuilder();
+        String messageId = MessageIds.nextString();
+
+        builder.setId(messageId)
+                .setSubject(subject)
+                .setSender(sender);
+
+        if (expires != null)
+        {
+            builder.setExpires(toTimestamp(expires));
+        }
+
+        return builder;
+    }
+
+
+    private static DirectApplicationMessage.Builder directApplicationMessageBuilder(List<String> destinations, String sender, Instant expires)
     {
         DirectApplicationMessage.Builder builder = DirectApplicationMessage.newBuilder();
-        String messageId = UUID.randomUUID().toString();
+        String messageId = MessageIds.nextString();
 
         builder.setId(messageId)
                 .addAllRecipients(destinations)
@@ -63,15 +104,18 @@ public class MMTPUtils
 
         if (expires != null)
         {
-            builder.setExpires(Timestamp.newBuilder()
-                    .setSeconds(expires.getEpochSecond())
-                    .setNanos(expires.getNano())
-                    .build());
+            builder.setExpires(toTimestamp(expires));
         }
 
-        builder.setPayload(ByteString.copyFrom(payload));
-        return builder.build();
+        return builder;
     }
 
 
+    private static Timestamp toTimestamp(Instant instant)
+    {
+        return Timestamp.newBuilder()
+                .setSeconds(instant.getEpochSecond())
+                .setNanos(instant.getNano())
+                .build();
+    }
 }
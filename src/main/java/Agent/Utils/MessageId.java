@@ -0,0 +1,141 @@
+package Agent.Utils;
+
+import lombok.NonNull;
+
+import java.util.UUID;
+
+/**
+ * A 128-bit message ID held as two longs. This is the compact form used internally, it is cheaper to hash and compare
+ * than its 36 character string form, which is what goes on the wire.
+ * <p>
+ * IDs order by their most significant bits first, so IDs from a time-ordered generator sort by creation time.
+ */
+public final class MessageId implements Comparable<MessageId>
+{
+    private final long mostSignificantBits;
+    private final long leastSignificantBits;
+
+
+    /**
+     * Creates a new message ID from its two halves.
+     *
+     * @param mostSignificantBits  the most significant 64 bits
+     * @param leastSignificantBits the least significant 64 bits
+     */
+    public MessageId(long mostSignificantBits, long leastSignificantBits)
+    {
+        this.mostSignificantBits = mostSignificantBits;
+        this.leastSignificantBits = leastSignificantBits;
+    }
+
+
+    /**
+     * Parses a message ID from its UUID string form.
+     *
+     * @param id the UUID string
+     * @return the message ID
+     * @throws IllegalArgumentException if the string is not a UUID
+     */
+    public static MessageId fromString(@NonNull String id)
+    {
+        UUID uuid = UUID.fromString(id);
+        return new MessageId(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+    }
+
+
+    /**
+     * Returns the most significant 64 bits.
+     *
+     * @return the most significant bits
+     */
+    public long getMostSignificantBits()
+    {
+        return mostSignificantBits;
+    }
+
+
+    /**
+     * Returns the least significant 64 bits.
+     *
+     * @return the least significant bits
+     */
+    public long getLeastSignificantBits()
+    {
+        return leastSignificantBits;
+    }
+
+
+    /**
+     * Returns the 16 byte big-endian encoding of this ID.
+     *
+     * @return the ID as bytes
+     */
+    public byte[] toBytes()
+    {
+        byte[] bytes = new byte[16];
+
+        for (int i = 0; i < 8; i++)
+        {
+            bytes[i] = (byte) (mostSignificantBits >>> (56 - 8 * i));
+            bytes[i + 8] = (byte) (leastSignificantBits >>> (56 - 8 * i));
+        }
+
+        return bytes;
+    }
+
+
+    /**
+     * Returns this ID as a {@link UUID}.
+     *
+     * @return the UUID
+     */
+    public UUID toUUID()
+    {
+        return new UUID(mostSignificantBits, leastSignificantBits);
+    }
+
+
+    /**
+     * Returns the UUID string form of this ID, as used on the wire.
+     *
+     * @return the ID as a UUID string
+     */
+    @Override
+    public String toString()
+    {
+        return toUUID().toString();
+    }
+
+
+    @Override
+    public boolean equals(Object other)
+    {
+        if (this == other)
+        {
+            return true;
+        }
+
+        if (!(other instanceof MessageId id))
+        {
+            return false;
+        }
+
+        return mostSignificantBits == id.mostSignificantBits && leastSignificantBits == id.leastSignificantBits;
+    }
+
+
+    @Override
+    public int hashCode()
+    {
+        long hash = mostSignificantBits ^ leastSignificantBits;
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+
+    @Override
+    public int compareTo(@NonNull MessageId other)
+    {
+        int result = Long.compareUnsigned(mostSignificantBits, other.mostSignificantBits);
+        return result != 0 ? result : Long.compareUnsigned(leastSignificantBits, other.leastSignificantBits);
+    }
+}
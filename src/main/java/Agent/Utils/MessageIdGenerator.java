@@ -0,0 +1,15 @@
+package Agent.Utils;
+
+/**
+ * Generates the IDs of outbound messages. Implementations must be safe to call from many threads at once and
+ * must produce IDs whose string form is a UUID, since that is what MMTP requires.
+ */
+public interface MessageIdGenerator
+{
+    /**
+     * Generates a new message ID.
+     *
+     * @return the message ID
+     */
+    MessageId next();
+}
@@ -0,0 +1,57 @@
+package Agent.Utils;
+
+import lombok.NonNull;
+
+/**
+ * The source of the IDs of outbound messages. Uses a {@link UuidV7Generator} unless another generator is installed.
+ */
+public class MessageIds
+{
+    private static volatile MessageIdGenerator generator = new UuidV7Generator();
+
+    private MessageIds() {}
+
+
+    /**
+     * Installs the generator used for all subsequent message IDs.
+     *
+     * @param messageIdGenerator the generator
+     */
+    public static void setGenerator(@NonNull MessageIdGenerator messageIdGenerator)
+    {
+        generator = messageIdGenerator;
+    }
+
+
+    /**
+     * Returns the generator in use.
+     *
+     * @return the generator
+     */
+    public static MessageIdGenerator getGenerator()
+    {
+        return generator;
+    }
+
+
+    /**
+     * Generates a new message ID.
+     *
+     * @return the message ID
+     */
+    public static MessageId next()
+    {
+        return generator.next();
+    }
+
+
+    /**
+     * Generates a new message ID in its UUID string form.
+     *
+     * @return the message ID as a string
+     */
+    public static String nextString()
+    {
+        return generator.next().toString();
+    }
+}
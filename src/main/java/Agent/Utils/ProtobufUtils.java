@@ -0,0 +1,45 @@
+package Agent.Utils;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedInputStream;
+import lombok.NonNull;
+
+/**
+ * Helpers for parsing protocol buffers without copying the underlying bytes.
+ */
+public class ProtobufUtils
+{
+    private ProtobufUtils() { }
+
+
+    /**
+     * Creates a {@link CodedInputStream} over a region of a byte array with aliasing enabled, so that bytes fields of
+     * messages parsed from it are views of the array instead of copies. The array must not be modified afterwards.
+     *
+     * @param buffer the array to read from
+     * @param offset the offset of the first byte to read
+     * @param len    the number of bytes to read
+     * @return an aliasing input stream over the given region
+     */
+    public static CodedInputStream aliasingInput(@NonNull byte[] buffer, int offset, int len)
+    {
+        CodedInputStream input = CodedInputStream.newInstance(buffer, offset, len);
+        input.enableAliasing(true);
+        return input;
+    }
+
+
+    /**
+     * Creates a {@link CodedInputStream} over a {@link ByteString} with aliasing enabled, so that bytes fields of
+     * messages parsed from it are views of the same bytes instead of copies.
+     *
+     * @param bytes the bytes to read from
+     * @return an aliasing input stream over the given bytes
+     */
+    public static CodedInputStream aliasingInput(@NonNull ByteString bytes)
+    {
+        CodedInputStream input = bytes.newCodedInput();
+        input.enableAliasing(true);
+        return input;
+    }
+}
@@ -2,12 +2,12 @@ package Agent.Utils;
 
 import Agent.MMTP.MessageFormats.MessageType;
 import Agent.MMTP.MessageFormats.ProtocolMessage;
+import Agent.MessageSending.SessionWriter;
 import com.google.protobuf.ByteString;
 import lombok.NonNull;
-import org.eclipse.jetty.websocket.api.Session;
 
-import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
 
 public class ProtocolMessageUtils
 {
@@ -28,28 +28,29 @@ public class ProtocolMessageUtils
 
 
     /**
-     * Converts the given {@link ProtocolMessage} to a byte buffer and sends it to the given session.
-     * @param session the session to send the message to
+     * Converts the given {@link ProtocolMessage} to a byte buffer and writes it with the given session writer.
+     * @param writer  the writer of the session to send the message to
      * @param message the message to send
-     * @throws IOException if an I/O error occurs
+     * @return a future that completes once the message has been written
      */
-    private static void sendProtocolMessage(@NonNull Session session, @NonNull ProtocolMessage message) throws IOException
+    private static CompletableFuture<Void> sendProtocolMessage(@NonNull SessionWriter writer, @NonNull ProtocolMessage message)
     {
         ByteBuffer buffer = ByteBuffer.wrap(message.toByteArray());
-        session.getRemote().sendBytes(buffer);
+        return writer.write(buffer);
     }
 
 
     /**
-     * Builds a {@link ProtocolMessage} with the given message type and content and sends it to the given session.
+     * Builds a {@link ProtocolMessage} with the given message type and content and sends it with the given session writer.
      *
-     * @param session the session to send the message to
+     * @param writer the writer of the session to send the message to
      * @param messageType the type of message to build
      * @param content the content of the message
-     * @throws IOException if an I/O error occurs
+     * @return a future that completes once the message has been written, or completes exceptionally with a
+     * {@link Agent.Exceptions.SendingException} if it could not be sent
      */
-    public static void buildAndSendProtocolMessage(@NonNull Session session, @NonNull MessageType messageType, @NonNull ByteString content) throws IOException
+    public static CompletableFuture<Void> buildAndSendProtocolMessage(@NonNull SessionWriter writer, @NonNull MessageType messageType, @NonNull ByteString content)
     {
-        sendProtocolMessage(session, buildProtocolMessage(messageType, content));
+        return sendProtocolMessage(writer, buildProtocolMessage(messageType, content));
     }
 }
@@ -0,0 +1,17 @@
+package Agent.Utils;
+
+import java.util.UUID;
+
+/**
+ * Generates random version 4 UUIDs with {@link UUID#randomUUID()}, which draws from a shared {@link java.security.SecureRandom}.
+ * Use it where message IDs must be unpredictable, at the cost of contention between sending threads.
+ */
+public class RandomUuidGenerator implements MessageIdGenerator
+{
+    @Override
+    public MessageId next()
+    {
+        UUID uuid = UUID.randomUUID();
+        return new MessageId(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+    }
+}
@@ -0,0 +1,22 @@
+package Agent.Utils;
+
+/**
+ * An enum that represents what a {@link WorkerPool} does with a task when it is saturated.
+ */
+public enum RejectionPolicy
+{
+    /**
+     * Run the task on the submitting thread, which slows the submitter down to the pace of the pool.
+     */
+    CALLER_RUNS,
+
+    /**
+     * Block the submitting thread until the pool has room for the task.
+     */
+    BLOCK,
+
+    /**
+     * Throw a {@link java.util.concurrent.RejectedExecutionException} to the submitting thread.
+     */
+    ABORT
+}
@@ -0,0 +1,317 @@
+package Agent.Utils;
+
+import Agent.MessageHandler.OverflowPolicy;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A per-connection mailbox that runs its tasks one at a time, in submission order, on a shared worker pool.
+ * At most one drain of the mailbox is queued on or running in the pool at any time.
+ * <p>
+ * Messages submitted through {@link #offer(Runnable)} are bounded by the capacity of the mailbox, and the
+ * {@link OverflowPolicy} decides what happens when it is full. Control tasks submitted through
+ * {@link #execute(Runnable)}, such as connect and close events, are never bounded or dropped, so they keep their
+ * position relative to the messages around them.
+ * <p>
+ * A drain runs at most {@value #MAX_TASKS_PER_DRAIN} tasks before it hands its pool thread back and queues another
+ * drain, so a busy session does not keep a shared thread to itself.
+ */
+@Slf4j
+public class SessionMailbox implements Executor
+{
+    private static final int MAX_TASKS_PER_DRAIN = 64;
+
+    private final Queue<Envelope> tasks = new ConcurrentLinkedQueue<>();
+    private final Queue<Envelope> messages = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+    private final Executor delegate;
+    private final Semaphore capacity;
+    private final OverflowPolicy overflowPolicy;
+    private final Runnable overflowHandler;
+    private final LongAdder dropped = new LongAdder();
+
+
+    /**
+     * Creates a new mailbox on top of the given worker pool.
+     *
+     * @param delegate        the executor that drains the mailbox
+     * @param capacity        the maximum number of queued messages
+     * @param overflowPolicy  what to do with a message that arrives when the mailbox is full
+     * @param overflowHandler called when a message is dropped under {@link OverflowPolicy#DISCONNECT}
+     */
+    public SessionMailbox(@NonNull Executor delegate, int capacity, @NonNull OverflowPolicy overflowPolicy, @NonNull Runnable overflowHandler)
+    {
+        this.delegate = delegate;
+        this.capacity = new Semaphore(capacity);
+        this.overflowPolicy = overflowPolicy;
+        this.overflowHandler = overflowHandler;
+    }
+
+
+    /**
+     * Queues a control task. Control tasks are not bounded by the capacity and are never dropped.
+     *
+     * @param task the task to run
+     */
+    @Override
+    public void execute(@NonNull Runnable task)
+    {
+        enqueue(new Envelope(task, false));
+    }
+
+
+    /**
+     * Queues a message, applying the overflow policy if the mailbox is full.
+     *
+     * @param task the task that handles the message
+     * @return true if the message was queued, false if it was dropped
+     */
+    public boolean offer(@NonNull Runnable task)
+    {
+        switch (overflowPolicy)
+        {
+            case BLOCK ->
+            {
+                try
+                {
+                    capacity.acquire();
+                }
+
+                catch (InterruptedException ex)
+                {
+                    Thread.currentThread().interrupt();
+                    return drop();
+                }
+            }
+
+            case DROP_OLDEST ->
+            {
+                while (!capacity.tryAcquire())
+                {
+                    if (cancelOldestMessage())
+                    {
+                        dropped.increment();
+                        break;
+                    }
+                }
+            }
+
+            case DROP_NEWEST ->
+            {
+                if (!capacity.tryAcquire())
+                {
+                    return drop();
+                }
+            }
+
+            case DISCONNECT ->
+            {
+                if (!capacity.tryAcquire())
+                {
+                    overflowHandler.run();
+                    return drop();
+                }
+            }
+        }
+
+        Envelope envelope = new Envelope(task, true);
+
+        if (overflowPolicy == OverflowPolicy.DROP_OLDEST)
+        {
+            messages.add(envelope);
+        }
+
+        enqueue(envelope);
+        return true;
+    }
+
+
+    /**
+     * Returns the number of queued messages.
+     *
+     * @return the number of messages waiting to be handled
+     */
+    public int getQueuedMessages()
+    {
+        int queued = 0;
+
+        for (Envelope envelope : tasks)
+        {
+            if (envelope.message && envelope.state.get() == Envelope.QUEUED)
+            {
+                queued++;
+            }
+        }
+
+        return queued;
+    }
+
+
+    /**
+     * Returns the number of messages dropped because the mailbox was full.
+     *
+     * @return the number of dropped messages
+     */
+    public long getDroppedMessages()
+    {
+        return dropped.sum();
+    }
+
+
+    /**
+     * Counts a dropped message.
+     *
+     * @return false, for use as the result of {@link #offer(Runnable)}
+     */
+    private boolean drop()
+    {
+        dropped.increment();
+        return false;
+    }
+
+
+    /**
+     * Cancels the oldest queued message. The capacity permit of the cancelled message is handed to the caller.
+     * The message is unlinked from the queue right away, which is cheap as the oldest message sits behind control tasks
+     * only, so memory stays flat while the drain is stalled.
+     *
+     * @return true if a message was cancelled, false if there was no queued message to cancel
+     */
+    private boolean cancelOldestMessage()
+    {
+        Envelope envelope;
+
+        while ((envelope = messages.poll()) != null)
+        {
+            if (envelope.state.compareAndSet(Envelope.QUEUED, Envelope.CANCELLED))
+            {
+                envelope.task = null;
+                tasks.remove(envelope);
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+
+    /**
+     * Adds an envelope to the queue and schedules a drain.
+     *
+     * @param envelope the envelope to add
+     */
+    private void enqueue(Envelope envelope)
+    {
+        tasks.add(envelope);
+        schedule();
+    }
+
+
+    /**
+     * Schedules a drain of the queue on the delegate unless one is already scheduled. If the delegate rejects the
+     * drain, the queue is drained on the calling thread instead, so a queued task is never left without a drain,
+     * and a caller blocked on a full mailbox is always released.
+     */
+    private void schedule()
+    {
+        if (scheduled.compareAndSet(false, true))
+        {
+            try
+            {
+                delegate.execute(this::drain);
+            }
+
+            catch (RejectedExecutionException ex)
+            {
+                log.warn("Could not schedule a drain of the mailbox, running it on the calling thread", ex);
+                drain();
+            }
+        }
+    }
+
+
+    /**
+     * Runs queued tasks until the queue is empty, or the batch limit is reached and a new drain is queued.
+     * Messages release their capacity permit as they are taken off the queue, cancelled messages are skipped since
+     * their permit has already been handed on.
+     */
+    private void drain()
+    {
+        try
+        {
+            Envelope envelope;
+            int ran = 0;
+
+            while (ran < MAX_TASKS_PER_DRAIN && (envelope = tasks.poll()) != null)
+            {
+                if (envelope.message)
+                {
+                    if (!envelope.state.compareAndSet(Envelope.QUEUED, Envelope.TAKEN))
+                    {
+                        continue;
+                    }
+
+                    if (overflowPolicy == OverflowPolicy.DROP_OLDEST)
+                    {
+                        messages.remove(envelope);
+                    }
+
+                    capacity.release();
+                }
+
+                ran++;
+
+                try
+                {
+                    envelope.task.run();
+                }
+
+                catch (RuntimeException ex)
+                {
+                    log.error("Task failed", ex);
+                }
+            }
+        }
+
+        finally
+        {
+            scheduled.set(false);
+
+            if (!tasks.isEmpty())
+            {
+                schedule();
+            }
+        }
+    }
+
+
+    /**
+     * A queued task. Messages can be cancelled while they are queued, control tasks can not.
+     */
+    private static class Envelope
+    {
+        private static final int QUEUED = 0;
+        private static final int TAKEN = 1;
+        private static final int CANCELLED = 2;
+
+        private final boolean message;
+        private Runnable task;
+        private final AtomicInteger state = new AtomicInteger(QUEUED);
+
+
+        private Envelope(Runnable task, boolean message)
+        {
+            this.task = task;
+            this.message = message;
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package Agent.Utils;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Generates time-ordered version 7 UUIDs (RFC 9562): a 48-bit Unix timestamp in milliseconds followed by 74 random bits.
+ * <p>
+ * The random bits come from {@link ThreadLocalRandom}, so threads never contend and generating an ID allocates
+ * nothing beyond the {@link MessageId} itself. The IDs are unique but not unpredictable, which is all a message ID needs.
+ */
+public class UuidV7Generator implements MessageIdGenerator
+{
+    private static final long VERSION = 0x7000L;
+    private static final long VARIANT = 0x8000000000000000L;
+
+
+    @Override
+    public MessageId next()
+    {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long timestamp = System.currentTimeMillis() & 0xFFFFFFFFFFFFL;
+        long mostSignificantBits = (timestamp << 16) | VERSION | (random.nextInt() & 0x0FFFL);
+        long leastSignificantBits = VARIANT | (random.nextLong() >>> 2);
+        return new MessageId(mostSignificantBits, leastSignificantBits);
+    }
+}
@@ -20,6 +20,19 @@ public class MMTPValidator
 {
 
     public static void validate(DirectApplicationMessage message) throws MMTPValidationException
+    {
+        validate(message, message.getPayload().size());
+    }
+
+
+    /**
+     * Validates a message whose payload is written separately, given the size of that payload.
+     *
+     * @param message     the message, the payload field of which is ignored
+     * @param payloadSize the size of the payload that will be sent with the message
+     * @throws MMTPValidationException if the message is not valid
+     */
+    public static void validate(DirectApplicationMessage message, int payloadSize) throws MMTPValidationException
     {
         // Validate id
         try
@@ -59,7 +72,7 @@ public class MMTPValidator
         }
 
         // Validate payload
-        if (message.getPayload().size() < 1)
+        if (payloadSize < 1)
         {
             throw new MMTPValidationException("Message payload is empty");
         }
@@ -67,6 +80,19 @@ public class MMTPValidator
 
 
     public static void validate(SubjectCastApplicationMessage message) throws MMTPValidationException
+    {
+        validate(message, message.getPayload().size());
+    }
+
+
+    /**
+     * Validates a message whose payload is written separately, given the size of that payload.
+     *
+     * @param message     the message, the payload field of which is ignored
+     * @param payloadSize the size of the payload that will be sent with the message
+     * @throws MMTPValidationException if the message is not valid
+     */
+    public static void validate(SubjectCastApplicationMessage message, int payloadSize) throws MMTPValidationException
     {
         // Validate id
         try
@@ -103,7 +129,7 @@ public class MMTPValidator
         }
 
         // Validate payload
-        if (message.getPayload().size() < 1)
+        if (payloadSize < 1)
         {
             throw new MMTPValidationException("Message payload is empty");
         }
@@ -0,0 +1,322 @@
+package Agent.Utils;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded worker pool with named daemon threads that keeps track of its queue depth, active threads, task latency
+ * and rejections, see {@link WorkerPoolStatistics}.
+ * <p>
+ * On platform threads the pool is a {@link ThreadPoolExecutor} with a bounded queue, so it grows from the core to
+ * the maximum number of threads once the queue is full and applies its {@link RejectionPolicy} once both are
+ * exhausted. On virtual threads every task gets its own thread and the queue capacity bounds the number of tasks
+ * in flight instead. A task that throws is logged and does not take its thread down.
+ */
+@Slf4j
+public class WorkerPool implements Executor
+{
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 5000;
+
+    private final ExecutorService delegate;
+    private final ThreadPoolExecutor threadPool;
+    private final Semaphore inFlight;
+    private final RejectionPolicy rejectionPolicy;
+    private final AtomicInteger activeThreads = new AtomicInteger();
+    private final LongAdder completedTasks = new LongAdder();
+    private final LongAdder rejectedTasks = new LongAdder();
+    private final LongAdder totalWaitNanos = new LongAdder();
+    private final LongAdder totalRunNanos = new LongAdder();
+    private final LongAccumulator maxWaitNanos = new LongAccumulator(Long::max, 0);
+
+
+    /**
+     * Creates a new worker pool.
+     *
+     * @param configuration the sizing and behaviour of the pool
+     */
+    public WorkerPool(@NonNull WorkerPoolConfiguration configuration)
+    {
+        this.rejectionPolicy = configuration.getRejectionPolicy();
+        ExecutorService virtualThreadExecutor = configuration.isVirtualThreads() ? createVirtualThreadExecutor(configuration.getThreadNamePrefix()) : null;
+
+        if (virtualThreadExecutor != null)
+        {
+            this.delegate = virtualThreadExecutor;
+            this.threadPool = null;
+            this.inFlight = new Semaphore(configuration.getQueueCapacity());
+        }
+
+        else
+        {
+            this.threadPool = new ThreadPoolExecutor(configuration.getCoreThreads(), configuration.getMaxThreads(), configuration.getKeepAlive().toMillis(), TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(configuration.getQueueCapacity()), createThreadFactory(configuration.getThreadNamePrefix()), this::onRejected);
+            this.delegate = threadPool;
+            this.inFlight = null;
+        }
+    }
+
+
+    /**
+     * Submits a task to the pool.
+     *
+     * @param task the task to run
+     * @throws RejectedExecutionException if the pool is saturated and the rejection policy is {@link RejectionPolicy#ABORT},
+     *                                    or the pool has been shut down
+     */
+    @Override
+    public void execute(@NonNull Runnable task)
+    {
+        long submitted = System.nanoTime();
+
+        if (inFlight == null)
+        {
+            delegate.execute(() -> runTask(task, submitted));
+            return;
+        }
+
+        if (!inFlight.tryAcquire() && !onSaturated(task, submitted))
+        {
+            return;
+        }
+
+        try
+        {
+            delegate.execute(() ->
+            {
+                try
+                {
+                    runTask(task, submitted);
+                }
+
+                finally
+                {
+                    inFlight.release();
+                }
+            });
+        }
+
+        catch (RejectedExecutionException ex)
+        {
+            inFlight.release();
+            throw ex;
+        }
+    }
+
+
+    /**
+     * Returns whether the tasks of this pool run on virtual threads.
+     *
+     * @return true if the pool runs on virtual threads
+     */
+    public boolean isVirtual()
+    {
+        return threadPool == null;
+    }
+
+
+    /**
+     * Returns a snapshot of the counters of this pool.
+     *
+     * @return the pool statistics
+     */
+    public WorkerPoolStatistics getStatistics()
+    {
+        int queueDepth = threadPool == null ? 0 : threadPool.getQueue().size();
+        int poolSize = threadPool == null ? activeThreads.get() : threadPool.getPoolSize();
+
+        return new WorkerPoolStatistics(queueDepth, activeThreads.get(), poolSize, completedTasks.sum(), rejectedTasks.sum(),
+                totalWaitNanos.sum(), maxWaitNanos.get(), totalRunNanos.sum());
+    }
+
+
+    /**
+     * Stops accepting tasks and waits a short while for the queued tasks to finish.
+     */
+    public void shutdown()
+    {
+        delegate.shutdown();
+
+        try
+        {
+            if (!delegate.awaitTermination(SHUTDOWN_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS))
+            {
+                log.warn("Worker pool did not terminate within {} ms, interrupting the remaining tasks", SHUTDOWN_TIMEOUT_MILLIS);
+                delegate.shutdownNow();
+            }
+        }
+
+        catch (InterruptedException ex)
+        {
+            delegate.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+
+    /**
+     * Runs a task and records its wait and run time.
+     *
+     * @param task      the task to run
+     * @param submitted the time the task was submitted, from {@link System#nanoTime()}
+     */
+    private void runTask(Runnable task, long submitted)
+    {
+        long started = System.nanoTime();
+        long waited = started - submitted;
+        totalWaitNanos.add(waited);
+        maxWaitNanos.accumulate(waited);
+        activeThreads.incrementAndGet();
+
+        try
+        {
+            task.run();
+        }
+
+        catch (RuntimeException ex)
+        {
+            log.error("Task failed", ex);
+        }
+
+        finally
+        {
+            activeThreads.decrementAndGet();
+            totalRunNanos.add(System.nanoTime() - started);
+            completedTasks.increment();
+        }
+    }
+
+
+    /**
+     * Applies the rejection policy to a task the thread pool has no room for.
+     *
+     * @param task     the rejected task
+     * @param executor the thread pool
+     */
+    private void onRejected(Runnable task, ThreadPoolExecutor executor)
+    {
+        if (executor.isShutdown())
+        {
+            throw new RejectedExecutionException("Worker pool has been shut down");
+        }
+
+        rejectedTasks.increment();
+
+        switch (rejectionPolicy)
+        {
+            case CALLER_RUNS -> task.run();
+
+            case BLOCK ->
+            {
+                try
+                {
+                    executor.getQueue().put(task);
+                }
+
+                catch (InterruptedException ex)
+                {
+                    Thread.currentThread().interrupt();
+                    throw new RejectedExecutionException("Interrupted while waiting for room in the worker pool", ex);
+                }
+            }
+
+            case ABORT -> throw new RejectedExecutionException("Worker pool is saturated");
+        }
+    }
+
+
+    /**
+     * Applies the rejection policy to a task submitted while the maximum number of virtual threads is in flight.
+     *
+     * @param task      the rejected task
+     * @param submitted the time the task was submitted, from {@link System#nanoTime()}
+     * @return true if the caller holds a permit and must submit the task, false if the task has been handled
+     */
+    private boolean onSaturated(Runnable task, long submitted)
+    {
+        if (delegate.isShutdown())
+        {
+            throw new RejectedExecutionException("Worker pool has been shut down");
+        }
+
+        rejectedTasks.increment();
+
+        switch (rejectionPolicy)
+        {
+            case CALLER_RUNS ->
+            {
+                runTask(task, submitted);
+                return false;
+            }
+
+            case BLOCK ->
+            {
+                try
+                {
+                    inFlight.acquire();
+                    return true;
+                }
+
+                catch (InterruptedException ex)
+                {
+                    Thread.currentThread().interrupt();
+                    throw new RejectedExecutionException("Interrupted while waiting for room in the worker pool", ex);
+                }
+            }
+
+            default -> throw new RejectedExecutionException("Worker pool is saturated");
+        }
+    }
+
+
+    /**
+     * Creates a factory for named daemon threads that log uncaught exceptions.
+     *
+     * @param prefix the thread name prefix
+     * @return the thread factory
+     */
+    private static ThreadFactory createThreadFactory(String prefix)
+    {
+        AtomicInteger counter = new AtomicInteger();
+
+        return runnable ->
+        {
+            Thread thread = new Thread(runnable, prefix + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setUncaughtExceptionHandler((t, ex) -> log.error("Uncaught exception in thread {}", t.getName(), ex));
+            return thread;
+        };
+    }
+
+
+    /**
+     * Creates an executor that starts a named virtual thread per task. Looked up reflectively, so the agent still
+     * runs on runtimes without virtual threads.
+     *
+     * @param prefix the thread name prefix
+     * @return the executor, or null if the runtime does not support virtual threads
+     */
+    private static ExecutorService createVirtualThreadExecutor(String prefix)
+    {
+        try
+        {
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, prefix + "-", 1L);
+            ThreadFactory factory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+            Method newExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+            return (ExecutorService) newExecutor.invoke(null, factory);
+        }
+
+        catch (ReflectiveOperationException ex)
+        {
+            log.warn("Virtual threads are not supported by this runtime, falling back to platform threads");
+            return null;
+        }
+    }
+}
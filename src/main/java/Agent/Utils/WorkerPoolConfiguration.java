@@ -0,0 +1,130 @@
+package Agent.Utils;
+
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.time.Duration;
+
+/**
+ * Sizing and behaviour of a {@link WorkerPool}. A new instance holds the defaults, which are derived from the
+ * number of available processors.
+ */
+@Getter
+public class WorkerPoolConfiguration
+{
+    private int coreThreads = Math.max(2, Runtime.getRuntime().availableProcessors());
+    private int maxThreads = Math.max(2, Runtime.getRuntime().availableProcessors() * 2);
+    private int queueCapacity = 4096;
+    private Duration keepAlive = Duration.ofSeconds(60);
+    private RejectionPolicy rejectionPolicy = RejectionPolicy.CALLER_RUNS;
+    private boolean virtualThreads = false;
+    private String threadNamePrefix = "mms-agent-worker";
+
+
+    /**
+     * Sets the number of threads kept alive when the pool is idle.
+     *
+     * @param coreThreads the number of core threads, at least 1
+     * @return this configuration
+     */
+    public WorkerPoolConfiguration setCoreThreads(int coreThreads)
+    {
+        if (coreThreads < 1)
+        {
+            throw new IllegalArgumentException("Core threads must be at least 1");
+        }
+
+        this.coreThreads = coreThreads;
+        this.maxThreads = Math.max(maxThreads, coreThreads);
+        return this;
+    }
+
+
+    /**
+     * Sets the maximum number of threads. Threads beyond the core threads are only started once the queue is full.
+     *
+     * @param maxThreads the maximum number of threads, at least the number of core threads
+     * @return this configuration
+     */
+    public WorkerPoolConfiguration setMaxThreads(int maxThreads)
+    {
+        if (maxThreads < coreThreads)
+        {
+            throw new IllegalArgumentException("Max threads must be at least the number of core threads");
+        }
+
+        this.maxThreads = maxThreads;
+        return this;
+    }
+
+
+    /**
+     * Sets the number of tasks that can wait for a thread. With virtual threads this bounds the number of tasks in flight.
+     *
+     * @param queueCapacity the queue capacity, at least 1
+     * @return this configuration
+     */
+    public WorkerPoolConfiguration setQueueCapacity(int queueCapacity)
+    {
+        if (queueCapacity < 1)
+        {
+            throw new IllegalArgumentException("Queue capacity must be at least 1");
+        }
+
+        this.queueCapacity = queueCapacity;
+        return this;
+    }
+
+
+    /**
+     * Sets how long a thread beyond the core threads may stay idle before it is stopped.
+     *
+     * @param keepAlive the keep alive time
+     * @return this configuration
+     */
+    public WorkerPoolConfiguration setKeepAlive(@NonNull Duration keepAlive)
+    {
+        this.keepAlive = keepAlive;
+        return this;
+    }
+
+
+    /**
+     * Sets what happens to a task submitted to a saturated pool, see {@link RejectionPolicy}.
+     *
+     * @param rejectionPolicy the rejection policy
+     * @return this configuration
+     */
+    public WorkerPoolConfiguration setRejectionPolicy(@NonNull RejectionPolicy rejectionPolicy)
+    {
+        this.rejectionPolicy = rejectionPolicy;
+        return this;
+    }
+
+
+    /**
+     * Sets whether tasks run on virtual threads. Virtual threads need JDK 21 or newer, on older runtimes the pool
+     * falls back to platform threads.
+     *
+     * @param virtualThreads true to run tasks on virtual threads
+     * @return this configuration
+     */
+    public WorkerPoolConfiguration setVirtualThreads(boolean virtualThreads)
+    {
+        this.virtualThreads = virtualThreads;
+        return this;
+    }
+
+
+    /**
+     * Sets the prefix of the names of the pool threads, the threads are named prefix-N.
+     *
+     * @param threadNamePrefix the thread name prefix
+     * @return this configuration
+     */
+    public WorkerPoolConfiguration setThreadNamePrefix(@NonNull String threadNamePrefix)
+    {
+        this.threadNamePrefix = threadNamePrefix;
+        return this;
+    }
+}
@@ -0,0 +1,75 @@
+package Agent.Utils;
+
+import lombok.Getter;
+
+/**
+ * An immutable snapshot of the counters of a {@link WorkerPool}.
+ * The wait time of a task is the time from submission until a thread starts running it.
+ */
+@Getter
+public class WorkerPoolStatistics
+{
+    private final int queueDepth;
+    private final int activeThreads;
+    private final int poolSize;
+    private final long completedTasks;
+    private final long rejectedTasks;
+    private final long totalWaitNanos;
+    private final long maxWaitNanos;
+    private final long totalRunNanos;
+
+
+    /**
+     * Constructs a new {@link WorkerPoolStatistics}.
+     *
+     * @param queueDepth     the number of tasks waiting for a thread
+     * @param activeThreads  the number of threads running a task
+     * @param poolSize       the number of threads in the pool
+     * @param completedTasks the number of tasks that have finished
+     * @param rejectedTasks  the number of tasks the pool was saturated for
+     * @param totalWaitNanos the summed wait time of the completed tasks
+     * @param maxWaitNanos   the longest wait time of a task
+     * @param totalRunNanos  the summed run time of the completed tasks
+     */
+    public WorkerPoolStatistics(int queueDepth, int activeThreads, int poolSize, long completedTasks, long rejectedTasks, long totalWaitNanos, long maxWaitNanos, long totalRunNanos)
+    {
+        this.queueDepth = queueDepth;
+        this.activeThreads = activeThreads;
+        this.poolSize = poolSize;
+        this.completedTasks = completedTasks;
+        this.rejectedTasks = rejectedTasks;
+        this.totalWaitNanos = totalWaitNanos;
+        this.maxWaitNanos = maxWaitNanos;
+        this.totalRunNanos = totalRunNanos;
+    }
+
+
+    /**
+     * Returns the mean time a completed task waited for a thread.
+     *
+     * @return the mean wait time in nanoseconds, or 0 if no task has completed
+     */
+    public long getMeanWaitNanos()
+    {
+        return completedTasks == 0 ? 0 : totalWaitNanos / completedTasks;
+    }
+
+
+    /**
+     * Returns the mean time a completed task ran for.
+     *
+     * @return the mean run time in nanoseconds, or 0 if no task has completed
+     */
+    public long getMeanRunNanos()
+    {
+        return completedTasks == 0 ? 0 : totalRunNanos / completedTasks;
+    }
+
+
+    @Override
+    public String toString()
+    {
+        return "WorkerPoolStatistics{queueDepth=" + queueDepth + ", activeThreads=" + activeThreads + ", poolSize=" + poolSize + ", completedTasks=" + completedTasks
+                + ", rejectedTasks=" + rejectedTasks + ", meanWaitNanos=" + getMeanWaitNanos() + ", maxWaitNanos=" + maxWaitNanos + ", meanRunNanos=" + getMeanRunNanos() + "}";
+    }
+}
@@ -2,6 +2,7 @@ package Agent.WebSocket;
 
 
 import Agent.Agent.AgentAdapter;
+import Agent.Agent.AgentConfiguration;
 import Agent.Agent.AnonymousAdapter;
 import Agent.Agent.AuthenticatedAdapter;
 import Agent.Connections.AnonymousConnection;
@@ -10,12 +11,16 @@ import Agent.Connections.IAnonymousConnection;
 import Agent.Connections.IAuthenticatedConnection;
 import Agent.Connections.IConnection;
 import Agent.Exceptions.MMSSecurityException;
+import Agent.MessageSending.EnvelopeWriter;
 import Agent.MessageSending.MMTPMessageSender;
+import Agent.MessageSending.SessionWriter;
+import Agent.Outbox.Outbox;
 import Agent.ServiceDiscovery.RouterInfo;
 import Agent.Subscriptions.DmSubscriptionHandler;
 import Agent.Subscriptions.SubjectSubscriptionHandler;
 import Agent.TLSConfiguration.TLSConfiguration;
 import Agent.TLSConfiguration.mTLSConfiguration;
+import Agent.Utils.BufferPool;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
 import net.maritimeconnectivity.pki.CertificateHandler;
@@ -45,14 +50,25 @@ import java.util.concurrent.*;
 public class WebSocketConnectionManager implements IWebSocketConnectionManager, DisconnectionHook
 {
     private final Map<Session, IConnection> connectionMap = new ConcurrentHashMap<>();
+    private final Map<String, Outbox> outboxes = new ConcurrentHashMap<>();
     private final Executor executor;
+    private final AgentConfiguration configuration;
+    private final EnvelopeWriter envelopeWriter;
     private final InetSocketAddress address;
 
 
     public WebSocketConnectionManager(@NonNull InetAddress address, @NonNull Executor executor)
+    {
+        this(address, executor, new AgentConfiguration());
+    }
+
+
+    public WebSocketConnectionManager(@NonNull InetAddress address, @NonNull Executor executor, @NonNull AgentConfiguration configuration)
     {
         this.address = new InetSocketAddress(address, 0);
         this.executor = executor;
+        this.configuration = configuration;
+        this.envelopeWriter = new EnvelopeWriter(new BufferPool(configuration.isDirectBuffers(), configuration.getPooledBuffersPerSize()));
     }
 
 
@@ -69,7 +85,8 @@ public class WebSocketConnectionManager implements IWebSocketConnectionManager,
 
     private AnonymousConnection createAnonymousConnection(Session session, AnonymousAdapter listener)
     {
-        AnonymousConnection connection = new AnonymousConnection(session, this, new SubjectSubscriptionHandler(session, executor));
+        SessionWriter writer = createSessionWriter(session);
+        AnonymousConnection connection = new AnonymousConnection(writer, this, new SubjectSubscriptionHandler(writer, executor));
         connectionMap.put(session, connection);
         listener.onConnect(connection);
         return connection;
@@ -154,14 +171,62 @@ public class WebSocketConnectionManager implements IWebSocketConnectionManager,
 
     private AuthenticatedConnection createAuthenticatedConnection(Session session, PKIIdentity identity, AuthenticatedAdapter listener)
     {
-        AuthenticatedConnection connection = new AuthenticatedConnection(session, this, new DmSubscriptionHandler(session, executor),
-                new MMTPMessageSender(session, identity.getMrn(), executor));
+        SessionWriter writer = createSessionWriter(session);
+        Outbox outbox = getOutbox(identity.getMrn());
+        AuthenticatedConnection connection = new AuthenticatedConnection(writer, this, new DmSubscriptionHandler(writer, executor),
+                new MMTPMessageSender(writer, envelopeWriter, identity.getMrn(), outbox));
         connectionMap.put(session, connection);
+
+        if (outbox != null)
+        {
+            outbox.attach(writer);
+        }
+
         listener.onConnect(connection);
         return connection;
     }
 
 
+    private SessionWriter createSessionWriter(Session session)
+    {
+        if (configuration.isCoalesceWrites())
+        {
+            return new SessionWriter(session, configuration.getMaxOutstandingBytes(), configuration.getMaxOutstandingMessages(), configuration.getFlushPolicy(), executor);
+        }
+
+        return new SessionWriter(session, configuration.getMaxOutstandingBytes(), configuration.getMaxOutstandingMessages());
+    }
+
+
+    /**
+     * Gets the outbox of an MRN, opening it on first use.
+     *
+     * @param maritimeResourceName the MRN
+     * @return the outbox, or null if outboxes are disabled or it could not be opened
+     */
+    private Outbox getOutbox(String maritimeResourceName)
+    {
+        if (configuration.getOutboxDirectory() == null)
+        {
+            return null;
+        }
+
+        return outboxes.computeIfAbsent(maritimeResourceName, mrn ->
+        {
+            try
+            {
+                return new Outbox(mrn, Outbox.directoryFor(configuration.getOutboxDirectory(), mrn), configuration.getOutboxSegmentSize(),
+                        configuration.getOutboxMaxBytes(), executor);
+            }
+            catch (IOException | IllegalArgumentException ex)
+            {
+                log.error("Failed to open the outbox of {}, sending without it.", mrn, ex);
+                return null;
+            }
+        });
+    }
+
+
     private CompletableFuture<Session> connectInternal(@NonNull RouterInfo routerInfo, @NonNull SslContextFactory tlsContextFactory, @NonNull AgentAdapter listener)
     {
         IConnectionListener connectionListener = (IConnectionListener) listener;
@@ -201,7 +266,7 @@ public class WebSocketConnectionManager implements IWebSocketConnectionManager,
             ClientUpgradeRequest request = new ClientUpgradeRequest();
             request.setHeader("Sec-WebSocket-Protocol", "MMTP/1.0");
 
-            WebSocketHandler wsAdapter = new WebSocketHandler(listener, this, executor);
+            WebSocketHandler wsAdapter = new WebSocketHandler(listener, this, executor, configuration);
             Future<Session> future = client.connect(wsAdapter, uri, request);
             return future.get(5, TimeUnit.SECONDS);
         }
@@ -230,6 +295,8 @@ public class WebSocketConnectionManager implements IWebSocketConnectionManager,
         {
             connection.disconnect();
         }
+
+        closeOutboxes();
     }
 
 
@@ -240,6 +307,29 @@ public class WebSocketConnectionManager implements IWebSocketConnectionManager,
         {
             connection.disconnect(statusCode, reason);
         }
+
+        closeOutboxes();
+    }
+
+
+    /**
+     * Closes the outboxes, forcing their stored messages to disk.
+     */
+    private void closeOutboxes()
+    {
+        for (Outbox outbox : outboxes.values())
+        {
+            try
+            {
+                outbox.close();
+            }
+            catch (IOException ex)
+            {
+                log.error("Error occurred while closing the outbox of {}.", outbox.getMaritimeResourceName(), ex);
+            }
+        }
+
+        outboxes.clear();
     }
 
 
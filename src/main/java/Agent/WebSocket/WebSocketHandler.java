@@ -2,9 +2,11 @@ package Agent.WebSocket;
 
 import Agent.Agent.AgentAdapter;
 
+import Agent.Agent.AgentConfiguration;
 import Agent.Exceptions.ConnectException;
 import Agent.MessageHandler.*;
 
+import Agent.Utils.SessionMailbox;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
 
@@ -12,7 +14,16 @@ import org.eclipse.jetty.websocket.api.Session;
 import org.eclipse.jetty.websocket.api.StatusCode;
 import org.eclipse.jetty.websocket.api.WebSocketAdapter;
 import java.util.concurrent.Executor;
-
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Receives the WebSocket events of a single connection and dispatches them, once, according to the configured
+ * {@link DispatchMode}. Binary frames are handed to the {@link MessageHandler} on the dispatching thread.
+ * <p>
+ * In {@link DispatchMode#SESSION_SERIAL} the events go through a bounded {@link SessionMailbox}. Only binary frames
+ * count against its capacity and are subject to the configured {@link OverflowPolicy}, lifecycle events are always
+ * delivered.
+ */
 @Slf4j
 public class WebSocketHandler extends WebSocketAdapter
 {
@@ -20,15 +31,25 @@ public class WebSocketHandler extends WebSocketAdapter
     private final DisconnectionHook disconnectionHook;
     private final MessageHandler messageHandler;
     private final Executor executor;
+    private final SessionMailbox mailbox;
+    private final AtomicBoolean overflowed = new AtomicBoolean(false);
     private Session session;
     private String ipAddress;
 
-    public WebSocketHandler(@NonNull AgentAdapter listener, @NonNull DisconnectionHook disconnectionHook, @NonNull Executor executor)
+    public WebSocketHandler(@NonNull AgentAdapter listener, @NonNull DisconnectionHook disconnectionHook, @NonNull Executor workerPool, @NonNull AgentConfiguration configuration)
     {
         this.connectionListener = (IConnectionListener) listener;
         this.disconnectionHook = disconnectionHook;
-        this.messageHandler = MessageHandlerFactory.createMessageHandler((SubjectMessageListener) listener, executor);
-        this.executor = executor;
+        this.messageHandler = MessageHandlerFactory.createMessageHandler((SubjectMessageListener) listener);
+        this.mailbox = configuration.getDispatchMode() == DispatchMode.SESSION_SERIAL
+                ? new SessionMailbox(workerPool, configuration.getMailboxCapacity(), configuration.getOverflowPolicy(), this::onMailboxOverflow)
+                : null;
+        this.executor = switch (configuration.getDispatchMode())
+        {
+            case INLINE -> Runnable::run;
+            case WORKER_POOL -> workerPool;
+            case SESSION_SERIAL -> mailbox;
+        };
     }
 
 
@@ -44,7 +65,17 @@ public class WebSocketHandler extends WebSocketAdapter
     public void onWebSocketBinary(byte[] payload, int offset, int len)
     {
         super.onWebSocketBinary(payload, offset, len);
-        executor.execute(() -> handleMessage(payload, offset, len));
+        Runnable task = () -> handleMessage(payload, offset, len);
+
+        if (mailbox == null)
+        {
+            executor.execute(task);
+        }
+
+        else if (!mailbox.offer(task))
+        {
+            log.debug("Dropped binary WebSocket message with length {}, the session mailbox is full", len);
+        }
     }
 
 
@@ -72,6 +103,27 @@ public class WebSocketHandler extends WebSocketAdapter
     }
 
 
+    /**
+     * Returns the number of binary messages dropped because the session mailbox was full.
+     *
+     * @return the number of dropped messages, always 0 unless dispatching in {@link DispatchMode#SESSION_SERIAL}
+     */
+    public long getDroppedMessages()
+    {
+        return mailbox == null ? 0 : mailbox.getDroppedMessages();
+    }
+
+
+    private void onMailboxOverflow()
+    {
+        if (overflowed.compareAndSet(false, true))
+        {
+            log.warn("Session mailbox overflowed, closing the connection to IP address {}", getIPAddress());
+            super.getSession().close(StatusCode.POLICY_VIOLATION, "Inbound mailbox overflow");
+        }
+    }
+
+
     private void handleWebSocketConnect(Session session)
     {
         super.onWebSocketConnect(session);
@@ -1,9 +1,17 @@
 package SMMPClient.Acks.AckEntry;
 
+import Agent.Utils.HashedWheelTimer;
 import lombok.NonNull;
 
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 
 /**
@@ -18,6 +26,14 @@ public abstract class AckEntry<T>
     protected final byte[] message;
     protected final Instant expires;
     protected final T handler;
+    private final long sentNanos = System.nanoTime();
+    private volatile int retransmissions;
+    private volatile int retransmitDelay;
+    private volatile long retransmitAt;
+    private volatile HashedWheelTimer.Timeout retransmitTimeout;
+    private Map<String, CompletableFuture<Void>> held;
+    private Set<String> sentLate;
+    private boolean closed;
 
 
     /**
@@ -70,6 +86,198 @@ public abstract class AckEntry<T>
     }
 
 
+    /**
+     * Gets the {@link System#nanoTime()} at which this entry was created, once its message had been sent.
+     *
+     * @return the time the message was sent
+     */
+    public final long getSentNanos()
+    {
+        return sentNanos;
+    }
+
+
+    /**
+     * Gets the number of times the message of this entry has been retransmitted.
+     *
+     * @return the number of retransmissions
+     */
+    public final int getRetransmissions()
+    {
+        return retransmissions;
+    }
+
+
+    /**
+     * Records that the message of this entry has been retransmitted, after which its acks no longer tell the round trip time.
+     */
+    public final synchronized void markRetransmitted()
+    {
+        retransmissions++;
+    }
+
+
+    /**
+     * Gets the delay in milliseconds that the next retransmission of this entry backs off with.
+     *
+     * @return the retransmission delay in milliseconds
+     */
+    public final int getRetransmitDelay()
+    {
+        return retransmitDelay;
+    }
+
+
+    /**
+     * Gets the time at which this entry is next checked for retransmission.
+     *
+     * @return the time of the next check in epoch milliseconds
+     */
+    public final long getRetransmitAt()
+    {
+        return retransmitAt;
+    }
+
+
+    /**
+     * Records when this entry is next checked for retransmission, so the schedule can be restored from a journal.
+     *
+     * @param retransmitDelay the delay in milliseconds that the next retransmission backs off with
+     * @param retransmitAt    the time of the next check in epoch milliseconds
+     */
+    public final void scheduleRetransmit(int retransmitDelay, long retransmitAt)
+    {
+        this.retransmitDelay = retransmitDelay;
+        this.retransmitAt = retransmitAt;
+    }
+
+
+    /**
+     * Sets the timer of the next check for retransmission, so it can be cancelled once the entry is done.
+     *
+     * @param retransmitTimeout the timer of the next check
+     */
+    public final void setRetransmitTimeout(HashedWheelTimer.Timeout retransmitTimeout)
+    {
+        this.retransmitTimeout = retransmitTimeout;
+    }
+
+
+    /**
+     * Cancels the timer of the next check for retransmission, if any.
+     */
+    public final void cancelRetransmit()
+    {
+        HashedWheelTimer.Timeout timeout = retransmitTimeout;
+
+        if (timeout != null)
+        {
+            timeout.cancel();
+        }
+    }
+
+
+    /**
+     * Records that the message of this entry is held for a destination until it fits the in-flight window of the
+     * destination, see {@link SMMPClient.Acks.FlowController}. A held destination is not retransmitted to, and holds
+     * no room until it is admitted.
+     *
+     * @param destination the destination the message is held for
+     * @param window      the future that completes once the message fits the window of the destination
+     * @return true if the destination is now held, false if this entry is already closed
+     */
+    public final synchronized boolean hold(@NonNull String destination, @NonNull CompletableFuture<Void> window)
+    {
+        if (closed)
+        {
+            return false;
+        }
+
+        if (held == null)
+        {
+            held = new LinkedHashMap<>();
+        }
+
+        held.put(destination, window);
+        return true;
+    }
+
+
+    /**
+     * Records that the message of this entry is about to be sent to a destination it was held for.
+     *
+     * @param destination the destination
+     * @return true if the message was held for the destination and this entry is not closed, false otherwise
+     */
+    public final synchronized boolean admit(@NonNull String destination)
+    {
+        if (closed || held == null || held.remove(destination) == null)
+        {
+            return false;
+        }
+
+        if (sentLate == null)
+        {
+            sentLate = new HashSet<>();
+        }
+
+        sentLate.add(destination);
+        return true;
+    }
+
+
+    /**
+     * Checks if the message of this entry is still held for a destination, and so has not been sent to it.
+     *
+     * @param destination the destination
+     * @return true if the message is held for the destination
+     */
+    public final synchronized boolean isHeld(@NonNull String destination)
+    {
+        return held != null && held.containsKey(destination);
+    }
+
+
+    /**
+     * Checks if the message of this entry was sent to a destination only after it had been held for it,
+     * in which case its ack does not tell the round trip time.
+     *
+     * @param destination the destination
+     * @return true if the message was sent to the destination late
+     */
+    public final synchronized boolean wasSentLate(@NonNull String destination)
+    {
+        return sentLate != null && sentLate.contains(destination);
+    }
+
+
+    /**
+     * Closes this entry once it is no longer tracked, and gives up on the destinations the message is still held for.
+     * The destinations it was held for when it was closed stay held, as the message was never sent to them.
+     *
+     * @return the destinations the message was sent to after being held for them
+     */
+    public final List<String> close()
+    {
+        List<CompletableFuture<Void>> windows;
+        List<String> late;
+
+        synchronized (this)
+        {
+            closed = true;
+            windows = held == null ? Collections.emptyList() : new ArrayList<>(held.values());
+            late = sentLate == null ? Collections.emptyList() : new ArrayList<>(sentLate);
+        }
+
+        for (CompletableFuture<Void> window : windows)
+        {
+            window.cancel(false);
+        }
+
+        return late;
+    }
+
+
     /**
      * Acknowledges this entry.
      *
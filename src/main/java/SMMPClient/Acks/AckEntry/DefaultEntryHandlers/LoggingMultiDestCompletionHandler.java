@@ -0,0 +1,62 @@
+package SMMPClient.Acks.AckEntry.DefaultEntryHandlers;
+
+import SMMPClient.Acks.Handlers.MultiDeliveryCompletionHandler;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.List;
+
+/**
+ * Implementation of {@link MultiDeliveryCompletionHandler} that logs the delivery results.
+ * Used for messages restored from the ack journal when no other handler is configured.
+ */
+@Slf4j
+public class LoggingMultiDestCompletionHandler implements MultiDeliveryCompletionHandler
+{
+    /**
+     * Logs that a destination acknowledged a restored message.
+     *
+     * @param destination The destination that acknowledged the message
+     */
+    @Override
+    public void onAck(String destination)
+    {
+        log.debug("Restored message acknowledged by {}", destination);
+    }
+
+
+    /**
+     * Logs that a restored message was acknowledged by all destinations.
+     *
+     * @param destinations The list of destinations that acknowledged the message
+     */
+    @Override
+    public void onFullyAcked(List<String> destinations)
+    {
+        log.info("Restored message acknowledged by all destinations {}", destinations);
+    }
+
+
+    /**
+     * Logs that a restored message timed out.
+     *
+     * @param unacknowledged The list of destinations that did not acknowledge the message
+     * @param acknowledged   The list of destinations that acknowledged the message
+     */
+    @Override
+    public void onTimeout(List<String> unacknowledged, List<String> acknowledged)
+    {
+        log.warn("Restored message timed out, not acknowledged by {}", unacknowledged);
+    }
+
+
+    /**
+     * Logs that a restored message could not be sent.
+     *
+     * @param t The throwable representing the failure
+     */
+    @Override
+    public void onFailure(Throwable t)
+    {
+        log.warn("Restored message could not be sent", t);
+    }
+}
@@ -0,0 +1,87 @@
+package SMMPClient.Acks.AckEntry;
+
+import lombok.NonNull;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable set of destinations that assigns each destination a slot, so that entries of messages to the same
+ * destinations can share the set and track their acks as a bitset over the slots, see {@link MultiDestAckEntry}.
+ */
+public final class DestinationSet
+{
+    private final List<String> destinations;
+    private final Map<String, Integer> slots;
+
+
+    /**
+     * Constructs a new {@link DestinationSet}. Duplicate destinations are given a single slot.
+     *
+     * @param destinations the destinations, in slot order
+     */
+    public DestinationSet(@NonNull List<String> destinations)
+    {
+        List<String> distinct = new ArrayList<>(destinations.size());
+        this.slots = new HashMap<>(destinations.size() * 4 / 3 + 1);
+
+        for (String destination : destinations)
+        {
+            if (slots.putIfAbsent(destination, slots.size()) == null)
+            {
+                distinct.add(destination);
+            }
+        }
+
+        this.destinations = List.copyOf(distinct);
+    }
+
+
+    /**
+     * Gets the slot of a destination.
+     *
+     * @param destination the destination
+     * @return the slot of the destination, or -1 if it is not in this set
+     */
+    public int slotOf(String destination)
+    {
+        Integer slot = slots.get(destination);
+        return slot == null ? -1 : slot;
+    }
+
+
+    /**
+     * Gets the destination of a slot.
+     *
+     * @param slot the slot
+     * @return the destination of the slot
+     */
+    public String get(int slot)
+    {
+        return destinations.get(slot);
+    }
+
+
+    /**
+     * Gets the number of destinations in this set.
+     *
+     * @return the number of destinations
+     */
+    public int size()
+    {
+        return destinations.size();
+    }
+
+
+    /**
+     * Gets the destinations of this set in slot order.
+     *
+     * @return an unmodifiable list of the destinations
+     */
+    public List<String> asList()
+    {
+        return destinations;
+    }
+}
@@ -4,18 +4,29 @@ import SMMPClient.Acks.Handlers.MultiDeliveryCompletionHandler;
 import lombok.NonNull;
 
 import java.time.Instant;
-import java.util.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 
 /**
  * Represents a message to multiple destinations.
  * Extends the {@link AckEntry<MultiDeliveryCompletionHandler>}.
  * Tracks the progress of acks for each destination.
+ * <p>
+ * The destinations are a {@link DestinationSet} that entries of messages to the same destinations share, and the acks
+ * are a bitset over its slots, so an entry costs about one bit per destination on top of its message. Acknowledging is
+ * a lookup and a compare-and-set without locking, and the unacknowledged destinations are found by scanning the bitset
+ * a word at a time. The handler may be called for acks of different destinations concurrently.
  */
 public class MultiDestAckEntry extends AckEntry<MultiDeliveryCompletionHandler>
 {
-    private final List<String> destinations;
-    private final Set<String> acknowledgedDestinations = new HashSet<>();
+    private static final AtomicIntegerFieldUpdater<MultiDestAckEntry> ACKNOWLEDGED_COUNT = AtomicIntegerFieldUpdater.newUpdater(MultiDestAckEntry.class, "acknowledgedCount");
+
+    private final DestinationSet destinations;
+    private final AtomicLongArray acknowledged;
+    private volatile int acknowledgedCount;
 
 
     /**
@@ -28,9 +39,67 @@ public class MultiDestAckEntry extends AckEntry<MultiDeliveryCompletionHandler>
      * @param handler      the multi delivery completion handler that should be used as a callback
      */
     public MultiDestAckEntry(@NonNull String messageId, @NonNull List<String> destinations, @NonNull byte[] message, Instant expires, @NonNull MultiDeliveryCompletionHandler handler)
+    {
+        this(messageId, new DestinationSet(destinations), message, expires, handler);
+    }
+
+
+    /**
+     * Constructs a new {@link MultiDestAckEntry} instance with a shared set of destinations.
+     *
+     * @param messageId    the message id that this entry tracks
+     * @param destinations the destinations that this message is sent to
+     * @param message      the message to resend in case of missing acks
+     * @param expires      the expiry of the message
+     * @param handler      the multi delivery completion handler that should be used as a callback
+     */
+    public MultiDestAckEntry(@NonNull String messageId, @NonNull DestinationSet destinations, @NonNull byte[] message, Instant expires, @NonNull MultiDeliveryCompletionHandler handler)
     {
         super(messageId, message, expires, handler);
         this.destinations = destinations;
+        this.acknowledged = new AtomicLongArray((destinations.size() + 63) >>> 6);
+    }
+
+
+    /**
+     * Constructs a new {@link MultiDestAckEntry} instance for a message restored from a journal,
+     * that some destinations have already acknowledged.
+     *
+     * @param messageId                the message id that this entry tracks
+     * @param destinations             the destinations that this message is sent to
+     * @param acknowledgedDestinations the destinations that have already acknowledged this message
+     * @param message                  the message to resend in case of missing acks
+     * @param expires                  the expiry of the message
+     * @param handler                  the multi delivery completion handler that should be used as a callback
+     */
+    public MultiDestAckEntry(@NonNull String messageId, @NonNull List<String> destinations, @NonNull List<String> acknowledgedDestinations, @NonNull byte[] message, Instant expires, @NonNull MultiDeliveryCompletionHandler handler)
+    {
+        this(messageId, new DestinationSet(destinations), acknowledgedDestinations, message, expires, handler);
+    }
+
+
+    /**
+     * Constructs a new {@link MultiDestAckEntry} instance with a shared set of destinations for a message restored
+     * from a journal, that some destinations have already acknowledged.
+     *
+     * @param messageId                the message id that this entry tracks
+     * @param destinations             the destinations that this message is sent to
+     * @param acknowledgedDestinations the destinations that have already acknowledged this message
+     * @param message                  the message to resend in case of missing acks
+     * @param expires                  the expiry of the message
+     * @param handler                  the multi delivery completion handler that should be used as a callback
+     */
+    public MultiDestAckEntry(@NonNull String messageId, @NonNull DestinationSet destinations, @NonNull List<String> acknowledgedDestinations, @NonNull byte[] message, Instant expires, @NonNull MultiDeliveryCompletionHandler handler)
+    {
+        this(messageId, destinations, message, expires, handler);
+
+        for (String destination : acknowledgedDestinations)
+        {
+            if (mark(destinations.slotOf(destination)))
+            {
+                acknowledgedCount++;
+            }
+        }
     }
 
 
@@ -39,24 +108,24 @@ public class MultiDestAckEntry extends AckEntry<MultiDeliveryCompletionHandler>
      * Inform the callback of the ack, if fully acknowledged, inform the callback of fully acked status.
      *
      * @param destination The sender that has acknowledged this entry
-     * @return true if the ack status changed, false otherwise
+     * @return true if the ack status changed, false if the destination is not a destination of this message or had already acknowledged it
      */
     @Override
-    public synchronized boolean acknowledge(String destination)
+    public boolean acknowledge(String destination)
     {
-        if (destinations.contains(destination))
+        if (!mark(destinations.slotOf(destination)))
         {
-            acknowledgedDestinations.add(destination);
-            handler.onAck(destination);
-            if (acknowledgedDestinations.size() == destinations.size())
-            {
-                handler.onFullyAcked(destinations);
-            }
+            return false;
+        }
 
-            return true;
+        handler.onAck(destination);
+
+        if (ACKNOWLEDGED_COUNT.incrementAndGet(this) == destinations.size())
+        {
+            handler.onFullyAcked(destinations.asList());
         }
 
-        return false;
+        return true;
     }
 
 
@@ -66,9 +135,9 @@ public class MultiDestAckEntry extends AckEntry<MultiDeliveryCompletionHandler>
      * @return true if all destinations has acked the entry, false otherwise
      */
     @Override
-    public synchronized boolean isFullyAcknowledged()
+    public boolean isFullyAcknowledged()
     {
-        return acknowledgedDestinations.size() == destinations.size();
+        return acknowledgedCount == destinations.size();
     }
 
 
@@ -78,22 +147,21 @@ public class MultiDestAckEntry extends AckEntry<MultiDeliveryCompletionHandler>
      * @return a list of all destinations that has not acknowledged this entry.
      */
     @Override
-    public synchronized List<String> getUnacknowledgedDestinations()
+    public List<String> getUnacknowledgedDestinations()
     {
-        List<String> unacknowledgedDestinations = new ArrayList<>(destinations);
-        unacknowledgedDestinations.removeAll(acknowledgedDestinations);
-        return unacknowledgedDestinations;
+        return collect(false);
     }
 
+
     /**
      * Gets all the destinations that have acknowledged this entry.
      *
      * @return a list of all destinations that have acknowledged this entry.
      */
     @Override
-    public synchronized List<String> getAcknowledgedDestinations()
+    public List<String> getAcknowledgedDestinations()
     {
-        return new ArrayList<>(acknowledgedDestinations);
+        return collect(true);
     }
 
 
@@ -102,7 +170,7 @@ public class MultiDestAckEntry extends AckEntry<MultiDeliveryCompletionHandler>
      * The callback is supplied a list of destinations that acknowledged and destinations that did not.
      */
     @Override
-    public synchronized void timeout()
+    public void timeout()
     {
         handler.onTimeout(getUnacknowledgedDestinations(), getAcknowledgedDestinations());
     }
@@ -117,4 +185,68 @@ public class MultiDestAckEntry extends AckEntry<MultiDeliveryCompletionHandler>
     {
         return handler;
     }
+
+
+    /**
+     * Sets the bit of a slot.
+     *
+     * @param slot the slot, or -1 for a destination that is not in the set
+     * @return true if the bit was set by this call, false if it was set already or the slot is -1
+     */
+    private boolean mark(int slot)
+    {
+        if (slot < 0)
+        {
+            return false;
+        }
+
+        int word = slot >>> 6;
+        long bit = 1L << (slot & 63);
+
+        while (true)
+        {
+            long current = acknowledged.get(word);
+
+            if ((current & bit) != 0)
+            {
+                return false;
+            }
+
+            if (acknowledged.compareAndSet(word, current, current | bit))
+            {
+                return true;
+            }
+        }
+    }
+
+
+    /**
+     * Collects the destinations whose bits are set, or clear.
+     *
+     * @param set whether to collect the destinations whose bits are set
+     * @return the destinations in slot order
+     */
+    private List<String> collect(boolean set)
+    {
+        int count = acknowledgedCount;
+        List<String> collected = new ArrayList<>(set ? count : destinations.size() - count);
+
+        for (int word = 0; word < acknowledged.length(); word++)
+        {
+            long bits = set ? acknowledged.get(word) : ~acknowledged.get(word);
+
+            if (word == acknowledged.length() - 1 && (destinations.size() & 63) != 0)
+            {
+                bits &= (1L << (destinations.size() & 63)) - 1;
+            }
+
+            while (bits != 0)
+            {
+                collected.add(destinations.get((word << 6) + Long.numberOfTrailingZeros(bits)));
+                bits &= bits - 1;
+            }
+        }
+
+        return collected;
+    }
 }
\ No newline at end of file
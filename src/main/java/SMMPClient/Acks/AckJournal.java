@@ -0,0 +1,682 @@
+package SMMPClient.Acks;
+
+import SMMPClient.Acks.AckEntry.AckEntry;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32C;
+
+/**
+ * A journal of the messages waiting for acks, so an {@link AckTracker} can restore them after a restart.
+ * <p>
+ * The journal consists of a checkpoint file and a memory-mapped log file. The checkpoint holds every message that was
+ * waiting for acks when it was taken, and the log records what happened since: new messages, acks and completed
+ * messages. A checkpoint is written to a temporary file which is forced to disk and renamed over the previous one,
+ * after which the log is cleared. Both files start with a generation number, and the log is only replayed over a
+ * checkpoint of the same generation, so a crash at any point leaves either the old or the new state.
+ * <p>
+ * A record is a length, a CRC32C checksum and a body, and a zero length ends the log. Log records are written to the
+ * page cache, which survives a crash of the process, and are forced to disk with each checkpoint.
+ * <p>
+ * The journal holds an exclusive lock on its directory until it is closed, so two trackers, in this process or
+ * another, never journal into the same files. Once closed, recording changes does nothing.
+ */
+@Slf4j
+public class AckJournal implements Closeable
+{
+    private static final int MAGIC = 0x534D4A4C;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int GENERATION_OFFSET = 8;
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final byte ENTRY = 1;
+    private static final byte ACK = 2;
+    private static final byte DONE = 3;
+    private static final String LOG_FILE = "acks.log";
+    private static final String CHECKPOINT_FILE = "acks.checkpoint";
+    private static final String CHECKPOINT_TEMP_FILE = "acks.checkpoint.tmp";
+    private static final String LOCK_FILE = "acks.lock";
+
+    private final Path directory;
+    private final FileChannel lockChannel;
+    private final FileLock lock;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final CRC32C checksum = new CRC32C();
+    @Getter
+    private final long checkpointMillis;
+    private final List<JournaledEntry> recoveredEntries;
+    private ByteBuffer scratch = ByteBuffer.allocate(4096);
+    private long generation;
+    private int writePosition;
+    private boolean closed;
+
+
+    /**
+     * Opens the journal in the given directory, recovering the messages that were waiting for acks.
+     *
+     * @param directory        the directory of the journal, created if missing
+     * @param size             the size of the log file in bytes
+     * @param checkpointMillis how often the owner of the journal should take a checkpoint
+     * @throws IOException if the journal could not be opened, or is in use by another journal
+     */
+    public AckJournal(@NonNull Path directory, int size, long checkpointMillis) throws IOException
+    {
+        if (size < HEADER_SIZE + RECORD_HEADER_SIZE + 4)
+        {
+            throw new IllegalArgumentException("Journal size is too small");
+        }
+
+        this.directory = directory;
+        this.checkpointMillis = checkpointMillis;
+
+        Files.createDirectories(directory);
+        lockChannel = FileChannel.open(directory.resolve(LOCK_FILE), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        lock = lock(lockChannel, directory);
+
+        Map<String, JournaledEntry> entries = new LinkedHashMap<>();
+
+        try
+        {
+            Files.deleteIfExists(directory.resolve(CHECKPOINT_TEMP_FILE));
+            generation = readCheckpoint(entries);
+            channel = FileChannel.open(directory.resolve(LOG_FILE), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+
+        catch (IOException | RuntimeException ex)
+        {
+            lockChannel.close();
+            throw ex;
+        }
+
+        try
+        {
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(size, Math.min(channel.size(), Integer.MAX_VALUE)));
+        }
+
+        catch (IOException | RuntimeException ex)
+        {
+            channel.close();
+            lockChannel.close();
+            throw ex;
+        }
+
+        if (buffer.getInt(0) == MAGIC && buffer.getInt(4) == VERSION && buffer.getLong(GENERATION_OFFSET) == generation)
+        {
+            writePosition = replay(buffer, HEADER_SIZE, entries);
+        }
+
+        else
+        {
+            buffer.putInt(HEADER_SIZE, 0);
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            buffer.putLong(GENERATION_OFFSET, generation);
+            writePosition = HEADER_SIZE;
+        }
+
+        recoveredEntries = new ArrayList<>();
+
+        for (JournaledEntry entry : entries.values())
+        {
+            if (entry.acknowledged.size() < entry.destinations.size())
+            {
+                recoveredEntries.add(entry);
+            }
+        }
+
+        log.info("Opened ack journal in {}, {} messages waiting for acks", directory, recoveredEntries.size());
+    }
+
+
+    /**
+     * Returns the directory of the journal of an MRN below a base directory.
+     *
+     * @param baseDirectory        the directory holding the journals of all MRNs
+     * @param maritimeResourceName the MRN
+     * @return the directory of the journal
+     */
+    public static Path directoryFor(@NonNull Path baseDirectory, @NonNull String maritimeResourceName)
+    {
+        return baseDirectory.resolve(maritimeResourceName.replaceAll("[^A-Za-z0-9._-]", "_"));
+    }
+
+
+    /**
+     * Gets the messages that were waiting for acks when the journal was opened.
+     *
+     * @return the recovered messages, in the order they were journaled
+     */
+    public List<JournaledEntry> getRecoveredEntries()
+    {
+        return recoveredEntries;
+    }
+
+
+    /**
+     * Records a new message waiting for acks, with the destinations that have already acknowledged it.
+     *
+     * @param entry the entry of the message
+     * @return true if it was recorded or the journal is closed, false if the log is full and a checkpoint must be taken instead
+     */
+    public synchronized boolean recordEntry(@NonNull AckEntry<?> entry)
+    {
+        if (closed)
+        {
+            return true;
+        }
+
+        int start = writePosition + RECORD_HEADER_SIZE;
+        ByteBuffer out = buffer.duplicate();
+
+        try
+        {
+            out.limit(buffer.capacity() - 4).position(start);
+            writeEntry(out, entry);
+        }
+
+        catch (BufferOverflowException | IllegalArgumentException ex)
+        {
+            return false;
+        }
+
+        return commitRecord(out.position() - start);
+    }
+
+
+    /**
+     * Records that a destination acknowledged a message.
+     *
+     * @param messageId   the id of the message
+     * @param destination the destination that acknowledged it
+     * @return true if it was recorded or the journal is closed, false if the log is full and a checkpoint must be taken instead
+     */
+    public synchronized boolean recordAck(@NonNull String messageId, @NonNull String destination)
+    {
+        if (closed)
+        {
+            return true;
+        }
+
+        int start = writePosition + RECORD_HEADER_SIZE;
+        ByteBuffer out = buffer.duplicate();
+
+        try
+        {
+            out.limit(buffer.capacity() - 4).position(start);
+            out.put(ACK);
+            writeString(out, messageId);
+            writeString(out, destination);
+        }
+
+        catch (BufferOverflowException | IllegalArgumentException ex)
+        {
+            return false;
+        }
+
+        return commitRecord(out.position() - start);
+    }
+
+
+    /**
+     * Records that a message no longer waits for acks, as it was acknowledged by all destinations or timed out.
+     *
+     * @param messageId the id of the message
+     * @return true if it was recorded or the journal is closed, false if the log is full and a checkpoint must be taken instead
+     */
+    public synchronized boolean recordDone(@NonNull String messageId)
+    {
+        if (closed)
+        {
+            return true;
+        }
+
+        int start = writePosition + RECORD_HEADER_SIZE;
+        ByteBuffer out = buffer.duplicate();
+
+        try
+        {
+            out.limit(buffer.capacity() - 4).position(start);
+            out.put(DONE);
+            writeString(out, messageId);
+        }
+
+        catch (BufferOverflowException | IllegalArgumentException ex)
+        {
+            return false;
+        }
+
+        return commitRecord(out.position() - start);
+    }
+
+
+    /**
+     * Takes a checkpoint of the messages waiting for acks and clears the log, unless the journal is closed.
+     * The caller must have applied every change it has recorded, or will record, to the given entries.
+     *
+     * @param entries the entries of the messages waiting for acks
+     * @throws IOException if the checkpoint could not be written
+     */
+    public synchronized void checkpoint(@NonNull Collection<? extends AckEntry<?>> entries) throws IOException
+    {
+        if (closed)
+        {
+            return;
+        }
+
+        long nextGeneration = generation + 1;
+        Path temp = directory.resolve(CHECKPOINT_TEMP_FILE);
+
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE))
+        {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).putLong(nextGeneration).flip();
+            writeFully(out, header);
+
+            for (AckEntry<?> entry : entries)
+            {
+                if (!entry.isFullyAcknowledged())
+                {
+                    writeFully(out, encodeRecord(entry));
+                }
+            }
+
+            out.force(true);
+        }
+
+        Files.move(temp, directory.resolve(CHECKPOINT_FILE), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+        buffer.putInt(HEADER_SIZE, 0);
+        buffer.putLong(GENERATION_OFFSET, nextGeneration);
+        buffer.force();
+        writePosition = HEADER_SIZE;
+        generation = nextGeneration;
+        log.debug("Checkpointed ack journal in {}, generation {}", directory, generation);
+    }
+
+
+    /**
+     * Forces the log to disk, closes the journal and releases the lock on its directory.
+     *
+     * @throws IOException if the journal could not be closed
+     */
+    @Override
+    public synchronized void close() throws IOException
+    {
+        if (closed)
+        {
+            return;
+        }
+
+        closed = true;
+
+        try
+        {
+            buffer.force();
+            channel.close();
+        }
+
+        finally
+        {
+            lockChannel.close();
+        }
+    }
+
+
+    /**
+     * Takes the exclusive lock on the directory of a journal.
+     *
+     * @param lockChannel the channel of the lock file in the directory
+     * @param directory   the directory of the journal
+     * @return the lock
+     * @throws IOException if the lock could not be taken, as another journal holds it
+     */
+    private static FileLock lock(FileChannel lockChannel, Path directory) throws IOException
+    {
+        FileLock lock;
+
+        try
+        {
+            lock = lockChannel.tryLock();
+        }
+
+        catch (OverlappingFileLockException | IOException ex)
+        {
+            lockChannel.close();
+            throw new IOException("Failed to lock the ack journal in " + directory, ex);
+        }
+
+        if (lock == null)
+        {
+            lockChannel.close();
+            throw new IOException("The ack journal in " + directory + " is in use by another process");
+        }
+
+        return lock;
+    }
+
+
+    /**
+     * Completes a record whose body has been written after the record header at the write position:
+     * writes the end of the log after it, then its checksum and finally its length.
+     *
+     * @param length the length of the body
+     * @return true
+     */
+    private boolean commitRecord(int length)
+    {
+        int start = writePosition + RECORD_HEADER_SIZE;
+        ByteBuffer body = buffer.duplicate();
+        body.limit(start + length).position(start);
+        checksum.reset();
+        checksum.update(body);
+
+        buffer.putInt(start + length, 0);
+        buffer.putInt(writePosition + 4, (int) checksum.getValue());
+        buffer.putInt(writePosition, length);
+        writePosition = start + length;
+        return true;
+    }
+
+
+    /**
+     * Encodes an entry record into the scratch buffer, growing it as needed.
+     *
+     * @param entry the entry
+     * @return the record, with its length and checksum
+     */
+    private ByteBuffer encodeRecord(AckEntry<?> entry)
+    {
+        while (true)
+        {
+            scratch.clear().position(RECORD_HEADER_SIZE);
+
+            try
+            {
+                writeEntry(scratch, entry);
+                break;
+            }
+
+            catch (BufferOverflowException ex)
+            {
+                scratch = ByteBuffer.allocate(scratch.capacity() * 2);
+            }
+        }
+
+        int length = scratch.position() - RECORD_HEADER_SIZE;
+        ByteBuffer body = scratch.duplicate();
+        body.flip().position(RECORD_HEADER_SIZE);
+        checksum.reset();
+        checksum.update(body);
+
+        scratch.putInt(0, length);
+        scratch.putInt(4, (int) checksum.getValue());
+        return scratch.flip();
+    }
+
+
+    /**
+     * Writes the body of an entry record.
+     */
+    private static void writeEntry(ByteBuffer out, AckEntry<?> entry)
+    {
+        List<String> unacknowledged = entry.getUnacknowledgedDestinations();
+        List<String> acknowledged = entry.getAcknowledgedDestinations();
+        byte[] message = entry.getMessage();
+
+        out.put(ENTRY);
+        writeString(out, entry.getMessageId());
+        out.putLong(entry.getExpires() == null ? Long.MAX_VALUE : entry.getExpires().toEpochMilli());
+        out.putInt(entry.getRetransmitDelay());
+        out.putLong(entry.getRetransmitAt());
+        writeStrings(out, unacknowledged);
+        writeStrings(out, acknowledged);
+        out.putInt(message.length);
+        out.put(message);
+    }
+
+
+    private static void writeStrings(ByteBuffer out, List<String> values)
+    {
+        out.putInt(values.size());
+
+        for (String value : values)
+        {
+            writeString(out, value);
+        }
+    }
+
+
+    private static void writeString(ByteBuffer out, String value)
+    {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.putInt(bytes.length);
+        out.put(bytes);
+    }
+
+
+    private static List<String> readStrings(ByteBuffer in)
+    {
+        int count = in.getInt();
+
+        if (count < 0 || count > in.remaining() / 4)
+        {
+            throw new IllegalArgumentException("Bad string count " + count);
+        }
+
+        List<String> values = new ArrayList<>(count);
+
+        for (int i = 0; i < count; i++)
+        {
+            values.add(readString(in));
+        }
+
+        return values;
+    }
+
+
+    private static String readString(ByteBuffer in)
+    {
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+
+    private static void writeFully(FileChannel channel, ByteBuffer source) throws IOException
+    {
+        while (source.hasRemaining())
+        {
+            channel.write(source);
+        }
+    }
+
+
+    /**
+     * Reads the checkpoint into the given map.
+     *
+     * @param entries the map to read the entries into
+     * @return the generation of the checkpoint, or 0 if there is none
+     * @throws IOException if the checkpoint could not be read
+     */
+    private long readCheckpoint(Map<String, JournaledEntry> entries) throws IOException
+    {
+        Path path = directory.resolve(CHECKPOINT_FILE);
+
+        if (Files.notExists(path))
+        {
+            return 0;
+        }
+
+        ByteBuffer checkpoint = ByteBuffer.wrap(Files.readAllBytes(path));
+
+        if (checkpoint.remaining() < HEADER_SIZE || checkpoint.getInt(0) != MAGIC || checkpoint.getInt(4) != VERSION)
+        {
+            log.warn("Ignoring unrecognized ack journal checkpoint {}", path);
+            return 0;
+        }
+
+        replay(checkpoint, HEADER_SIZE, entries);
+        return checkpoint.getLong(GENERATION_OFFSET);
+    }
+
+
+    /**
+     * Applies the records of a file to the given map, up to the first zero length or bad record.
+     *
+     * @param file    the contents of the file
+     * @param start   the position of the first record
+     * @param entries the map to apply the records to
+     * @return the position after the last good record
+     */
+    private int replay(ByteBuffer file, int start, Map<String, JournaledEntry> entries)
+    {
+        int position = start;
+
+        while (position + RECORD_HEADER_SIZE <= file.limit())
+        {
+            int length = file.getInt(position);
+
+            if (length <= 0 || length > file.limit() - position - RECORD_HEADER_SIZE)
+            {
+                break;
+            }
+
+            ByteBuffer body = file.duplicate();
+            body.limit(position + RECORD_HEADER_SIZE + length).position(position + RECORD_HEADER_SIZE);
+            checksum.reset();
+            checksum.update(body.duplicate());
+
+            if ((int) checksum.getValue() != file.getInt(position + 4))
+            {
+                log.warn("Ack journal in {} has a bad record at {}, ignoring the rest", directory, position);
+                break;
+            }
+
+            try
+            {
+                apply(body, entries);
+            }
+
+            catch (BufferUnderflowException | IllegalArgumentException | NegativeArraySizeException ex)
+            {
+                log.warn("Ack journal in {} has a malformed record at {}, ignoring the rest", directory, position);
+                break;
+            }
+
+            position += RECORD_HEADER_SIZE + length;
+        }
+
+        return position;
+    }
+
+
+    /**
+     * Applies one record to the given map.
+     */
+    private static void apply(ByteBuffer body, Map<String, JournaledEntry> entries)
+    {
+        byte type = body.get();
+
+        if (type == ENTRY)
+        {
+            String messageId = readString(body);
+            long expires = body.getLong();
+            int retransmitDelay = body.getInt();
+            long retransmitAt = body.getLong();
+            List<String> destinations = readStrings(body);
+            List<String> acknowledged = readStrings(body);
+            byte[] message = new byte[body.getInt()];
+            body.get(message);
+
+            destinations.addAll(acknowledged);
+            entries.put(messageId, new JournaledEntry(messageId, destinations, new LinkedHashSet<>(acknowledged), message,
+                    expires == Long.MAX_VALUE ? null : Instant.ofEpochMilli(expires), retransmitDelay, retransmitAt));
+        }
+
+        else if (type == ACK)
+        {
+            JournaledEntry entry = entries.get(readString(body));
+            String destination = readString(body);
+
+            if (entry != null && entry.destinations.contains(destination))
+            {
+                entry.acknowledged.add(destination);
+            }
+        }
+
+        else if (type == DONE)
+        {
+            entries.remove(readString(body));
+        }
+
+        else
+        {
+            throw new IllegalArgumentException("Unknown record type " + type);
+        }
+    }
+
+
+    /**
+     * A message that was waiting for acks when the journal was opened.
+     */
+    @Getter
+    public static class JournaledEntry
+    {
+        private final String messageId;
+        private final List<String> destinations;
+        @Getter(AccessLevel.NONE)
+        private final Set<String> acknowledged;
+        private final byte[] message;
+        private final Instant expires;
+        private final int retransmitDelay;
+        private final long retransmitAt;
+
+
+        private JournaledEntry(String messageId, List<String> destinations, Set<String> acknowledged, byte[] message, Instant expires, int retransmitDelay, long retransmitAt)
+        {
+            this.messageId = messageId;
+            this.destinations = destinations;
+            this.acknowledged = acknowledged;
+            this.message = message;
+            this.expires = expires;
+            this.retransmitDelay = retransmitDelay;
+            this.retransmitAt = retransmitAt;
+        }
+
+
+        /**
+         * Gets the destinations that had acknowledged the message.
+         *
+         * @return the destinations that had acknowledged the message
+         */
+        public List<String> getAcknowledgedDestinations()
+        {
+            return new ArrayList<>(acknowledged);
+        }
+    }
+}
@@ -2,56 +2,227 @@ package SMMPClient.Acks;
 
 import Agent.Connections.AuthenticatedConnection;
 import Agent.Exceptions.ConnectException;
+import Agent.MessageSending.PayloadWriter;
+import Agent.Utils.HashedWheelTimer;
 import SMMPClient.Acks.AckEntry.*;
 import SMMPClient.Acks.AckEntry.DefaultEntryHandlers.DefaultMultiDestCompletionHandler;
 import SMMPClient.Acks.AckEntry.DefaultEntryHandlers.DefaultSingleDestCompletionHandler;
+import SMMPClient.Acks.AckJournal.JournaledEntry;
 import SMMPClient.Acks.Handlers.MultiDeliveryCompletionHandler;
 import SMMPClient.Acks.Handlers.SingleDeliveryCompletionHandler;
 import SMMPClient.Acks.ResultObjects.MultiDestDeliveryResult;
 import SMMPClient.Acks.ResultObjects.SingleDestDeliveryResult;
 import SMMPClient.Crypto.CryptoUtils;
+import SMMPClient.Exceptions.FlowControlException;
 import SMMPClient.Exceptions.SignatureGenerationException;
 import SMMPClient.MessageFormats.MessageType;
+import SMMPClient.MessageFormats.SMMPAck;
+import SMMPClient.MessageFormats.SMMPBatchAck;
+import SMMPClient.MessageFormats.SMMPEnvelope;
 import SMMPClient.MessageFormats.SMMPUtils;
+import com.google.protobuf.UnsafeByteOperations;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
 
+import java.io.IOException;
 import java.security.cert.CertificateEncodingException;
 import java.security.cert.X509Certificate;
 import java.security.interfaces.ECPrivateKey;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.*;
+import java.util.function.BooleanSupplier;
 
 /**
  * AckTracker is responsible for tracking acknowledgements for sent messages and for sending acks.
+ * <p>
+ * Given an {@link AckJournal}, the tracker journals the messages waiting for acks and checkpoints them periodically.
+ * On construction it restores the messages of the journal, and resumes retransmitting them where their schedule left off.
+ * <p>
+ * The first retransmission of a message is due after the retransmission timeout of its destinations, estimated from
+ * the round trip times of earlier messages by an {@link RttEstimator}, and each further retransmission backs off twice
+ * as long until the backoff reaches ten minutes.
+ * <p>
+ * Retransmissions are scheduled on a {@link HashedWheelTimer}, so tracking and acknowledging a message is O(1) however
+ * many messages are waiting for acks, and the timer of a message is cancelled as soon as it is fully acknowledged.
+ * <p>
+ * A {@link FlowController} bounds the messages waiting for acks per destination. Senders acquire room for a message with
+ * {@link #acquireWindows} before sending it, and the tracker gives the room back as destinations ack, or once it gives up.
+ * A message held by the window of a destination is registered with {@link #hold}, is not retransmitted to it until it
+ * is sent there, and is given up on once it expires.
+ * <p>
+ * Messages to the same destinations share their {@link SMMPClient.Acks.AckEntry.DestinationSet} through a {@link DestinationIndex},
+ * so a fleet-wide message costs a bit per destination to track rather than a copy of its destinations.
+ * <p>
+ * With ack batching enabled, acks are held per destination for a short delay or until a batch is full, and sent as one
+ * {@link SMMPBatchAck} with a single signature and certificate, instead of a signed {@link SMMPAck} per message.
  */
 @Slf4j
-public class AckTracker implements IAckTracker
+public class AckTracker implements IAckTracker, AutoCloseable
 {
-    private static final int INITIAL_DELAY = 5;
-    private static final int MAX_DELAY = 600;
+    private static final int MAX_DELAY = 600_000;
     private static final int DELAY_MULTIPLIER = 2;
-    private static final TimeUnit DELAY_UNIT = TimeUnit.SECONDS;
+    private static final TimeUnit DELAY_UNIT = TimeUnit.MILLISECONDS;
     private static final int MAX_THREADS = 3;
+    private static final long TICK_MILLIS = 100;
+    private static final int WHEEL_SIZE = 512;
 
-    private final ScheduledExecutorService scheduledWorkerPool = Executors.newScheduledThreadPool(MAX_THREADS);
+    private final ExecutorService workerPool = Executors.newFixedThreadPool(MAX_THREADS);
+    private final HashedWheelTimer timer = new HashedWheelTimer(TICK_MILLIS, TimeUnit.MILLISECONDS, WHEEL_SIZE, workerPool, "ack-timer");
     private final Map<String, AckEntry<?>> waitingAcknowledgements = new ConcurrentHashMap<>();
+    private final DestinationIndex destinationIndex = new DestinationIndex();
+    private final Map<String, PendingAcks> pendingAcks = new ConcurrentHashMap<>();
 
-    private final AuthenticatedConnection connection;
     private final ECPrivateKey privateKey;
     private final X509Certificate certificate;
+    private final AckJournal journal;
+    private final RttEstimator rttEstimator;
+    private final FlowController flowController;
+    private volatile AuthenticatedConnection connection;
+    private volatile long ackDelayMillis;
+    private volatile int maxAcksPerBatch = 1;
 
 
     /**
      * Constructs a new {@link AckTracker} instance.
      */
     public AckTracker(AuthenticatedConnection connection, X509Certificate myCertificate, ECPrivateKey myPrivateKey)
+    {
+        this(connection, myCertificate, myPrivateKey, new RttEstimator(), new FlowController());
+    }
+
+
+    /**
+     * Constructs a new {@link AckTracker} instance.
+     *
+     * @param connection    the connection to send and retransmit with
+     * @param myCertificate the certificate to sign acks with
+     * @param myPrivateKey  the private key to sign acks with
+     * @param rttEstimator   the estimator of the retransmission timeouts of destinations
+     * @param flowController the controller of the messages in flight per destination
+     */
+    public AckTracker(AuthenticatedConnection connection, X509Certificate myCertificate, ECPrivateKey myPrivateKey, @NonNull RttEstimator rttEstimator,
+                      @NonNull FlowController flowController)
+    {
+        this.connection = connection;
+        this.privateKey = myPrivateKey;
+        this.certificate = myCertificate;
+        this.rttEstimator = rttEstimator;
+        this.flowController = flowController;
+        this.journal = null;
+    }
+
+
+    /**
+     * Constructs a new {@link AckTracker} instance that journals the messages waiting for acks,
+     * and restores the messages of the journal.
+     *
+     * @param connection               the connection to send and retransmit with
+     * @param myCertificate            the certificate to sign acks with
+     * @param myPrivateKey             the private key to sign acks with
+     * @param rttEstimator             the estimator of the retransmission timeouts of destinations
+     * @param flowController           the controller of the messages in flight per destination
+     * @param journal                  the journal of the messages waiting for acks
+     * @param recoveredDeliveryHandler the handler of the delivery results of restored messages
+     */
+    public AckTracker(AuthenticatedConnection connection, X509Certificate myCertificate, ECPrivateKey myPrivateKey, @NonNull RttEstimator rttEstimator,
+                      @NonNull FlowController flowController, @NonNull AckJournal journal, @NonNull MultiDeliveryCompletionHandler recoveredDeliveryHandler)
     {
         this.connection = connection;
         this.privateKey = myPrivateKey;
         this.certificate = myCertificate;
+        this.rttEstimator = rttEstimator;
+        this.flowController = flowController;
+        this.journal = journal;
+
+        long now = System.currentTimeMillis();
+
+        for (JournaledEntry recovered : journal.getRecoveredEntries())
+        {
+            MultiDestAckEntry entry = new MultiDestAckEntry(recovered.getMessageId(), destinationIndex.intern(recovered.getDestinations()), recovered.getAcknowledgedDestinations(),
+                    recovered.getMessage(), recovered.getExpires(), recoveredDeliveryHandler);
+            entry.scheduleRetransmit(recovered.getRetransmitDelay(), recovered.getRetransmitAt());
+            entry.markRetransmitted();
+            flowController.occupy(entry.getUnacknowledgedDestinations(), entry.getMessage().length);
+            waitingAcknowledgements.put(entry.getMessageId(), entry);
+            entry.setRetransmitTimeout(timer.schedule(() -> checkAndRetransmit(entry, entry.getRetransmitDelay(), MAX_DELAY), recovered.getRetransmitAt() - now, TimeUnit.MILLISECONDS));
+            log.debug("Restored message {} waiting for acks from {}", entry.getMessageId(), entry.getUnacknowledgedDestinations());
+        }
+
+        timer.schedule(this::checkpointPeriodically, journal.getCheckpointMillis(), TimeUnit.MILLISECONDS);
+    }
+
+
+    /**
+     * Replaces the connection that acks are sent and messages are retransmitted with, once reconnected.
+     *
+     * @param connection the new connection
+     */
+    public void setConnection(@NonNull AuthenticatedConnection connection)
+    {
+        this.connection = connection;
+    }
+
+
+    /**
+     * Enables batching of the acks sent to each destination. An ack is held until the delay has passed since the first
+     * held ack to its destination, rounded up to the 100 ms resolution of the timer, or until the batch is full.
+     * Only destinations that understand {@link MessageType#BATCH_ACK} should receive batch acks.
+     *
+     * @param ackDelayMillis  the longest time in milliseconds an ack is held, or 0 to send every ack right away
+     * @param maxAcksPerBatch the number of acks at which a batch is sent without waiting for the delay, at least 1
+     */
+    public void setAckBatching(long ackDelayMillis, int maxAcksPerBatch)
+    {
+        if (ackDelayMillis < 0 || maxAcksPerBatch < 1)
+        {
+            throw new IllegalArgumentException("Ack delay must be at least 0 ms, and the batch size at least 1");
+        }
+
+        this.ackDelayMillis = ackDelayMillis;
+        this.maxAcksPerBatch = maxAcksPerBatch;
+    }
+
+
+    /**
+     * Stops the tracker. Sends the acks held for batching, stops retransmitting, takes a last checkpoint so the
+     * messages still waiting for acks are restored by the next tracker on the journal, closes the journal, which
+     * releases its directory, and shuts down the worker threads.
+     */
+    @Override
+    public void close()
+    {
+        for (String destination : pendingAcks.keySet())
+        {
+            PendingAcks pending = pendingAcks.remove(destination);
+
+            if (pending != null)
+            {
+                pending.timeout.cancel();
+                sendAcks(destination, pending.messageIds);
+            }
+        }
+
+        timer.close();
+
+        if (journal != null)
+        {
+            checkpoint();
+
+            try
+            {
+                journal.close();
+            }
+
+            catch (IOException ex)
+            {
+                log.error("Failed to close the ack journal.", ex);
+            }
+        }
+
+        workerPool.shutdown();
     }
 
 
@@ -67,8 +238,7 @@ public class AckTracker implements IAckTracker
     public void waitForSingleDestAck(@NonNull String messageId, @NonNull String destination, @NonNull byte[] message, Instant expires, @NonNull SingleDeliveryCompletionHandler handler)
     {
         SingleDestAckEntry entry = new SingleDestAckEntry(messageId, destination, message, expires, handler);
-        waitingAcknowledgements.put(messageId, entry);
-        scheduledWorkerPool.schedule(() -> checkAndRetransmit(entry, INITIAL_DELAY, MAX_DELAY), INITIAL_DELAY, DELAY_UNIT);
+        track(entry);
         log.debug("Waiting for ack for message {} to destination {}", messageId, destination);
     }
 
@@ -89,8 +259,7 @@ public class AckTracker implements IAckTracker
         DefaultSingleDestCompletionHandler handler = new DefaultSingleDestCompletionHandler(future);
 
         SingleDestAckEntry entry = new SingleDestAckEntry(messageId, destination, message, expires, handler);
-        waitingAcknowledgements.put(messageId, entry);
-        scheduledWorkerPool.schedule(() -> checkAndRetransmit(entry, 5, 600), 5, TimeUnit.SECONDS);
+        track(entry);
         log.debug("Waiting for ack for message {} to destination {}", messageId, destination);
         return future;
     }
@@ -108,9 +277,8 @@ public class AckTracker implements IAckTracker
     @Override
     public void waitForMultiDestAck(@NonNull String messageId, @NonNull List<String> destinations, @NonNull byte[] message, Instant expires, @NonNull MultiDeliveryCompletionHandler handler)
     {
-        MultiDestAckEntry entry = new MultiDestAckEntry(messageId, destinations, message, expires, handler);
-        waitingAcknowledgements.put(messageId, entry);
-        scheduledWorkerPool.schedule(() -> checkAndRetransmit(entry, 5, 600), 5, TimeUnit.SECONDS);
+        MultiDestAckEntry entry = new MultiDestAckEntry(messageId, destinationIndex.intern(destinations), message, expires, handler);
+        track(entry);
         log.debug("Waiting for ack for message {} to destinations {}", messageId, destinations);
     }
 
@@ -130,9 +298,8 @@ public class AckTracker implements IAckTracker
         CompletableFuture<MultiDestDeliveryResult> future = new CompletableFuture<>();
         DefaultMultiDestCompletionHandler handler = new DefaultMultiDestCompletionHandler(future);
 
-        MultiDestAckEntry entry = new MultiDestAckEntry(messageId, destinations, message, expires, handler);
-        waitingAcknowledgements.put(messageId, entry);
-        scheduledWorkerPool.schedule(() -> checkAndRetransmit(entry, 5, 600), 5, TimeUnit.SECONDS);
+        MultiDestAckEntry entry = new MultiDestAckEntry(messageId, destinationIndex.intern(destinations), message, expires, handler);
+        track(entry);
         log.debug("Waiting for ack for message {} to destinations {}", messageId, destinations);
         return future;
     }
@@ -154,10 +321,24 @@ public class AckTracker implements IAckTracker
             if (entry.acknowledge(destination))
             {
                 log.debug("Ack received for message {} to destination {}", messageId, destination);
+                flowController.onAck(destination, entry.getMessage().length);
+
+                if (entry.getRetransmissions() == 0 && !entry.wasSentLate(destination))
+                {
+                    rttEstimator.onSample(destination, System.nanoTime() - entry.getSentNanos());
+                }
+
                 if (entry.isFullyAcknowledged())
                 {
                     log.debug("All acks received for message {}", messageId);
                     waitingAcknowledgements.remove(messageId);
+                    entry.cancelRetransmit();
+                    journal(() -> journal.recordDone(messageId));
+                }
+
+                else
+                {
+                    journal(() -> journal.recordAck(messageId, destination));
                 }
             }
         }
@@ -165,21 +346,214 @@ public class AckTracker implements IAckTracker
 
 
     /**
-     * Sends an acknowledgement to a destination for a specific message.
+     * Stops tracking a message that could not be sent, without completing its handler, as the failure of the send is
+     * reported to the application by the sender. Messages are tracked before they are handed to the agent, so an ack
+     * that arrives before the send completes is not lost, and must be cancelled this way if the send fails.
+     * The destinations the message is still held for are given up on, and the room of the destinations it was sent to
+     * after being held is given back, while the room of the destinations it was sent to at once is left to the sender.
+     *
+     * @param messageId the id of the message
+     */
+    @Override
+    public void cancel(@NonNull String messageId)
+    {
+        AckEntry<?> entry = waitingAcknowledgements.remove(messageId);
+
+        if (entry != null)
+        {
+            log.debug("Stopped waiting for acks for message {}, it could not be sent", messageId);
+            entry.cancelRetransmit();
+            flowController.release(entry.close(), entry.getMessage().length);
+            journal(() -> journal.recordDone(messageId));
+        }
+    }
+
+
+    /**
+     * Gets the round trip statistics of every destination that messages have been tracked for.
+     *
+     * @return the statistics by destination
+     */
+    @Override
+    public Map<String, RttStatistics> getRttStatistics()
+    {
+        return rttEstimator.getStatistics();
+    }
+
+
+    /**
+     * Acquires room for a message requiring acks in the in-flight window of each of its destinations, see {@link FlowController}.
+     * The room is given back as the destinations acknowledge the message once it is tracked, or with {@link #releaseWindow}
+     * if sending it fails.
+     *
+     * @param destinations the distinct destinations of the message
+     * @param bytes        the size of the message
+     * @return a future per destination, in the order of the destinations, that completes once the message may be sent
+     * to the destination, or completes exceptionally with a {@link SMMPClient.Exceptions.FlowControlException} if it was refused
+     */
+    @Override
+    public List<CompletableFuture<Void>> acquireWindows(@NonNull List<String> destinations, int bytes)
+    {
+        List<CompletableFuture<Void>> windows = new ArrayList<>(destinations.size());
+
+        for (String destination : destinations)
+        {
+            windows.add(flowController.acquire(destination, bytes));
+        }
+
+        return windows;
+    }
+
+
+    /**
+     * Registers that a tracked message is held for a destination until it fits the window of the destination, so it is
+     * not retransmitted there before it is sent, and fails the wait with a {@link SMMPClient.Exceptions.FlowControlException}
+     * once the message expires. The wait is cancelled at once if the message is no longer tracked.
+     *
+     * @param messageId   the id of the message
+     * @param destination the destination the message is held for
+     * @param window      the future of the destination returned by {@link #acquireWindows}
+     */
+    @Override
+    public void hold(@NonNull String messageId, @NonNull String destination, @NonNull CompletableFuture<Void> window)
+    {
+        AckEntry<?> entry = waitingAcknowledgements.get(messageId);
+
+        if (entry == null || !entry.hold(destination, window))
+        {
+            window.cancel(false);
+            return;
+        }
+
+        if (entry.getExpires() != null)
+        {
+            long delay = Math.max(0, entry.getExpires().toEpochMilli() - System.currentTimeMillis());
+            HashedWheelTimer.Timeout expiry = timer.schedule(() -> window.completeExceptionally(
+                    new FlowControlException("Message " + messageId + " expired while held by the in-flight window of " + destination)), delay, TimeUnit.MILLISECONDS);
+            window.whenComplete((ignored, ex) -> expiry.cancel());
+        }
+    }
+
+
+    /**
+     * Records that a message held for a destination is about to be sent to it, once it fits the window of the destination.
+     * If the message is no longer tracked, it must not be sent, and the room it was given must be given back with {@link #releaseWindow}.
+     *
+     * @param messageId   the id of the message
+     * @param destination the destination
+     * @return true if the message may be sent to the destination, false otherwise
+     */
+    @Override
+    public boolean admit(@NonNull String messageId, @NonNull String destination)
+    {
+        AckEntry<?> entry = waitingAcknowledgements.get(messageId);
+        return entry != null && entry.admit(destination);
+    }
+
+
+    /**
+     * Gives back the room of a message that was acquired with {@link #acquireWindows}, but will not be tracked.
+     *
+     * @param destinations the destinations of the message
+     * @param bytes        the size of the message
+     */
+    @Override
+    public void releaseWindow(@NonNull List<String> destinations, int bytes)
+    {
+        flowController.release(destinations, bytes);
+    }
+
+
+    /**
+     * Sends an acknowledgement to a destination for a specific message, or adds it to the batch of the destination
+     * if ack batching is enabled.
      *
      * @param messageId   the id of the acknowledged message
      * @param destination the destination to send the acknowledgement to
      */
     @Override
     public void sendAck(@NonNull String messageId, @NonNull String destination)
+    {
+        long delay = ackDelayMillis;
+        int maxBatch = maxAcksPerBatch;
+
+        if (delay == 0 || maxBatch == 1)
+        {
+            sendAcks(destination, List.of(messageId));
+            return;
+        }
+
+        PendingAcks[] full = new PendingAcks[1];
+
+        pendingAcks.compute(destination, (key, pending) ->
+        {
+            if (pending == null)
+            {
+                PendingAcks created = new PendingAcks();
+                created.timeout = timer.schedule(() -> flushAcks(key, created), delay, TimeUnit.MILLISECONDS);
+                pending = created;
+            }
+
+            pending.messageIds.add(messageId);
+
+            if (pending.messageIds.size() >= maxBatch)
+            {
+                full[0] = pending;
+                return null;
+            }
+
+            return pending;
+        });
+
+        if (full[0] != null)
+        {
+            full[0].timeout.cancel();
+            sendAcks(destination, full[0].messageIds);
+        }
+    }
+
+
+    /**
+     * Sends the batch of acks held for a destination once its delay has passed, unless it was sent already as it filled up.
+     *
+     * @param destination the destination of the acks
+     * @param pending     the batch the delay was scheduled for
+     */
+    private void flushAcks(String destination, PendingAcks pending)
+    {
+        if (pendingAcks.remove(destination, pending))
+        {
+            sendAcks(destination, pending.messageIds);
+        }
+    }
+
+
+    /**
+     * Signs and sends acknowledgements to a destination, as an {@link SMMPAck} for a single message,
+     * or as an {@link SMMPBatchAck} for several.
+     *
+     * @param destination the destination to send the acknowledgements to
+     * @param messageIds  the ids of the acknowledged messages
+     */
+    private void sendAcks(String destination, List<String> messageIds)
     {
         try
         {
-            log.debug("Sending ack for message {} to destination {}", messageId, destination);
-            byte[] signature = CryptoUtils.sign(privateKey, messageId.getBytes());
-            byte[] ackBytes = SMMPUtils.createAck(messageId, signature, certificate.getEncoded()).toByteArray();
-            byte[] protocolBytes = SMMPUtils.createProtocolMessage(ackBytes, MessageType.ACK).toByteArray();
-            connection.sendDirect(destination, protocolBytes, null);
+            if (messageIds.size() == 1)
+            {
+                log.debug("Sending ack for message {} to destination {}", messageIds.get(0), destination);
+                byte[] signature = CryptoUtils.sign(privateKey, messageIds.get(0).getBytes());
+                SMMPAck ack = SMMPUtils.createAck(messageIds.get(0), signature, certificate.getEncoded());
+                connection.sendDirect(List.of(destination), new SMMPEnvelope(MessageType.ACK, PayloadWriter.of(ack)), null);
+            }
+
+            else
+            {
+                log.debug("Sending batch ack for {} messages to destination {}", messageIds.size(), destination);
+                byte[] signature = CryptoUtils.sign(privateKey, SMMPUtils.batchAckContent(messageIds));
+                SMMPBatchAck ack = SMMPUtils.createBatchAck(messageIds, signature, certificate.getEncoded());
+                connection.sendDirect(List.of(destination), new SMMPEnvelope(MessageType.BATCH_ACK, PayloadWriter.of(ack)), null);
+            }
         }
 
         catch (SignatureGenerationException | ConnectException | CertificateEncodingException e)
@@ -189,6 +563,63 @@ public class AckTracker implements IAckTracker
     }
 
 
+    /**
+     * Starts tracking an entry, and schedules its first check for retransmission.
+     *
+     * @param entry the entry to track
+     */
+    private void track(AckEntry<?> entry)
+    {
+        int delay = (int) rttEstimator.getTimeoutMillis(entry.getUnacknowledgedDestinations());
+        entry.scheduleRetransmit(delay, System.currentTimeMillis() + delay);
+        waitingAcknowledgements.put(entry.getMessageId(), entry);
+        journal(() -> journal.recordEntry(entry));
+        entry.setRetransmitTimeout(timer.schedule(() -> checkAndRetransmit(entry, delay, MAX_DELAY), delay, DELAY_UNIT));
+    }
+
+
+    /**
+     * Records a change that has been applied to the tracked entries in the journal, if there is one.
+     * Takes a checkpoint instead if the journal is full, which includes the change.
+     *
+     * @param record the record to journal, returning false if the journal is full
+     */
+    private void journal(BooleanSupplier record)
+    {
+        if (journal != null && !record.getAsBoolean())
+        {
+            checkpoint();
+        }
+    }
+
+
+    /**
+     * Checkpoints the tracked entries to the journal.
+     */
+    private void checkpoint()
+    {
+        try
+        {
+            journal.checkpoint(waitingAcknowledgements.values());
+        }
+
+        catch (IOException ex)
+        {
+            log.error("Failed to checkpoint the ack journal.", ex);
+        }
+    }
+
+
+    /**
+     * Checkpoints the tracked entries to the journal, and schedules the next checkpoint.
+     */
+    private void checkpointPeriodically()
+    {
+        checkpoint();
+        timer.schedule(this::checkpointPeriodically, journal.getCheckpointMillis(), TimeUnit.MILLISECONDS);
+    }
+
+
     /**
      * Retransmits a message to a list of unacknowledged destinations.
      *
@@ -202,7 +633,7 @@ public class AckTracker implements IAckTracker
         try
         {
             log.debug("Retransmitting message {} to destinations {}", messageId, unacknowledgedDestinations);
-            connection.sendDirect(unacknowledgedDestinations, message, null);
+            connection.sendDirect(unacknowledgedDestinations, new SMMPEnvelope(MessageType.MESSAGE, PayloadWriter.of(UnsafeByteOperations.unsafeWrap(message))), null);
             log.debug("Retransmitted message {} to destinations {}", messageId, unacknowledgedDestinations);
         }
 
@@ -214,11 +645,12 @@ public class AckTracker implements IAckTracker
 
 
     /**
-     * Checks the status of an {@link AckEntry} and retransmits the message if necessary.
+     * Checks the status of an {@link AckEntry} once its retransmission timeout has passed, and retransmits the message
+     * to the destinations that have not acknowledged it, backing the next check off twice as long.
      *
      * @param entry    the {@link AckEntry} instance to check
-     * @param delay    the initial delay before retransmitting the message
-     * @param maxDelay the maximum delay allowed for retransmitting the message
+     * @param delay    the delay in milliseconds that this check was scheduled with
+     * @param maxDelay the delay in milliseconds at which retransmission gives up
      */
     private void checkAndRetransmit(AckEntry<?> entry, int delay, int maxDelay)
     {
@@ -228,33 +660,77 @@ public class AckTracker implements IAckTracker
             return;
         }
 
-        if (delay < maxDelay && entry.getExpires().isAfter(Instant.now()))
+        List<String> unacknowledgedDestinations = sentDestinations(entry);
+
+        for (String destination : unacknowledgedDestinations)
         {
-            log.debug("No ack received for message {} after {} seconds, retransmitting", entry.getMessageId(), delay);
-            List<String> unacknowledgedDestinations = entry.getUnacknowledgedDestinations();
-            byte[] message = entry.getMessage();
-            String messageId = entry.getMessageId();
-            Instant expires = entry.getExpires();
-            retransmit(unacknowledgedDestinations, messageId, message, expires);
-            scheduledWorkerPool.schedule(() -> checkAndRetransmit(entry, delay * DELAY_MULTIPLIER, maxDelay), delay, TimeUnit.SECONDS);
+            rttEstimator.onTimeout(destination);
+            flowController.onTimeout(destination, entry.getSentNanos());
         }
 
-        else
+        if (delay < maxDelay && entry.getExpires().isAfter(Instant.now()))
         {
-            int numRetries = 0;
-            int currentWaitTime = INITIAL_DELAY;
+            int nextDelay = delay;
 
-            while (currentWaitTime < MAX_DELAY)
+            if (!unacknowledgedDestinations.isEmpty())
             {
-                currentWaitTime *= DELAY_MULTIPLIER;
-                numRetries++;
+                log.debug("No ack received for message {} after {} ms, retransmitting", entry.getMessageId(), delay);
+                entry.markRetransmitted();
+                retransmit(unacknowledgedDestinations, entry.getMessageId(), entry.getMessage(), entry.getExpires());
+                nextDelay = (int) Math.min((long) delay * DELAY_MULTIPLIER, maxDelay);
             }
 
-            int totalWaitTime = INITIAL_DELAY + (DELAY_MULTIPLIER * ((int) Math.pow(2, numRetries) - 1));
-            int waited = Math.min(totalWaitTime, maxDelay);
-            log.debug("No ack received for message {} after {} seconds, giving up", entry.getMessageId(), waited);
+            scheduleCheck(entry, nextDelay, maxDelay);
+        }
+
+        else
+        {
+            log.debug("No ack received for message {} after {} retransmissions, giving up", entry.getMessageId(), entry.getRetransmissions());
             waitingAcknowledgements.remove(entry.getMessageId());
+            entry.close();
+            flowController.release(sentDestinations(entry), entry.getMessage().length);
+            journal(() -> journal.recordDone(entry.getMessageId()));
             entry.timeout();
         }
     }
+
+
+    /**
+     * Schedules the next check of an entry for retransmission.
+     */
+    private void scheduleCheck(AckEntry<?> entry, int delay, int maxDelay)
+    {
+        entry.scheduleRetransmit(delay, System.currentTimeMillis() + delay);
+        entry.setRetransmitTimeout(timer.schedule(() -> checkAndRetransmit(entry, delay, maxDelay), delay, DELAY_UNIT));
+    }
+
+
+    /**
+     * Gets the destinations that have not acknowledged the message of an entry, and that it was sent to,
+     * so not those it is still held for by their in-flight windows.
+     */
+    private static List<String> sentDestinations(AckEntry<?> entry)
+    {
+        List<String> destinations = new ArrayList<>();
+
+        for (String destination : entry.getUnacknowledgedDestinations())
+        {
+            if (!entry.isHeld(destination))
+            {
+                destinations.add(destination);
+            }
+        }
+
+        return destinations;
+    }
+
+
+    /**
+     * The acks held for a destination, and the timer that sends them once the delay has passed.
+     */
+    private static class PendingAcks
+    {
+        private final List<String> messageIds = new ArrayList<>();
+        private HashedWheelTimer.Timeout timeout;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,75 @@
+package SMMPClient.Acks;
+
+import SMMPClient.Acks.AckEntry.DestinationSet;
+import lombok.NonNull;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Interns the {@link DestinationSet}s of messages to multiple destinations, so that the messages of a fleet-wide send
+ * share one mapping from destination to slot instead of each holding its own list and set of destinations.
+ * <p>
+ * The most recently used sets are kept, and the least recently used set is evicted once the index is full. An evicted
+ * set stays valid for the entries that refer to it, a later message to the same destinations just gets a new set.
+ */
+public class DestinationIndex
+{
+    private final Map<List<String>, DestinationSet> sets;
+
+
+    /**
+     * Constructs a new {@link DestinationIndex} that keeps up to 1024 sets.
+     */
+    public DestinationIndex()
+    {
+        this(1024);
+    }
+
+
+    /**
+     * Constructs a new {@link DestinationIndex}.
+     *
+     * @param maxSets the maximum number of sets to keep
+     */
+    public DestinationIndex(int maxSets)
+    {
+        if (maxSets < 1)
+        {
+            throw new IllegalArgumentException("Maximum number of sets must be at least 1");
+        }
+
+        this.sets = new LinkedHashMap<>(16, 0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<List<String>, DestinationSet> eldest)
+            {
+                return size() > maxSets;
+            }
+        };
+    }
+
+
+    /**
+     * Gets the set of the given destinations, creating it if it is not kept already.
+     *
+     * @param destinations the destinations
+     * @return the set of the destinations
+     */
+    public DestinationSet intern(@NonNull List<String> destinations)
+    {
+        synchronized (sets)
+        {
+            DestinationSet set = sets.get(destinations);
+
+            if (set == null)
+            {
+                set = new DestinationSet(destinations);
+                sets.put(set.size() == destinations.size() ? set.asList() : List.copyOf(destinations), set);
+            }
+
+            return set;
+        }
+    }
+}
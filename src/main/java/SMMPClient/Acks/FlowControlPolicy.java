@@ -0,0 +1,17 @@
+package SMMPClient.Acks;
+
+/**
+ * An enum that represents what a {@link FlowController} does with a message when the in-flight window of a destination is full.
+ */
+public enum FlowControlPolicy
+{
+    /**
+     * Hold the message locally and send it once an ack opens the window, up to a bound on the number of held messages.
+     */
+    QUEUE,
+
+    /**
+     * Fail the send with a {@link SMMPClient.Exceptions.FlowControlException}.
+     */
+    REJECT
+}
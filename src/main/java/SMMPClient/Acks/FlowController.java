@@ -0,0 +1,420 @@
+package SMMPClient.Acks;
+
+import SMMPClient.Exceptions.FlowControlException;
+import lombok.NonNull;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Limits the number of messages waiting for acks per destination, so a fast producer cannot pile up messages against
+ * a slow destination that every retransmission wave then floods its link with.
+ * <p>
+ * Each destination has a window of messages that may be in flight, which adapts to the destination by additive increase
+ * and multiplicative decrease (AIMD), as the congestion window of TCP does. Every ack grows the window by 1 / window,
+ * so by one message per window of acks, up to the maximum. A retransmission timeout halves the window, at most once per
+ * window of messages: timeouts of messages sent before the last decrease are ignored, as they belong to the same loss.
+ * The bytes in flight are bounded too, although a single message larger than the bound may be sent to an idle destination.
+ * <p>
+ * A message takes room in the window of each of its destinations on its own, and is sent to each destination once it
+ * fits there, so a fan-out message that waits on a slow destination does not hold up the messages to the others, and
+ * never holds room in one window while it waits for another. A message that does not fit a window is held in the queue
+ * of that window until acks open it, or fails fast, depending on the {@link FlowControlPolicy}, and may be given up on,
+ * for instance once it expires. Held messages are released in the order they were held in per destination, one after
+ * the other by a single run on the default async executor, so their sends reach the agent in that order and do not run
+ * on the thread that processes the ack.
+ */
+public class FlowController
+{
+    private final Map<String, Window> windows = new ConcurrentHashMap<>();
+    private final int initialWindow;
+    private final int maxWindow;
+    private final long maxBytes;
+    private final FlowControlPolicy policy;
+    private final int maxQueued;
+    private final Queue<Waiter> admitted = new ArrayDeque<>();
+    private boolean completing;
+
+
+    /**
+     * Constructs a new {@link FlowController} with an initial window of 16 messages, a maximum window of 256 messages
+     * and 16 MiB, that holds up to 10,000 messages per destination once the window is full.
+     */
+    public FlowController()
+    {
+        this(16, 256, 16 * 1024 * 1024, FlowControlPolicy.QUEUE, 10_000);
+    }
+
+
+    /**
+     * Constructs a new {@link FlowController}.
+     *
+     * @param initialWindow the number of messages a destination without acks may have in flight
+     * @param maxWindow     the maximum number of messages a destination may have in flight
+     * @param maxBytes      the maximum number of bytes a destination may have in flight
+     * @param policy        what to do with a message when the window of a destination is full
+     * @param maxQueued     the maximum number of messages held per destination with {@link FlowControlPolicy#QUEUE}
+     */
+    public FlowController(int initialWindow, int maxWindow, long maxBytes, @NonNull FlowControlPolicy policy, int maxQueued)
+    {
+        if (initialWindow < 1 || maxWindow < initialWindow)
+        {
+            throw new IllegalArgumentException("Initial window must be at least 1 and at most the maximum window");
+        }
+
+        if (maxBytes < 1 || maxQueued < 0)
+        {
+            throw new IllegalArgumentException("Maximum bytes must be at least 1, and the maximum number of held messages at least 0");
+        }
+
+        this.initialWindow = initialWindow;
+        this.maxWindow = maxWindow;
+        this.maxBytes = maxBytes;
+        this.policy = policy;
+        this.maxQueued = maxQueued;
+    }
+
+
+    /**
+     * Acquires room for a message in the window of one of its destinations. A message to several destinations acquires
+     * room in each window on its own, and is sent to each destination once there is room for it there, so a slow
+     * destination holds up only its own messages, and a message never holds room in one window while it waits for
+     * another. The room must be given back with {@link #onAck}, or {@link #release} if the message is not acked.
+     * <p>
+     * A held message may be given up on by completing the returned future exceptionally, for instance once the message
+     * expires. It then no longer holds its place in the queue, and any room it was just given is given back.
+     *
+     * @param destination the destination
+     * @param bytes       the size of the message
+     * @return a future that completes once the message fits the window of the destination, or completes exceptionally
+     * with a {@link FlowControlException} if it was refused, in which case no room is held
+     */
+    public CompletableFuture<Void> acquire(@NonNull String destination, int bytes)
+    {
+        Window window = window(destination);
+        Waiter waiter;
+
+        synchronized (this)
+        {
+            if (window.waiters.isEmpty() && window.fits(bytes))
+            {
+                window.occupy(bytes);
+                return CompletableFuture.completedFuture(null);
+            }
+
+            if (policy != FlowControlPolicy.QUEUE || window.waiters.size() >= maxQueued)
+            {
+                return CompletableFuture.failedFuture(new FlowControlException("In-flight window of " + destination + " is full"));
+            }
+
+            waiter = new Waiter(window, bytes);
+            window.waiters.add(waiter);
+        }
+
+        waiter.future.whenComplete((ignored, ex) ->
+        {
+            if (ex != null)
+            {
+                abandon(waiter);
+            }
+        });
+
+        return waiter.future;
+    }
+
+
+    /**
+     * Takes room for a message in the windows of its destinations regardless of their size, for messages that are
+     * already in flight, such as messages restored from the ack journal.
+     *
+     * @param destinations the destinations of the message
+     * @param bytes        the size of the message
+     */
+    public void occupy(@NonNull List<String> destinations, int bytes)
+    {
+        List<Window> targets = windows(destinations);
+
+        synchronized (this)
+        {
+            for (Window window : targets)
+            {
+                window.occupy(bytes);
+            }
+        }
+    }
+
+
+    /**
+     * Gives back the room of a message that a destination acknowledged, and grows the window of the destination.
+     *
+     * @param destination the destination that acknowledged the message
+     * @param bytes       the size of the message
+     */
+    public void onAck(@NonNull String destination, int bytes)
+    {
+        release(List.of(window(destination)), bytes, true);
+    }
+
+
+    /**
+     * Records that a destination did not acknowledge a message within its retransmission timeout, which halves the
+     * window of the destination unless the window was already decreased after the message was sent.
+     *
+     * @param destination the destination that did not acknowledge the message in time
+     * @param sentNanos   the {@link System#nanoTime()} at which the message was first sent
+     */
+    public void onTimeout(@NonNull String destination, long sentNanos)
+    {
+        Window window = window(destination);
+
+        synchronized (this)
+        {
+            window.decrease(sentNanos);
+        }
+    }
+
+
+    /**
+     * Gives back the room of a message that will not be acknowledged by the given destinations,
+     * because sending it failed or retransmission gave up, without changing their windows.
+     *
+     * @param destinations the destinations of the message
+     * @param bytes        the size of the message
+     */
+    public void release(@NonNull List<String> destinations, int bytes)
+    {
+        release(windows(destinations), bytes, false);
+    }
+
+
+    /**
+     * Gets the number of messages a destination may currently have in flight.
+     *
+     * @param destination the destination
+     * @return the window of the destination
+     */
+    public int getWindow(@NonNull String destination)
+    {
+        Window window = window(destination);
+
+        synchronized (this)
+        {
+            return (int) window.size;
+        }
+    }
+
+
+    /**
+     * Gets the number of messages a destination currently has in flight.
+     *
+     * @param destination the destination
+     * @return the number of messages in flight
+     */
+    public int getInFlight(@NonNull String destination)
+    {
+        Window window = window(destination);
+
+        synchronized (this)
+        {
+            return window.inFlight;
+        }
+    }
+
+
+    private Window window(String destination)
+    {
+        return windows.computeIfAbsent(destination, key -> new Window());
+    }
+
+
+    /**
+     * Gets the windows of the distinct destinations of a message, so a repeated destination takes and gives back
+     * room once.
+     */
+    private List<Window> windows(List<String> destinations)
+    {
+        List<Window> targets = new ArrayList<>(destinations.size());
+
+        for (String destination : new LinkedHashSet<>(destinations))
+        {
+            targets.add(window(destination));
+        }
+
+        return targets;
+    }
+
+
+    /**
+     * Gives back room in windows, and lets the held messages that now fit go, in order.
+     */
+    private void release(List<Window> targets, int bytes, boolean acknowledged)
+    {
+        synchronized (this)
+        {
+            for (Window window : targets)
+            {
+                window.release(bytes, acknowledged);
+                promote(window);
+            }
+        }
+
+        completeAdmitted();
+    }
+
+
+    /**
+     * Drops a held message that was given up on from the queue of its window, which may let the messages behind it go.
+     */
+    private void abandon(Waiter waiter)
+    {
+        synchronized (this)
+        {
+            if (!waiter.window.waiters.remove(waiter))
+            {
+                return;
+            }
+
+            promote(waiter.window);
+        }
+
+        completeAdmitted();
+    }
+
+
+    /**
+     * Admits the held messages at the head of the queue of a window while they fit.
+     */
+    private void promote(Window window)
+    {
+        Waiter head;
+
+        while ((head = window.waiters.peek()) != null && window.fits(head.bytes))
+        {
+            window.waiters.poll();
+            window.occupy(head.bytes);
+            admitted.add(head);
+        }
+    }
+
+
+    /**
+     * Queues a run that completes the admitted messages on the default async executor, so their sends do not run on
+     * the releasing thread, unless one is queued or running already.
+     */
+    private void completeAdmitted()
+    {
+        synchronized (this)
+        {
+            if (completing || admitted.isEmpty())
+            {
+                return;
+            }
+
+            completing = true;
+        }
+
+        CompletableFuture.runAsync(this::drainAdmitted);
+    }
+
+
+    /**
+     * Completes the admitted messages one after the other, in the order they were admitted, so the sends that depend
+     * on them reach the agent in that order. Messages admitted while this runs are completed by it as well.
+     * A message that was given up on after it was admitted gives its room back.
+     */
+    private void drainAdmitted()
+    {
+        while (true)
+        {
+            Waiter waiter;
+
+            synchronized (this)
+            {
+                waiter = admitted.poll();
+
+                if (waiter == null)
+                {
+                    completing = false;
+                    return;
+                }
+            }
+
+            if (!waiter.future.complete(null))
+            {
+                release(List.of(waiter.window), waiter.bytes, false);
+            }
+        }
+    }
+
+
+    /**
+     * The window of one destination. Guarded by the lock of the flow controller.
+     */
+    private class Window
+    {
+        private final Queue<Waiter> waiters = new ArrayDeque<>();
+        private double size = initialWindow;
+        private int inFlight;
+        private long inFlightBytes;
+        private long lastDecreaseNanos = System.nanoTime();
+
+
+        private void occupy(int bytes)
+        {
+            inFlight++;
+            inFlightBytes += bytes;
+        }
+
+
+        private void release(int bytes, boolean acknowledged)
+        {
+            inFlight = Math.max(0, inFlight - 1);
+            inFlightBytes = Math.max(0, inFlightBytes - bytes);
+
+            if (acknowledged)
+            {
+                size = Math.min(maxWindow, size + 1 / size);
+            }
+        }
+
+
+        private void decrease(long sentNanos)
+        {
+            if (sentNanos - lastDecreaseNanos >= 0)
+            {
+                size = Math.max(1, size / 2);
+                lastDecreaseNanos = System.nanoTime();
+            }
+        }
+
+
+        private boolean fits(int bytes)
+        {
+            return inFlight < (int) size && (inFlight == 0 || inFlightBytes + bytes <= maxBytes);
+        }
+    }
+
+
+    /**
+     * A message held until it fits the window of a destination.
+     */
+    private static class Waiter
+    {
+        private final Window window;
+        private final int bytes;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+
+        private Waiter(Window window, int bytes)
+        {
+            this.window = window;
+            this.bytes = bytes;
+        }
+    }
+}
@@ -8,6 +8,7 @@ import lombok.NonNull;
 
 import java.time.Instant;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 
 /**
@@ -26,5 +27,17 @@ public interface IAckTracker
 
     void acknowledge(@NonNull String messageId, @NonNull String destination);
 
+    void cancel(@NonNull String messageId);
+
+    List<CompletableFuture<Void>> acquireWindows(@NonNull List<String> destinations, int bytes);
+
+    void hold(@NonNull String messageId, @NonNull String destination, @NonNull CompletableFuture<Void> window);
+
+    boolean admit(@NonNull String messageId, @NonNull String destination);
+
+    void releaseWindow(@NonNull List<String> destinations, int bytes);
+
     void sendAck(@NonNull String messageId, @NonNull String destination);
+
+    Map<String, RttStatistics> getRttStatistics();
 }
\ No newline at end of file
@@ -0,0 +1,188 @@
+package SMMPClient.Acks;
+
+import lombok.NonNull;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Estimates the round trip time from sending a message to receiving its ack per destination, and derives the
+ * retransmission timeout of the destination from it, as TCP does (RFC 6298).
+ * <p>
+ * Each sample updates a smoothed round trip time (SRTT) and its mean deviation (RTTVAR), with gains of 1/8 and 1/4,
+ * and the timeout is SRTT + 4 * RTTVAR, bounded by a minimum and 60 seconds. A destination without samples uses the
+ * initial timeout. Each retransmission timeout of a destination doubles its timeout until the next sample, so a
+ * destination that is unreachable is not retransmitted to at its last measured pace. Callers must only sample acks of
+ * messages that were not retransmitted, as it is unknown which transmission such an ack answers (Karn's algorithm).
+ */
+public class RttEstimator
+{
+    private static final long MAX_TIMEOUT_MICROS = 60_000_000;
+    private static final int MAX_BACKOFF_SHIFT = 10;
+
+    private final Map<String, PeerRtt> peers = new ConcurrentHashMap<>();
+    private final long initialTimeoutMicros;
+    private final long minTimeoutMicros;
+
+
+    /**
+     * Constructs a new {@link RttEstimator} with an initial timeout of 5 seconds and a minimum timeout of 200 ms.
+     */
+    public RttEstimator()
+    {
+        this(5000, 200);
+    }
+
+
+    /**
+     * Constructs a new {@link RttEstimator}.
+     *
+     * @param initialTimeoutMillis the timeout of a destination without samples
+     * @param minTimeoutMillis     the lower bound of the timeout of a destination
+     */
+    public RttEstimator(long initialTimeoutMillis, long minTimeoutMillis)
+    {
+        if (minTimeoutMillis < 1 || initialTimeoutMillis < minTimeoutMillis)
+        {
+            throw new IllegalArgumentException("Timeouts must be at least 1 ms, and the initial timeout at least the minimum timeout");
+        }
+
+        this.initialTimeoutMicros = Math.min(initialTimeoutMillis * 1000, MAX_TIMEOUT_MICROS);
+        this.minTimeoutMicros = Math.min(minTimeoutMillis * 1000, MAX_TIMEOUT_MICROS);
+    }
+
+
+    /**
+     * Records the time from sending a message to a destination until its ack was received.
+     *
+     * @param destination the destination that acknowledged the message
+     * @param rttNanos    the round trip time in nanoseconds
+     */
+    public void onSample(@NonNull String destination, long rttNanos)
+    {
+        peers.computeIfAbsent(destination, key -> new PeerRtt()).sample(Math.max(1, rttNanos / 1000));
+    }
+
+
+    /**
+     * Records that a message to a destination was not acknowledged within its timeout, which backs the timeout off.
+     *
+     * @param destination the destination that did not acknowledge the message in time
+     */
+    public void onTimeout(@NonNull String destination)
+    {
+        peers.computeIfAbsent(destination, key -> new PeerRtt()).timeout();
+    }
+
+
+    /**
+     * Gets the retransmission timeout of a destination.
+     *
+     * @param destination the destination
+     * @return the timeout in milliseconds
+     */
+    public long getTimeoutMillis(@NonNull String destination)
+    {
+        PeerRtt peer = peers.get(destination);
+        return (peer == null ? initialTimeoutMicros : peer.timeoutMicros()) / 1000;
+    }
+
+
+    /**
+     * Gets the retransmission timeout of a message to several destinations, the longest timeout among them.
+     *
+     * @param destinations the destinations
+     * @return the timeout in milliseconds
+     */
+    public long getTimeoutMillis(@NonNull List<String> destinations)
+    {
+        long timeout = minTimeoutMicros / 1000;
+
+        for (String destination : destinations)
+        {
+            timeout = Math.max(timeout, getTimeoutMillis(destination));
+        }
+
+        return timeout;
+    }
+
+
+    /**
+     * Gets the round trip statistics of a destination.
+     *
+     * @param destination the destination
+     * @return the statistics, or null if nothing has been recorded for the destination
+     */
+    public RttStatistics getStatistics(@NonNull String destination)
+    {
+        PeerRtt peer = peers.get(destination);
+        return peer == null ? null : peer.statistics(destination);
+    }
+
+
+    /**
+     * Gets the round trip statistics of every destination something has been recorded for.
+     *
+     * @return the statistics by destination
+     */
+    public Map<String, RttStatistics> getStatistics()
+    {
+        Map<String, RttStatistics> statistics = new HashMap<>();
+        peers.forEach((destination, peer) -> statistics.put(destination, peer.statistics(destination)));
+        return statistics;
+    }
+
+
+    /**
+     * The estimate of one destination, in microseconds.
+     */
+    private class PeerRtt
+    {
+        private long srtt;
+        private long rttvar;
+        private long samples;
+        private long timeouts;
+        private int backoffShift;
+
+
+        private synchronized void sample(long rtt)
+        {
+            if (samples == 0)
+            {
+                srtt = rtt;
+                rttvar = rtt / 2;
+            }
+
+            else
+            {
+                rttvar += (Math.abs(srtt - rtt) - rttvar) / 4;
+                srtt += (rtt - srtt) / 8;
+            }
+
+            samples++;
+            backoffShift = 0;
+        }
+
+
+        private synchronized void timeout()
+        {
+            timeouts++;
+            backoffShift = Math.min(backoffShift + 1, MAX_BACKOFF_SHIFT);
+        }
+
+
+        private synchronized long timeoutMicros()
+        {
+            long base = samples == 0 ? initialTimeoutMicros : Math.max(minTimeoutMicros, srtt + 4 * rttvar);
+            return Math.min(MAX_TIMEOUT_MICROS, base << backoffShift);
+        }
+
+
+        private synchronized RttStatistics statistics(String destination)
+        {
+            return new RttStatistics(destination, samples == 0 ? 0 : srtt / 1000.0, samples == 0 ? 0 : rttvar / 1000.0, timeoutMicros() / 1000, samples, timeouts);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package SMMPClient.Acks;
+
+import lombok.Getter;
+
+/**
+ * An immutable snapshot of the round trip estimate of a destination, see {@link RttEstimator}.
+ */
+@Getter
+public class RttStatistics
+{
+    private final String destination;
+    private final double smoothedRttMillis;
+    private final double rttVariationMillis;
+    private final long retransmitTimeoutMillis;
+    private final long samples;
+    private final long timeouts;
+
+
+    /**
+     * Constructs a new {@link RttStatistics}.
+     *
+     * @param destination             the destination
+     * @param smoothedRttMillis       the smoothed round trip time in milliseconds, 0 without samples
+     * @param rttVariationMillis      the mean deviation of the round trip time in milliseconds, 0 without samples
+     * @param retransmitTimeoutMillis the current retransmission timeout in milliseconds
+     * @param samples                 the number of round trip times sampled
+     * @param timeouts                the number of retransmission timeouts
+     */
+    public RttStatistics(String destination, double smoothedRttMillis, double rttVariationMillis, long retransmitTimeoutMillis, long samples, long timeouts)
+    {
+        this.destination = destination;
+        this.smoothedRttMillis = smoothedRttMillis;
+        this.rttVariationMillis = rttVariationMillis;
+        this.retransmitTimeoutMillis = retransmitTimeoutMillis;
+        this.samples = samples;
+        this.timeouts = timeouts;
+    }
+
+
+    @Override
+    public String toString()
+    {
+        return "RttStatistics{destination=" + destination + ", smoothedRttMillis=" + smoothedRttMillis + ", rttVariationMillis=" + rttVariationMillis
+                + ", retransmitTimeoutMillis=" + retransmitTimeoutMillis + ", samples=" + samples + ", timeouts=" + timeouts + "}";
+    }
+}
@@ -3,39 +3,57 @@ package SMMPClient.Adapters;
 
 import Agent.Agent.AnonymousAdapter;
 import Agent.Connections.AnonymousConnection;
+import Agent.Utils.ProtobufUtils;
+import Agent.Utils.WorkerPoolStatistics;
 import SMMPClient.Connections.SMMPAnonConnection;
+import SMMPClient.Crypto.CertificateInterner;
+import SMMPClient.Crypto.CompletionSequencer;
+import SMMPClient.Crypto.CryptoPipeline;
 import SMMPClient.Crypto.CryptoUtils;
+import SMMPClient.Crypto.DecodedCertificate;
 import SMMPClient.Crypto.IKeyringManager;
+import SMMPClient.Dedup.DuplicateFilter;
+import SMMPClient.Dedup.DuplicateFilterStatistics;
 import SMMPClient.Exceptions.CertificateValidationException;
 import SMMPClient.Exceptions.MissingCertificateException;
 import SMMPClient.Exceptions.SignatureVerificationException;
 import SMMPClient.MessageFormats.MessageType;
 import SMMPClient.MessageFormats.ProtocolMessage;
 import SMMPClient.MessageFormats.SMMPMessage;
+import SMMPClient.SMMPClient.SMMPConfiguration;
+import com.google.protobuf.ByteString;
 import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.UnsafeByteOperations;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
 
-import java.io.ByteArrayInputStream;
 import java.security.KeyStoreException;
 import java.security.cert.CertificateException;
-import java.security.cert.CertificateFactory;
-import java.security.cert.X509Certificate;
 import java.time.Instant;
-import java.util.Set;
-import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * A SMMP specific implementation of the anonymous adapter interface provided by the agent.
  * This class is responsible for handling the messages received from the agent and passing them to the SMMP adapter
  * after they have been validated and verified.
+ * <p>
+ * Messages are parsed on the thread that received them, and their certificates and signatures are verified on a
+ * {@link CryptoPipeline}, so a burst of inbound messages is verified in parallel without holding up the socket.
+ * Verified messages are then passed to the SMMP adapter one at a time, in the order they were received, on the
+ * completion executor of the {@link SMMPConfiguration}, so a slow handler does not hold up verification.
  */
 @Slf4j
 public class AnonymousAdapterImpl implements AnonymousAdapter
 {
-    private final Set<String> deliveredToApplication = new ConcurrentSkipListSet<>();
+    private static final int CERTIFICATE_CACHE_SIZE = 256;
+    private static final Runnable IGNORE = () -> { };
+
+    private final DuplicateFilter deliveredToApplication;
     private final IKeyringManager keyringManager;
     private final SMMPAnonAdapter adapter;
+    private final CertificateInterner certificateInterner = new CertificateInterner(CERTIFICATE_CACHE_SIZE);
+    private final CryptoPipeline cryptoPipeline;
+    private final CompletionSequencer deliveries;
 
 
     /**
@@ -45,9 +63,61 @@ public class AnonymousAdapterImpl implements AnonymousAdapter
      * @param adapter        The {@link SMMPAnonAdapter} that will receive the callbacks.
      */
     public AnonymousAdapterImpl(@NonNull IKeyringManager keyringManager, @NonNull SMMPAnonAdapter adapter)
+    {
+        this(keyringManager, adapter, new SMMPConfiguration());
+    }
+
+
+    /**
+     * Creates a new instance of the {@link AnonymousAdapterImpl} an SMMP specific implementation of {@link AnonymousAdapter}
+     *
+     * @param keyringManager The {@link IKeyringManager} manager used to verify the signatures of the messages
+     * @param adapter        The {@link SMMPAnonAdapter} that will receive the callbacks.
+     * @param configuration  The {@link SMMPConfiguration} with the tuning options of the SMMP client
+     */
+    public AnonymousAdapterImpl(@NonNull IKeyringManager keyringManager, @NonNull SMMPAnonAdapter adapter, @NonNull SMMPConfiguration configuration)
+    {
+        this(keyringManager, adapter, configuration, new CryptoPipeline(configuration.getCryptoThreads(), configuration.getCryptoQueueCapacity(), configuration.getCryptoRejectionPolicy()));
+    }
+
+
+    /**
+     * Creates a new instance of the {@link AnonymousAdapterImpl} an SMMP specific implementation of {@link AnonymousAdapter}
+     *
+     * @param keyringManager The {@link IKeyringManager} manager used to verify the signatures of the messages
+     * @param adapter        The {@link SMMPAnonAdapter} that will receive the callbacks.
+     * @param configuration  The {@link SMMPConfiguration} with the tuning options of the SMMP client
+     * @param cryptoPipeline The {@link CryptoPipeline} that verifies the messages
+     */
+    public AnonymousAdapterImpl(@NonNull IKeyringManager keyringManager, @NonNull SMMPAnonAdapter adapter, @NonNull SMMPConfiguration configuration, @NonNull CryptoPipeline cryptoPipeline)
     {
         this.keyringManager = keyringManager;
         this.adapter = adapter;
+        this.cryptoPipeline = cryptoPipeline;
+        this.deliveries = new CompletionSequencer(configuration.getCompletionExecutor());
+        this.deliveredToApplication = new DuplicateFilter(configuration.getDuplicateHorizonMillis(), configuration.getDuplicateFilterMaxEntries(), configuration.isDuplicateBloomFilter());
+    }
+
+
+    /**
+     * Gets the statistics of the filter that keeps messages received more than once from being delivered to the application twice.
+     *
+     * @return the statistics of the duplicate filter
+     */
+    public DuplicateFilterStatistics getDuplicateFilterStatistics()
+    {
+        return deliveredToApplication.getStatistics();
+    }
+
+
+    /**
+     * Gets the queue depth, busy threads, task latency and rejections of the pipeline that verifies the received messages.
+     *
+     * @return the crypto pipeline statistics
+     */
+    public WorkerPoolStatistics getCryptoStatistics()
+    {
+        return cryptoPipeline.getStatistics();
     }
 
 
@@ -69,7 +139,8 @@ public class AnonymousAdapterImpl implements AnonymousAdapter
 
     /**
      * Called once the agent has received a message from the edge router (subject cast message).
-     * Passes for further processing if the message is a SMMP message.
+     * Wraps the message content without copying it and passes it on to
+     * {@link #onSubjectCastMessage(String, String, String, Instant, ByteString)}.
      *
      * @param messageId the ID of the message
      * @param sender    the sender of the message
@@ -79,12 +150,29 @@ public class AnonymousAdapterImpl implements AnonymousAdapter
      */
     @Override
     public void onSubjectCastMessage(String messageId, String sender, String subject, Instant expires, byte[] message)
+    {
+        onSubjectCastMessage(messageId, sender, subject, expires, UnsafeByteOperations.unsafeWrap(message));
+    }
+
+
+    /**
+     * Called once the agent has received a message from the edge router (subject cast message).
+     * Parses the message in place and passes it for further processing if the message is a SMMP message.
+     *
+     * @param messageId the ID of the message
+     * @param sender    the sender of the message
+     * @param subject   the subject of the message
+     * @param expires   the expiration time of the message
+     * @param message   the message content
+     */
+    @Override
+    public void onSubjectCastMessage(String messageId, String sender, String subject, Instant expires, ByteString message)
     {
         try
         {
             log.debug("Received subject cast MMTP-Message={} from {} with subject {}", messageId, sender, subject);
 
-            ProtocolMessage protocolMessage = ProtocolMessage.parseFrom(message);
+            ProtocolMessage protocolMessage = ProtocolMessage.parser().parseFrom(ProtobufUtils.aliasingInput(message));
 
             if (protocolMessage.getType() == MessageType.MESSAGE)
             {
@@ -97,7 +185,7 @@ public class AnonymousAdapterImpl implements AnonymousAdapter
                 log.warn("MMTP-Message={} contain a a message with type ({}). Ignoring message, only {} is supported over subject cast", messageId, protocolMessage.getType(), MessageType.MESSAGE);
             }
         }
-        catch (InvalidProtocolBufferException | MissingCertificateException | CertificateValidationException | CertificateException | SignatureVerificationException | KeyStoreException ex)
+        catch (InvalidProtocolBufferException | CertificateException ex)
         {
             log.warn("Error while processing subject cast MMTP-Message={} from sender {}", messageId, sender, ex);
         }
@@ -134,8 +222,8 @@ public class AnonymousAdapterImpl implements AnonymousAdapter
 
 
     /**
-     * Processes a SMMP message by verifying the signature and passing it to the SMMP adapter if everything is valid.
-     * Calls the {@link SMMPAnonAdapter} if the message is valid and trustworthy.
+     * Processes a SMMP message by parsing it, then verifying the certificate and the signature on the crypto pipeline.
+     * Calls the {@link SMMPAnonAdapter} in order once the signature has been verified if the message is valid and trustworthy.
      *
      * @param protocolMessage The message to process
      * @param sender          The sender of the message
@@ -143,18 +231,14 @@ public class AnonymousAdapterImpl implements AnonymousAdapter
      * @param expires         The expiration time of the message
      * @throws InvalidProtocolBufferException If the message is not a valid protocol message
      * @throws CertificateException           If the certificate is not a valid X.509 certificate
-     * @throws KeyStoreException              If the key store is not initialized
-     * @throws MissingCertificateException    If the certificate is not found in the key store
-     * @throws CertificateValidationException If the certificate is not valid
-     * @throws SignatureVerificationException If the signature is not valid
      */
-    private void processMessage(ProtocolMessage protocolMessage, String sender, String subject, Instant expires) throws InvalidProtocolBufferException, CertificateException, KeyStoreException, MissingCertificateException, CertificateValidationException, SignatureVerificationException
+    private void processMessage(ProtocolMessage protocolMessage, String sender, String subject, Instant expires) throws InvalidProtocolBufferException, CertificateException
     {
-        SMMPMessage smmpMessage = SMMPMessage.parseFrom(protocolMessage.getContent());
+        SMMPMessage smmpMessage = SMMPMessage.parser().parseFrom(ProtobufUtils.aliasingInput(protocolMessage.getContent()));
         String messageId = smmpMessage.getMessageID();
         byte[] signature = smmpMessage.getSignature().toByteArray();
         byte[] content = smmpMessage.getPayload().toByteArray();
-        X509Certificate certificate = getCertificate(smmpMessage.getCertificate().toByteArray());
+        DecodedCertificate certificate = certificateInterner.intern(smmpMessage.getCertificate());
 
         if (smmpMessage.getIsEncrypted())
         {
@@ -162,56 +246,98 @@ public class AnonymousAdapterImpl implements AnonymousAdapter
             return;
         }
 
-        if (!verifyCertificate(certificate, sender))
+        CompletableFuture<Runnable> verified = cryptoPipeline.submit(() ->
         {
-            log.warn("Received a message subject cast SMMP-message={} from an untrusted sender: {} with subject {}. Ignoring message", messageId, sender, subject);
-            return;
-        }
+            if (!verifyCertificate(certificate, sender))
+            {
+                log.warn("Received a message subject cast SMMP-message={} from an untrusted sender: {} with subject {}. Ignoring message", messageId, sender, subject);
+                return IGNORE;
+            }
 
-        if (!CryptoUtils.verifySignature(keyringManager.getPublicKey(sender), content, signature))
+            boolean valid = verifySignature(sender, content, signature);
+            return () -> onMessageVerified(messageId, sender, subject, expires, content, valid);
+        });
+
+        deliveries.thenApply(verified, handling ->
+        {
+            handling.run();
+            return null;
+        }).exceptionally(ex ->
+        {
+            log.error("Error while processing subject cast SMMP-message={}", messageId, ex);
+            return null;
+        });
+    }
+
+
+    /**
+     * Called once the signature of a SMMP message has been verified. Passes the message to the SMMP adapter
+     * if the signature is valid and the message has not already been delivered.
+     *
+     * @param messageId The ID of the message
+     * @param sender    The sender of the message
+     * @param subject   The subject of the message
+     * @param expires   The expiration time of the message
+     * @param content   The content of the message
+     * @param valid     Whether the signature is valid
+     */
+    private void onMessageVerified(String messageId, String sender, String subject, Instant expires, byte[] content, boolean valid)
+    {
+        if (!valid)
         {
             log.warn("Failed to verify the signature of subject cast SMMP-message={} from sender {} with subject {}. Ignoring the message.", messageId, sender, subject);
             return;
         }
 
-        if (deliveredToApplication.contains(messageId))
+        if (!deliveredToApplication.add(messageId, expires))
         {
             log.warn("Message already delivered to application, likely a retransmit.");
             return;
         }
 
         log.debug("SMMP-message={} valid, passing to application", messageId);
-        deliveredToApplication.add(messageId);
         adapter.onSubjectCastMessage(messageId, sender, subject, expires, content);
     }
 
 
     /**
-     * Converts a byte array to an X.509 certificate
+     * Verifies the certificate by checking if it is trusted and if the public key matches the sender
      *
-     * @param certificateBytes The byte array to convert
-     * @return The X.509 certificate
-     * @throws CertificateException If the certificate is not a valid X.509 certificate
+     * @param certificate The certificate to verify
+     * @param sender      The sender of the message
+     * @return True if the certificate is trusted and the public key matches the sender, false otherwise
+     * @throws KeyStoreException              If the key store is not initialized
+     * @throws MissingCertificateException    If the certificate is not found in the key store
+     * @throws CertificateValidationException If the certificate is not valid
      */
-    private X509Certificate getCertificate(byte[] certificateBytes) throws CertificateException
+    private boolean verifyCertificate(DecodedCertificate certificate, String sender) throws KeyStoreException, MissingCertificateException, CertificateValidationException
     {
-        CertificateFactory certificateFactory = CertificateFactory.getInstance("X.509");
-        return (X509Certificate) certificateFactory.generateCertificate(new ByteArrayInputStream(certificateBytes));
+        return keyringManager.verifyCertificate(certificate.getCertificate()) && certificate.getPublicKey().equals(keyringManager.getPublicKey(sender));
     }
 
 
     /**
-     * Verifies the certificate by checking if it is trusted and if the public key matches the sender
+     * Verifies a signature of the sender.
      *
-     * @param certificate The certificate to verify
-     * @param sender      The sender of the message
-     * @return True if the certificate is trusted and the public key matches the sender, false otherwise
+     * @param sender    The sender of the message
+     * @param data      The signed data
+     * @param signature The signature
+     * @return True if the signature is valid, false if it is invalid or could not be verified
      * @throws KeyStoreException              If the key store is not initialized
      * @throws MissingCertificateException    If the certificate is not found in the key store
      * @throws CertificateValidationException If the certificate is not valid
      */
-    private boolean verifyCertificate(X509Certificate certificate, String sender) throws KeyStoreException, MissingCertificateException, CertificateValidationException
+    private boolean verifySignature(String sender, byte[] data, byte[] signature) throws KeyStoreException, MissingCertificateException, CertificateValidationException
     {
-        return keyringManager.verifyCertificate(certificate) && certificate.getPublicKey().equals(keyringManager.getPublicKey(sender));
+        try
+        {
+            return CryptoUtils.verifySignature(keyringManager.getPublicKey(sender), data, signature);
+        }
+
+        catch (SignatureVerificationException ex)
+        {
+            log.debug("Failed to verify signature", ex);
+            return false;
+        }
     }
 }
\ No newline at end of file
@@ -3,10 +3,21 @@ package SMMPClient.Adapters;
 import Agent.Agent.AuthenticatedAdapter;
 import Agent.Connections.AnonymousConnection;
 import Agent.Connections.AuthenticatedConnection;
+import Agent.Utils.ProtobufUtils;
+import Agent.Utils.WorkerPoolStatistics;
+import SMMPClient.Acks.AckJournal;
 import SMMPClient.Acks.AckTracker;
+import SMMPClient.Acks.FlowController;
+import SMMPClient.Acks.RttEstimator;
 import SMMPClient.Connections.SMMPAuthConnection;
+import SMMPClient.Crypto.CertificateInterner;
+import SMMPClient.Crypto.CompletionSequencer;
+import SMMPClient.Crypto.CryptoPipeline;
 import SMMPClient.Crypto.CryptoUtils;
+import SMMPClient.Crypto.DecodedCertificate;
 import SMMPClient.Crypto.IKeyringManager;
+import SMMPClient.Dedup.DuplicateFilter;
+import SMMPClient.Dedup.DuplicateFilterStatistics;
 import SMMPClient.Exceptions.CertificateValidationException;
 import SMMPClient.Exceptions.DecryptionException;
 import SMMPClient.Exceptions.MissingCertificateException;
@@ -14,35 +25,50 @@ import SMMPClient.Exceptions.SignatureVerificationException;
 import SMMPClient.MessageFormats.MessageType;
 import SMMPClient.MessageFormats.ProtocolMessage;
 import SMMPClient.MessageFormats.SMMPAck;
+import SMMPClient.MessageFormats.SMMPBatchAck;
 import SMMPClient.MessageFormats.SMMPMessage;
+import SMMPClient.MessageFormats.SMMPUtils;
+import SMMPClient.SMMPClient.SMMPConfiguration;
+import com.google.protobuf.ByteString;
 import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.UnsafeByteOperations;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
+import net.maritimeconnectivity.pki.CertificateHandler;
 
-import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.security.KeyStoreException;
 import java.security.cert.CertificateException;
-import java.security.cert.CertificateFactory;
-import java.security.cert.X509Certificate;
-import java.security.interfaces.ECPublicKey;
 import java.time.Instant;
 import java.util.List;
-import java.util.Set;
-import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.Callable;
 
 
 /**
  * A SMMP specific implementation of the authenticated adapter interface provided by the agent.
  * This class is responsible for handling the messages received from the agent and passing them to the SMMP adapter
  * after they have been validated and verified.
+ * <p>
+ * Messages are parsed on the thread that received them, and their certificates and signatures are verified, and their
+ * payloads decrypted, on a {@link CryptoPipeline}, so a burst of inbound messages is verified in parallel without
+ * holding up the socket. Verified messages and acks are then handled one at a time, in the order they were received,
+ * on the completion executor of the {@link SMMPConfiguration}, so the SMMP adapter sees the messages of the session in
+ * order, and a slow handler does not hold up the verification of the messages behind it.
  */
 @Slf4j
 public class AuthenticatedAdapterImpl implements AuthenticatedAdapter
 {
-    private final Set<String> deliveredToApplication = new ConcurrentSkipListSet<>();
+    private static final int CERTIFICATE_CACHE_SIZE = 256;
+    private static final Runnable IGNORE = () -> { };
+
+    private final DuplicateFilter deliveredToApplication;
     private final IKeyringManager keyringManager;
     private final SMMPAuthAdapter adapter;
-    private AckTracker ackTracker;
+    private final SMMPConfiguration configuration;
+    private final CertificateInterner certificateInterner = new CertificateInterner(CERTIFICATE_CACHE_SIZE);
+    private final CryptoPipeline cryptoPipeline;
+    private final CompletionSequencer deliveries;
+    private volatile AckTracker ackTracker;
 
 
     /**
@@ -52,18 +78,88 @@ public class AuthenticatedAdapterImpl implements AuthenticatedAdapter
      * @param adapter        The {@link SMMPAuthAdapter} that will receive the callbacks.
      */
     public AuthenticatedAdapterImpl(@NonNull IKeyringManager keyringManager, @NonNull SMMPAuthAdapter adapter)
+    {
+        this(keyringManager, adapter, new SMMPConfiguration());
+    }
+
+
+    /**
+     * Creates a new instance of the {@link AuthenticatedAdapterImpl} an SMMP specific implementation of {@link AuthenticatedAdapter}
+     *
+     * @param keyringManager The {@link IKeyringManager} manager used to verify the signatures of the messages
+     * @param adapter        The {@link SMMPAuthAdapter} that will receive the callbacks.
+     * @param configuration  The {@link SMMPConfiguration} with the tuning options of the SMMP client
+     */
+    public AuthenticatedAdapterImpl(@NonNull IKeyringManager keyringManager, @NonNull SMMPAuthAdapter adapter, @NonNull SMMPConfiguration configuration)
+    {
+        this(keyringManager, adapter, configuration, new CryptoPipeline(configuration.getCryptoThreads(), configuration.getCryptoQueueCapacity(), configuration.getCryptoRejectionPolicy()));
+    }
+
+
+    /**
+     * Creates a new instance of the {@link AuthenticatedAdapterImpl} an SMMP specific implementation of {@link AuthenticatedAdapter}
+     *
+     * @param keyringManager The {@link IKeyringManager} manager used to verify the signatures of the messages
+     * @param adapter        The {@link SMMPAuthAdapter} that will receive the callbacks.
+     * @param configuration  The {@link SMMPConfiguration} with the tuning options of the SMMP client
+     * @param cryptoPipeline The {@link CryptoPipeline} that verifies, decrypts, encrypts and signs the messages
+     */
+    public AuthenticatedAdapterImpl(@NonNull IKeyringManager keyringManager, @NonNull SMMPAuthAdapter adapter, @NonNull SMMPConfiguration configuration, @NonNull CryptoPipeline cryptoPipeline)
     {
         this.keyringManager = keyringManager;
         this.adapter = adapter;
+        this.configuration = configuration;
+        this.cryptoPipeline = cryptoPipeline;
+        this.deliveries = new CompletionSequencer(configuration.getCompletionExecutor());
+        this.deliveredToApplication = new DuplicateFilter(configuration.getDuplicateHorizonMillis(), configuration.getDuplicateFilterMaxEntries(), configuration.isDuplicateBloomFilter());
+    }
+
+
+    /**
+     * Gets the statistics of the filter that keeps retransmitted messages from being delivered to the application twice.
+     *
+     * @return the statistics of the duplicate filter
+     */
+    public DuplicateFilterStatistics getDuplicateFilterStatistics()
+    {
+        return deliveredToApplication.getStatistics();
     }
 
 
+    /**
+     * Gets the queue depth, busy threads, task latency and rejections of the pipeline that verifies and decrypts the
+     * received messages, and signs and encrypts the messages sent.
+     *
+     * @return the crypto pipeline statistics
+     */
+    public WorkerPoolStatistics getCryptoStatistics()
+    {
+        return cryptoPipeline.getStatistics();
+    }
+
+
+    /**
+     * Closes the ack tracker of this adapter, if it has connected, see {@link AckTracker#close()}. The messages still
+     * waiting for acks stay in the ack journal, if one is configured, for the next adapter of the same MRN to restore.
+     * Should be called once the connection is closed, as messages requiring acks can no longer be sent afterwards.
+     */
+    public void close()
+    {
+        AckTracker tracker = ackTracker;
+
+        if (tracker != null)
+        {
+            tracker.close();
+        }
+    }
+
 
     /**
      * Called when the agent has successfully connected to the edge router in anonymous mode.
      * Wraps the connection in a SMMP specific connection and passes it to the SMMP adapter.
      * <p>
      * Calls the {@link SMMPAuthAdapter} with a {@link SMMPClient.Connections.ISMMPAuthConnection} as a argument.
+     * The ack tracker is kept across reconnects, so messages still waiting for acks are retransmitted with the new connection.
      *
      * @param connection The {@link AnonymousConnection} that was established.
      */
@@ -71,14 +167,59 @@ public class AuthenticatedAdapterImpl implements AuthenticatedAdapter
     public void onConnect(AuthenticatedConnection connection)
     {
         log.info("Connected to edge router in authenticated mode");
-        this.ackTracker = new AckTracker(connection, keyringManager.getMyCertificate(), keyringManager.getMyPrivateKey());
-        adapter.onConnect(new SMMPAuthConnection(connection, keyringManager, ackTracker));
+
+        if (ackTracker == null)
+        {
+            ackTracker = createAckTracker(connection);
+            ackTracker.setAckBatching(configuration.getAckDelayMillis(), configuration.getMaxAcksPerBatch());
+        }
+
+        else
+        {
+            ackTracker.setConnection(connection);
+        }
+
+        adapter.onConnect(new SMMPAuthConnection(connection, keyringManager, ackTracker, cryptoPipeline, configuration.getCompletionExecutor()));
+    }
+
+
+    /**
+     * Creates the ack tracker, journaling the messages waiting for acks if an ack journal directory is configured.
+     *
+     * @param connection the connection to send and retransmit with
+     * @return the ack tracker
+     */
+    private AckTracker createAckTracker(AuthenticatedConnection connection)
+    {
+        RttEstimator rttEstimator = new RttEstimator(configuration.getInitialRetransmitMillis(), configuration.getMinRetransmitMillis());
+        FlowController flowController = new FlowController(configuration.getInitialWindow(), configuration.getMaxInFlightMessages(),
+                configuration.getMaxInFlightBytes(), configuration.getFlowControlPolicy(), configuration.getMaxQueuedMessages());
+
+        if (configuration.getAckJournalDirectory() != null)
+        {
+            try
+            {
+                String mrn = CertificateHandler.getIdentityFromCert(keyringManager.getMyCertificate()).getMrn();
+                AckJournal journal = new AckJournal(AckJournal.directoryFor(configuration.getAckJournalDirectory(), mrn), configuration.getAckJournalSize(),
+                        configuration.getAckJournalCheckpointMillis());
+                return new AckTracker(connection, keyringManager.getMyCertificate(), keyringManager.getMyPrivateKey(), rttEstimator, flowController, journal,
+                        configuration.getRecoveredDeliveryHandler());
+            }
+
+            catch (IOException | IllegalArgumentException ex)
+            {
+                log.error("Failed to open the ack journal, tracking acks in memory only.", ex);
+            }
+        }
+
+        return new AckTracker(connection, keyringManager.getMyCertificate(), keyringManager.getMyPrivateKey(), rttEstimator, flowController);
     }
 
 
     /**
      * Called once the agent has received a message from the edge router (directed message).
-     * Parses the message and sends it for further processing if it is a SMMP message or an ack.
+     * Wraps the message content without copying it and passes it on to
+     * {@link #onDirectMessage(String, List, String, Instant, ByteString)}.
      *
      * @param messageId    the ID of the message
      * @param destinations the destinations of the message
@@ -88,11 +229,28 @@ public class AuthenticatedAdapterImpl implements AuthenticatedAdapter
      */
     @Override
     public void onDirectMessage(String messageId, List<String> destinations, String sender, Instant expires, byte[] message)
+    {
+        onDirectMessage(messageId, destinations, sender, expires, UnsafeByteOperations.unsafeWrap(message));
+    }
+
+
+    /**
+     * Called once the agent has received a message from the edge router (directed message).
+     * Parses the message in place and sends it for further processing if it is a SMMP message or an ack.
+     *
+     * @param messageId    the ID of the message
+     * @param destinations the destinations of the message
+     * @param sender       the sender of the message
+     * @param expires      the expiration time of the message
+     * @param message      the message content
+     */
+    @Override
+    public void onDirectMessage(String messageId, List<String> destinations, String sender, Instant expires, ByteString message)
     {
         try
         {
             log.debug("Received direct MMTP-Message={} from {} to destinations {}", messageId, sender, destinations);
-            ProtocolMessage protocolMessage = ProtocolMessage.parseFrom(message);
+            ProtocolMessage protocolMessage = ProtocolMessage.parser().parseFrom(ProtobufUtils.aliasingInput(message));
 
             if (protocolMessage.getType() == MessageType.MESSAGE)
             {
@@ -106,14 +264,19 @@ public class AuthenticatedAdapterImpl implements AuthenticatedAdapter
                 processAck(protocolMessage, sender);
             }
 
+            else if (protocolMessage.getType() == MessageType.BATCH_ACK)
+            {
+                log.debug("MMTP-Message={} contained a {}", messageId, MessageType.BATCH_ACK);
+                processBatchAck(protocolMessage, sender);
+            }
+
             else if (protocolMessage.getType() == MessageType.UNRECOGNIZED)
             {
                 log.warn("MMTP-Message={} contained a unrecognized message={}", messageId, MessageType.UNRECOGNIZED);
             }
         }
 
-        catch (InvalidProtocolBufferException | DecryptionException | MissingCertificateException | CertificateValidationException | CertificateException | SignatureVerificationException |
-               KeyStoreException ex)
+        catch (InvalidProtocolBufferException | CertificateException ex)
         {
             log.warn("Error while processing message={}", messageId, ex);
         }
@@ -122,7 +285,8 @@ public class AuthenticatedAdapterImpl implements AuthenticatedAdapter
 
     /**
      * Called once the agent has received a message from the edge router (subject cast message).
-     * Parses the message and sends it for further processing if it is a SMMP message.
+     * Wraps the message content without copying it and passes it on to
+     * {@link #onSubjectCastMessage(String, String, String, Instant, ByteString)}.
      *
      * @param messageId the ID of the message
      * @param sender    the sender of the message
@@ -132,11 +296,28 @@ public class AuthenticatedAdapterImpl implements AuthenticatedAdapter
      */
     @Override
     public void onSubjectCastMessage(String messageId, String sender, String subject, Instant expires, byte[] message)
+    {
+        onSubjectCastMessage(messageId, sender, subject, expires, UnsafeByteOperations.unsafeWrap(message));
+    }
+
+
+    /**
+     * Called once the agent has received a message from the edge router (subject cast message).
+     * Parses the message in place and sends it for further processing if it is a SMMP message.
+     *
+     * @param messageId the ID of the message
+     * @param sender    the sender of the message
+     * @param subject   the subject of the message
+     * @param expires   the expiration time of the message
+     * @param message   the message content
+     */
+    @Override
+    public void onSubjectCastMessage(String messageId, String sender, String subject, Instant expires, ByteString message)
     {
         try
         {
             log.debug("Received subject cast MMTP-Message={} from {} with subject {}", messageId, sender, subject);
-            ProtocolMessage protocolMessage = ProtocolMessage.parseFrom(message);
+            ProtocolMessage protocolMessage = ProtocolMessage.parser().parseFrom(ProtobufUtils.aliasingInput(message));
 
             if (protocolMessage.getType() == MessageType.MESSAGE)
             {
@@ -150,7 +331,7 @@ public class AuthenticatedAdapterImpl implements AuthenticatedAdapter
             }
         }
 
-        catch (InvalidProtocolBufferException | CertificateException | MissingCertificateException | CertificateValidationException | SignatureVerificationException | KeyStoreException ex)
+        catch (InvalidProtocolBufferException | CertificateException ex)
         {
             log.warn("Error while processing subject cast MMTP-Message={} from sender {}", messageId, sender, ex);
         }
@@ -187,92 +368,121 @@ public class AuthenticatedAdapterImpl implements AuthenticatedAdapter
 
 
     /**
-     * Processes a message. Verifies the signature, decrypts and sends the message to the SMMP adapter if the signature is valid.
-     *Calls the {@link SMMPAuthAdapter} if the message is valid and trustworthy.
+     * Processes a message. Parses the message, then verifies the certificate, decrypts the message, verifies the
+     * signature and signs the ack if one is required on the crypto pipeline. Calls the {@link SMMPAuthAdapter} in order
+     * once the signature has been verified if the message is valid and trustworthy.
      *
      * @param protocolMessage the protocol message
      * @param sender          the sender of the message
      * @param destinations    the destinations of the message
      * @param expires         the expiration time of the message
      * @throws InvalidProtocolBufferException If the protocol message is invalid.
-     * @throws CertificateException           If the sender's certificate is invalid.
-     * @throws KeyStoreException              If the keyring is not initialized.
-     * @throws MissingCertificateException    If the sender's certificate is missing from the keyring.
-     * @throws CertificateValidationException If the sender's certificate is invalid.
-     * @throws SignatureVerificationException If the signature is invalid.
-     * @throws DecryptionException            If the message could not be decrypted.
+     * @throws CertificateException           If the sender's certificate could not be parsed.
      */
-    private void processDirectMessage(ProtocolMessage protocolMessage, String sender, List<String> destinations, Instant expires) throws InvalidProtocolBufferException, CertificateException, KeyStoreException, MissingCertificateException, CertificateValidationException, SignatureVerificationException, DecryptionException
+    private void processDirectMessage(ProtocolMessage protocolMessage, String sender, List<String> destinations, Instant expires) throws InvalidProtocolBufferException, CertificateException
     {
-        SMMPMessage smmpMessage = SMMPMessage.parseFrom(protocolMessage.getContent());
+        SMMPMessage smmpMessage = SMMPMessage.parser().parseFrom(ProtobufUtils.aliasingInput(protocolMessage.getContent()));
         String messageId = smmpMessage.getMessageID();
+        boolean encrypted = smmpMessage.getIsEncrypted();
+        boolean requiresAck = smmpMessage.getRequiresAck();
         byte[] signature = smmpMessage.getSignature().toByteArray();
         byte[] content = smmpMessage.getPayload().toByteArray();
-        X509Certificate certificate = getCertificate(smmpMessage.getCertificate().toByteArray());
+        DecodedCertificate certificate = certificateInterner.intern(smmpMessage.getCertificate());
 
-        if (!verifyCertificate(certificate, sender))
+        verifyInOrder(messageId, () ->
         {
-            log.warn("Received a direct SMMP-message={} from an untrusted sender: {}, ignoring", messageId, sender);
-            return;
-        }
+            if (!verifyCertificate(certificate, sender))
+            {
+                log.warn("Received a direct SMMP-message={} from an untrusted sender: {}, ignoring", messageId, sender);
+                return IGNORE;
+            }
 
-        if (smmpMessage.getIsEncrypted())
-        {
-            log.debug("SMMP-message={} is encrypted, decrypting..", messageId);
-            content = CryptoUtils.decryptMessage((ECPublicKey) certificate.getPublicKey(), keyringManager.getMyPrivateKey(), content);
-        }
+            byte[] plaintext = encrypted ? decrypt(messageId, certificate, content) : content;
+            boolean valid = verifySignature(sender, plaintext, signature);
+
+            if (valid && requiresAck)
+            {
+                log.warn("Received a direct SMMP-message={} that requires ack from sender: {}, sending ack", messageId, sender);
+                ackTracker.sendAck(messageId, sender);
+            }
 
-        if (!CryptoUtils.verifySignature(keyringManager.getPublicKey(sender), content, signature))
+            return () -> onDirectMessageVerified(messageId, sender, destinations, expires, plaintext, valid);
+        });
+    }
+
+
+    /**
+     * Called once the signature of a direct message has been verified, in the order the messages were received.
+     * Passes the message to the SMMP adapter unless it has already been delivered. The ack, if one is required, has
+     * already been signed and sent by the verification on the crypto pipeline, so signing it does not hold up the
+     * deliveries after it.
+     *
+     * @param messageId    the ID of the message
+     * @param sender       the sender of the message
+     * @param destinations the destinations of the message
+     * @param expires      the expiration time of the message
+     * @param content      the decrypted content of the message
+     * @param valid        whether the signature is valid
+     */
+    private void onDirectMessageVerified(String messageId, String sender, List<String> destinations, Instant expires, byte[] content, boolean valid)
+    {
+        if (!valid)
         {
             log.warn("Received a direct SMMP-message={} with an invalid signature from sender: {}, ignoring", messageId, sender);
             return;
         }
 
-        if (smmpMessage.getRequiresAck())
-        {
-            log.warn("Received a direct SMMP-message={} that requires ack from sender: {}, sending ack", messageId, sender);
-            ackTracker.sendAck(messageId, sender);
-        }
-
-        if (deliveredToApplication.contains(messageId))
+        if (!deliveredToApplication.add(messageId, expires))
         {
             log.warn("Message already delivered to application, likely a retransmit.");
             return;
         }
 
         log.debug("Direct SMMP-message={} valid, passing to application", messageId);
-        deliveredToApplication.add(messageId);
-        adapter.onDirectMessage(smmpMessage.getMessageID(), destinations, sender, expires, content);
+        adapter.onDirectMessage(messageId, destinations, sender, expires, content);
     }
 
 
     /**
-     * Processes an ack message. Verifies the signature and passes the ack to the ack tracker if the signature is valid.
-     * Calls the {@link SMMPClient.Acks.IAckTracker} to handle the ack.
+     * Processes an ack message. Parses the ack, then verifies the certificate and the signature on the crypto pipeline.
+     * Calls the {@link SMMPClient.Acks.IAckTracker} in order to handle the ack once the signature has been verified.
      *
      * @param protocolMessage the protocol message
      * @param sender          the sender of the message
      * @throws InvalidProtocolBufferException If the protocol message is invalid.
-     * @throws CertificateException           If the sender's certificate is invalid.
-     * @throws KeyStoreException              If the keyring is not initialized.
-     * @throws MissingCertificateException    If the sender's certificate is missing from the keyring.
-     * @throws CertificateValidationException If the sender's certificate is invalid.
-     * @throws SignatureVerificationException If the signature is invalid.
+     * @throws CertificateException           If the sender's certificate could not be parsed.
      */
-    private void processAck(ProtocolMessage protocolMessage, String sender) throws InvalidProtocolBufferException, CertificateException, KeyStoreException, MissingCertificateException, CertificateValidationException, SignatureVerificationException
+    private void processAck(ProtocolMessage protocolMessage, String sender) throws InvalidProtocolBufferException, CertificateException
     {
-        SMMPAck smmpAck = SMMPAck.parseFrom(protocolMessage.getContent());
+        SMMPAck smmpAck = SMMPAck.parser().parseFrom(ProtobufUtils.aliasingInput(protocolMessage.getContent()));
         byte[] signature = smmpAck.getSignature().toByteArray();
         String ackedMessageId = smmpAck.getMessageID();
-        X509Certificate certificate = getCertificate(smmpAck.getCertificate().toByteArray());
+        DecodedCertificate certificate = certificateInterner.intern(smmpAck.getCertificate());
 
-        if (!verifyCertificate(certificate, sender))
+        verifyInOrder(ackedMessageId, () ->
         {
-            log.warn("Received a SMMP-ack for SMMP-Message{} from an untrusted sender: {}, ignoring", ackedMessageId, sender);
-            return;
-        }
+            if (!verifyCertificate(certificate, sender))
+            {
+                log.warn("Received a SMMP-ack for SMMP-Message{} from an untrusted sender: {}, ignoring", ackedMessageId, sender);
+                return IGNORE;
+            }
+
+            boolean valid = verifySignature(sender, ackedMessageId.getBytes(), signature);
+            return () -> onAckVerified(ackedMessageId, sender, valid);
+        });
+    }
+
 
-        if (!CryptoUtils.verifySignature(keyringManager.getPublicKey(sender), smmpAck.getMessageID().getBytes(), signature))
+    /**
+     * Called once the signature of an ack has been verified. Passes the ack to the ack tracker if the signature is valid.
+     *
+     * @param ackedMessageId the ID of the acknowledged message
+     * @param sender         the sender of the ack
+     * @param valid          whether the signature is valid
+     */
+    private void onAckVerified(String ackedMessageId, String sender, boolean valid)
+    {
+        if (!valid)
         {
             log.warn("Received a SMMP-ack for SMMP-Message{} with an invalid signature from sender: {}, ignoring", ackedMessageId, sender);
             return;
@@ -284,32 +494,76 @@ public class AuthenticatedAdapterImpl implements AuthenticatedAdapter
 
 
     /**
-     * Processes a subject cast message. Verifies the signature and sends the message to the SMMP adapter if the signature is valid.
-     *Calls the {@link SMMPAuthAdapter} if the message is valid and trustworthy.
+     * Processes a batch ack, which acknowledges several messages under a single signature.
+     * Verifies the certificate and the signature over all the acknowledged message IDs on the crypto pipeline before
+     * passing them to the ack tracker in order.
+     *
+     * @param protocolMessage the protocol message containing the batch ack
+     * @param sender          the sender of the batch ack
+     * @throws InvalidProtocolBufferException If the batch ack could not be parsed.
+     * @throws CertificateException           If the certificate could not be parsed.
+     */
+    private void processBatchAck(ProtocolMessage protocolMessage, String sender) throws InvalidProtocolBufferException, CertificateException
+    {
+        SMMPBatchAck batchAck = SMMPBatchAck.parser().parseFrom(ProtobufUtils.aliasingInput(protocolMessage.getContent()));
+        byte[] signature = batchAck.getSignature().toByteArray();
+        List<String> ackedMessageIds = List.copyOf(batchAck.getMessageIDsList());
+        DecodedCertificate certificate = certificateInterner.intern(batchAck.getCertificate());
+
+        verifyInOrder(ackedMessageIds.toString(), () ->
+        {
+            if (!verifyCertificate(certificate, sender))
+            {
+                log.warn("Received a SMMP-batch-ack for {} SMMP-Messages from an untrusted sender: {}, ignoring", ackedMessageIds.size(), sender);
+                return IGNORE;
+            }
+
+            boolean valid = verifySignature(sender, SMMPUtils.batchAckContent(ackedMessageIds), signature);
+            return () -> onBatchAckVerified(ackedMessageIds, sender, valid);
+        });
+    }
+
+
+    /**
+     * Called once the signature of a batch ack has been verified. Passes each acknowledged message to the ack tracker if the signature is valid.
+     *
+     * @param ackedMessageIds the IDs of the acknowledged messages
+     * @param sender          the sender of the batch ack
+     * @param valid           whether the signature is valid
+     */
+    private void onBatchAckVerified(List<String> ackedMessageIds, String sender, boolean valid)
+    {
+        if (!valid)
+        {
+            log.warn("Received a SMMP-batch-ack for {} SMMP-Messages with an invalid signature from sender: {}, ignoring", ackedMessageIds.size(), sender);
+            return;
+        }
+
+        log.debug("SMMP-Batch-ack for {} SMMP-Messages valid, passing to ACK-HANDLER", ackedMessageIds.size());
+
+        for (String ackedMessageId : ackedMessageIds)
+        {
+            ackTracker.acknowledge(ackedMessageId, sender);
+        }
+    }
+
+
+    /**
+     * Processes a subject cast message. Parses the message, then verifies the certificate and the signature on the
+     * crypto pipeline. Calls the {@link SMMPAuthAdapter} in order once the signature has been verified if the message
+     * is valid and trustworthy.
      *
      * @param protocolMessage the protocol message
      * @param sender          the sender of the message
      * @param subject         the subject of the message
      * @param expires         the expiration time of the message
-     * @throws MissingCertificateException    If the sender's certificate is missing from the keyring.
-     * @throws CertificateValidationException If the sender's certificate is invalid.
-     * @throws KeyStoreException              If the keyring is not initialized.
      * @throws InvalidProtocolBufferException If the protocol message is invalid.
-     * @throws SignatureVerificationException If the signature is invalid.
+     * @throws CertificateException           If the sender's certificate could not be parsed.
      */
-    private void processSubjectCastMessage(ProtocolMessage protocolMessage, String sender, String subject, Instant expires) throws MissingCertificateException, CertificateValidationException, KeyStoreException, InvalidProtocolBufferException, SignatureVerificationException, CertificateException
+    private void processSubjectCastMessage(ProtocolMessage protocolMessage, String sender, String subject, Instant expires) throws InvalidProtocolBufferException, CertificateException
     {
-        SMMPMessage smmpMessage = SMMPMessage.parseFrom(protocolMessage.getContent());
+        SMMPMessage smmpMessage = SMMPMessage.parser().parseFrom(ProtobufUtils.aliasingInput(protocolMessage.getContent()));
         String messageId = smmpMessage.getMessageID();
-        byte[] signature = smmpMessage.getSignature().toByteArray();
-        byte[] content = smmpMessage.getPayload().toByteArray();
-        X509Certificate certificate = getCertificate(smmpMessage.getCertificate().toByteArray());
-
-        if (!verifyCertificate(certificate, sender))
-        {
-            log.warn("Received a subject cast SMMP-message={} from an untrusted sender: {}, ignoring", messageId, sender);
-            return;
-        }
 
         if (smmpMessage.getIsEncrypted())
         {
@@ -317,36 +571,124 @@ public class AuthenticatedAdapterImpl implements AuthenticatedAdapter
             return;
         }
 
+        byte[] signature = smmpMessage.getSignature().toByteArray();
+        byte[] content = smmpMessage.getPayload().toByteArray();
+        DecodedCertificate certificate = certificateInterner.intern(smmpMessage.getCertificate());
+
+        verifyInOrder(messageId, () ->
+        {
+            if (!verifyCertificate(certificate, sender))
+            {
+                log.warn("Received a subject cast SMMP-message={} from an untrusted sender: {}, ignoring", messageId, sender);
+                return IGNORE;
+            }
+
+            boolean valid = verifySignature(sender, content, signature);
+            return () -> onSubjectCastMessageVerified(messageId, sender, subject, expires, content, valid);
+        });
+    }
+
 
-        if (!CryptoUtils.verifySignature(keyringManager.getPublicKey(sender), content, signature))
+    /**
+     * Called once the signature of a subject cast message has been verified. Passes the message to the SMMP adapter
+     * if the signature is valid and the message has not already been delivered.
+     *
+     * @param messageId the ID of the message
+     * @param sender    the sender of the message
+     * @param subject   the subject of the message
+     * @param expires   the expiration time of the message
+     * @param content   the content of the message
+     * @param valid     whether the signature is valid
+     */
+    private void onSubjectCastMessageVerified(String messageId, String sender, String subject, Instant expires, byte[] content, boolean valid)
+    {
+        if (!valid)
         {
             log.warn("Received a subject cast SMMP-message={} with an invalid signature from sender: {}, ignoring", messageId, sender);
             return;
         }
 
-        if (deliveredToApplication.contains(messageId))
+        if (!deliveredToApplication.add(messageId, expires))
         {
             log.warn("Message already delivered to application, likely a retransmit.");
             return;
         }
 
         log.debug("Subject cast SMMP-message={} valid, passing to application", messageId);
-        deliveredToApplication.add(messageId);
-        adapter.onSubjectCastMessage(smmpMessage.getMessageID(), sender, subject, expires, content);
+        adapter.onSubjectCastMessage(messageId, sender, subject, expires, content);
     }
 
 
     /**
-     * Gets the certificate from the byte array.
+     * Runs the verification of a message or ack on the crypto pipeline, and the handling it returns once the handling
+     * of everything received before it has run, on the completion executor.
      *
-     * @param certificateBytes the certificate bytes
-     * @return the certificate
-     * @throws CertificateException if the certificate is invalid
+     * @param messageId    the ID of the message or acknowledged message, for logging
+     * @param verification verifies the message or ack, and returns how to handle it
      */
-    private X509Certificate getCertificate(byte[] certificateBytes) throws CertificateException
+    private void verifyInOrder(String messageId, Callable<Runnable> verification)
     {
-        CertificateFactory certificateFactory = CertificateFactory.getInstance("X.509");
-        return (X509Certificate) certificateFactory.generateCertificate(new ByteArrayInputStream(certificateBytes));
+        deliveries.thenApply(cryptoPipeline.submit(verification), handling ->
+        {
+            handling.run();
+            return null;
+        }).exceptionally(ex -> logProcessingError(messageId, ex));
+    }
+
+
+    /**
+     * Decrypts the payload of a message with the key agreed between the sender and this client.
+     *
+     * @param messageId   the ID of the message
+     * @param certificate the certificate of the sender
+     * @param content     the encrypted payload
+     * @return the decrypted payload
+     * @throws DecryptionException If the payload could not be decrypted.
+     */
+    private byte[] decrypt(String messageId, DecodedCertificate certificate, byte[] content) throws DecryptionException
+    {
+        log.debug("SMMP-message={} is encrypted, decrypting..", messageId);
+        return CryptoUtils.decryptMessage(certificate.getPublicKey(), keyringManager.getMyPrivateKey(), content);
+    }
+
+
+    /**
+     * Logs an error thrown while verifying, decrypting or delivering a message or ack.
+     *
+     * @param messageId the ID of the message or acknowledged message
+     * @param ex        the error
+     * @return nothing, for use with {@link java.util.concurrent.CompletableFuture#exceptionally}
+     */
+    private Void logProcessingError(String messageId, Throwable ex)
+    {
+        log.error("Error while processing SMMP-message={}", messageId, ex);
+        return null;
+    }
+
+
+    /**
+     * Verifies a signature of the sender.
+     *
+     * @param sender    the sender
+     * @param data      the signed data
+     * @param signature the signature
+     * @return true if the signature is valid, false if it is invalid or could not be verified
+     * @throws KeyStoreException              If the keyring is not initialized.
+     * @throws MissingCertificateException    If the sender's certificate is missing from the keyring.
+     * @throws CertificateValidationException If the sender's certificate is invalid.
+     */
+    private boolean verifySignature(String sender, byte[] data, byte[] signature) throws KeyStoreException, MissingCertificateException, CertificateValidationException
+    {
+        try
+        {
+            return CryptoUtils.verifySignature(keyringManager.getPublicKey(sender), data, signature);
+        }
+
+        catch (SignatureVerificationException ex)
+        {
+            log.debug("Failed to verify signature", ex);
+            return false;
+        }
     }
 
 
@@ -360,8 +702,8 @@ public class AuthenticatedAdapterImpl implements AuthenticatedAdapter
      * @throws MissingCertificateException    If the sender's certificate is missing from the keyring.
      * @throws CertificateValidationException If the sender's certificate is invalid.
      */
-    private boolean verifyCertificate(X509Certificate certificate, String sender) throws KeyStoreException, MissingCertificateException, CertificateValidationException
+    private boolean verifyCertificate(DecodedCertificate certificate, String sender) throws KeyStoreException, MissingCertificateException, CertificateValidationException
     {
-        return keyringManager.verifyCertificate(certificate) && certificate.getPublicKey().equals(keyringManager.getPublicKey(sender));
+        return keyringManager.verifyCertificate(certificate.getCertificate()) && certificate.getPublicKey().equals(keyringManager.getPublicKey(sender));
     }
 }
\ No newline at end of file
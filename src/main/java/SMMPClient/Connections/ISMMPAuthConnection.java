@@ -2,6 +2,8 @@ package SMMPClient.Connections;
 
 import Agent.Exceptions.ConnectException;
 import Agent.Subscriptions.ISubscribeListener;
+import Agent.Utils.WorkerPoolStatistics;
+import SMMPClient.Acks.RttStatistics;
 import SMMPClient.Acks.Handlers.MultiDeliveryCompletionHandler;
 import SMMPClient.Acks.Handlers.SMMPSendingHandler;
 import SMMPClient.Acks.Handlers.SingleDeliveryCompletionHandler;
@@ -10,6 +12,7 @@ import SMMPClient.Acks.ResultObjects.SingleDestDeliveryResult;
 
 import java.time.Instant;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 
 public interface ISMMPAuthConnection
@@ -34,6 +37,14 @@ public interface ISMMPAuthConnection
 
     CompletableFuture<Boolean> publish(String subject, byte[] payload, Instant expires) throws ConnectException;
 
+    List<CompletableFuture<Boolean>> sendDirectBatch(String destination, List<byte[]> payloads, Instant expires, Boolean encrypt) throws ConnectException;
+
+    List<CompletableFuture<Boolean>> publishBatch(String subject, List<byte[]> payloads, Instant expires) throws ConnectException;
+
+    Map<String, RttStatistics> getRttStatistics();
+
+    WorkerPoolStatistics getCryptoStatistics();
+
     void subscribeToSubject(String subject, ISubscribeListener listener) throws ConnectException;
 
     CompletableFuture<Void> subscribeToSubject(String subject) throws ConnectException;
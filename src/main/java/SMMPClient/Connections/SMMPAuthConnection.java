@@ -4,15 +4,23 @@ package SMMPClient.Connections;
 import Agent.Connections.IAnonymousConnection;
 import Agent.Connections.IAuthenticatedConnection;
 import Agent.Exceptions.ConnectException;
+import Agent.MessageSending.DirectMessageRequest;
+import Agent.MessageSending.PayloadWriter;
+import Agent.MessageSending.PublishRequest;
+import Agent.Utils.MessageIds;
+import Agent.Utils.WorkerPoolStatistics;
 import SMMPClient.Acks.*;
 import SMMPClient.Acks.Handlers.MultiDeliveryCompletionHandler;
 import SMMPClient.Acks.Handlers.SMMPSendingHandler;
 import SMMPClient.Acks.Handlers.SingleDeliveryCompletionHandler;
 import SMMPClient.Acks.ResultObjects.MultiDestDeliveryResult;
 import SMMPClient.Acks.ResultObjects.SingleDestDeliveryResult;
+import SMMPClient.Crypto.CompletionSequencer;
+import SMMPClient.Crypto.CryptoPipeline;
 import SMMPClient.Crypto.CryptoUtils;
 import SMMPClient.Crypto.IKeyringManager;
 import SMMPClient.Exceptions.EncryptionException;
+import SMMPClient.Exceptions.FlowControlException;
 import SMMPClient.Exceptions.SignatureGenerationException;
 import SMMPClient.Exceptions.CertificateValidationException;
 import SMMPClient.Exceptions.MissingCertificateException;
@@ -27,12 +35,33 @@ import java.security.interfaces.ECPublicKey;
 import java.time.Instant;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 
 /**
  * A wrapper around an {@link Agent.Connections.IAuthenticatedConnection} that provides a more convenient interface for SMMP.
  * This wrapper really doesn't do much, but it does make the API a little more intuitive,
  * and users of this library don't need to know about the Agent library.
+ * <p>
+ * Every send is a chain of stages: the payload is encrypted and signed, and the message built, on a {@link CryptoPipeline},
+ * a message requiring acks is tracked and the message handed to the agent, and once the agent has written it, the
+ * handlers and returned futures are completed, on a completion executor. Errors are reported through the returned
+ * futures and handlers.
+ * <p>
+ * A send returns as soon as its payload is queued on the crypto pipeline. If the queue of the pipeline is full, what
+ * happens depends on its {@link Agent.Utils.RejectionPolicy}: {@link Agent.Utils.RejectionPolicy#BLOCK}, the default,
+ * blocks the calling thread until there is room, which pushes back on an application that sends faster than its
+ * messages can be signed. {@link Agent.Utils.RejectionPolicy#ABORT} never blocks, and fails the send with a
+ * {@link java.util.concurrent.RejectedExecutionException} instead, and {@link Agent.Utils.RejectionPolicy#CALLER_RUNS}
+ * signs the message on the calling thread.
+ * <p>
+ * Messages are prepared in parallel, but handed to the agent in the order they were sent, so two messages sent one
+ * after the other from the same thread reach the agent, and the destination, in that order.
  */
 @Slf4j
 public class SMMPAuthConnection extends SMMPAnonConnection implements ISMMPAuthConnection
@@ -40,346 +69,639 @@ public class SMMPAuthConnection extends SMMPAnonConnection implements ISMMPAuthC
     private final IAuthenticatedConnection connection;
     private final IKeyringManager keyringManager;
     private final IAckTracker ackTracker;
+    private final CryptoPipeline cryptoPipeline;
+    private final Executor completionExecutor;
+    private final CompletionSequencer handOffs;
 
 
     /**
-     * Creates a new {@link SMMPAuthConnection}.
+     * Creates a new {@link SMMPAuthConnection} with a crypto pipeline of its own.
      *
      * @param connection {@link IAuthenticatedConnection} to wrap
      * @param  keyringManager {@link IKeyringManager} keyring manager
      */
     public SMMPAuthConnection(@NonNull IAuthenticatedConnection connection, @NonNull IKeyringManager keyringManager, @NonNull IAckTracker ackTracker)
+    {
+        this(connection, keyringManager, ackTracker, new CryptoPipeline());
+    }
+
+
+    /**
+     * Creates a new {@link SMMPAuthConnection} that completes its sends on the common fork-join pool.
+     *
+     * @param connection     {@link IAuthenticatedConnection} to wrap
+     * @param keyringManager {@link IKeyringManager} keyring manager
+     * @param ackTracker     {@link IAckTracker} that tracks the messages requiring acks
+     * @param cryptoPipeline {@link CryptoPipeline} that encrypts and signs the messages
+     */
+    public SMMPAuthConnection(@NonNull IAuthenticatedConnection connection, @NonNull IKeyringManager keyringManager, @NonNull IAckTracker ackTracker, @NonNull CryptoPipeline cryptoPipeline)
+    {
+        this(connection, keyringManager, ackTracker, cryptoPipeline, ForkJoinPool.commonPool());
+    }
+
+
+    /**
+     * Creates a new {@link SMMPAuthConnection}. Messages are encrypted and signed on the crypto pipeline, and handed to
+     * the agent in the order they were sent on the completion executor, right after the messages requiring acks are
+     * tracked. Once the agent has sent them, the handlers and returned futures are completed on the completion executor,
+     * so neither runs on the threads that write to the socket.
+     *
+     * @param connection         {@link IAuthenticatedConnection} to wrap
+     * @param keyringManager     {@link IKeyringManager} keyring manager
+     * @param ackTracker         {@link IAckTracker} that tracks the messages requiring acks
+     * @param cryptoPipeline     {@link CryptoPipeline} that encrypts and signs the messages
+     * @param completionExecutor {@link Executor} that completes the sends
+     */
+    public SMMPAuthConnection(@NonNull IAuthenticatedConnection connection, @NonNull IKeyringManager keyringManager, @NonNull IAckTracker ackTracker, @NonNull CryptoPipeline cryptoPipeline,
+                              @NonNull Executor completionExecutor)
     {
         super(connection);
         this.connection = connection;
         this.keyringManager = keyringManager;
         this.ackTracker = ackTracker;
+        this.cryptoPipeline = cryptoPipeline;
+        this.completionExecutor = completionExecutor;
+        this.handOffs = new CompletionSequencer(completionExecutor);
     }
 
 
     public void sendDirectWithAcknowledgement(@NonNull String destination, @NonNull byte[] payload, Instant expires, @NonNull Boolean encrypt, @NonNull SingleDeliveryCompletionHandler handler) throws ConnectException
     {
-        try
-        {
-            if (encrypt)
-            {
-                payload = encryptPayload(destination, payload);
-            }
+        handOffs.thenCompose(prepareMessage(encrypt ? destination : null, payload, encrypt, true), message -> sendWithinWindow(List.of(destination), message, expires, () ->
+                {
+                    ackTracker.waitForSingleDestAck(message.getMessageID(), destination, message.toByteArray(), expires, handler);
+                    return CompletableFuture.completedFuture(message.getMessageID());
+                }))
+                .whenCompleteAsync((messageID, ex) ->
+                {
+                    if (ex != null)
+                    {
+                        log.error("Error sending SMMP message to destination: {}. Exception: ", destination, ex);
+                        handler.onFailure(unwrap(ex));
+                    }
+                    else
+                    {
+                        log.debug("Waiting for acknowledgement from destination: {} for message ID: {}", destination, messageID);
+                    }
+                }, completionExecutor);
+    }
 
-            byte[] signature = signPayload(payload);
-            byte[] certificate = keyringManager.getMyCertificate().getEncoded();
-            SMMPMessage message = createSMMPMessage(payload, signature, encrypt, true, certificate);
-            CompletableFuture<String> future = sendInternal(destination, message.toByteArray(), expires);
 
-            future.whenComplete((messageID, ex) ->
-            {
-                if (ex != null)
+    public CompletableFuture<SingleDestDeliveryResult> sendDirectWithAcknowledgement(@NonNull String destination, @NonNull byte[] payload, Instant expires, @NonNull Boolean encrypt) throws ConnectException
+    {
+        return handOffs.thenCompose(prepareMessage(encrypt ? destination : null, payload, encrypt, true), message -> sendWithinWindow(List.of(destination), message, expires,
+                () -> ackTracker.waitForSingleDestAck(message.getMessageID(), destination, message.toByteArray(), expires)));
+    }
+
+
+    public CompletableFuture<Boolean> sendDirect(@NonNull String destination, @NonNull byte[] payload, Instant expires, @NonNull Boolean encrypt) throws ConnectException
+    {
+        return handOffs.thenCompose(prepareMessage(encrypt ? destination : null, payload, encrypt, false), message -> sendInternal(destination, message, expires))
+                .thenApplyAsync((messageID) -> true, completionExecutor);
+    }
+
+
+    public void sendDirect(@NonNull String destination, @NonNull byte[] payload, Instant expires, @NonNull Boolean encrypt, @NonNull SMMPSendingHandler listener) throws ConnectException
+    {
+        handOffs.thenCompose(prepareMessage(encrypt ? destination : null, payload, encrypt, false), message -> sendInternal(destination, message, expires))
+                .whenCompleteAsync((messageID, ex) ->
                 {
-                    log.error("Error sending SMMP message to destination: {}. Exception: ", destination, ex);
-                    handler.onFailure(ex);
-                }
-                else
+                    if (ex != null)
+                    {
+                        log.error("Failed to send direct message to {} with error {}", destination, ex.getMessage());
+                        listener.onFailure(unwrap(ex));
+                    }
+
+                    else
+                    {
+                        log.info("Direct message sent to {} with message ID {}", destination, messageID);
+                        listener.onSuccess();
+                    }
+                }, completionExecutor);
+    }
+
+
+    public void sendDirectWithAcknowledgement(@NonNull List<String> destinations, @NonNull byte[] payload, Instant expires, @NonNull MultiDeliveryCompletionHandler handler) throws ConnectException
+    {
+        List<String> distinct = distinct(destinations);
+
+        handOffs.thenCompose(prepareMessage(null, payload, false, true), message -> sendWithinWindow(distinct, message, expires, () ->
                 {
-                    log.debug("Waiting for acknowledgement from destination: {} for message ID: {}", destination, message.getMessageID());
-                    ackTracker.waitForSingleDestAck(message.getMessageID(), destination, message.toByteArray(), expires, handler);
-                }
-            });
-        }
-        catch (MissingCertificateException | CertificateEncodingException | SignatureGenerationException | EncryptionException | CertificateValidationException | KeyStoreException ex)
-        {
-            log.error("Error while sending SMMP message with acknowledgement to destination: {}. Exception: ", destination, ex);
-            handler.onFailure(ex);
-        }
+                    ackTracker.waitForMultiDestAck(message.getMessageID(), distinct, message.toByteArray(), expires, handler);
+                    return CompletableFuture.completedFuture(message.getMessageID());
+                }))
+                .whenCompleteAsync((messageID, ex) ->
+                {
+                    if (ex != null)
+                    {
+                        log.error("Failed to send direct message to {} with error {}", destinations, ex.getMessage());
+                        handler.onFailure(unwrap(ex));
+                    }
+
+                    else
+                    {
+                        log.info("Direct message sent to {} with message ID {}", distinct, messageID);
+                    }
+                }, completionExecutor);
     }
 
 
-    public CompletableFuture<SingleDestDeliveryResult> sendDirectWithAcknowledgement(@NonNull String destination, @NonNull byte[] payload, Instant expires, @NonNull Boolean encrypt) throws ConnectException
+    public CompletableFuture<MultiDestDeliveryResult> sendDirectWithAcknowledgement(@NonNull List<String> destinations, @NonNull byte[] payload, Instant expires) throws ConnectException
     {
-        try
-        {
-            if (encrypt)
-            {
-                payload = encryptPayload(destination, payload);
-            }
+        List<String> distinct = distinct(destinations);
 
-            byte[] signature = signPayload(payload);
-            byte[] certificate = keyringManager.getMyCertificate().getEncoded();
-            SMMPMessage message = createSMMPMessage(payload, signature, encrypt, true, certificate);
-            CompletableFuture<String> future = sendInternal(destination, message.toByteArray(), expires);
-            return future.thenComposeAsync((messageID) -> ackTracker.waitForSingleDestAck(message.getMessageID(), destination, message.toByteArray(), expires));
+        return handOffs.thenCompose(prepareMessage(null, payload, false, true), message -> sendWithinWindow(distinct, message, expires,
+                () -> ackTracker.waitForMultiDestAck(message.getMessageID(), distinct, message.toByteArray(), expires)));
+    }
 
-        }
-        catch (MissingCertificateException | CertificateEncodingException | SignatureGenerationException | EncryptionException | CertificateValidationException | KeyStoreException ex)
-        {
-            log.error("Error while sending SMMP message with acknowledgement to destination: {}. Exception: ", destination, ex);
-            return CompletableFuture.failedFuture(ex);
-        }
+
+    public CompletableFuture<Boolean> sendDirect(@NonNull List<String> destinations, @NonNull byte[] payload, Instant expires) throws ConnectException
+    {
+        return handOffs.thenCompose(prepareMessage(null, payload, false, false), message -> sendInternal(destinations, message, expires))
+                .thenApplyAsync((messageID) ->
+                {
+                    log.info("Successfully sent SMMP message directly to destinations: {}, message ID: {}", destinations, messageID);
+                    return true;
+                }, completionExecutor);
     }
 
 
-    public CompletableFuture<Boolean> sendDirect(@NonNull String destination, @NonNull byte[] payload, Instant expires, @NonNull Boolean encrypt) throws ConnectException
+    public void sendDirect(@NonNull List<String> destinations, @NonNull byte[] payload, Instant expires, @NonNull Boolean encrypt, @NonNull SMMPSendingHandler listener) throws ConnectException
     {
-        try
-        {
-            if (encrypt)
-            {
-                payload = encryptPayload(destination, payload);
-            }
+        handOffs.thenCompose(prepareMessage(null, payload, encrypt, false), message -> sendInternal(destinations, message, expires))
+                .whenCompleteAsync((messageID, ex) ->
+                {
+                    if (ex != null)
+                    {
+                        log.error("Error occurred while sending SMMP message directly to destinations: {}", destinations, ex);
+                        listener.onFailure(unwrap(ex));
+                    }
+
+                    else
+                    {
+                        log.info("Successfully sent SMMP message directly to destinations: {}, message ID: {}", destinations, messageID);
+                        listener.onSuccess();
+                    }
+                }, completionExecutor);
+    }
 
-            byte[] signature = signPayload(payload);
-            byte[] certificate = keyringManager.getMyCertificate().getEncoded();
-            SMMPMessage message = createSMMPMessage(payload, signature, encrypt, false, certificate);
-            CompletableFuture<String> future = sendInternal(destination, message.toByteArray(), expires);
-            return future.thenApply((messageID) -> true);
-        }
 
-        catch (MissingCertificateException | CertificateEncodingException | SignatureGenerationException | EncryptionException | CertificateValidationException | KeyStoreException ex)
-        {
-            return CompletableFuture.failedFuture(ex);
-        }
+    public void publish(@NonNull String subject, @NonNull byte[] payload, Instant expires, @NonNull SMMPSendingHandler listener) throws ConnectException
+    {
+        handOffs.thenCompose(prepareMessage(null, payload, false, false), message -> publishInternal(subject, message, expires))
+                .whenCompleteAsync((messageID, ex) ->
+                {
+                    if (ex != null)
+                    {
+                        log.error("Error occurred while publishing SMMP message to subject: {}", subject, ex);
+                        listener.onFailure(unwrap(ex));
+                    }
+
+                    else
+                    {
+                        log.info("Successfully published SMMP message to subject: {}, message ID: {}", subject, messageID);
+                        listener.onSuccess();
+                    }
+                }, completionExecutor);
     }
 
 
-    public void sendDirect(@NonNull String destination, @NonNull byte[] payload, Instant expires, @NonNull Boolean encrypt, @NonNull SMMPSendingHandler listener) throws ConnectException
+    @Override
+    public CompletableFuture<Boolean> publish(String subject, byte[] payload, Instant expires) throws ConnectException
     {
-        try
+        return handOffs.thenCompose(prepareMessage(null, payload, false, false), message -> publishInternal(subject, message, expires))
+                .thenApplyAsync((messageID) ->
+                {
+                    log.info("Successfully published SMMP message to subject: {}, message ID: {}", subject, messageID);
+                    return true;
+                }, completionExecutor);
+    }
+
+
+    /**
+     * Sends a batch of SMMP messages to a destination, without acknowledgement. Each payload is signed, and encrypted if requested,
+     * on the crypto pipeline before the batch is handed to the agent, which writes the messages back to back with a single flush.
+     *
+     * @param destination the destination of the messages
+     * @param payloads    the payloads of the messages
+     * @param expires     the expiration time of the messages
+     * @param encrypt     whether to encrypt the payloads
+     * @return a future per payload, in the same order, that completes with true once the message has been sent
+     * @throws ConnectException if the connection is not alive
+     */
+    @Override
+    public List<CompletableFuture<Boolean>> sendDirectBatch(@NonNull String destination, @NonNull List<byte[]> payloads, Instant expires, @NonNull Boolean encrypt) throws ConnectException
+    {
+        List<CompletableFuture<SMMPMessage>> messages = new ArrayList<>(payloads.size());
+
+        for (byte[] payload : payloads)
+        {
+            messages.add(prepareMessage(encrypt ? destination : null, payload, encrypt, false));
+        }
+
+        return sendBatch(messages, prepared ->
         {
-            if (encrypt)
+            List<DirectMessageRequest> requests = new ArrayList<>(prepared.size());
+
+            for (SMMPMessage message : prepared)
             {
-                payload = encryptPayload(destination, payload);
+                requests.add(new DirectMessageRequest(List.of(destination), new SMMPEnvelope(MessageType.MESSAGE, PayloadWriter.of(message)), expires));
             }
 
-            byte[] signature = signPayload(payload);
-            byte[] certificate = keyringManager.getMyCertificate().getEncoded();
-            SMMPMessage message = createSMMPMessage(payload, signature, encrypt, false, certificate);
+            return connection.sendDirectBatch(requests);
+        });
+    }
 
-            CompletableFuture<String> future = sendInternal(destination, message.toByteArray(), expires);
-            future.whenComplete((messageID, ex) ->
-            {
-                if (ex != null)
-                {
-                    log.error("Failed to send direct message to {} with error {}", destination, ex.getMessage());
-                    listener.onFailure(ex);
-                }
 
-                else
-                {
-                    log.info("Direct message sent to {} with message ID {}", destination, messageID);
-                    listener.onSuccess();
-                }
-            });
-        }
+    /**
+     * Publishes a batch of SMMP messages to a subject. Each payload is signed on the crypto pipeline before the batch
+     * is handed to the agent, which writes the messages back to back with a single flush.
+     *
+     * @param subject  the subject of the messages
+     * @param payloads the payloads of the messages
+     * @param expires  the expiration time of the messages
+     * @return a future per payload, in the same order, that completes with true once the message has been sent
+     * @throws ConnectException if the connection is not alive
+     */
+    @Override
+    public List<CompletableFuture<Boolean>> publishBatch(@NonNull String subject, @NonNull List<byte[]> payloads, Instant expires) throws ConnectException
+    {
+        List<CompletableFuture<SMMPMessage>> messages = new ArrayList<>(payloads.size());
 
-        catch (MissingCertificateException | CertificateEncodingException | SignatureGenerationException | EncryptionException | CertificateValidationException | KeyStoreException ex)
+        for (byte[] payload : payloads)
         {
-            log.error("Failed to send direct message to {} with error {}", destination, ex.getMessage());
-            listener.onFailure(ex);
+            messages.add(prepareMessage(null, payload, false, false));
         }
+
+        return sendBatch(messages, prepared ->
+        {
+            List<PublishRequest> requests = new ArrayList<>(prepared.size());
+
+            for (SMMPMessage message : prepared)
+            {
+                requests.add(new PublishRequest(subject, new SMMPEnvelope(MessageType.MESSAGE, PayloadWriter.of(message)), expires));
+            }
+
+            return connection.publishBatch(requests);
+        });
     }
 
 
-    public void sendDirectWithAcknowledgement(@NonNull List<String> destinations, @NonNull byte[] payload, Instant expires, @NonNull MultiDeliveryCompletionHandler handler) throws ConnectException
+    /**
+     * Gets the round trip statistics of every destination that messages requiring acks have been sent to.
+     *
+     * @return the statistics by destination
+     */
+    @Override
+    public Map<String, RttStatistics> getRttStatistics()
     {
-        try
+        return ackTracker.getRttStatistics();
+    }
+
+
+    /**
+     * Gets the queue depth, busy threads, task latency and rejections of the pipeline that signs and encrypts the messages.
+     *
+     * @return the crypto pipeline statistics
+     */
+    @Override
+    public WorkerPoolStatistics getCryptoStatistics()
+    {
+        return cryptoPipeline.getStatistics();
+    }
+
+
+    /**
+     * Hands the messages of a batch that were prepared to the agent in one go, once all of them have been prepared
+     * and the messages sent before the batch have been handed to the agent, and gives each message its own future.
+     *
+     * @param messages the messages of the batch, as they are prepared by the crypto pipeline
+     * @param sender   hands the prepared messages to the agent and returns a future per message, in order
+     * @return a future per message, in order, that completes with true once the message has been sent
+     */
+    private List<CompletableFuture<Boolean>> sendBatch(List<CompletableFuture<SMMPMessage>> messages, BatchSender sender)
+    {
+        CompletableFuture<Void> preparedAll = CompletableFuture.allOf(messages.toArray(new CompletableFuture<?>[0])).handle((ignored, ignoredEx) -> null);
+        CompletableFuture<List<CompletableFuture<String>>> sends = handOffs.thenApply(preparedAll, ignored ->
         {
-            byte[] signature = signPayload(payload);
-            byte[] certificate = keyringManager.getMyCertificate().getEncoded();
-            SMMPMessage message = createSMMPMessage(payload, signature, false, true, certificate);
-            CompletableFuture<String> future = sendInternal(destinations, message.toByteArray(), expires);
+            List<SMMPMessage> prepared = new ArrayList<>(messages.size());
 
-            future.whenComplete((messageID, ex) ->
+            for (CompletableFuture<SMMPMessage> message : messages)
             {
-                if (ex != null)
+                if (!message.isCompletedExceptionally())
                 {
-                    log.error("Failed to send direct message to {} with error {}", destinations, ex.getMessage());
-                    handler.onFailure(ex);
+                    prepared.add(message.join());
                 }
+            }
 
-                else
-                {
-                    log.info("Direct message sent to {} with message ID {}", destinations, messageID);
-                    ackTracker.waitForMultiDestAck(message.getMessageID(), destinations, message.toByteArray(), expires, handler);
-                }
-            });
-        }
+            List<CompletableFuture<String>> sent;
 
-        catch (CertificateEncodingException | SignatureGenerationException ex)
+            try
+            {
+                sent = prepared.isEmpty() ? List.of() : sender.send(prepared);
+            }
+
+            catch (ConnectException ex)
+            {
+                throw new CompletionException(ex);
+            }
+
+            List<CompletableFuture<String>> aligned = new ArrayList<>(messages.size());
+            int next = 0;
+
+            for (CompletableFuture<SMMPMessage> message : messages)
+            {
+                aligned.add(message.isCompletedExceptionally() ? null : sent.get(next++));
+            }
+
+            return aligned;
+        });
+
+        List<CompletableFuture<Boolean>> results = new ArrayList<>(messages.size());
+
+        for (int i = 0; i < messages.size(); i++)
         {
-            log.error("Failed to send direct message to {} with error {}", destinations, ex.getMessage());
-            handler.onFailure(ex);
+            int index = i;
+            results.add(messages.get(i).thenCompose(prepared -> sends).thenCompose(aligned -> aligned.get(index)).thenApplyAsync(messageID -> true, completionExecutor));
         }
+
+        return results;
     }
 
 
-    public CompletableFuture<MultiDestDeliveryResult> sendDirectWithAcknowledgement(@NonNull List<String> destinations, @NonNull byte[] payload, Instant expires) throws ConnectException
+    /**
+     * Encrypts and signs a payload and wraps it in a SMMP message, on the crypto pipeline.
+     *
+     * @param encryptFor the destination to encrypt the payload for, or null to send the payload as it is
+     * @param payload    the payload
+     * @param encrypted  whether the message is marked as encrypted
+     * @param requireAck whether the message requires an ack
+     * @return a future that completes with the message, or exceptionally if the payload could not be encrypted or signed
+     */
+    private CompletableFuture<SMMPMessage> prepareMessage(String encryptFor, byte[] payload, boolean encrypted, boolean requireAck)
     {
-        try
+        return cryptoPipeline.submit(() ->
         {
-            byte[] signature = signPayload(payload);
+            byte[] content = encryptFor != null ? encryptPayload(encryptFor, payload) : payload;
+            byte[] signature = signPayload(content);
             byte[] certificate = keyringManager.getMyCertificate().getEncoded();
-            SMMPMessage message = createSMMPMessage(payload, signature, false, true, certificate);
-            CompletableFuture<String> future = sendInternal(destinations, message.toByteArray(), expires);
+            return createSMMPMessage(content, signature, encrypted, requireAck, certificate);
+        });
+    }
 
-            return future.thenComposeAsync((messageID) ->
-            {
-                log.info("Direct message sent to {} with message ID {}", destinations, messageID);
-                return ackTracker.waitForMultiDestAck(message.getMessageID(), destinations, message.toByteArray(), expires);
-            });
-        }
 
-        catch (CertificateEncodingException | SignatureGenerationException ex)
-        {
-            log.error("Failed to send message to destinations: {}. Error: {}", destinations, ex.getMessage());
-            return CompletableFuture.failedFuture(ex);
-        }
+    /**
+     * Gets the destinations of a message without repeats, in their original order. A message requiring acks takes room
+     * in the window of, and is tracked for, each destination once, so the list given to the flow controller and the
+     * ack tracker must be the same distinct list.
+     */
+    private static List<String> distinct(List<String> destinations)
+    {
+        return List.copyOf(new LinkedHashSet<>(destinations));
     }
 
 
-    public CompletableFuture<Boolean> sendDirect(@NonNull List<String> destinations, @NonNull byte[] payload, Instant expires) throws ConnectException
+    /**
+     * Gets the exception behind a failed stage, as handlers expect the exception that failed the send.
+     */
+    private static Throwable unwrap(Throwable ex)
+    {
+        return ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+    }
+
+
+    private byte[] signPayload(byte[] payload) throws SignatureGenerationException
+    {
+        return CryptoUtils.sign(keyringManager.getMyPrivateKey(), payload);
+    }
+
+
+    private byte[] encryptPayload(String destination, byte[] payload) throws MissingCertificateException, CertificateValidationException, KeyStoreException, EncryptionException
+    {
+        ECPublicKey publicKey = keyringManager.getPublicKey(destination);
+        ECPrivateKey privateKey = keyringManager.getMyPrivateKey();
+        return CryptoUtils.encryptMessage(publicKey, privateKey, payload);
+    }
+
+
+    private SMMPMessage createSMMPMessage(byte[] payload, byte[] signature, boolean encrypted, boolean requireAck, byte[] certificate) throws CertificateEncodingException, SignatureGenerationException
+    {
+        String SMMPMessageID = MessageIds.nextString();
+        return SMMPUtils.createMessage(payload, signature, SMMPMessageID, certificate, encrypted, requireAck);
+    }
+
+
+    private CompletableFuture<String> sendInternal(String destination, SMMPMessage message, Instant expires)
+    {
+        return sendInternal(List.of(destination), message, expires);
+    }
+
+
+    private CompletableFuture<String> sendInternal(List<String> destinations, SMMPMessage message, Instant expires)
     {
         try
         {
-            byte[] signature = signPayload(payload);
-            byte[] certificate = keyringManager.getMyCertificate().getEncoded();
-            SMMPMessage message = createSMMPMessage(payload, signature, false, false, certificate);
-            CompletableFuture<String> future = sendInternal(destinations, message.toByteArray(), expires);
-            log.info("Successfully sent SMMP message directly to destinations: {}, message ID: {}", destinations, future.join());
-            return future.thenApply((messageID) -> true);
+            return connection.sendDirect(destinations, new SMMPEnvelope(MessageType.MESSAGE, PayloadWriter.of(message)), expires);
         }
 
-        catch (CertificateEncodingException | SignatureGenerationException ex)
+        catch (ConnectException ex)
         {
-            log.error("Error occurred while sending SMMP message directly to destinations: {}", destinations, ex);
             return CompletableFuture.failedFuture(ex);
         }
     }
 
 
-    public void sendDirect(@NonNull List<String> destinations, @NonNull byte[] payload, Instant expires, @NonNull Boolean encrypt, @NonNull SMMPSendingHandler listener) throws ConnectException
+    /**
+     * Sends a message requiring acks to each of its destinations once it fits the in-flight window of the destination,
+     * see {@link SMMPClient.Acks.FlowController}. The message is sent at once to the destinations it fits, and to each
+     * of the others on its own once acks open its window, so a slow destination does not hold up the message to the
+     * others, nor the messages after it. If any window refuses the message, it is not sent at all.
+     * <p>
+     * The message is tracked right before it is handed to the agent, so an ack that arrives before the agent reports
+     * the message as sent is not lost, and the tracker gives up on the destinations it is still held for once it expires.
+     * If the message could not be sent, it is no longer tracked and the room taken in the windows is given back.
+     *
+     * @param destinations the distinct destinations of the message
+     * @param message      the message
+     * @param expires      the expiration time of the message
+     * @param track        starts tracking the message with the ack tracker, returning what the send completes with
+     * @param <T>          the type the send completes with
+     * @return a future that completes with what tracking the message returned once the message has been sent to the
+     * destinations it fit at once, or to the first of the others if it fit none
+     */
+    private <T> CompletableFuture<T> sendWithinWindow(List<String> destinations, SMMPMessage message, Instant expires, Supplier<CompletableFuture<T>> track)
     {
-        try
+        int size = message.getSerializedSize();
+        List<CompletableFuture<Void>> windows = ackTracker.acquireWindows(destinations, size);
+        List<String> ready = new ArrayList<>();
+        Map<String, CompletableFuture<Void>> held = new LinkedHashMap<>();
+        CompletableFuture<Void> refused = null;
+
+        for (int i = 0; i < destinations.size(); i++)
         {
-            byte[] signature = signPayload(payload);
-            byte[] certificate = keyringManager.getMyCertificate().getEncoded();
-            SMMPMessage message = createSMMPMessage(payload, signature, encrypt, false, certificate);
+            CompletableFuture<Void> window = windows.get(i);
 
-            CompletableFuture<String> future = sendInternal(destinations, message.toByteArray(), expires);
-            future.whenComplete((messageID, ex) ->
+            if (!window.isDone())
             {
-                if (ex != null)
-                {
-                    log.error("Error occurred while sending SMMP message directly to destinations: {}", destinations, ex);
-                    listener.onFailure(ex);
-                }
+                held.put(destinations.get(i), window);
+            }
 
-                else
-                {
-                    log.info("Successfully sent SMMP message directly to destinations: {}, message ID: {}", destinations, messageID);
-                    listener.onSuccess();
-                }
-            });
+            else if (window.isCompletedExceptionally())
+            {
+                refused = window;
+            }
+
+            else
+            {
+                ready.add(destinations.get(i));
+            }
         }
 
-        catch (CertificateEncodingException | SignatureGenerationException ex)
+        if (refused != null)
         {
-            log.error("Error occurred while sending SMMP message directly to destinations: {}", destinations, ex);
-            listener.onFailure(ex);
+            giveBack(ready, held, size);
+            return refused.thenApply(ignored -> null);
         }
-    }
 
+        CompletableFuture<T> tracked;
 
-    public void publish(@NonNull String subject, @NonNull byte[] payload, Instant expires, @NonNull SMMPSendingHandler listener) throws ConnectException
-    {
         try
         {
-            byte[] signature = signPayload(payload);
-            byte[] certificate = keyringManager.getMyCertificate().getEncoded();
-            SMMPMessage message = createSMMPMessage(payload, signature, false, false, certificate);
+            tracked = track.get();
+        }
 
-            CompletableFuture<String> future = publishInternal(subject, message.toByteArray(), expires);
-            future.whenComplete((messageID, ex) ->
+        catch (RuntimeException ex)
+        {
+            giveBack(ready, held, size);
+            throw ex;
+        }
+
+        List<CompletableFuture<String>> heldSends = new ArrayList<>(held.size());
+
+        for (Map.Entry<String, CompletableFuture<Void>> window : held.entrySet())
+        {
+            String destination = window.getKey();
+            ackTracker.hold(message.getMessageID(), destination, window.getValue());
+            heldSends.add(window.getValue().thenCompose(ignored -> sendHeld(destination, message, expires, size)).whenComplete((messageID, ex) ->
             {
                 if (ex != null)
                 {
-                    log.error("Error occurred while publishing SMMP message to subject: {}", subject, ex);
-                    listener.onFailure(ex);
+                    log.debug("Message {} was not sent to {} once held by its in-flight window", message.getMessageID(), destination, unwrap(ex));
                 }
+            }));
+        }
+
+        CompletableFuture<String> sent;
+
+        if (ready.isEmpty() && !heldSends.isEmpty())
+        {
+            sent = firstSent(heldSends);
+        }
 
-                else
+        else
+        {
+            sent = sendInternal(ready, message, expires).whenComplete((messageID, ex) ->
+            {
+                if (ex != null)
                 {
-                    log.info("Successfully published SMMP message to subject: {}, message ID: {}", subject, messageID);
-                    listener.onSuccess();
+                    ackTracker.releaseWindow(ready, size);
                 }
             });
         }
 
-        catch (CertificateEncodingException | SignatureGenerationException ex)
+        return sent.handle((messageID, ex) ->
         {
-            log.error("Error occurred while publishing SMMP message to subject: {}", subject, ex);
-            listener.onFailure(ex);
-        }
+            if (ex != null)
+            {
+                ackTracker.cancel(message.getMessageID());
+                throw new CompletionException(unwrap(ex));
+            }
+
+            return tracked;
+        }).thenCompose(Function.identity());
     }
 
 
-    @Override
-    public CompletableFuture<Boolean> publish(String subject, byte[] payload, Instant expires) throws ConnectException
+    /**
+     * Sends a message to a destination it was held for once it fits the window of the destination, unless the message
+     * is no longer tracked, in which case the room it was given is given back.
+     */
+    private CompletableFuture<String> sendHeld(String destination, SMMPMessage message, Instant expires, int size)
     {
-        try
+        if (!ackTracker.admit(message.getMessageID(), destination))
         {
-            byte[] signature = signPayload(payload);
-            byte[] certificate = keyringManager.getMyCertificate().getEncoded();
-            SMMPMessage message = createSMMPMessage(payload, signature, false, false, certificate);
-            CompletableFuture<String> future = publishInternal(subject, message.toByteArray(), expires);
-            log.info("Successfully published SMMP message to subject: {}, message ID: {}", subject, future.join());
-            return future.thenApply((messageID) -> true);
+            ackTracker.releaseWindow(List.of(destination), size);
+            return CompletableFuture.failedFuture(new FlowControlException("Message " + message.getMessageID() + " is no longer waiting to be sent to " + destination));
         }
 
-        catch (CertificateEncodingException | SignatureGenerationException ex)
-        {
-            log.error("Error occurred while publishing SMMP message to subject: {}", subject, ex);
-            return CompletableFuture.failedFuture(ex);
-        }
+        return sendInternal(List.of(destination), message, expires);
     }
 
 
-    private byte[] signPayload(byte[] payload) throws SignatureGenerationException
+    /**
+     * Gives back the room a message took in the windows of its destinations, and gives up on those it was held for.
+     */
+    private void giveBack(List<String> ready, Map<String, CompletableFuture<Void>> held, int size)
     {
-        return CryptoUtils.sign(keyringManager.getMyPrivateKey(), payload);
-    }
+        ackTracker.releaseWindow(ready, size);
 
-
-    private byte[] encryptPayload(String destination, byte[] payload) throws MissingCertificateException, CertificateValidationException, KeyStoreException, EncryptionException
-    {
-        ECPublicKey publicKey = keyringManager.getPublicKey(destination);
-        ECPrivateKey privateKey = keyringManager.getMyPrivateKey();
-        return CryptoUtils.encryptMessage(publicKey, privateKey, payload);
+        for (Map.Entry<String, CompletableFuture<Void>> window : held.entrySet())
+        {
+            if (!window.getValue().cancel(false) && !window.getValue().isCompletedExceptionally())
+            {
+                ackTracker.releaseWindow(List.of(window.getKey()), size);
+            }
+        }
     }
 
 
-    private SMMPMessage createSMMPMessage(byte[] payload, byte[] signature, boolean encrypted, boolean requireAck, byte[] certificate) throws CertificateEncodingException, SignatureGenerationException
+    /**
+     * Gets a future that completes with the first of the given sends that succeeds, or exceptionally once all of them failed.
+     */
+    private static CompletableFuture<String> firstSent(List<CompletableFuture<String>> sends)
     {
-        String SMMPMessageID = UUID.randomUUID().toString();
-        return SMMPUtils.createMessage(payload, signature, SMMPMessageID, certificate, encrypted, requireAck);
-    }
+        CompletableFuture<String> first = new CompletableFuture<>();
+        AtomicInteger failed = new AtomicInteger();
 
+        for (CompletableFuture<String> send : sends)
+        {
+            send.whenComplete((messageID, ex) ->
+            {
+                if (ex == null)
+                {
+                    first.complete(messageID);
+                }
 
-    private CompletableFuture<String> sendInternal(String destination, byte[] payload, Instant expires) throws ConnectException
-    {
-        byte[] protocolMessageBytes = SMMPUtils.createProtocolMessage(payload, MessageType.MESSAGE).toByteArray();
-        return connection.sendDirect(destination, protocolMessageBytes, expires);
+                else if (failed.incrementAndGet() == sends.size())
+                {
+                    first.completeExceptionally(unwrap(ex));
+                }
+            });
+        }
+
+        return first;
     }
 
 
-    private CompletableFuture<String> sendInternal(List<String> destinations, byte[] payload, Instant expires) throws ConnectException
+    private CompletableFuture<String> publishInternal(String subject, SMMPMessage message, Instant expires)
     {
-        byte[] protocolMessageBytes = SMMPUtils.createProtocolMessage(payload, MessageType.MESSAGE).toByteArray();
-        return connection.sendDirect(destinations, protocolMessageBytes, expires);
+        try
+        {
+            return connection.publish(subject, new SMMPEnvelope(MessageType.MESSAGE, PayloadWriter.of(message)), expires);
+        }
+
+        catch (ConnectException ex)
+        {
+            return CompletableFuture.failedFuture(ex);
+        }
     }
 
 
-    private CompletableFuture<String> publishInternal(String subject, byte[] payload, Instant expires) throws ConnectException
+    /**
+     * Hands prepared messages to the agent as one batch.
+     */
+    private interface BatchSender
     {
-        byte[] protocolMessageBytes = SMMPUtils.createProtocolMessage(payload, MessageType.MESSAGE).toByteArray();
-        return connection.publish(subject, protocolMessageBytes, expires);
+        List<CompletableFuture<String>> send(List<SMMPMessage> messages) throws ConnectException;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,114 @@
+package SMMPClient.Crypto;
+
+import SMMPClient.Exceptions.SignatureVerificationException;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+
+/**
+ * Verifies ECDSA signatures in parallel on a {@link CryptoPipeline}.
+ * <p>
+ * {@link #verifyAll(List)} submits each signature of a batch to the pipeline as a task of its own and returns the result
+ * of each one, so a burst of signatures, e.g. a router flushing its backlog after a reconnect, is spread over the threads
+ * of the pipeline, which it shares with the signing and verification of messages rather than competing with them for
+ * the cores. {@link #submit(SignatureVerificationRequest)} verifies a single signature and returns a future.
+ */
+@Slf4j
+public class BatchSignatureVerifier
+{
+    private final CryptoPipeline pipeline;
+
+
+    /**
+     * Constructs a new {@link BatchSignatureVerifier}.
+     *
+     * @param pipeline the crypto pipeline that verifies the signatures
+     */
+    public BatchSignatureVerifier(@NonNull CryptoPipeline pipeline)
+    {
+        this.pipeline = pipeline;
+    }
+
+
+    /**
+     * Verifies a batch of signatures in parallel, and waits for the results.
+     *
+     * @param requests the signatures to verify
+     * @return the result of each verification, in the order of the requests. A signature that could not be
+     * verified because of an error is reported as invalid
+     * @throws java.util.concurrent.CompletionException if a signature was rejected by the pipeline, see {@link CryptoPipeline#submit}
+     */
+    public boolean[] verifyAll(@NonNull List<SignatureVerificationRequest> requests)
+    {
+        return verifyAllAsync(requests).join();
+    }
+
+
+    /**
+     * Verifies a batch of signatures in parallel.
+     *
+     * @param requests the signatures to verify
+     * @return a future that completes with the result of each verification, in the order of the requests, or
+     * exceptionally if a signature was rejected by the pipeline. A signature that could not be verified because of
+     * an error is reported as invalid
+     */
+    public CompletableFuture<boolean[]> verifyAllAsync(@NonNull List<SignatureVerificationRequest> requests)
+    {
+        List<CompletableFuture<Boolean>> verifications = new ArrayList<>(requests.size());
+
+        for (SignatureVerificationRequest request : requests)
+        {
+            verifications.add(submit(request));
+        }
+
+        return CompletableFuture.allOf(verifications.toArray(new CompletableFuture<?>[0])).thenApply(ignored ->
+        {
+            boolean[] results = new boolean[verifications.size()];
+
+            for (int i = 0; i < results.length; i++)
+            {
+                results[i] = verifications.get(i).join();
+            }
+
+            return results;
+        });
+    }
+
+
+    /**
+     * Submits a signature for verification to the pipeline.
+     *
+     * @param request the signature to verify
+     * @return a future completed on a pipeline thread with true if the signature is valid, false if it is invalid or
+     * could not be verified, or exceptionally if it was rejected by the pipeline
+     */
+    public CompletableFuture<Boolean> submit(@NonNull SignatureVerificationRequest request)
+    {
+        return pipeline.submit(() -> verify(request));
+    }
+
+
+    /**
+     * Verifies a single signature.
+     *
+     * @param request the signature to verify
+     * @return true if the signature is valid, false if it is invalid or could not be verified
+     */
+    private static boolean verify(SignatureVerificationRequest request)
+    {
+        try
+        {
+            return CryptoUtils.verifySignature(request.getKey(), request.getData(), request.getSignature());
+        }
+
+        catch (SignatureVerificationException ex)
+        {
+            log.debug("Failed to verify signature", ex);
+            return false;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package SMMPClient.Crypto;
+
+/**
+ * An immutable snapshot of the counters kept by the caches in the crypto layer.
+ */
+public class CacheStatistics
+{
+    private final long hits;
+    private final long misses;
+    private final long reloads;
+    private final long evictions;
+
+
+    /**
+     * Constructs a new {@link CacheStatistics} snapshot.
+     *
+     * @param hits      the number of lookups served from memory
+     * @param misses    the number of lookups that had to go to the backing source
+     * @param reloads   the number of times the backing source was (re)loaded
+     * @param evictions the number of entries dropped from the cache
+     */
+    public CacheStatistics(long hits, long misses, long reloads, long evictions)
+    {
+        this.hits = hits;
+        this.misses = misses;
+        this.reloads = reloads;
+        this.evictions = evictions;
+    }
+
+
+    /**
+     * Returns the number of lookups served from memory.
+     *
+     * @return the number of cache hits
+     */
+    public long getHits()
+    {
+        return hits;
+    }
+
+
+    /**
+     * Returns the number of lookups that had to go to the backing source.
+     *
+     * @return the number of cache misses
+     */
+    public long getMisses()
+    {
+        return misses;
+    }
+
+
+    /**
+     * Returns the number of times the backing source was (re)loaded.
+     *
+     * @return the number of reloads
+     */
+    public long getReloads()
+    {
+        return reloads;
+    }
+
+
+    /**
+     * Returns the number of entries dropped from the cache, either because of its size bound or because they expired.
+     *
+     * @return the number of evictions
+     */
+    public long getEvictions()
+    {
+        return evictions;
+    }
+
+
+    /**
+     * Returns the fraction of lookups served from memory.
+     *
+     * @return the hit ratio, or 0 if there have been no lookups
+     */
+    public double getHitRatio()
+    {
+        long total = hits + misses;
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+
+    @Override
+    public String toString()
+    {
+        return "CacheStatistics{hits=" + hits + ", misses=" + misses + ", reloads=" + reloads + ", evictions=" + evictions + "}";
+    }
+}
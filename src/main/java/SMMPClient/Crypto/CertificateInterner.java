@@ -0,0 +1,138 @@
+package SMMPClient.Crypto;
+
+import com.google.protobuf.ByteString;
+import lombok.NonNull;
+
+import java.security.PublicKey;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.security.interfaces.ECPublicKey;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+
+/**
+ * Interns the DER encoded certificates carried by inbound SMMP messages and acks, so a peer that sends many messages
+ * only has its certificate decoded once.
+ * <p>
+ * Entries are keyed on the raw certificate bytes. {@link ByteString} caches its content hash and compares by content,
+ * so a lookup costs one pass over the bytes instead of an ASN.1 decode. The cache is a size bounded LRU.
+ * Keys are copied on insertion, so a certificate parsed as a view of a larger frame does not keep the frame alive.
+ */
+public class CertificateInterner
+{
+    private static final String CERTIFICATE_TYPE = "X.509";
+
+    private final int maxEntries;
+    private final Map<ByteString, DecodedCertificate> entries;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+
+    /**
+     * Constructs a new {@link CertificateInterner}.
+     *
+     * @param maxEntries the maximum number of decoded certificates to keep
+     */
+    public CertificateInterner(int maxEntries)
+    {
+        this.maxEntries = maxEntries;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ByteString, DecodedCertificate> eldest)
+            {
+                if (size() > CertificateInterner.this.maxEntries)
+                {
+                    evictions++;
+                    return true;
+                }
+
+                return false;
+            }
+        };
+    }
+
+
+    /**
+     * Returns the decoded form of the given certificate bytes, decoding them only if they have not been seen recently.
+     *
+     * @param certificateBytes the DER encoded certificate
+     * @return the decoded certificate and its public key
+     * @throws CertificateException if the bytes are not a valid X.509 certificate with an EC public key
+     */
+    public DecodedCertificate intern(@NonNull ByteString certificateBytes) throws CertificateException
+    {
+        synchronized (entries)
+        {
+            DecodedCertificate decoded = entries.get(certificateBytes);
+
+            if (decoded != null)
+            {
+                hits++;
+                return decoded;
+            }
+
+            misses++;
+        }
+
+        DecodedCertificate decoded = decode(certificateBytes);
+
+        synchronized (entries)
+        {
+            DecodedCertificate existing = entries.putIfAbsent(ByteString.copyFrom(certificateBytes.asReadOnlyByteBuffer()), decoded);
+            return existing != null ? existing : decoded;
+        }
+    }
+
+
+    /**
+     * Removes all entries.
+     */
+    public void clear()
+    {
+        synchronized (entries)
+        {
+            entries.clear();
+        }
+    }
+
+
+    /**
+     * Returns a snapshot of the hit, miss and eviction counters of this cache.
+     *
+     * @return the cache statistics
+     */
+    public CacheStatistics getStatistics()
+    {
+        synchronized (entries)
+        {
+            return new CacheStatistics(hits, misses, 0, evictions);
+        }
+    }
+
+
+    /**
+     * Decodes a DER encoded certificate.
+     *
+     * @param certificateBytes the DER encoded certificate
+     * @return the decoded certificate and its public key
+     * @throws CertificateException if the bytes are not a valid X.509 certificate with an EC public key
+     */
+    private static DecodedCertificate decode(ByteString certificateBytes) throws CertificateException
+    {
+        CertificateFactory certificateFactory = CertificateFactory.getInstance(CERTIFICATE_TYPE);
+        X509Certificate certificate = (X509Certificate) certificateFactory.generateCertificate(certificateBytes.newInput());
+        PublicKey publicKey = certificate.getPublicKey();
+
+        if (!(publicKey instanceof ECPublicKey))
+        {
+            throw new CertificateException("Certificate does not contain an EC public key");
+        }
+
+        return new DecodedCertificate(certificate, (ECPublicKey) publicKey);
+    }
+}
@@ -0,0 +1,204 @@
+package SMMPClient.Crypto;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Function;
+
+
+/**
+ * Passes the results of {@link CryptoPipeline} tasks on in the order the tasks were submitted, while the tasks
+ * themselves still run in parallel. The pipeline completes the tasks of a burst in whatever order its threads finish
+ * them, so two messages of one session could otherwise be delivered, or handed to the agent, out of order.
+ * <p>
+ * Each result is passed to its action once the actions of all the results passed before it have run. The actions are
+ * run one at a time by a drain on the given executor, which runs the actions of the results at the head that are
+ * complete, and stops at the first one that is not. At most one drain is queued on or running in the executor, and a
+ * drain runs at most {@value #MAX_ACTIONS_PER_DRAIN} actions before it hands its thread back and queues another.
+ * A result that failed skips its action and does not hold up the results after it.
+ */
+@Slf4j
+public class CompletionSequencer
+{
+    private static final int MAX_ACTIONS_PER_DRAIN = 64;
+
+    private final Executor executor;
+    private final Queue<Entry<?, ?>> entries = new ArrayDeque<>();
+    private boolean scheduled;
+
+
+    /**
+     * Constructs a new {@link CompletionSequencer}.
+     *
+     * @param executor the executor that runs the actions, one at a time
+     */
+    public CompletionSequencer(@NonNull Executor executor)
+    {
+        this.executor = executor;
+    }
+
+
+    /**
+     * Applies an action to a result once the actions of all the results passed before it have run.
+     *
+     * @param result the result, typically of a task submitted to the crypto pipeline
+     * @param action the action to apply
+     * @param <T>    the type of the result
+     * @param <R>    the type returned by the action
+     * @return a future that completes with what the action returned, or exceptionally if the result failed or the action threw
+     */
+    public <T, R> CompletableFuture<R> thenApply(@NonNull CompletableFuture<T> result, @NonNull Function<? super T, ? extends R> action)
+    {
+        return thenCompose(result, value -> CompletableFuture.completedFuture(action.apply(value)));
+    }
+
+
+    /**
+     * Applies an action that starts another stage to a result once the actions of all the results passed before it
+     * have run. The next action does not wait for the stage it started, only for the action to return, so this keeps
+     * the order in which stages are started, such as the order in which messages are handed to the agent, without
+     * waiting for them to finish.
+     *
+     * @param result the result, typically of a task submitted to the crypto pipeline
+     * @param action the action to apply
+     * @param <T>    the type of the result
+     * @param <R>    the type of the stage started by the action
+     * @return a future that completes with the outcome of the stage started by the action, or exceptionally if the
+     * result failed or the action threw
+     */
+    public <T, R> CompletableFuture<R> thenCompose(@NonNull CompletableFuture<T> result, @NonNull Function<? super T, ? extends CompletionStage<R>> action)
+    {
+        Entry<T, R> entry = new Entry<>(result, action);
+
+        synchronized (this)
+        {
+            entries.add(entry);
+        }
+
+        result.whenComplete((value, ex) -> schedule());
+        return entry.output;
+    }
+
+
+    /**
+     * Queues a drain if none is queued or running and the result at the head is complete.
+     */
+    private void schedule()
+    {
+        synchronized (this)
+        {
+            if (scheduled || !headCompleted())
+            {
+                return;
+            }
+
+            scheduled = true;
+        }
+
+        try
+        {
+            executor.execute(this::drain);
+        }
+
+        catch (RejectedExecutionException ex)
+        {
+            log.warn("Could not schedule the next completions, running them on the calling thread", ex);
+            drain();
+        }
+    }
+
+
+    /**
+     * Runs the actions of the completed results at the head, in order, and queues another drain if there are more
+     * once the limit per drain is reached.
+     */
+    private void drain()
+    {
+        for (int ran = 0; ran < MAX_ACTIONS_PER_DRAIN; ran++)
+        {
+            Entry<?, ?> entry;
+
+            synchronized (this)
+            {
+                if (!headCompleted())
+                {
+                    scheduled = false;
+                    return;
+                }
+
+                entry = entries.poll();
+            }
+
+            entry.run();
+        }
+
+        synchronized (this)
+        {
+            scheduled = false;
+        }
+
+        schedule();
+    }
+
+
+    private boolean headCompleted()
+    {
+        Entry<?, ?> head = entries.peek();
+        return head != null && head.result.isDone();
+    }
+
+
+    /**
+     * A result waiting for its turn, the action to apply to it, and the future of the stage the action starts.
+     */
+    private static class Entry<T, R>
+    {
+        private final CompletableFuture<T> result;
+        private final Function<? super T, ? extends CompletionStage<R>> action;
+        private final CompletableFuture<R> output = new CompletableFuture<>();
+
+
+        private Entry(CompletableFuture<T> result, Function<? super T, ? extends CompletionStage<R>> action)
+        {
+            this.result = result;
+            this.action = action;
+        }
+
+
+        private void run()
+        {
+            try
+            {
+                action.apply(result.join()).whenComplete((value, ex) ->
+                {
+                    if (ex != null)
+                    {
+                        output.completeExceptionally(ex);
+                    }
+
+                    else
+                    {
+                        output.complete(value);
+                    }
+                });
+            }
+
+            catch (CompletionException ex)
+            {
+                output.completeExceptionally(ex.getCause() != null ? ex.getCause() : ex);
+            }
+
+            catch (RuntimeException ex)
+            {
+                output.completeExceptionally(ex);
+            }
+        }
+    }
+}
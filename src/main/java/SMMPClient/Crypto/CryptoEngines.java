@@ -0,0 +1,127 @@
+package SMMPClient.Crypto;
+
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyAgreement;
+import javax.crypto.NoSuchPaddingException;
+import java.security.NoSuchAlgorithmException;
+import java.security.NoSuchProviderException;
+import java.security.Security;
+import java.security.Signature;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * Hands out the {@link Signature}, {@link Cipher} and {@link KeyAgreement} engines used by {@link CryptoUtils}.
+ * <p>
+ * JCA engines are not thread safe but are cheap to re-initialize, so every thread keeps one instance of each and
+ * reuses it for every operation instead of looking up the provider and allocating a new engine. Callers must fully
+ * initialize an engine (initSign, initVerify or init) before each use, and must not hold on to it after the
+ * operation has completed.
+ */
+public class CryptoEngines
+{
+    private static final String SIGNATURE_ALGORITHM = "SHA512withECDSA";
+    private static final String CIPHER_ALGORITHM = "AES/CBC/PKCS7Padding";
+    private static final String KEY_AGREEMENT_ALGORITHM = "ECDH";
+    private static final String PROVIDER_NAME = "BC";
+
+    private static final ThreadLocal<Signature> SIGNATURE = new ThreadLocal<>();
+    private static final ThreadLocal<Cipher> CIPHER = new ThreadLocal<>();
+    private static final ThreadLocal<KeyAgreement> KEY_AGREEMENT = new ThreadLocal<>();
+
+    private static final LongAdder creations = new LongAdder();
+    private static final LongAdder reuses = new LongAdder();
+
+    static
+    {
+        Security.addProvider(new BouncyCastleProvider());
+    }
+
+    private CryptoEngines() {}
+
+
+    /**
+     * Gets the signature engine of the calling thread.
+     *
+     * @return A SHA512withECDSA signature engine.
+     * @throws NoSuchAlgorithmException if the signature algorithm is not available.
+     * @throws NoSuchProviderException  if the security provider is not available.
+     */
+    public static Signature signature() throws NoSuchAlgorithmException, NoSuchProviderException
+    {
+        Signature signature = SIGNATURE.get();
+
+        if (signature == null)
+        {
+            signature = Signature.getInstance(SIGNATURE_ALGORITHM, PROVIDER_NAME);
+            SIGNATURE.set(signature);
+            creations.increment();
+            return signature;
+        }
+
+        reuses.increment();
+        return signature;
+    }
+
+
+    /**
+     * Gets the cipher engine of the calling thread.
+     *
+     * @return An AES/CBC/PKCS7Padding cipher.
+     * @throws NoSuchAlgorithmException if the cipher algorithm is not available.
+     * @throws NoSuchProviderException  if the security provider is not available.
+     * @throws NoSuchPaddingException   if the padding scheme is not available.
+     */
+    public static Cipher cipher() throws NoSuchAlgorithmException, NoSuchProviderException, NoSuchPaddingException
+    {
+        Cipher cipher = CIPHER.get();
+
+        if (cipher == null)
+        {
+            cipher = Cipher.getInstance(CIPHER_ALGORITHM, PROVIDER_NAME);
+            CIPHER.set(cipher);
+            creations.increment();
+            return cipher;
+        }
+
+        reuses.increment();
+        return cipher;
+    }
+
+
+    /**
+     * Gets the key agreement engine of the calling thread.
+     *
+     * @return An ECDH key agreement.
+     * @throws NoSuchAlgorithmException if the key agreement algorithm is not available.
+     * @throws NoSuchProviderException  if the security provider is not available.
+     */
+    public static KeyAgreement keyAgreement() throws NoSuchAlgorithmException, NoSuchProviderException
+    {
+        KeyAgreement keyAgreement = KEY_AGREEMENT.get();
+
+        if (keyAgreement == null)
+        {
+            keyAgreement = KeyAgreement.getInstance(KEY_AGREEMENT_ALGORITHM, PROVIDER_NAME);
+            KEY_AGREEMENT.set(keyAgreement);
+            creations.increment();
+            return keyAgreement;
+        }
+
+        reuses.increment();
+        return keyAgreement;
+    }
+
+
+    /**
+     * Returns how often an engine was reused (hits) versus created (misses), across all threads.
+     *
+     * @return The engine statistics.
+     */
+    public static CacheStatistics getStatistics()
+    {
+        return new CacheStatistics(reuses.sum(), creations.sum(), 0, 0);
+    }
+}
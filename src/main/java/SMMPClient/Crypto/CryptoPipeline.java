@@ -0,0 +1,145 @@
+package SMMPClient.Crypto;
+
+import Agent.Utils.RejectionPolicy;
+import Agent.Utils.WorkerPool;
+import Agent.Utils.WorkerPoolConfiguration;
+import Agent.Utils.WorkerPoolStatistics;
+import lombok.NonNull;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+
+
+/**
+ * Runs the signing, signature and certificate verification, key agreement and encryption of SMMP messages on a
+ * bounded pool of its own, so a burst of encrypted traffic does not hold up the threads that read from the socket,
+ * or the worker pool of the agent that runs the sends and subscriptions.
+ * <p>
+ * The pool has a fixed number of threads, normally one per core, as the work is CPU bound, and a bounded queue.
+ * Once the queue is full the {@link RejectionPolicy} applies: {@link RejectionPolicy#BLOCK} holds the submitting
+ * thread until there is room, which pushes back on an application that sends faster than its messages can be signed,
+ * and on the socket when messages arrive faster than they can be verified. {@link RejectionPolicy#ABORT} fails the
+ * task right away, and {@link RejectionPolicy#CALLER_RUNS} runs it on the submitting thread.
+ * <p>
+ * A task submitted from a thread of the pipeline, such as a reply sent by the application from a message handler,
+ * runs right away on that thread, so the pipeline never waits on its own queue.
+ * <p>
+ * Tasks complete in whatever order the threads finish them. Results that must be passed on in the order the tasks
+ * were submitted, such as the messages of one session, go through a {@link CompletionSequencer}.
+ */
+public class CryptoPipeline
+{
+    private static final ThreadLocal<CryptoPipeline> CURRENT = new ThreadLocal<>();
+
+    private final WorkerPool pool;
+
+
+    /**
+     * Constructs a new {@link CryptoPipeline} with one thread per core and room for 1024 queued tasks,
+     * that blocks the submitter once the queue is full.
+     */
+    public CryptoPipeline()
+    {
+        this(Runtime.getRuntime().availableProcessors(), 1024, RejectionPolicy.BLOCK);
+    }
+
+
+    /**
+     * Constructs a new {@link CryptoPipeline}.
+     *
+     * @param threads         the number of threads, at least 1
+     * @param queueCapacity   the number of tasks that may wait for a thread, at least 1
+     * @param rejectionPolicy what to do with a task once the queue is full
+     */
+    public CryptoPipeline(int threads, int queueCapacity, @NonNull RejectionPolicy rejectionPolicy)
+    {
+        WorkerPoolConfiguration configuration = new WorkerPoolConfiguration()
+                .setCoreThreads(threads)
+                .setMaxThreads(threads)
+                .setQueueCapacity(queueCapacity)
+                .setRejectionPolicy(rejectionPolicy)
+                .setThreadNamePrefix("smmp-crypto");
+
+        this.pool = new WorkerPool(configuration);
+    }
+
+
+    /**
+     * Submits a task to the pipeline.
+     *
+     * @param task the task to run
+     * @param <T>  the result type of the task
+     * @return a future that completes on a pipeline thread with the result of the task, or exceptionally with the exception
+     * it threw, or with a {@link RejectedExecutionException} if the queue is full and the policy is {@link RejectionPolicy#ABORT}
+     */
+    public <T> CompletableFuture<T> submit(@NonNull Callable<T> task)
+    {
+        CompletableFuture<T> future = new CompletableFuture<>();
+
+        if (CURRENT.get() == this)
+        {
+            run(task, future);
+            return future;
+        }
+
+        try
+        {
+            pool.execute(() ->
+            {
+                CURRENT.set(this);
+
+                try
+                {
+                    run(task, future);
+                }
+
+                finally
+                {
+                    CURRENT.remove();
+                }
+            });
+        }
+
+        catch (RejectedExecutionException ex)
+        {
+            future.completeExceptionally(ex);
+        }
+
+        return future;
+    }
+
+
+    /**
+     * Gets a snapshot of the queue depth, busy threads, task latency and rejections of the pipeline.
+     *
+     * @return the pipeline statistics
+     */
+    public WorkerPoolStatistics getStatistics()
+    {
+        return pool.getStatistics();
+    }
+
+
+    /**
+     * Stops accepting tasks and waits a short while for the queued tasks to finish.
+     */
+    public void shutdown()
+    {
+        pool.shutdown();
+    }
+
+
+    private static <T> void run(Callable<T> task, CompletableFuture<T> future)
+    {
+        try
+        {
+            future.complete(task.call());
+        }
+
+        catch (Exception ex)
+        {
+            future.completeExceptionally(ex);
+        }
+    }
+}
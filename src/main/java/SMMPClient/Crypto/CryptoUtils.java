@@ -8,7 +8,6 @@ import lombok.NonNull;
 import org.bouncycastle.crypto.digests.SHA512Digest;
 import org.bouncycastle.crypto.generators.HKDFBytesGenerator;
 import org.bouncycastle.crypto.params.HKDFParameters;
-import org.bouncycastle.jce.provider.BouncyCastleProvider;
 
 import javax.crypto.*;
 import javax.crypto.spec.IvParameterSpec;
@@ -16,26 +15,25 @@ import javax.crypto.spec.SecretKeySpec;
 import java.security.*;
 import java.security.interfaces.ECPrivateKey;
 import java.security.interfaces.ECPublicKey;
+import java.time.Duration;
 
 
 /**
  * A utility class for cryptographic operations such as encryption, decryption, signing, and verification.
- * Uses the BouncyCastle provider for cryptographic operations.
+ * Uses the BouncyCastle provider for cryptographic operations, through the per-thread engines of {@link CryptoEngines}.
+ * <p>
+ * The key and IV derived for a pair of local private key and peer public key are kept in a {@link SessionKeyCache},
+ * so the ECDH key agreement and HKDF only run on the first message to or from a peer.
  */
 public class CryptoUtils
 {
     private static final int KEY_LENGTH = 256; // bits
     private static final int IV_LENGTH = 128; // bits
     private static final String HKDF_ALGORITHM = "HkdfSHA512";
-    private static final String CIPHER_ALGORITHM = "AES/CBC/PKCS7Padding";
-    private static final String SIGNATURE_ALGORITHM = "SHA512withECDSA";
-    private static final String PROVIDER_NAME = "BC";
     private static final byte[] HKDF_INFO = "SMMPv1".getBytes();
-
-    static
-    {
-        Security.addProvider(new BouncyCastleProvider());
-    }
+    private static final int SESSION_KEY_CACHE_SIZE = 256;
+    private static final Duration SESSION_KEY_TTL = Duration.ofHours(1);
+    private static final SessionKeyCache SESSION_KEYS = new SessionKeyCache(SESSION_KEY_CACHE_SIZE, SESSION_KEY_TTL);
 
     private CryptoUtils() {}
 
@@ -53,18 +51,11 @@ public class CryptoUtils
     {
         try
         {
-            // Derive shared secret
-            byte[][] ikmAndSalt = deriveSecret(publicKey, privateKey);
-            byte[] ikm = ikmAndSalt[0];
-            byte[] salt = ikmAndSalt[1];
-
-            // Derive key and IV using HKDF
-            byte[][] keyAndIV = hkdf(ikm, salt);
-            byte[] key = keyAndIV[0];
-            byte[] iv = keyAndIV[1];
+            // Derive or look up the session key
+            SessionKey sessionKey = getSessionKey(publicKey, privateKey);
 
             // Encrypt message using AES-CBC
-            return encrypt(key, iv, message);
+            return encrypt(sessionKey.getKey(), sessionKey.getIv(), message);
         }
 
         catch (NoSuchAlgorithmException | NoSuchPaddingException | NoSuchProviderException | InvalidAlgorithmParameterException | InvalidKeyException | IllegalBlockSizeException |
@@ -89,18 +80,11 @@ public class CryptoUtils
 
         try
         {
-            // Derive shared secret
-            byte[][] ikmAndSalt = deriveSecret(publicKey, privateKey);
-            byte[] ikm = ikmAndSalt[0];
-            byte[] salt = ikmAndSalt[1];
-
-            // Derive key and IV using HKDF
-            byte[][] keyAndIV = hkdf(ikm, salt);
-            byte[] key = keyAndIV[0];
-            byte[] iv = keyAndIV[1];
+            // Derive or look up the session key
+            SessionKey sessionKey = getSessionKey(publicKey, privateKey);
 
             // Decrypt message using AES-CBC
-            return decrypt(key, iv, message);
+            return decrypt(sessionKey.getKey(), sessionKey.getIv(), message);
         }
 
         catch (NoSuchAlgorithmException | NoSuchPaddingException | NoSuchProviderException | InvalidAlgorithmParameterException | InvalidKeyException | IllegalBlockSizeException |
@@ -123,7 +107,7 @@ public class CryptoUtils
     {
         try
         {
-            Signature signer = Signature.getInstance(SIGNATURE_ALGORITHM, PROVIDER_NAME);
+            Signature signer = CryptoEngines.signature();
             signer.initSign(key);
             signer.update(data);
             return signer.sign();
@@ -149,7 +133,7 @@ public class CryptoUtils
     {
         try
         {
-            Signature verifier = Signature.getInstance(SIGNATURE_ALGORITHM, PROVIDER_NAME);
+            Signature verifier = CryptoEngines.signature();
             verifier.initVerify(key);
             verifier.update(data);
             return verifier.verify(signature);
@@ -162,6 +146,63 @@ public class CryptoUtils
     }
 
 
+    /**
+     * Removes the cached session keys derived with the given peer public key, e.g. after its certificate was revoked.
+     *
+     * @param publicKey The peer public key.
+     */
+    public static void invalidateSessionKeys(@NonNull ECPublicKey publicKey)
+    {
+        SESSION_KEYS.invalidate(publicKey);
+    }
+
+
+    /**
+     * Removes all cached session keys, e.g. after the keyring was reloaded.
+     */
+    public static void invalidateSessionKeys()
+    {
+        SESSION_KEYS.invalidateAll();
+    }
+
+
+    /**
+     * Gets the hit, miss and eviction counters of the session key cache.
+     *
+     * @return The session key cache statistics.
+     */
+    public static CacheStatistics getSessionKeyStatistics()
+    {
+        return SESSION_KEYS.getStatistics();
+    }
+
+
+    /**
+     * Gets the session key for the provided public and private keys, deriving it if it is not cached.
+     *
+     * @param publicKey  The public key.
+     * @param privateKey The private key.
+     * @return The session key.
+     * @throws NoSuchAlgorithmException if the key agreement algorithm is not available.
+     * @throws NoSuchProviderException  if the security provider is not available.
+     * @throws InvalidKeyException      if the provided key is invalid.
+     */
+    private static SessionKey getSessionKey(ECPublicKey publicKey, ECPrivateKey privateKey) throws NoSuchAlgorithmException, NoSuchProviderException, InvalidKeyException
+    {
+        SessionKey sessionKey = SESSION_KEYS.get(privateKey, publicKey);
+
+        if (sessionKey == null)
+        {
+            byte[][] ikmAndSalt = deriveSecret(publicKey, privateKey);
+            byte[][] keyAndIV = hkdf(ikmAndSalt[0], ikmAndSalt[1]);
+            sessionKey = new SessionKey(new SecretKeySpec(keyAndIV[0], "AES"), new IvParameterSpec(keyAndIV[1]));
+            SESSION_KEYS.put(privateKey, publicKey, sessionKey);
+        }
+
+        return sessionKey;
+    }
+
+
     /**
      * Derives a shared secret from the provided public and private keys.
      *
@@ -174,7 +215,7 @@ public class CryptoUtils
      */
     private static byte[][] deriveSecret(ECPublicKey publicKey, ECPrivateKey privateKey) throws NoSuchAlgorithmException, NoSuchProviderException, InvalidKeyException
     {
-        KeyAgreement keyAgreement = KeyAgreement.getInstance("ECDH", PROVIDER_NAME);
+        KeyAgreement keyAgreement = CryptoEngines.keyAgreement();
         keyAgreement.init(privateKey);
         keyAgreement.doPhase(publicKey, true);
         byte[] sharedSecret = keyAgreement.generateSecret();
@@ -227,12 +268,10 @@ public class CryptoUtils
      * @throws IllegalBlockSizeException          if the block size is invalid.
      * @throws BadPaddingException                if the padding is invalid.
      */
-    private static byte[] encrypt(byte[] key, byte[] iv, byte[] data) throws NoSuchPaddingException, NoSuchAlgorithmException, NoSuchProviderException, InvalidAlgorithmParameterException, InvalidKeyException, IllegalBlockSizeException, BadPaddingException
+    private static byte[] encrypt(SecretKeySpec key, IvParameterSpec iv, byte[] data) throws NoSuchPaddingException, NoSuchAlgorithmException, NoSuchProviderException, InvalidAlgorithmParameterException, InvalidKeyException, IllegalBlockSizeException, BadPaddingException
     {
-        Cipher cipher = Cipher.getInstance(CIPHER_ALGORITHM, PROVIDER_NAME);
-        SecretKeySpec secretKeySpec = new SecretKeySpec(key, "AES");
-        IvParameterSpec ivParameterSpec = new IvParameterSpec(iv);
-        cipher.init(Cipher.ENCRYPT_MODE, secretKeySpec, ivParameterSpec);
+        Cipher cipher = CryptoEngines.cipher();
+        cipher.init(Cipher.ENCRYPT_MODE, key, iv);
 
         return cipher.doFinal(data);
     }
@@ -253,12 +292,10 @@ public class CryptoUtils
      * @throws InvalidAlgorithmParameterException if the encryption algorithm parameters are invalid.
      * @throws InvalidKeyException                if the provided key is invalid.
      */
-    private static byte[] decrypt(byte[] key, byte[] iv, byte[] data) throws IllegalBlockSizeException, BadPaddingException, NoSuchPaddingException, NoSuchAlgorithmException, NoSuchProviderException, InvalidAlgorithmParameterException, InvalidKeyException
+    private static byte[] decrypt(SecretKeySpec key, IvParameterSpec iv, byte[] data) throws IllegalBlockSizeException, BadPaddingException, NoSuchPaddingException, NoSuchAlgorithmException, NoSuchProviderException, InvalidAlgorithmParameterException, InvalidKeyException
     {
-        Cipher cipher = Cipher.getInstance(CIPHER_ALGORITHM, PROVIDER_NAME);
-        SecretKeySpec secretKeySpec = new SecretKeySpec(key, "AES");
-        IvParameterSpec ivParameterSpec = new IvParameterSpec(iv);
-        cipher.init(Cipher.DECRYPT_MODE, secretKeySpec, ivParameterSpec);
+        Cipher cipher = CryptoEngines.cipher();
+        cipher.init(Cipher.DECRYPT_MODE, key, iv);
 
         return cipher.doFinal(data);
     }
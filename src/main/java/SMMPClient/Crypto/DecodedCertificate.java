@@ -0,0 +1,49 @@
+package SMMPClient.Crypto;
+
+import java.security.cert.X509Certificate;
+import java.security.interfaces.ECPublicKey;
+
+
+/**
+ * A decoded X.509 certificate together with its EC public key, as handed out by {@link CertificateInterner}.
+ */
+public class DecodedCertificate
+{
+    private final X509Certificate certificate;
+    private final ECPublicKey publicKey;
+
+
+    /**
+     * Constructs a new {@link DecodedCertificate}.
+     *
+     * @param certificate the decoded certificate
+     * @param publicKey   the EC public key of the certificate
+     */
+    public DecodedCertificate(X509Certificate certificate, ECPublicKey publicKey)
+    {
+        this.certificate = certificate;
+        this.publicKey = publicKey;
+    }
+
+
+    /**
+     * Gets the decoded certificate.
+     *
+     * @return the certificate
+     */
+    public X509Certificate getCertificate()
+    {
+        return certificate;
+    }
+
+
+    /**
+     * Gets the EC public key of the certificate.
+     *
+     * @return the public key
+     */
+    public ECPublicKey getPublicKey()
+    {
+        return publicKey;
+    }
+}
@@ -0,0 +1,448 @@
+package SMMPClient.Crypto;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.security.KeyStore;
+import java.security.KeyStoreException;
+import java.security.NoSuchAlgorithmException;
+import java.security.UnrecoverableEntryException;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.*;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * An in-memory view of a PKCS12 keystore file, indexed by alias (the MRN for keyring and truststore entries).
+ * <p>
+ * Lookups are served from memory. The modification time and size of the file are checked at most once every
+ * {@link #CHECK_INTERVAL_MILLIS} milliseconds, and the file is only re-read when one of them has changed.
+ * Certificates added at runtime through {@link #addCertificate(String, X509Certificate)} are visible immediately.
+ * They are written back to the file asynchronously on the given writer, additions made within
+ * {@link #FLUSH_DELAY_MILLIS} milliseconds of each other are coalesced into a single write. Until they are written,
+ * they are applied again on top of the file every time it is reloaded, so a reload does not drop them.
+ * <p>
+ * Every time the file is (re)loaded from disk the generation of the cache is increased, runtime additions do not
+ * change it. Callers that memoize results derived from the keystore can use it to detect a changed trust anchor set.
+ */
+@Slf4j
+public class KeyStoreCache
+{
+    private static final long CHECK_INTERVAL_MILLIS = 1000;
+    private static final long FLUSH_DELAY_MILLIS = 500;
+    private static final String KEYSTORE_TYPE = "PKCS12";
+
+    private final String name;
+    private final Path path;
+    private final String password;
+    private final ScheduledExecutorService writer;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder reloads = new LongAdder();
+
+    private volatile Snapshot snapshot;
+    private volatile long nextCheck;
+    private final Map<String, X509Certificate> pending = new LinkedHashMap<>();
+    private boolean flushPending;
+
+
+    /**
+     * Constructs a new {@link KeyStoreCache}. The file is loaded lazily on first access.
+     *
+     * @param name     a name used in log and error messages, e.g. "keyring"
+     * @param path     the path to the PKCS12 file
+     * @param password the password of the PKCS12 file
+     * @param writer   the executor used to write runtime additions back to the file
+     */
+    public KeyStoreCache(@NonNull String name, @NonNull String path, @NonNull String password, @NonNull ScheduledExecutorService writer)
+    {
+        this.name = name;
+        this.path = Paths.get(path);
+        this.password = password;
+        this.writer = writer;
+    }
+
+
+    /**
+     * Gets the certificate stored under the given alias.
+     *
+     * @param alias the alias (MRN) of the certificate
+     * @return the certificate, or null if there is no certificate with the given alias
+     * @throws KeyStoreException if the file could not be loaded
+     */
+    public X509Certificate getCertificate(@NonNull String alias) throws KeyStoreException
+    {
+        return current().certificates.get(normalize(alias));
+    }
+
+
+    /**
+     * Checks whether the given certificate is stored in the keystore, under any alias.
+     *
+     * @param certificate the certificate to look for
+     * @return true if the certificate is present, false otherwise
+     * @throws KeyStoreException if the file could not be loaded
+     */
+    public boolean containsCertificate(@NonNull X509Certificate certificate) throws KeyStoreException
+    {
+        return current().certificateSet.contains(certificate);
+    }
+
+
+    /**
+     * Gets the in-memory keystore. The returned instance is never modified after it has been published,
+     * runtime additions replace it with a copy, so it is safe to use for path validation without further locking.
+     *
+     * @return the current keystore
+     * @throws KeyStoreException if the file could not be loaded
+     */
+    public KeyStore getKeyStore() throws KeyStoreException
+    {
+        return current().keyStore;
+    }
+
+
+    /**
+     * Gets the generation of the keystore, which is increased every time the file is (re)loaded from disk.
+     *
+     * @return the current generation
+     * @throws KeyStoreException if the file could not be loaded
+     */
+    public long getGeneration() throws KeyStoreException
+    {
+        return current().generation;
+    }
+
+
+    /**
+     * Adds a certificate to the keystore and schedules a write of the keystore back to disk,
+     * or writes it right away if the writer has been shut down.
+     *
+     * @param alias       the alias (MRN) to store the certificate under
+     * @param certificate the certificate to add
+     * @throws KeyStoreException if the certificate could not be added
+     */
+    public synchronized void addCertificate(@NonNull String alias, @NonNull X509Certificate certificate) throws KeyStoreException
+    {
+        Snapshot current = current();
+        pending.put(alias, certificate);
+        snapshot = withPending(current);
+
+        if (!flushPending)
+        {
+            flushPending = true;
+
+            try
+            {
+                writer.schedule(this::flush, FLUSH_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+            }
+
+            catch (RejectedExecutionException ex)
+            {
+                flush();
+            }
+        }
+    }
+
+
+    /**
+     * Writes any pending runtime additions to disk immediately.
+     */
+    public synchronized void flush()
+    {
+        if (flushPending)
+        {
+            flushPending = false;
+
+            if (persist(snapshot))
+            {
+                pending.clear();
+            }
+        }
+    }
+
+
+    /**
+     * Returns a snapshot of the hit, miss and reload counters of this cache.
+     *
+     * @return the cache statistics
+     */
+    public CacheStatistics getStatistics()
+    {
+        return new CacheStatistics(hits.sum(), misses.sum(), reloads.sum(), 0);
+    }
+
+
+    /**
+     * Returns the current snapshot, reloading the file first if it has changed since it was last read.
+     *
+     * @return the current snapshot
+     * @throws KeyStoreException if the file has never been loaded and could not be loaded now
+     */
+    private Snapshot current() throws KeyStoreException
+    {
+        Snapshot current = snapshot;
+        long now = System.currentTimeMillis();
+
+        if (current != null && now < nextCheck)
+        {
+            hits.increment();
+            return current;
+        }
+
+        synchronized (this)
+        {
+            current = snapshot;
+
+            if (current == null || (now >= nextCheck && hasChanged(current)))
+            {
+                misses.increment();
+                Snapshot reloaded = reload(current);
+                current = reloaded == current ? current : withPending(reloaded);
+                snapshot = current;
+            }
+
+            else
+            {
+                hits.increment();
+            }
+
+            nextCheck = now + CHECK_INTERVAL_MILLIS;
+            return current;
+        }
+    }
+
+
+    /**
+     * Reloads the file. If a previous snapshot exists and the file can not be read, the previous snapshot is kept.
+     *
+     * @param previous the previous snapshot, or null if the file has never been loaded
+     * @return the new snapshot
+     * @throws KeyStoreException if the file could not be loaded and there is no previous snapshot
+     */
+    private Snapshot reload(Snapshot previous) throws KeyStoreException
+    {
+        try
+        {
+            FileTime lastModified = Files.getLastModifiedTime(path);
+            long size = Files.size(path);
+            KeyStore keyStore = KeyStore.getInstance(KEYSTORE_TYPE);
+
+            try (FileInputStream fis = new FileInputStream(path.toFile()))
+            {
+                keyStore.load(fis, password.toCharArray());
+            }
+
+            reloads.increment();
+            log.debug("Loaded {} from {}", name, path);
+            return index(keyStore, lastModified, size, previous == null ? 1 : previous.generation + 1);
+        }
+
+        catch (IOException | NoSuchAlgorithmException | CertificateException | KeyStoreException ex)
+        {
+            if (previous == null)
+            {
+                throw new KeyStoreException("Failed to load " + name, ex);
+            }
+
+            log.warn("Failed to reload {} from {}, keeping the previously loaded entries", name, path, ex);
+            return previous;
+        }
+    }
+
+
+    /**
+     * Checks whether the file has been modified since the given snapshot was taken.
+     *
+     * @param current the current snapshot
+     * @return true if the modification time or size of the file differs from the snapshot
+     */
+    private boolean hasChanged(Snapshot current)
+    {
+        try
+        {
+            return !Files.getLastModifiedTime(path).equals(current.lastModified) || Files.size(path) != current.size;
+        }
+
+        catch (IOException ex)
+        {
+            log.warn("Failed to check {} at {} for changes", name, path, ex);
+            return false;
+        }
+    }
+
+
+    /**
+     * Writes the keystore of the given snapshot to disk, and records the resulting modification time
+     * so that our own write is not mistaken for an external change. Must be called while holding the lock.
+     *
+     * @param updated the snapshot to write
+     * @return true if the keystore was written, false otherwise
+     */
+    private boolean persist(Snapshot updated)
+    {
+        try (FileOutputStream fos = new FileOutputStream(path.toFile()))
+        {
+            updated.keyStore.store(fos, password.toCharArray());
+        }
+
+        catch (IOException | NoSuchAlgorithmException | CertificateException | KeyStoreException ex)
+        {
+            log.warn("Failed to write {} to {}", name, path, ex);
+            return false;
+        }
+
+        try
+        {
+            snapshot = new Snapshot(updated.keyStore, updated.certificates, updated.certificateSet, Files.getLastModifiedTime(path), Files.size(path), updated.generation);
+        }
+
+        catch (IOException ex)
+        {
+            log.warn("Failed to read the modification time of {} at {}", name, path, ex);
+        }
+
+        return true;
+    }
+
+
+    /**
+     * Applies the runtime additions that have not been written to disk yet on top of a snapshot.
+     * Must be called while holding the lock.
+     *
+     * @param loaded the snapshot to apply the additions to
+     * @return a snapshot with the additions, or the given snapshot if there are none
+     * @throws KeyStoreException if the additions could not be applied
+     */
+    private Snapshot withPending(Snapshot loaded) throws KeyStoreException
+    {
+        if (pending.isEmpty())
+        {
+            return loaded;
+        }
+
+        KeyStore copy = copyOf(loaded.keyStore);
+
+        for (Map.Entry<String, X509Certificate> addition : pending.entrySet())
+        {
+            copy.setCertificateEntry(addition.getKey(), addition.getValue());
+        }
+
+        return index(copy, loaded.lastModified, loaded.size, loaded.generation);
+    }
+
+
+    /**
+     * Builds the alias and certificate indexes of a keystore.
+     *
+     * @param keyStore     the keystore to index
+     * @param lastModified the modification time of the file the keystore was read from
+     * @param size         the size of the file the keystore was read from
+     * @param generation   the generation of the keystore
+     * @return a snapshot of the keystore
+     * @throws KeyStoreException if the keystore could not be read
+     */
+    private static Snapshot index(KeyStore keyStore, FileTime lastModified, long size, long generation) throws KeyStoreException
+    {
+        Map<String, X509Certificate> certificates = new HashMap<>();
+        Set<X509Certificate> certificateSet = new HashSet<>();
+        Enumeration<String> aliases = keyStore.aliases();
+
+        while (aliases.hasMoreElements())
+        {
+            String alias = aliases.nextElement();
+            Certificate certificate = keyStore.getCertificate(alias);
+
+            if (certificate instanceof X509Certificate)
+            {
+                certificates.put(normalize(alias), (X509Certificate) certificate);
+                certificateSet.add((X509Certificate) certificate);
+            }
+        }
+
+        return new Snapshot(keyStore, Collections.unmodifiableMap(certificates), Collections.unmodifiableSet(certificateSet), lastModified, size, generation);
+    }
+
+
+    /**
+     * Creates an in-memory copy of a keystore.
+     *
+     * @param keyStore the keystore to copy
+     * @return the copy
+     * @throws KeyStoreException if the keystore could not be copied
+     */
+    private KeyStore copyOf(KeyStore keyStore) throws KeyStoreException
+    {
+        try
+        {
+            KeyStore copy = KeyStore.getInstance(KEYSTORE_TYPE);
+            copy.load(null, null);
+            KeyStore.PasswordProtection protection = new KeyStore.PasswordProtection(password.toCharArray());
+            Enumeration<String> aliases = keyStore.aliases();
+
+            while (aliases.hasMoreElements())
+            {
+                String alias = aliases.nextElement();
+                KeyStore.ProtectionParameter parameter = keyStore.isKeyEntry(alias) ? protection : null;
+                copy.setEntry(alias, keyStore.getEntry(alias, parameter), parameter);
+            }
+
+            return copy;
+        }
+
+        catch (IOException | NoSuchAlgorithmException | CertificateException | UnrecoverableEntryException ex)
+        {
+            throw new KeyStoreException("Failed to copy " + name, ex);
+        }
+    }
+
+
+    /**
+     * PKCS12 aliases are case-insensitive, so the index is keyed on the lower case alias.
+     *
+     * @param alias the alias to normalize
+     * @return the normalized alias
+     */
+    private static String normalize(String alias)
+    {
+        return alias.toLowerCase(Locale.ENGLISH);
+    }
+
+
+    /**
+     * An immutable view of the keystore as it was at a certain point in time.
+     */
+    private static class Snapshot
+    {
+        private final KeyStore keyStore;
+        private final Map<String, X509Certificate> certificates;
+        private final Set<X509Certificate> certificateSet;
+        private final FileTime lastModified;
+        private final long size;
+        private final long generation;
+
+
+        private Snapshot(KeyStore keyStore, Map<String, X509Certificate> certificates, Set<X509Certificate> certificateSet, FileTime lastModified, long size, long generation)
+        {
+            this.keyStore = keyStore;
+            this.certificates = certificates;
+            this.certificateSet = certificateSet;
+            this.lastModified = lastModified;
+            this.size = size;
+            this.generation = generation;
+        }
+    }
+}
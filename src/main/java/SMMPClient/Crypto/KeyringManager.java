@@ -4,11 +4,11 @@ import Agent.Exceptions.MMSSecurityException;
 import SMMPClient.Exceptions.CertificateValidationException;
 import SMMPClient.Exceptions.MissingCertificateException;
 import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
 import net.maritimeconnectivity.pki.CertificateHandler;
 import net.maritimeconnectivity.pki.PKIIdentity;
 
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.security.*;
 import java.security.cert.CertPathValidatorException;
@@ -17,7 +17,11 @@ import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
 import java.security.interfaces.ECPrivateKey;
 import java.security.interfaces.ECPublicKey;
+import java.time.Duration;
 import java.util.Enumeration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 
 /**
@@ -28,9 +32,19 @@ import java.util.Enumeration;
  * <p>
  * The class is designed with a private constructor and a factory method {@code create()} for instantiation,
  * ensuring that the object is properly set up before use.
+ * <p>
+ * The keyring and truststore are kept in memory as {@link KeyStoreCache} instances, so the files are only
+ * read again when they change on disk. Certificates that passed path validation are remembered in a
+ * {@link VerifiedCertificateCache} until the truststore is reloaded or the validation expires, and expired validations
+ * are evicted once a minute on the thread that writes the keystores.
  */
-public class KeyringManager implements IKeyringManager
+@Slf4j
+public class KeyringManager implements IKeyringManager, AutoCloseable
 {
+    private static final int VERIFIED_CERTIFICATE_CACHE_SIZE = 1024;
+    private static final Duration VERIFIED_CERTIFICATE_TTL = Duration.ofMinutes(10);
+    private static final long VERIFIED_CERTIFICATE_EVICTION_MINUTES = 1;
+
     private final ECPrivateKey myPrivateKey;
     private final ECPublicKey myPublicKey;
     private final X509Certificate myCertificate;
@@ -44,6 +58,13 @@ public class KeyringManager implements IKeyringManager
     private final String keyringPath;
     private final String keyringPassword;
 
+    private final ScheduledExecutorService writer;
+    private final KeyStoreCache keyring;
+    private final KeyStoreCache trustStore;
+    private final VerifiedCertificateCache verifiedCertificates;
+    private volatile long keyringGeneration;
+    private volatile long trustStoreGeneration;
+
 
     /**
      * Constructor for {@link KeyringManager}.
@@ -62,6 +83,18 @@ public class KeyringManager implements IKeyringManager
 
         this.keyringPath = keyringPath;
         this.keyringPassword = keyringPassword;
+
+        this.writer = Executors.newSingleThreadScheduledExecutor(runnable ->
+        {
+            Thread thread = new Thread(runnable, "keyring-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        this.keyring = new KeyStoreCache("keyring", keyringPath, keyringPassword, writer);
+        this.trustStore = new KeyStoreCache("truststore", tsPath, tsPass, writer);
+        this.verifiedCertificates = new VerifiedCertificateCache(VERIFIED_CERTIFICATE_CACHE_SIZE, VERIFIED_CERTIFICATE_TTL);
+        writer.scheduleWithFixedDelay(verifiedCertificates::evictExpired, VERIFIED_CERTIFICATE_EVICTION_MINUTES, VERIFIED_CERTIFICATE_EVICTION_MINUTES, TimeUnit.MINUTES);
     }
 
 
@@ -131,7 +164,8 @@ public class KeyringManager implements IKeyringManager
 
 
     /**
-     * Gets the public key of a given MRN from the keyring.
+     * Gets the public key of a given MRN from the keyring. If the keyring has been reloaded since the last lookup,
+     * the cached session keys are dropped, since peer certificates may have been rotated.
      *
      * @param mrn The MRN of the public key to get
      * @return The public key of the given MRN
@@ -142,8 +176,15 @@ public class KeyringManager implements IKeyringManager
     @Override
     public ECPublicKey getPublicKey(@NonNull String mrn) throws KeyStoreException, MissingCertificateException, CertificateValidationException
     {
-        KeyStore keyring = loadKeyring();
-        X509Certificate certificate = getCertificateFromKeyring(keyring, mrn);
+        long generation = keyring.getGeneration();
+
+        if (generation != keyringGeneration)
+        {
+            keyringGeneration = generation;
+            CryptoUtils.invalidateSessionKeys();
+        }
+
+        X509Certificate certificate = keyring.getCertificate(mrn);
 
         if (certificate != null)
         {
@@ -165,7 +206,8 @@ public class KeyringManager implements IKeyringManager
 
     /**
      * Verifies the given certificate against the truststore. If the certificate is trusted and
-     * not present in the truststore, it will be saved to the truststore.
+     * not present in the truststore, it will be saved to the truststore. Certificates that have already
+     * been verified against the current truststore are not validated again.
      *
      * @param certificate The certificate to verify
      * @return True if the certificate is trusted, false otherwise
@@ -175,23 +217,37 @@ public class KeyringManager implements IKeyringManager
     @Override
     public boolean verifyCertificate(@NonNull X509Certificate certificate) throws CertificateValidationException, KeyStoreException
     {
-        KeyStore trustStore = loadTrustStore();
+        long generation = trustStore.getGeneration();
+        KeyStore trustAnchors = trustStore.getKeyStore();
 
-        if (verifyCertificateChain(certificate, trustStore))
+        if (generation != trustStoreGeneration)
         {
-            PKIIdentity identity = CertificateHandler.getIdentityFromCert(certificate);
-            String MRN = identity.getMrn();
+            trustStoreGeneration = generation;
+            verifiedCertificates.invalidateAll();
+        }
 
-            if (trustStore.getCertificateAlias(certificate) == null)
+        if (verifiedCertificates.isVerified(certificate, generation))
+        {
+            return true;
+        }
+
+        if (verifyCertificateChain(certificate, trustAnchors))
+        {
+            verifiedCertificates.markVerified(certificate, generation);
+
+            if (!trustStore.containsCertificate(certificate))
             {
-                try (FileOutputStream fos = new FileOutputStream(tsPath))
+                PKIIdentity identity = CertificateHandler.getIdentityFromCert(certificate);
+                String MRN = identity.getMrn();
+
+                try
                 {
-                    trustStore.setCertificateEntry(MRN, certificate);
-                    trustStore.store(fos, tsPass.toCharArray());
+                    trustStore.addCertificate(MRN, certificate);
                 }
 
-                catch (IOException | NoSuchAlgorithmException | CertificateException ignored)
+                catch (KeyStoreException ex)
                 {
+                    log.warn("Failed to add the certificate of {} to the truststore", MRN, ex);
                 }
             }
 
@@ -274,6 +330,53 @@ public class KeyringManager implements IKeyringManager
     }
 
 
+    /**
+     * Gets the hit, miss and reload counters of the in-memory keyring.
+     *
+     * @return The keyring cache statistics
+     */
+    public CacheStatistics getKeyringStatistics()
+    {
+        return keyring.getStatistics();
+    }
+
+
+    /**
+     * Gets the hit, miss and reload counters of the in-memory truststore.
+     *
+     * @return The truststore cache statistics
+     */
+    public CacheStatistics getTruststoreStatistics()
+    {
+        return trustStore.getStatistics();
+    }
+
+
+    /**
+     * Gets the hit, miss and eviction counters of the verified certificate cache.
+     *
+     * @return The verified certificate cache statistics
+     */
+    public CacheStatistics getVerifiedCertificateStatistics()
+    {
+        return verifiedCertificates.getStatistics();
+    }
+
+
+    /**
+     * Stops the thread that writes the keyring and truststore, and writes the certificates added to them that are
+     * still waiting for their delayed write to disk, as the daemon thread would drop them at exit.
+     * Certificates added afterwards are written to disk right away.
+     */
+    @Override
+    public void close()
+    {
+        writer.shutdownNow();
+        keyring.flush();
+        trustStore.flush();
+    }
+
+
     /**
      * Loads a PKCS12 keystore from the given path and password.
      *
@@ -370,65 +473,6 @@ public class KeyringManager implements IKeyringManager
     }
 
 
-    /**
-     * Loads the keyring from the given path and password.
-     *
-     * @return The loaded keyring
-     * @throws KeyStoreException If the keyring could not be loaded
-     */
-    private KeyStore loadKeyring() throws KeyStoreException
-    {
-        try
-        {
-            return loadKeyStore(keyringPath, keyringPassword);
-        }
-        catch (IOException | NoSuchAlgorithmException | CertificateException ex)
-        {
-            throw new KeyStoreException("Failed to load keyring", ex);
-        }
-    }
-
-
-    /**
-     * Gets the X509 certificate for the given MRN from the keyring.
-     *
-     * @param keyring The keyring to get the certificate from
-     * @param mrn     The MRN of the certificate to get
-     * @return The certificate for the given MRN
-     * @throws KeyStoreException If an error occurs while getting the certificate
-     */
-    private X509Certificate getCertificateFromKeyring(KeyStore keyring, String mrn) throws KeyStoreException
-    {
-        try
-        {
-            return (X509Certificate) keyring.getCertificate(mrn);
-        }
-        catch (KeyStoreException ex)
-        {
-            throw new KeyStoreException("Failed to get certificate from keyring", ex);
-        }
-    }
-
-
-    /**
-     * Loads the truststore from the given path and password.
-     *
-     * @return The loaded truststore
-     * @throws KeyStoreException If the truststore could not be loaded
-     */
-    private KeyStore loadTrustStore() throws KeyStoreException
-    {
-        try
-        {
-            return loadKeyStore(tsPath, tsPass);
-        }
-        catch (IOException | NoSuchAlgorithmException | CertificateException | KeyStoreException ex)
-        {
-            throw new KeyStoreException("Failed to load truststore", ex);
-        }
-    }
-
-
     /**
      * Verifies the given certificate chain against the given truststore.
      *
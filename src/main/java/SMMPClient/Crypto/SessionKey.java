@@ -0,0 +1,49 @@
+package SMMPClient.Crypto;
+
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+
+/**
+ * The AES key and IV derived from the ECDH shared secret between a local private key and a peer public key.
+ */
+public class SessionKey
+{
+    private final SecretKeySpec key;
+    private final IvParameterSpec iv;
+
+
+    /**
+     * Constructs a new {@link SessionKey}.
+     *
+     * @param key the derived AES key
+     * @param iv  the derived IV
+     */
+    public SessionKey(SecretKeySpec key, IvParameterSpec iv)
+    {
+        this.key = key;
+        this.iv = iv;
+    }
+
+
+    /**
+     * Gets the derived AES key.
+     *
+     * @return the key
+     */
+    public SecretKeySpec getKey()
+    {
+        return key;
+    }
+
+
+    /**
+     * Gets the derived IV.
+     *
+     * @return the IV
+     */
+    public IvParameterSpec getIv()
+    {
+        return iv;
+    }
+}
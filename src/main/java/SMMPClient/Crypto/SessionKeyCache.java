@@ -0,0 +1,221 @@
+package SMMPClient.Crypto;
+
+import lombok.NonNull;
+
+import java.security.interfaces.ECPrivateKey;
+import java.security.interfaces.ECPublicKey;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+
+/**
+ * A bounded cache of the session keys derived for pairs of a local private key and a peer public key.
+ * <p>
+ * Neither key of a pair changes between messages, so the ECDH key agreement and HKDF only have to run once per pair.
+ * Entries expire after a time to live, and can be invalidated explicitly per peer or as a whole when certificates
+ * are rotated.
+ */
+public class SessionKeyCache
+{
+    private final int maxEntries;
+    private final long ttlMillis;
+    private final Map<KeyPair, Entry> entries;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+
+    /**
+     * Constructs a new {@link SessionKeyCache}.
+     *
+     * @param maxEntries the maximum number of session keys to keep
+     * @param ttl        how long a derived session key is reused before it is derived again
+     */
+    public SessionKeyCache(int maxEntries, @NonNull Duration ttl)
+    {
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttl.toMillis();
+        this.entries = new LinkedHashMap<>(16, 0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<KeyPair, Entry> eldest)
+            {
+                if (size() > SessionKeyCache.this.maxEntries)
+                {
+                    evictions++;
+                    return true;
+                }
+
+                return false;
+            }
+        };
+    }
+
+
+    /**
+     * Gets the session key derived for the given key pair.
+     *
+     * @param privateKey the local private key
+     * @param publicKey  the peer public key
+     * @return the session key, or null if there is none or it has expired
+     */
+    public SessionKey get(@NonNull ECPrivateKey privateKey, @NonNull ECPublicKey publicKey)
+    {
+        KeyPair keyPair = new KeyPair(privateKey, publicKey);
+        long now = System.currentTimeMillis();
+
+        synchronized (entries)
+        {
+            Entry entry = entries.get(keyPair);
+
+            if (entry != null && now < entry.expiresAt)
+            {
+                hits++;
+                return entry.sessionKey;
+            }
+
+            if (entry != null)
+            {
+                entries.remove(keyPair);
+                evictions++;
+            }
+
+            misses++;
+            return null;
+        }
+    }
+
+
+    /**
+     * Stores the session key derived for the given key pair.
+     *
+     * @param privateKey the local private key
+     * @param publicKey  the peer public key
+     * @param sessionKey the derived session key
+     */
+    public void put(@NonNull ECPrivateKey privateKey, @NonNull ECPublicKey publicKey, @NonNull SessionKey sessionKey)
+    {
+        KeyPair keyPair = new KeyPair(privateKey, publicKey);
+        long expiresAt = System.currentTimeMillis() + ttlMillis;
+
+        synchronized (entries)
+        {
+            entries.put(keyPair, new Entry(sessionKey, expiresAt));
+        }
+    }
+
+
+    /**
+     * Removes all session keys derived with the given peer public key.
+     *
+     * @param publicKey the peer public key
+     */
+    public void invalidate(@NonNull ECPublicKey publicKey)
+    {
+        synchronized (entries)
+        {
+            Iterator<KeyPair> iterator = entries.keySet().iterator();
+
+            while (iterator.hasNext())
+            {
+                if (iterator.next().publicKey.equals(publicKey))
+                {
+                    iterator.remove();
+                    evictions++;
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Removes all session keys.
+     */
+    public void invalidateAll()
+    {
+        synchronized (entries)
+        {
+            evictions += entries.size();
+            entries.clear();
+        }
+    }
+
+
+    /**
+     * Returns a snapshot of the hit, miss and eviction counters of this cache.
+     *
+     * @return the cache statistics
+     */
+    public CacheStatistics getStatistics()
+    {
+        synchronized (entries)
+        {
+            return new CacheStatistics(hits, misses, 0, evictions);
+        }
+    }
+
+
+    /**
+     * The pair of keys a session key is derived from.
+     */
+    private static class KeyPair
+    {
+        private final ECPrivateKey privateKey;
+        private final ECPublicKey publicKey;
+        private final int hash;
+
+
+        private KeyPair(ECPrivateKey privateKey, ECPublicKey publicKey)
+        {
+            this.privateKey = privateKey;
+            this.publicKey = publicKey;
+            this.hash = Objects.hash(privateKey, publicKey);
+        }
+
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o)
+            {
+                return true;
+            }
+
+            if (!(o instanceof KeyPair))
+            {
+                return false;
+            }
+
+            KeyPair other = (KeyPair) o;
+            return hash == other.hash && privateKey.equals(other.privateKey) && publicKey.equals(other.publicKey);
+        }
+
+
+        @Override
+        public int hashCode()
+        {
+            return hash;
+        }
+    }
+
+
+    /**
+     * A cached session key.
+     */
+    private static class Entry
+    {
+        private final SessionKey sessionKey;
+        private final long expiresAt;
+
+
+        private Entry(SessionKey sessionKey, long expiresAt)
+        {
+            this.sessionKey = sessionKey;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
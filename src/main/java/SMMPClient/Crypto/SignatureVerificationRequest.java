@@ -0,0 +1,64 @@
+package SMMPClient.Crypto;
+
+import lombok.NonNull;
+
+import java.security.interfaces.ECPublicKey;
+
+
+/**
+ * A signature to verify, together with the data it was made over and the public key to verify it with.
+ */
+public class SignatureVerificationRequest
+{
+    private final ECPublicKey key;
+    private final byte[] data;
+    private final byte[] signature;
+
+
+    /**
+     * Constructs a new {@link SignatureVerificationRequest}.
+     *
+     * @param key       the public key of the signer
+     * @param data      the signed data
+     * @param signature the signature
+     */
+    public SignatureVerificationRequest(@NonNull ECPublicKey key, @NonNull byte[] data, @NonNull byte[] signature)
+    {
+        this.key = key;
+        this.data = data;
+        this.signature = signature;
+    }
+
+
+    /**
+     * Gets the public key of the signer.
+     *
+     * @return the public key
+     */
+    public ECPublicKey getKey()
+    {
+        return key;
+    }
+
+
+    /**
+     * Gets the signed data.
+     *
+     * @return the data
+     */
+    public byte[] getData()
+    {
+        return data;
+    }
+
+
+    /**
+     * Gets the signature.
+     *
+     * @return the signature
+     */
+    public byte[] getSignature()
+    {
+        return signature;
+    }
+}
@@ -0,0 +1,214 @@
+package SMMPClient.Crypto;
+
+import lombok.NonNull;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+
+/**
+ * A bounded cache of certificates that have already passed path validation against the truststore.
+ * <p>
+ * Entries are keyed on the SHA-256 fingerprint of the DER encoded certificate and remember the generation of the
+ * trust anchor set they were validated against, so a reload of the truststore invalidates them. An entry is dropped
+ * once its time to live has passed or the certificate is no longer valid (notAfter), whichever comes first.
+ * Only successful validations are cached.
+ */
+public class VerifiedCertificateCache
+{
+    private static final String FINGERPRINT_ALGORITHM = "SHA-256";
+
+    private final int maxEntries;
+    private final long ttlMillis;
+    private final Map<ByteBuffer, Entry> entries;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+
+    /**
+     * Constructs a new {@link VerifiedCertificateCache}.
+     *
+     * @param maxEntries the maximum number of certificates to remember
+     * @param ttl        how long a successful validation is trusted before it must be repeated
+     */
+    public VerifiedCertificateCache(int maxEntries, @NonNull Duration ttl)
+    {
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttl.toMillis();
+        this.entries = new LinkedHashMap<>(16, 0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ByteBuffer, Entry> eldest)
+            {
+                if (size() > VerifiedCertificateCache.this.maxEntries)
+                {
+                    evictions++;
+                    return true;
+                }
+
+                return false;
+            }
+        };
+    }
+
+
+    /**
+     * Checks whether the given certificate has been validated against the given trust anchor generation,
+     * and that validation has not expired.
+     *
+     * @param certificate      the certificate to look up
+     * @param anchorGeneration the generation of the trust anchor set the certificate must have been validated against
+     * @return true if the certificate is known to be valid, false if it must be validated
+     */
+    public boolean isVerified(@NonNull X509Certificate certificate, long anchorGeneration)
+    {
+        ByteBuffer fingerprint = fingerprint(certificate);
+
+        if (fingerprint == null)
+        {
+            return false;
+        }
+
+        long now = System.currentTimeMillis();
+
+        synchronized (entries)
+        {
+            Entry entry = entries.get(fingerprint);
+
+            if (entry != null && entry.anchorGeneration == anchorGeneration && now < entry.expiresAt)
+            {
+                hits++;
+                return true;
+            }
+
+            if (entry != null)
+            {
+                entries.remove(fingerprint);
+                evictions++;
+            }
+
+            misses++;
+            return false;
+        }
+    }
+
+
+    /**
+     * Records that the given certificate passed validation against the given trust anchor generation.
+     *
+     * @param certificate      the validated certificate
+     * @param anchorGeneration the generation of the trust anchor set it was validated against
+     */
+    public void markVerified(@NonNull X509Certificate certificate, long anchorGeneration)
+    {
+        ByteBuffer fingerprint = fingerprint(certificate);
+
+        if (fingerprint == null)
+        {
+            return;
+        }
+
+        long expiresAt = Math.min(System.currentTimeMillis() + ttlMillis, certificate.getNotAfter().getTime());
+
+        synchronized (entries)
+        {
+            entries.put(fingerprint, new Entry(anchorGeneration, expiresAt));
+        }
+    }
+
+
+    /**
+     * Removes all expired entries.
+     */
+    public void evictExpired()
+    {
+        long now = System.currentTimeMillis();
+
+        synchronized (entries)
+        {
+            Iterator<Entry> iterator = entries.values().iterator();
+
+            while (iterator.hasNext())
+            {
+                if (now >= iterator.next().expiresAt)
+                {
+                    iterator.remove();
+                    evictions++;
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Removes all entries.
+     */
+    public void invalidateAll()
+    {
+        synchronized (entries)
+        {
+            evictions += entries.size();
+            entries.clear();
+        }
+    }
+
+
+    /**
+     * Returns a snapshot of the hit, miss and eviction counters of this cache.
+     *
+     * @return the cache statistics
+     */
+    public CacheStatistics getStatistics()
+    {
+        synchronized (entries)
+        {
+            return new CacheStatistics(hits, misses, 0, evictions);
+        }
+    }
+
+
+    /**
+     * Computes the SHA-256 fingerprint of the DER encoding of a certificate.
+     *
+     * @param certificate the certificate
+     * @return the fingerprint, or null if the certificate could not be encoded
+     */
+    private static ByteBuffer fingerprint(X509Certificate certificate)
+    {
+        try
+        {
+            return ByteBuffer.wrap(MessageDigest.getInstance(FINGERPRINT_ALGORITHM).digest(certificate.getEncoded()));
+        }
+
+        catch (NoSuchAlgorithmException | CertificateEncodingException ex)
+        {
+            return null;
+        }
+    }
+
+
+    /**
+     * A cached validation result.
+     */
+    private static class Entry
+    {
+        private final long anchorGeneration;
+        private final long expiresAt;
+
+
+        private Entry(long anchorGeneration, long expiresAt)
+        {
+            this.anchorGeneration = anchorGeneration;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
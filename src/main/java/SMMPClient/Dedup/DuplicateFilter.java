@@ -0,0 +1,306 @@
+package SMMPClient.Dedup;
+
+import lombok.NonNull;
+
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Remembers the IDs of the messages delivered to the application for as long as their senders may retransmit them,
+ * so retransmissions are not delivered twice, in bounded memory.
+ * <p>
+ * IDs are kept as 64-bit hashes in generations, open addressing hash tables that each take the new IDs for a slice of
+ * time. An ID is needed until its message expires, but no longer than the horizon after which senders give up
+ * retransmitting, and a generation is dropped as soon as that deadline has passed for every ID in it. The horizon is
+ * split into slices so the generations needed to cover it fit the maximum number of generations. A generation that is
+ * full is replaced early, and if that leaves too many generations, the oldest is dropped before its deadline, which is
+ * counted as early evictions.
+ * <p>
+ * Each generation can have a Bloom filter in front of its table, with all bits of an ID in a single word, so an ID
+ * that is not in a generation is usually ruled out with one memory access instead of a probe of its table.
+ * <p>
+ * The filter is synchronized, an ID is hashed before the lock is taken.
+ */
+public class DuplicateFilter
+{
+    private static final int INITIAL_SLOTS = 1024;
+    private static final int BLOOM_SLOTS_PER_WORD = 16;
+
+    private final Deque<Generation> generations = new ArrayDeque<>();
+    private final long horizonMillis;
+    private final long sliceMillis;
+    private final int maxGenerations;
+    private final int maxEntriesPerGeneration;
+    private final boolean bloomFilter;
+    private long duplicates;
+    private long earlyEvictions;
+    private long bloomNegatives;
+    private long bloomFalsePositives;
+
+
+    /**
+     * Constructs a new {@link DuplicateFilter} with 8 generations.
+     *
+     * @param horizonMillis the longest time in milliseconds an ID is remembered
+     * @param maxEntries    the maximum number of IDs remembered
+     * @param bloomFilter   whether the generations have a Bloom filter in front of their tables
+     */
+    public DuplicateFilter(long horizonMillis, int maxEntries, boolean bloomFilter)
+    {
+        this(horizonMillis, 8, maxEntries, bloomFilter);
+    }
+
+
+    /**
+     * Constructs a new {@link DuplicateFilter}.
+     *
+     * @param horizonMillis  the longest time in milliseconds an ID is remembered
+     * @param maxGenerations the maximum number of generations, at least 2
+     * @param maxEntries     the maximum number of IDs remembered, split evenly over the generations
+     * @param bloomFilter    whether the generations have a Bloom filter in front of their tables
+     */
+    public DuplicateFilter(long horizonMillis, int maxGenerations, int maxEntries, boolean bloomFilter)
+    {
+        if (horizonMillis < 1 || maxGenerations < 2 || maxEntries < maxGenerations)
+        {
+            throw new IllegalArgumentException("Horizon must be at least 1 ms, with at least 2 generations and at least one entry per generation");
+        }
+
+        this.horizonMillis = horizonMillis;
+        this.sliceMillis = Math.max(1, horizonMillis / (maxGenerations - 1));
+        this.maxGenerations = maxGenerations;
+        this.maxEntriesPerGeneration = maxEntries / maxGenerations;
+        this.bloomFilter = bloomFilter;
+    }
+
+
+    /**
+     * Records that a message is delivered, unless it was delivered before.
+     *
+     * @param messageId the ID of the message
+     * @param expires   the expiration time of the message, or null if it does not expire
+     * @return true if the message was not delivered before, false if it is a duplicate
+     */
+    public boolean add(@NonNull String messageId, Instant expires)
+    {
+        long key = hash(messageId);
+        long now = System.currentTimeMillis();
+        long deadline = expires != null && expires.isBefore(Instant.ofEpochMilli(now + horizonMillis)) ? expires.toEpochMilli() : now + horizonMillis;
+
+        synchronized (this)
+        {
+            expire(now);
+
+            for (Generation generation : generations)
+            {
+                if (generation.contains(key))
+                {
+                    duplicates++;
+                    return false;
+                }
+            }
+
+            current(now).add(key, deadline);
+            return true;
+        }
+    }
+
+
+    /**
+     * Gets a snapshot of the state and counters of this filter.
+     *
+     * @return the statistics
+     */
+    public synchronized DuplicateFilterStatistics getStatistics()
+    {
+        long entries = 0;
+        long memoryBytes = 0;
+
+        for (Generation generation : generations)
+        {
+            entries += generation.size;
+            memoryBytes += generation.memoryBytes();
+        }
+
+        double bloomFalsePositiveRate = bloomNegatives == 0 ? 0 : (double) bloomFalsePositives / bloomNegatives;
+        return new DuplicateFilterStatistics(entries, generations.size(), memoryBytes, duplicates, earlyEvictions, bloomFalsePositiveRate, entries / 0x1p64);
+    }
+
+
+    /**
+     * Drops the oldest generations once the deadlines of all their IDs have passed.
+     */
+    private void expire(long now)
+    {
+        while (!generations.isEmpty() && generations.peekFirst().maxDeadline < now)
+        {
+            generations.pollFirst();
+        }
+    }
+
+
+    /**
+     * Gets the generation that new IDs go into, starting a new one once its slice has passed or it is full,
+     * and dropping the oldest generation if there are then too many.
+     */
+    private Generation current(long now)
+    {
+        Generation current = generations.peekLast();
+
+        if (current == null || now - current.created >= sliceMillis || current.size >= maxEntriesPerGeneration)
+        {
+            current = new Generation(now);
+            generations.addLast(current);
+
+            if (generations.size() > maxGenerations)
+            {
+                earlyEvictions += generations.pollFirst().size;
+            }
+        }
+
+        return current;
+    }
+
+
+    /**
+     * Hashes an ID to 64 bits, with FNV-1a over its characters and the finalizer of MurmurHash3.
+     * 0 marks an empty slot, so it is never returned.
+     */
+    private static long hash(String messageId)
+    {
+        long hash = 0xcbf29ce484222325L;
+
+        for (int i = 0; i < messageId.length(); i++)
+        {
+            hash = (hash ^ messageId.charAt(i)) * 0x100000001b3L;
+        }
+
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash == 0 ? 1 : hash;
+    }
+
+
+    /**
+     * The IDs added during one slice of time, in a linear probing hash table that is at most half full.
+     */
+    private final class Generation
+    {
+        private final long created;
+        private long[] slots = new long[INITIAL_SLOTS];
+        private long[] bloom = bloomFilter ? new long[INITIAL_SLOTS / BLOOM_SLOTS_PER_WORD] : null;
+        private int size;
+        private long maxDeadline = Long.MIN_VALUE;
+
+
+        private Generation(long created)
+        {
+            this.created = created;
+        }
+
+
+        private boolean contains(long key)
+        {
+            if (bloom != null && !mightContain(key))
+            {
+                bloomNegatives++;
+                return false;
+            }
+
+            int mask = slots.length - 1;
+
+            for (int i = (int) key & mask; slots[i] != 0; i = (i + 1) & mask)
+            {
+                if (slots[i] == key)
+                {
+                    return true;
+                }
+            }
+
+            if (bloom != null)
+            {
+                bloomNegatives++;
+                bloomFalsePositives++;
+            }
+
+            return false;
+        }
+
+
+        private void add(long key, long deadline)
+        {
+            if ((size + 1) * 2 > slots.length)
+            {
+                resize();
+            }
+
+            insert(key);
+            size++;
+            maxDeadline = Math.max(maxDeadline, deadline);
+        }
+
+
+        private void insert(long key)
+        {
+            int mask = slots.length - 1;
+            int i = (int) key & mask;
+
+            while (slots[i] != 0)
+            {
+                i = (i + 1) & mask;
+            }
+
+            slots[i] = key;
+
+            if (bloom != null)
+            {
+                bloom[bloomWord(key)] |= bloomBits(key);
+            }
+        }
+
+
+        private void resize()
+        {
+            long[] old = slots;
+            slots = new long[old.length * 2];
+            bloom = bloom == null ? null : new long[slots.length / BLOOM_SLOTS_PER_WORD];
+
+            for (long key : old)
+            {
+                if (key != 0)
+                {
+                    insert(key);
+                }
+            }
+        }
+
+
+        private boolean mightContain(long key)
+        {
+            long bits = bloomBits(key);
+            return (bloom[bloomWord(key)] & bits) == bits;
+        }
+
+
+        private int bloomWord(long key)
+        {
+            return (int) (key >>> 20) & (bloom.length - 1);
+        }
+
+
+        private long bloomBits(long key)
+        {
+            return 1L << (key >>> 58) | 1L << (key >>> 52 & 63) | 1L << (key >>> 46 & 63);
+        }
+
+
+        private long memoryBytes()
+        {
+            return (long) slots.length * Long.BYTES + (bloom == null ? 0 : (long) bloom.length * Long.BYTES);
+        }
+    }
+}
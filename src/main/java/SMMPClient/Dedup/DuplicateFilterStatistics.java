@@ -0,0 +1,49 @@
+package SMMPClient.Dedup;
+
+import lombok.Getter;
+
+/**
+ * An immutable snapshot of the state and counters of a {@link DuplicateFilter}.
+ */
+@Getter
+public class DuplicateFilterStatistics
+{
+    private final long entries;
+    private final int generations;
+    private final long memoryBytes;
+    private final long duplicates;
+    private final long earlyEvictions;
+    private final double bloomFalsePositiveRate;
+    private final double hashCollisionProbability;
+
+
+    /**
+     * Constructs a new {@link DuplicateFilterStatistics}.
+     *
+     * @param entries                  the number of message IDs remembered
+     * @param generations              the number of generations kept
+     * @param memoryBytes              the size of the tables and Bloom filters of the generations in bytes
+     * @param duplicates               the number of messages dropped as duplicates
+     * @param earlyEvictions           the number of message IDs forgotten before their deadline, because the filter was full
+     * @param bloomFalsePositiveRate   the fraction of lookups of unknown IDs that the Bloom filters did not rule out, 0 without Bloom filters
+     * @param hashCollisionProbability the probability that a new message is taken for a duplicate, as its 64-bit hash matches a remembered one
+     */
+    public DuplicateFilterStatistics(long entries, int generations, long memoryBytes, long duplicates, long earlyEvictions, double bloomFalsePositiveRate, double hashCollisionProbability)
+    {
+        this.entries = entries;
+        this.generations = generations;
+        this.memoryBytes = memoryBytes;
+        this.duplicates = duplicates;
+        this.earlyEvictions = earlyEvictions;
+        this.bloomFalsePositiveRate = bloomFalsePositiveRate;
+        this.hashCollisionProbability = hashCollisionProbability;
+    }
+
+
+    @Override
+    public String toString()
+    {
+        return "DuplicateFilterStatistics{entries=" + entries + ", generations=" + generations + ", memoryBytes=" + memoryBytes + ", duplicates=" + duplicates
+                + ", earlyEvictions=" + earlyEvictions + ", bloomFalsePositiveRate=" + bloomFalsePositiveRate + ", hashCollisionProbability=" + hashCollisionProbability + "}";
+    }
+}
@@ -0,0 +1,22 @@
+package SMMPClient.Exceptions;
+
+/**
+ * Thrown when a message requiring an ack is refused because the in-flight window of a destination is full.
+ */
+public class FlowControlException extends Exception
+{
+    public FlowControlException(String message)
+    {
+        super(message);
+    }
+
+    public FlowControlException(String message, Throwable cause)
+    {
+        super(message, cause);
+    }
+
+    public FlowControlException(Throwable cause)
+    {
+        super(cause);
+    }
+}
@@ -16,6 +16,10 @@ public enum MessageType
    * <code>ACK = 1;</code>
    */
   ACK(1),
+  /**
+   * <code>BATCH_ACK = 2;</code>
+   */
+  BATCH_ACK(2),
   UNRECOGNIZED(-1),
   ;
 
@@ -27,6 +31,10 @@ public enum MessageType
    * <code>ACK = 1;</code>
    */
   public static final int ACK_VALUE = 1;
+  /**
+   * <code>BATCH_ACK = 2;</code>
+   */
+  public static final int BATCH_ACK_VALUE = 2;
 
 
   public final int getNumber() {
@@ -55,6 +63,7 @@ public enum MessageType
     switch (value) {
       case 0: return MESSAGE;
       case 1: return ACK;
+      case 2: return BATCH_ACK;
       default: return null;
     }
   }
@@ -0,0 +1,694 @@
+// Generated by the protocol buffer compiler.  DO NOT EDIT!
+// source: SMMPMessages.proto
+
+package SMMPClient.MessageFormats;
+
+/**
+ * Protobuf type {@code SMMPClient.SMMP.SMMPBatchAck}
+ */
+public final class SMMPBatchAck extends
+    com.google.protobuf.GeneratedMessageV3 implements
+    // @@protoc_insertion_point(message_implements:SMMPClient.SMMP.SMMPBatchAck)
+    SMMPBatchAckOrBuilder {
+private static final long serialVersionUID = 0L;
+  // Use SMMPBatchAck.newBuilder() to construct.
+  private SMMPBatchAck(com.google.protobuf.GeneratedMessageV3.Builder<?> builder) {
+    super(builder);
+  }
+  private SMMPBatchAck() {
+    messageIDs_ =
+        com.google.protobuf.LazyStringArrayList.emptyList();
+    signature_ = com.google.protobuf.ByteString.EMPTY;
+    certificate_ = com.google.protobuf.ByteString.EMPTY;
+  }
+
+  @java.lang.Override
+  @SuppressWarnings({"unused"})
+  protected java.lang.Object newInstance(
+      UnusedPrivateParameter unused) {
+    return new SMMPBatchAck();
+  }
+
+  public static final com.google.protobuf.Descriptors.Descriptor
+      getDescriptor() {
+    return SMMPMessages.internal_static_SMMPClient_SMMP_SMMPBatchAck_descriptor;
+  }
+
+  @java.lang.Override
+  protected com.google.protobuf.GeneratedMessageV3.FieldAccessorTable
+      internalGetFieldAccessorTable() {
+    return SMMPMessages.internal_static_SMMPClient_SMMP_SMMPBatchAck_fieldAccessorTable
+        .ensureFieldAccessorsInitialized(
+            SMMPBatchAck.class, SMMPBatchAck.Builder.class);
+  }
+
+  public static final int MESSAGEIDS_FIELD_NUMBER = 1;
+  @SuppressWarnings("serial")
+  private com.google.protobuf.LazyStringArrayList messageIDs_ =
+      com.google.protobuf.LazyStringArrayList.emptyList();
+  /**
+   * <code>repeated string messageIDs = 1;</code>
+   * @return A list containing the messageIDs.
+   */
+  public com.google.protobuf.ProtocolStringList
+      getMessageIDsList() {
+    return messageIDs_;
+  }
+  /**
+   * <code>repeated string messageIDs = 1;</code>
+   * @return The count of messageIDs.
+   */
+  public int getMessageIDsCount() {
+    return messageIDs_.size();
+  }
+  /**
+   * <code>repeated string messageIDs = 1;</code>
+   * @param index The index of the element to return.
+   * @return The messageIDs at the given index.
+   */
+  public java.lang.String getMessageIDs(int index) {
+    return messageIDs_.get(index);
+  }
+  /**
+   * <code>repeated string messageIDs = 1;</code>
+   * @param index The index of the value to return.
+   * @return The bytes of the messageIDs at the given index.
+   */
+  public com.google.protobuf.ByteString
+      getMessageIDsBytes(int index) {
+    return messageIDs_.getByteString(index);
+  }
+
+  public static final int SIGNATURE_FIELD_NUMBER = 2;
+  private com.google.protobuf.ByteString signature_ = com.google.protobuf.ByteString.EMPTY;
+  /**
+   * <code>bytes signature = 2;</code>
+   * @return The signature.
+   */
+  @java.lang.Override
+  public com.google.protobuf.ByteString getSignature() {
+    return signature_;
+  }
+
+  public static final int CERTIFICATE_FIELD_NUMBER = 3;
+  private com.google.protobuf.ByteString certificate_ = com.google.protobuf.ByteString.EMPTY;
+  /**
+   * <code>bytes certificate = 3;</code>
+   * @return The certificate.
+   */
+  @java.lang.Override
+  public com.google.protobuf.ByteString getCertificate() {
+    return certificate_;
+  }
+
+  private byte memoizedIsInitialized = -1;
+  @java.lang.Override
+  public final boolean isInitialized() {
+    byte isInitialized = memoizedIsInitialized;
+    if (isInitialized == 1) return true;
+    if (isInitialized == 0) return false;
+
+    memoizedIsInitialized = 1;
+    return true;
+  }
+
+  @java.lang.Override
+  public void writeTo(com.google.protobuf.CodedOutputStream output)
+                      throws java.io.IOException {
+    for (int i = 0; i < messageIDs_.size(); i++) {
+      com.google.protobuf.GeneratedMessageV3.writeString(output, 1, messageIDs_.getRaw(i));
+    }
+    if (!signature_.isEmpty()) {
+      output.writeBytes(2, signature_);
+    }
+    if (!certificate_.isEmpty()) {
+      output.writeBytes(3, certificate_);
+    }
+    getUnknownFields().writeTo(output);
+  }
+
+  @java.lang.Override
+  public int getSerializedSize() {
+    int size = memoizedSize;
+    if (size != -1) return size;
+
+    size = 0;
+    {
+      int dataSize = 0;
+      for (int i = 0; i < messageIDs_.size(); i++) {
+        dataSize += computeStringSizeNoTag(messageIDs_.getRaw(i));
+      }
+      size += dataSize;
+      size += 1 * getMessageIDsList().size();
+    }
+    if (!signature_.isEmpty()) {
+      size += com.google.protobuf.CodedOutputStream
+        .computeBytesSize(2, signature_);
+    }
+    if (!certificate_.isEmpty()) {
+      size += com.google.protobuf.CodedOutputStream
+        .computeBytesSize(3, certificate_);
+    }
+    size += getUnknownFields().getSerializedSize();
+    memoizedSize = size;
+    return size;
+  }
+
+  @java.lang.Override
+  public boolean equals(final java.lang.Object obj) {
+    if (obj == this) {
+     return true;
+    }
+    if (!(obj instanceof SMMPBatchAck)) {
+      return super.equals(obj);
+    }
+    SMMPBatchAck other = (SMMPBatchAck) obj;
+
+    if (!getMessageIDsList()
+        .equals(other.getMessageIDsList())) return false;
+    if (!getSignature()
+        .equals(other.getSignature())) return false;
+    if (!getCertificate()
+        .equals(other.getCertificate())) return false;
+    if (!getUnknownFields().equals(other.getUnknownFields())) return false;
+    return true;
+  }
+
+  @java.lang.Override
+  public int hashCode() {
+    if (memoizedHashCode != 0) {
+      return memoizedHashCode;
+    }
+    int hash = 41;
+    hash = (19 * hash) + getDescriptor().hashCode();
+    if (getMessageIDsCount() > 0) {
+      hash = (37 * hash) + MESSAGEIDS_FIELD_NUMBER;
+      hash = (53 * hash) + getMessageIDsList().hashCode();
+    }
+    hash = (37 * hash) + SIGNATURE_FIELD_NUMBER;
+    hash = (53 * hash) + getSignature().hashCode();
+    hash = (37 * hash) + CERTIFICATE_FIELD_NUMBER;
+    hash = (53 * hash) + getCertificate().hashCode();
+    hash = (29 * hash) + getUnknownFields().hashCode();
+    memoizedHashCode = hash;
+    return hash;
+  }
+
+  public static SMMPBatchAck parseFrom(
+      java.nio.ByteBuffer data)
+      throws com.google.protobuf.InvalidProtocolBufferException {
+    return PARSER.parseFrom(data);
+  }
+  public static SMMPBatchAck parseFrom(
+      java.nio.ByteBuffer data,
+      com.google.protobuf.ExtensionRegistryLite extensionRegistry)
+      throws com.google.protobuf.InvalidProtocolBufferException {
+    return PARSER.parseFrom(data, extensionRegistry);
+  }
+  public static SMMPBatchAck parseFrom(
+      com.google.protobuf.ByteString data)
+      throws com.google.protobuf.InvalidProtocolBufferException {
+    return PARSER.parseFrom(data);
+  }
+  public static SMMPBatchAck parseFrom(
+      com.google.protobuf.ByteString data,
+      com.google.protobuf.ExtensionRegistryLite extensionRegistry)
+      throws com.google.protobuf.InvalidProtocolBufferException {
+    return PARSER.parseFrom(data, extensionRegistry);
+  }
+  public static SMMPBatchAck parseFrom(byte[] data)
+      throws com.google.protobuf.InvalidProtocolBufferException {
+    return PARSER.parseFrom(data);
+  }
+  public static SMMPBatchAck parseFrom(
+      byte[] data,
+      com.google.protobuf.ExtensionRegistryLite extensionRegistry)
+      throws com.google.protobuf.InvalidProtocolBufferException {
+    return PARSER.parseFrom(data, extensionRegistry);
+  }
+  public static SMMPBatchAck parseFrom(java.io.InputStream input)
+      throws java.io.IOException {
+    return com.google.protobuf.GeneratedMessageV3
+        .parseWithIOException(PARSER, input);
+  }
+  public static SMMPBatchAck parseFrom(
+      java.io.InputStream input,
+      com.google.protobuf.ExtensionRegistryLite extensionRegistry)
+      throws java.io.IOException {
+    return com.google.protobuf.GeneratedMessageV3
+        .parseWithIOException(PARSER, input, extensionRegistry);
+  }
+  public static SMMPBatchAck parseDelimitedFrom(java.io.InputStream input)
+      throws java.io.IOException {
+    return com.google.protobuf.GeneratedMessageV3
+        .parseDelimitedWithIOException(PARSER, input);
+  }
+  public static SMMPBatchAck parseDelimitedFrom(
+      java.io.InputStream input,
+      com.google.protobuf.ExtensionRegistryLite extensionRegistry)
+      throws java.io.IOException {
+    return com.google.protobuf.GeneratedMessageV3
+        .parseDelimitedWithIOException(PARSER, input, extensionRegistry);
+  }
+  public static SMMPBatchAck parseFrom(
+      com.google.protobuf.CodedInputStream input)
+      throws java.io.IOException {
+    return com.google.protobuf.GeneratedMessageV3
+        .parseWithIOException(PARSER, input);
+  }
+  public static SMMPBatchAck parseFrom(
+      com.google.protobuf.CodedInputStream input,
+      com.google.protobuf.ExtensionRegistryLite extensionRegistry)
+      throws java.io.IOException {
+    return com.google.protobuf.GeneratedMessageV3
+        .parseWithIOException(PARSER, input, extensionRegistry);
+  }
+
+  @java.lang.Override
+  public Builder newBuilderForType() { return newBuilder(); }
+  public static Builder newBuilder() {
+    return DEFAULT_INSTANCE.toBuilder();
+  }
+  public static Builder newBuilder(SMMPBatchAck prototype) {
+    return DEFAULT_INSTANCE.toBuilder().mergeFrom(prototype);
+  }
+  @java.lang.Override
+  public Builder toBuilder() {
+    return this == DEFAULT_INSTANCE
+        ? new Builder() : new Builder().mergeFrom(this);
+  }
+
+  @java.lang.Override
+  protected Builder newBuilderForType(
+      com.google.protobuf.GeneratedMessageV3.BuilderParent parent) {
+    Builder builder = new Builder(parent);
+    return builder;
+  }
+  /**
+   * Protobuf type {@code SMMPClient.SMMP.SMMPBatchAck}
+   */
+  public static final class Builder extends
+      com.google.protobuf.GeneratedMessageV3.Builder<Builder> implements
+      // @@protoc_insertion_point(builder_implements:SMMPClient.SMMP.SMMPBatchAck)
+      SMMPBatchAckOrBuilder {
+    public static final com.google.protobuf.Descriptors.Descriptor
+        getDescriptor() {
+      return SMMPMessages.internal_static_SMMPClient_SMMP_SMMPBatchAck_descriptor;
+    }
+
+    @java.lang.Override
+    protected com.google.protobuf.GeneratedMessageV3.FieldAccessorTable
+        internalGetFieldAccessorTable() {
+      return SMMPMessages.internal_static_SMMPClient_SMMP_SMMPBatchAck_fieldAccessorTable
+          .ensureFieldAccessorsInitialized(
+              SMMPBatchAck.class, SMMPBatchAck.Builder.class);
+    }
+
+    // Construct using SMMPBatchAck.newBuilder()
+    private Builder() {
+
+    }
+
+    private Builder(
+        com.google.protobuf.GeneratedMessageV3.BuilderParent parent) {
+      super(parent);
+
+    }
+    @java.lang.Override
+    public Builder clear() {
+      super.clear();
+      bitField0_ = 0;
+      messageIDs_ =
+          com.google.protobuf.LazyStringArrayList.emptyList();
+      signature_ = com.google.protobuf.ByteString.EMPTY;
+      certificate_ = com.google.protobuf.ByteString.EMPTY;
+      return this;
+    }
+
+    @java.lang.Override
+    public com.google.protobuf.Descriptors.Descriptor
+        getDescriptorForType() {
+      return SMMPMessages.internal_static_SMMPClient_SMMP_SMMPBatchAck_descriptor;
+    }
+
+    @java.lang.Override
+    public SMMPBatchAck getDefaultInstanceForType() {
+      return SMMPBatchAck.getDefaultInstance();
+    }
+
+    @java.lang.Override
+    public SMMPBatchAck build() {
+      SMMPBatchAck result = buildPartial();
+      if (!result.isInitialized()) {
+        throw newUninitializedMessageException(result);
+      }
+      return result;
+    }
+
+    @java.lang.Override
+    public SMMPBatchAck buildPartial() {
+      SMMPBatchAck result = new SMMPBatchAck(this);
+      if (bitField0_ != 0) { buildPartial0(result); }
+      onBuilt();
+      return result;
+    }
+
+    private void buildPartial0(SMMPBatchAck result) {
+      int from_bitField0_ = bitField0_;
+      if (((from_bitField0_ & 0x00000001) != 0)) {
+        messageIDs_.makeImmutable();
+        result.messageIDs_ = messageIDs_;
+      }
+      if (((from_bitField0_ & 0x00000002) != 0)) {
+        result.signature_ = signature_;
+      }
+      if (((from_bitField0_ & 0x00000004) != 0)) {
+        result.certificate_ = certificate_;
+      }
+    }
+
+    @java.lang.Override
+    public Builder mergeFrom(com.google.protobuf.Message other) {
+      if (other instanceof SMMPBatchAck) {
+        return mergeFrom((SMMPBatchAck)other);
+      } else {
+        super.mergeFrom(other);
+        return this;
+      }
+    }
+
+    public Builder mergeFrom(SMMPBatchAck other) {
+      if (other == SMMPBatchAck.getDefaultInstance()) return this;
+      if (!other.messageIDs_.isEmpty()) {
+        if (messageIDs_.isEmpty()) {
+          messageIDs_ = other.messageIDs_;
+          bitField0_ |= 0x00000001;
+        } else {
+          ensureMessageIDsIsMutable();
+          messageIDs_.addAll(other.messageIDs_);
+        }
+        onChanged();
+      }
+      if (other.getSignature() != com.google.protobuf.ByteString.EMPTY) {
+        setSignature(other.getSignature());
+      }
+      if (other.getCertificate() != com.google.protobuf.ByteString.EMPTY) {
+        setCertificate(other.getCertificate());
+      }
+      this.mergeUnknownFields(other.getUnknownFields());
+      onChanged();
+      return this;
+    }
+
+    @java.lang.Override
+    public final boolean isInitialized() {
+      return true;
+    }
+
+    @java.lang.Override
+    public Builder mergeFrom(
+        com.google.protobuf.CodedInputStream input,
+        com.google.protobuf.ExtensionRegistryLite extensionRegistry)
+        throws java.io.IOException {
+      if (extensionRegistry == null) {
+        throw new java.lang.NullPointerException();
+      }
+      try {
+        boolean done = false;
+        while (!done) {
+          int tag = input.readTag();
+          switch (tag) {
+            case 0:
+              done = true;
+              break;
+            case 10: {
+              java.lang.String s = input.readStringRequireUtf8();
+              ensureMessageIDsIsMutable();
+              messageIDs_.add(s);
+              break;
+            } // case 10
+            case 18: {
+              signature_ = input.readBytes();
+              bitField0_ |= 0x00000002;
+              break;
+            } // case 18
+            case 26: {
+              certificate_ = input.readBytes();
+              bitField0_ |= 0x00000004;
+              break;
+            } // case 26
+            default: {
+              if (!super.parseUnknownField(input, extensionRegistry, tag)) {
+                done = true; // was an endgroup tag
+              }
+              break;
+            } // default:
+          } // switch (tag)
+        } // while (!done)
+      } catch (com.google.protobuf.InvalidProtocolBufferException e) {
+        throw e.unwrapIOException();
+      } finally {
+        onChanged();
+      } // finally
+      return this;
+    }
+    private int bitField0_;
+
+    private com.google.protobuf.LazyStringArrayList messageIDs_ =
+        com.google.protobuf.LazyStringArrayList.emptyList();
+    private void ensureMessageIDsIsMutable() {
+      if (!messageIDs_.isModifiable()) {
+        messageIDs_ = new com.google.protobuf.LazyStringArrayList(messageIDs_);
+      }
+      bitField0_ |= 0x00000001;
+    }
+    /**
+     * <code>repeated string messageIDs = 1;</code>
+     * @return A list containing the messageIDs.
+     */
+    public com.google.protobuf.ProtocolStringList
+        getMessageIDsList() {
+      messageIDs_.makeImmutable();
+      return messageIDs_;
+    }
+    /**
+     * <code>repeated string messageIDs = 1;</code>
+     * @return The count of messageIDs.
+     */
+    public int getMessageIDsCount() {
+      return messageIDs_.size();
+    }
+    /**
+     * <code>repeated string messageIDs = 1;</code>
+     * @param index The index of the element to return.
+     * @return The messageIDs at the given index.
+     */
+    public java.lang.String getMessageIDs(int index) {
+      return messageIDs_.get(index);
+    }
+    /**
+     * <code>repeated string messageIDs = 1;</code>
+     * @param index The index of the value to return.
+     * @return The bytes of the messageIDs at the given index.
+     */
+    public com.google.protobuf.ByteString
+        getMessageIDsBytes(int index) {
+      return messageIDs_.getByteString(index);
+    }
+    /**
+     * <code>repeated string messageIDs = 1;</code>
+     * @param index The index to set the value at.
+     * @param value The messageIDs to set.
+     * @return This builder for chaining.
+     */
+    public Builder setMessageIDs(
+        int index, java.lang.String value) {
+      if (value == null) { throw new NullPointerException(); }
+      ensureMessageIDsIsMutable();
+      messageIDs_.set(index, value);
+      bitField0_ |= 0x00000001;
+      onChanged();
+      return this;
+    }
+    /**
+     * <code>repeated string messageIDs = 1;</code>
+     * @param value The messageIDs to add.
+     * @return This builder for chaining.
+     */
+    public Builder addMessageIDs(
+        java.lang.String value) {
+      if (value == null) { throw new NullPointerException(); }
+      ensureMessageIDsIsMutable();
+      messageIDs_.add(value);
+      bitField0_ |= 0x00000001;
+      onChanged();
+      return this;
+    }
+    /**
+     * <code>repeated string messageIDs = 1;</code>
+     * @param values The messageIDs to add.
+     * @return This builder for chaining.
+     */
+    public Builder addAllMessageIDs(
+        java.lang.Iterable<java.lang.String> values) {
+      ensureMessageIDsIsMutable();
+      com.google.protobuf.AbstractMessageLite.Builder.addAll(
+          values, messageIDs_);
+      bitField0_ |= 0x00000001;
+      onChanged();
+      return this;
+    }
+    /**
+     * <code>repeated string messageIDs = 1;</code>
+     * @return This builder for chaining.
+     */
+    public Builder clearMessageIDs() {
+      messageIDs_ =
+        com.google.protobuf.LazyStringArrayList.emptyList();
+      bitField0_ = (bitField0_ & ~0x00000001);;
+      onChanged();
+      return this;
+    }
+    /**
+     * <code>repeated string messageIDs = 1;</code>
+     * @param value The bytes of the messageIDs to add.
+     * @return This builder for chaining.
+     */
+    public Builder addMessageIDsBytes(
+        com.google.protobuf.ByteString value) {
+      if (value == null) { throw new NullPointerException(); }
+      checkByteStringIsUtf8(value);
+      ensureMessageIDsIsMutable();
+      messageIDs_.add(value);
+      bitField0_ |= 0x00000001;
+      onChanged();
+      return this;
+    }
+
+    private com.google.protobuf.ByteString signature_ = com.google.protobuf.ByteString.EMPTY;
+    /**
+     * <code>bytes signature = 2;</code>
+     * @return The signature.
+     */
+    @java.lang.Override
+    public com.google.protobuf.ByteString getSignature() {
+      return signature_;
+    }
+    /**
+     * <code>bytes signature = 2;</code>
+     * @param value The signature to set.
+     * @return This builder for chaining.
+     */
+    public Builder setSignature(com.google.protobuf.ByteString value) {
+      if (value == null) { throw new NullPointerException(); }
+      signature_ = value;
+      bitField0_ |= 0x00000002;
+      onChanged();
+      return this;
+    }
+    /**
+     * <code>bytes signature = 2;</code>
+     * @return This builder for chaining.
+     */
+    public Builder clearSignature() {
+      bitField0_ = (bitField0_ & ~0x00000002);
+      signature_ = getDefaultInstance().getSignature();
+      onChanged();
+      return this;
+    }
+
+    private com.google.protobuf.ByteString certificate_ = com.google.protobuf.ByteString.EMPTY;
+    /**
+     * <code>bytes certificate = 3;</code>
+     * @return The certificate.
+     */
+    @java.lang.Override
+    public com.google.protobuf.ByteString getCertificate() {
+      return certificate_;
+    }
+    /**
+     * <code>bytes certificate = 3;</code>
+     * @param value The certificate to set.
+     * @return This builder for chaining.
+     */
+    public Builder setCertificate(com.google.protobuf.ByteString value) {
+      if (value == null) { throw new NullPointerException(); }
+      certificate_ = value;
+      bitField0_ |= 0x00000004;
+      onChanged();
+      return this;
+    }
+    /**
+     * <code>bytes certificate = 3;</code>
+     * @return This builder for chaining.
+     */
+    public Builder clearCertificate() {
+      bitField0_ = (bitField0_ & ~0x00000004);
+      certificate_ = getDefaultInstance().getCertificate();
+      onChanged();
+      return this;
+    }
+    @java.lang.Override
+    public final Builder setUnknownFields(
+        final com.google.protobuf.UnknownFieldSet unknownFields) {
+      return super.setUnknownFields(unknownFields);
+    }
+
+    @java.lang.Override
+    public final Builder mergeUnknownFields(
+        final com.google.protobuf.UnknownFieldSet unknownFields) {
+      return super.mergeUnknownFields(unknownFields);
+    }
+
+
+    // @@protoc_insertion_point(builder_scope:SMMPClient.SMMP.SMMPBatchAck)
+  }
+
+  // @@protoc_insertion_point(class_scope:SMMPClient.SMMP.SMMPBatchAck)
+  private static final SMMPBatchAck DEFAULT_INSTANCE;
+  static {
+    DEFAULT_INSTANCE = new SMMPBatchAck();
+  }
+
+  public static SMMPBatchAck getDefaultInstance() {
+    return DEFAULT_INSTANCE;
+  }
+
+  private static final com.google.protobuf.Parser<SMMPBatchAck>
+      PARSER = new com.google.protobuf.AbstractParser<SMMPBatchAck>() {
+    @java.lang.Override
+    public SMMPBatchAck parsePartialFrom(
+        com.google.protobuf.CodedInputStream input,
+        com.google.protobuf.ExtensionRegistryLite extensionRegistry)
+        throws com.google.protobuf.InvalidProtocolBufferException {
+      Builder builder = newBuilder();
+      try {
+        builder.mergeFrom(input, extensionRegistry);
+      } catch (com.google.protobuf.InvalidProtocolBufferException e) {
+        throw e.setUnfinishedMessage(builder.buildPartial());
+      } catch (com.google.protobuf.UninitializedMessageException e) {
+        throw e.asInvalidProtocolBufferException().setUnfinishedMessage(builder.buildPartial());
+      } catch (java.io.IOException e) {
+        throw new com.google.protobuf.InvalidProtocolBufferException(e)
+            .setUnfinishedMessage(builder.buildPartial());
+      }
+      return builder.buildPartial();
+    }
+  };
+
+  public static com.google.protobuf.Parser<SMMPBatchAck> parser() {
+    return PARSER;
+  }
+
+  @java.lang.Override
+  public com.google.protobuf.Parser<SMMPBatchAck> getParserForType() {
+    return PARSER;
+  }
+
+  @java.lang.Override
+  public SMMPBatchAck getDefaultInstanceForType() {
+    return DEFAULT_INSTANCE;
+  }
+
+}
+
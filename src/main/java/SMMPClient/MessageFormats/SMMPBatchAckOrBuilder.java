@@ -0,0 +1,46 @@
+// Generated by the protocol buffer compiler.  DO NOT EDIT!
+// source: SMMPMessages.proto
+
+package SMMPClient.MessageFormats;
+
+public interface SMMPBatchAckOrBuilder extends
+    // @@protoc_insertion_point(interface_extends:SMMPClient.SMMP.SMMPBatchAck)
+    com.google.protobuf.MessageOrBuilder {
+
+  /**
+   * <code>repeated string messageIDs = 1;</code>
+   * @return A list containing the messageIDs.
+   */
+  java.util.List<java.lang.String>
+      getMessageIDsList();
+  /**
+   * <code>repeated string messageIDs = 1;</code>
+   * @return The count of messageIDs.
+   */
+  int getMessageIDsCount();
+  /**
+   * <code>repeated string messageIDs = 1;</code>
+   * @param index The index of the element to return.
+   * @return The messageIDs at the given index.
+   */
+  java.lang.String getMessageIDs(int index);
+  /**
+   * <code>repeated string messageIDs = 1;</code>
+   * @param index The index of the value to return.
+   * @return The bytes of the messageIDs at the given index.
+   */
+  com.google.protobuf.ByteString
+      getMessageIDsBytes(int index);
+
+  /**
+   * <code>bytes signature = 2;</code>
+   * @return The signature.
+   */
+  com.google.protobuf.ByteString getSignature();
+
+  /**
+   * <code>bytes certificate = 3;</code>
+   * @return The certificate.
+   */
+  com.google.protobuf.ByteString getCertificate();
+}
@@ -0,0 +1,59 @@
+package SMMPClient.MessageFormats;
+
+import Agent.MessageSending.PayloadWriter;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.WireFormat;
+import lombok.NonNull;
+
+import java.io.IOException;
+
+/**
+ * Writes an SMMP {@link ProtocolMessage} around its content straight into the MMTP envelope, so an outbound
+ * SMMP message is serialized once, together with the MMTP layers around it.
+ */
+public class SMMPEnvelope implements PayloadWriter
+{
+    private final MessageType type;
+    private final PayloadWriter content;
+    private final int contentSize;
+
+
+    /**
+     * Creates a new envelope.
+     *
+     * @param type    the type of the protocol message
+     * @param content the content of the protocol message, e.g. an {@link SMMPMessage} or an {@link SMMPAck}
+     */
+    public SMMPEnvelope(@NonNull MessageType type, @NonNull PayloadWriter content)
+    {
+        this.type = type;
+        this.content = content;
+        this.contentSize = content.getSerializedSize();
+    }
+
+
+    @Override
+    public int getSerializedSize()
+    {
+        int typeSize = type.getNumber() == 0 ? 0 : CodedOutputStream.computeEnumSize(ProtocolMessage.TYPE_FIELD_NUMBER, type.getNumber());
+        int contentFieldSize = contentSize == 0 ? 0 : CodedOutputStream.computeTagSize(ProtocolMessage.CONTENT_FIELD_NUMBER) + CodedOutputStream.computeUInt32SizeNoTag(contentSize) + contentSize;
+        return typeSize + contentFieldSize;
+    }
+
+
+    @Override
+    public void writeTo(CodedOutputStream output) throws IOException
+    {
+        if (type.getNumber() != 0)
+        {
+            output.writeEnum(ProtocolMessage.TYPE_FIELD_NUMBER, type.getNumber());
+        }
+
+        if (contentSize != 0)
+        {
+            output.writeTag(ProtocolMessage.CONTENT_FIELD_NUMBER, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+            output.writeUInt32NoTag(contentSize);
+            content.writeTo(output);
+        }
+    }
+}
@@ -29,6 +29,11 @@ public final class SMMPMessages {
   static final 
     com.google.protobuf.GeneratedMessageV3.FieldAccessorTable
       internal_static_SMMPClient_SMMP_SMMPAck_fieldAccessorTable;
+  static final com.google.protobuf.Descriptors.Descriptor
+    internal_static_SMMPClient_SMMP_SMMPBatchAck_descriptor;
+  static final 
+    com.google.protobuf.GeneratedMessageV3.FieldAccessorTable
+      internal_static_SMMPClient_SMMP_SMMPBatchAck_fieldAccessorTable;
 
   public static com.google.protobuf.Descriptors.FileDescriptor
       getDescriptor() {
@@ -46,8 +51,10 @@ public final class SMMPMessages {
       "gnature\030\004 \001(\014\022\023\n\013certificate\030\005 \001(\014\022\017\n\007pa" +
       "yload\030\006 \001(\014\"D\n\007SMMPAck\022\021\n\tmessageID\030\001 \001(" +
       "\t\022\021\n\tsignature\030\002 \001(\014\022\023\n\013certificate\030\003 \001(" +
-      "\014*#\n\013MessageType\022\013\n\007MESSAGE\020\000\022\007\n\003ACK\020\001B\020" +
-      "B\014SMMPMessagesP\001b\006proto3"
+      "\014\"J\n\014SMMPBatchAck\022\022\n\nmessageIDs\030\001 \003(\t\022\021\n" +
+      "\tsignature\030\002 \001(\014\022\023\n\013certificate\030\003 \001(\014*2\n" +
+      "\013MessageType\022\013\n\007MESSAGE\020\000\022\007\n\003ACK\020\001\022\r\n\tBA" +
+      "TCH_ACK\020\002B\020B\014SMMPMessagesP\001b\006proto3"
     };
     descriptor = com.google.protobuf.Descriptors.FileDescriptor
       .internalBuildGeneratedFileFrom(descriptorData,
@@ -71,6 +78,12 @@ public final class SMMPMessages {
       com.google.protobuf.GeneratedMessageV3.FieldAccessorTable(
         internal_static_SMMPClient_SMMP_SMMPAck_descriptor,
         new java.lang.String[] { "MessageID", "Signature", "Certificate", });
+    internal_static_SMMPClient_SMMP_SMMPBatchAck_descriptor =
+      getDescriptor().getMessageTypes().get(3);
+    internal_static_SMMPClient_SMMP_SMMPBatchAck_fieldAccessorTable = new
+      com.google.protobuf.GeneratedMessageV3.FieldAccessorTable(
+        internal_static_SMMPClient_SMMP_SMMPBatchAck_descriptor,
+        new java.lang.String[] { "MessageIDs", "Signature", "Certificate", });
   }
 
   // @@protoc_insertion_point(outer_class_scope)
@@ -1,24 +1,63 @@
 package SMMPClient.MessageFormats;
 
-import com.google.protobuf.ByteString;
+import com.google.protobuf.UnsafeByteOperations;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
 
 public class SMMPUtils
 {
     public static SMMPMessage createMessage(byte[] payload, byte[] signature, String messageID, byte[] certificate, boolean encrypted, boolean requireAck)
     {
-        return SMMPMessage.newBuilder().setMessageID(messageID).setSignature(ByteString.copyFrom(signature)).setPayload(ByteString.copyFrom(payload)).setCertificate(ByteString.copyFrom(certificate)).setIsEncrypted(encrypted).setRequiresAck(requireAck).build();
+        return SMMPMessage.newBuilder().setMessageID(messageID).setSignature(UnsafeByteOperations.unsafeWrap(signature)).setPayload(UnsafeByteOperations.unsafeWrap(payload)).setCertificate(UnsafeByteOperations.unsafeWrap(certificate)).setIsEncrypted(encrypted).setRequiresAck(requireAck).build();
     }
 
 
     public static SMMPAck createAck(String messageID, byte[] signature, byte[] certificate)
     {
-        return SMMPAck.newBuilder().setMessageID(messageID).setSignature(ByteString.copyFrom(signature)).setCertificate(ByteString.copyFrom(certificate)).build();
+        return SMMPAck.newBuilder().setMessageID(messageID).setSignature(UnsafeByteOperations.unsafeWrap(signature)).setCertificate(UnsafeByteOperations.unsafeWrap(certificate)).build();
+    }
+
+
+    public static SMMPBatchAck createBatchAck(List<String> messageIDs, byte[] signature, byte[] certificate)
+    {
+        return SMMPBatchAck.newBuilder().addAllMessageIDs(messageIDs).setSignature(UnsafeByteOperations.unsafeWrap(signature)).setCertificate(UnsafeByteOperations.unsafeWrap(certificate)).build();
+    }
+
+
+    /**
+     * Encodes the message IDs of a batch ack as the content its signature covers, each ID prefixed by its length,
+     * so the signature of one list of IDs cannot be passed off as that of another.
+     *
+     * @param messageIDs the acknowledged message IDs
+     * @return the signed content of the batch ack
+     */
+    public static byte[] batchAckContent(List<String> messageIDs)
+    {
+        byte[][] encoded = new byte[messageIDs.size()][];
+        int size = 0;
+
+        for (int i = 0; i < encoded.length; i++)
+        {
+            encoded[i] = messageIDs.get(i).getBytes(StandardCharsets.UTF_8);
+            size += Integer.BYTES + encoded[i].length;
+        }
+
+        ByteBuffer content = ByteBuffer.allocate(size);
+
+        for (byte[] messageID : encoded)
+        {
+            content.putInt(messageID.length).put(messageID);
+        }
+
+        return content.array();
     }
 
 
     public static ProtocolMessage createProtocolMessage(byte[] message, MessageType messageType)
     {
-        return ProtocolMessage.newBuilder().setType(messageType).setContent(ByteString.copyFrom(message)).build();
+        return ProtocolMessage.newBuilder().setType(messageType).setContent(UnsafeByteOperations.unsafeWrap(message)).build();
     }
 }
 
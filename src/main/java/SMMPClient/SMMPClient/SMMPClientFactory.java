@@ -1,10 +1,13 @@
 package SMMPClient.SMMPClient;
 
+import Agent.Agent.AgentConfiguration;
 import Agent.Agent.AgentConnectionHandler;
 import Agent.Agent.AgentConnectionHandlerFactory;
 import Agent.Exceptions.AgentConnectionHandlerInitException;
 import SMMPClient.Exceptions.SMMPConnectionHandlerInitException;
 
+import java.util.concurrent.Executor;
+
 /**
  * Wrapper around {@link AgentConnectionHandlerFactory}
  */
@@ -24,6 +27,62 @@ public class SMMPClientFactory
     }
 
 
+    public static SMMPConnectionHandler create(String address, AgentConfiguration configuration) throws SMMPConnectionHandlerInitException
+    {
+        try
+        {
+            return new SMMPConnectionHandler((AgentConnectionHandler) AgentConnectionHandlerFactory.create(address, configuration));
+        }
+
+        catch (AgentConnectionHandlerInitException e)
+        {
+            throw new SMMPConnectionHandlerInitException("Failed to init SMMP connection handler", e.getCause());
+        }
+    }
+
+
+    public static SMMPConnectionHandler create(String address, AgentConfiguration configuration, Executor workerPool) throws SMMPConnectionHandlerInitException
+    {
+        try
+        {
+            return new SMMPConnectionHandler((AgentConnectionHandler) AgentConnectionHandlerFactory.create(address, configuration, workerPool));
+        }
+
+        catch (AgentConnectionHandlerInitException e)
+        {
+            throw new SMMPConnectionHandlerInitException("Failed to init SMMP connection handler", e.getCause());
+        }
+    }
+
+
+    public static SMMPConnectionHandler create(String address, AgentConfiguration configuration, SMMPConfiguration smmpConfiguration) throws SMMPConnectionHandlerInitException
+    {
+        try
+        {
+            return new SMMPConnectionHandler((AgentConnectionHandler) AgentConnectionHandlerFactory.create(address, configuration), smmpConfiguration);
+        }
+
+        catch (AgentConnectionHandlerInitException e)
+        {
+            throw new SMMPConnectionHandlerInitException("Failed to init SMMP connection handler", e.getCause());
+        }
+    }
+
+
+    public static SMMPConnectionHandler create(String address, AgentConfiguration configuration, SMMPConfiguration smmpConfiguration, Executor workerPool) throws SMMPConnectionHandlerInitException
+    {
+        try
+        {
+            return new SMMPConnectionHandler((AgentConnectionHandler) AgentConnectionHandlerFactory.create(address, configuration, workerPool), smmpConfiguration);
+        }
+
+        catch (AgentConnectionHandlerInitException e)
+        {
+            throw new SMMPConnectionHandlerInitException("Failed to init SMMP connection handler", e.getCause());
+        }
+    }
+
+
     public static SMMPConnectionHandler create() throws SMMPConnectionHandlerInitException
     {
         try
@@ -0,0 +1,389 @@
+package SMMPClient.SMMPClient;
+
+import Agent.Utils.RejectionPolicy;
+import SMMPClient.Acks.AckEntry.DefaultEntryHandlers.LoggingMultiDestCompletionHandler;
+import SMMPClient.Acks.FlowControlPolicy;
+import SMMPClient.Acks.Handlers.MultiDeliveryCompletionHandler;
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.nio.file.Path;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Tuning options for an {@link SMMPConnectionHandler}. A new instance holds the defaults.
+ */
+@Getter
+public class SMMPConfiguration
+{
+    private Path ackJournalDirectory = null;
+    private int ackJournalSize = 64 * 1024 * 1024;
+    private long ackJournalCheckpointMillis = 10_000;
+    private MultiDeliveryCompletionHandler recoveredDeliveryHandler = new LoggingMultiDestCompletionHandler();
+    private long initialRetransmitMillis = 5000;
+    private long minRetransmitMillis = 200;
+    private int initialWindow = 16;
+    private int maxInFlightMessages = 256;
+    private long maxInFlightBytes = 16 * 1024 * 1024;
+    private FlowControlPolicy flowControlPolicy = FlowControlPolicy.QUEUE;
+    private int maxQueuedMessages = 10_000;
+    private long ackDelayMillis = 0;
+    private int maxAcksPerBatch = 64;
+    private long duplicateHorizonMillis = 30 * 60 * 1000;
+    private int duplicateFilterMaxEntries = 1_000_000;
+    private boolean duplicateBloomFilter = false;
+    private int cryptoThreads = Runtime.getRuntime().availableProcessors();
+    private int cryptoQueueCapacity = 1024;
+    private RejectionPolicy cryptoRejectionPolicy = RejectionPolicy.BLOCK;
+    private Executor completionExecutor = ForkJoinPool.commonPool();
+
+
+    /**
+     * Sets the directory of the ack journals. Messages waiting for acks are journaled per MRN below this directory,
+     * and are restored and retransmitted when the same identity connects again, also after a restart.
+     *
+     * @param ackJournalDirectory the journal directory, or null to keep messages waiting for acks in memory only
+     * @return this configuration
+     */
+    public SMMPConfiguration setAckJournalDirectory(Path ackJournalDirectory)
+    {
+        this.ackJournalDirectory = ackJournalDirectory;
+        return this;
+    }
+
+
+    /**
+     * Sets the size of the journal file that records acks and completed messages between checkpoints.
+     * A checkpoint is taken early once it is full.
+     *
+     * @param ackJournalSize the journal size in bytes, at least 64 KiB
+     * @return this configuration
+     */
+    public SMMPConfiguration setAckJournalSize(int ackJournalSize)
+    {
+        if (ackJournalSize < 64 * 1024)
+        {
+            throw new IllegalArgumentException("Ack journal size must be at least 64 KiB");
+        }
+
+        this.ackJournalSize = ackJournalSize;
+        return this;
+    }
+
+
+    /**
+     * Sets how often the messages waiting for acks are checkpointed and the journal is forced to disk.
+     *
+     * @param ackJournalCheckpointMillis the checkpoint interval in milliseconds, at least 1
+     * @return this configuration
+     */
+    public SMMPConfiguration setAckJournalCheckpointMillis(long ackJournalCheckpointMillis)
+    {
+        if (ackJournalCheckpointMillis < 1)
+        {
+            throw new IllegalArgumentException("Ack journal checkpoint interval must be at least 1 ms");
+        }
+
+        this.ackJournalCheckpointMillis = ackJournalCheckpointMillis;
+        return this;
+    }
+
+
+    /**
+     * Sets the handler that receives the delivery results of messages restored from the ack journal,
+     * as the handlers they were sent with did not survive the restart.
+     *
+     * @param recoveredDeliveryHandler the handler of restored messages
+     * @return this configuration
+     */
+    public SMMPConfiguration setRecoveredDeliveryHandler(@NonNull MultiDeliveryCompletionHandler recoveredDeliveryHandler)
+    {
+        this.recoveredDeliveryHandler = recoveredDeliveryHandler;
+        return this;
+    }
+
+
+    /**
+     * Sets the retransmission timeout of a destination that no round trip time has been measured for yet,
+     * see {@link SMMPClient.Acks.RttEstimator}.
+     *
+     * @param initialRetransmitMillis the initial retransmission timeout in milliseconds, at least the minimum timeout
+     * @return this configuration
+     */
+    public SMMPConfiguration setInitialRetransmitMillis(long initialRetransmitMillis)
+    {
+        if (initialRetransmitMillis < minRetransmitMillis)
+        {
+            throw new IllegalArgumentException("Initial retransmission timeout must be at least the minimum timeout");
+        }
+
+        this.initialRetransmitMillis = initialRetransmitMillis;
+        return this;
+    }
+
+
+    /**
+     * Sets the lower bound of the retransmission timeout estimated for a destination, which keeps destinations with a
+     * short and steady round trip time from being retransmitted to on small delays.
+     *
+     * @param minRetransmitMillis the minimum retransmission timeout in milliseconds, at least 1 and at most the initial timeout
+     * @return this configuration
+     */
+    public SMMPConfiguration setMinRetransmitMillis(long minRetransmitMillis)
+    {
+        if (minRetransmitMillis < 1 || minRetransmitMillis > initialRetransmitMillis)
+        {
+            throw new IllegalArgumentException("Minimum retransmission timeout must be at least 1 ms and at most the initial timeout");
+        }
+
+        this.minRetransmitMillis = minRetransmitMillis;
+        return this;
+    }
+
+
+    /**
+     * Sets the number of messages requiring acks that a destination may have in flight before any of them is acknowledged.
+     * The window grows as the destination acks, and shrinks as its messages time out, see {@link SMMPClient.Acks.FlowController}.
+     *
+     * @param initialWindow the initial window in messages, at least 1 and at most the maximum window
+     * @return this configuration
+     */
+    public SMMPConfiguration setInitialWindow(int initialWindow)
+    {
+        if (initialWindow < 1 || initialWindow > maxInFlightMessages)
+        {
+            throw new IllegalArgumentException("Initial window must be at least 1 and at most the maximum number of messages in flight");
+        }
+
+        this.initialWindow = initialWindow;
+        return this;
+    }
+
+
+    /**
+     * Sets the maximum number of messages requiring acks that a destination may have in flight.
+     *
+     * @param maxInFlightMessages the maximum window in messages, at least the initial window
+     * @return this configuration
+     */
+    public SMMPConfiguration setMaxInFlightMessages(int maxInFlightMessages)
+    {
+        if (maxInFlightMessages < initialWindow)
+        {
+            throw new IllegalArgumentException("Maximum number of messages in flight must be at least the initial window");
+        }
+
+        this.maxInFlightMessages = maxInFlightMessages;
+        return this;
+    }
+
+
+    /**
+     * Sets the maximum number of bytes of messages requiring acks that a destination may have in flight.
+     * A single larger message is still sent once the destination has nothing in flight.
+     *
+     * @param maxInFlightBytes the maximum bytes in flight, at least 1
+     * @return this configuration
+     */
+    public SMMPConfiguration setMaxInFlightBytes(long maxInFlightBytes)
+    {
+        if (maxInFlightBytes < 1)
+        {
+            throw new IllegalArgumentException("Maximum number of bytes in flight must be at least 1");
+        }
+
+        this.maxInFlightBytes = maxInFlightBytes;
+        return this;
+    }
+
+
+    /**
+     * Sets what is done with a message requiring acks when the window of its destination is full.
+     *
+     * @param flowControlPolicy the policy
+     * @return this configuration
+     */
+    public SMMPConfiguration setFlowControlPolicy(@NonNull FlowControlPolicy flowControlPolicy)
+    {
+        this.flowControlPolicy = flowControlPolicy;
+        return this;
+    }
+
+
+    /**
+     * Sets the number of messages held per destination while its window is full, with {@link FlowControlPolicy#QUEUE}.
+     * Further messages are refused.
+     *
+     * @param maxQueuedMessages the maximum number of held messages, at least 0
+     * @return this configuration
+     */
+    public SMMPConfiguration setMaxQueuedMessages(int maxQueuedMessages)
+    {
+        if (maxQueuedMessages < 0)
+        {
+            throw new IllegalArgumentException("Maximum number of held messages must be at least 0");
+        }
+
+        this.maxQueuedMessages = maxQueuedMessages;
+        return this;
+    }
+
+
+    /**
+     * Sets how long acks to a destination are held so they can be sent as one signed batch ack, rather than as a
+     * signed ack each. The delay has a resolution of 100 ms, and adds to the round trip times the destination measures.
+     * Only enable it if every destination understands batch acks.
+     *
+     * @param ackDelayMillis the longest time in milliseconds an ack is held, at least 0, where 0 sends every ack right away
+     * @return this configuration
+     */
+    public SMMPConfiguration setAckDelayMillis(long ackDelayMillis)
+    {
+        if (ackDelayMillis < 0)
+        {
+            throw new IllegalArgumentException("Ack delay must be at least 0 ms");
+        }
+
+        this.ackDelayMillis = ackDelayMillis;
+        return this;
+    }
+
+
+    /**
+     * Sets the number of held acks at which a batch ack is sent to a destination without waiting for the ack delay.
+     *
+     * @param maxAcksPerBatch the maximum number of acks per batch ack, at least 1
+     * @return this configuration
+     */
+    public SMMPConfiguration setMaxAcksPerBatch(int maxAcksPerBatch)
+    {
+        if (maxAcksPerBatch < 1)
+        {
+            throw new IllegalArgumentException("Maximum number of acks per batch must be at least 1");
+        }
+
+        this.maxAcksPerBatch = maxAcksPerBatch;
+        return this;
+    }
+
+
+    /**
+     * Sets how long the IDs of delivered messages are remembered to drop retransmissions of them, unless the messages
+     * expire earlier. It should cover the time senders keep retransmitting, see {@link SMMPClient.Dedup.DuplicateFilter}.
+     *
+     * @param duplicateHorizonMillis the longest time in milliseconds an ID is remembered, at least 1
+     * @return this configuration
+     */
+    public SMMPConfiguration setDuplicateHorizonMillis(long duplicateHorizonMillis)
+    {
+        if (duplicateHorizonMillis < 1)
+        {
+            throw new IllegalArgumentException("Duplicate horizon must be at least 1 ms");
+        }
+
+        this.duplicateHorizonMillis = duplicateHorizonMillis;
+        return this;
+    }
+
+
+    /**
+     * Sets the number of delivered message IDs remembered at most. Once more messages arrive within the horizon,
+     * the oldest IDs are forgotten early. Each ID takes 16 to 32 bytes.
+     *
+     * @param duplicateFilterMaxEntries the maximum number of IDs, at least 1024
+     * @return this configuration
+     */
+    public SMMPConfiguration setDuplicateFilterMaxEntries(int duplicateFilterMaxEntries)
+    {
+        if (duplicateFilterMaxEntries < 1024)
+        {
+            throw new IllegalArgumentException("Duplicate filter must hold at least 1024 entries");
+        }
+
+        this.duplicateFilterMaxEntries = duplicateFilterMaxEntries;
+        return this;
+    }
+
+
+    /**
+     * Sets whether the duplicate filter checks a Bloom filter before probing the table of each generation,
+     * which takes about 1 byte more per ID.
+     *
+     * @param duplicateBloomFilter whether to use Bloom filters
+     * @return this configuration
+     */
+    public SMMPConfiguration setDuplicateBloomFilter(boolean duplicateBloomFilter)
+    {
+        this.duplicateBloomFilter = duplicateBloomFilter;
+        return this;
+    }
+
+
+    /**
+     * Sets the number of threads that sign, verify, encrypt and decrypt messages, see {@link SMMPClient.Crypto.CryptoPipeline}.
+     *
+     * @param cryptoThreads the number of crypto threads, at least 1
+     * @return this configuration
+     */
+    public SMMPConfiguration setCryptoThreads(int cryptoThreads)
+    {
+        if (cryptoThreads < 1)
+        {
+            throw new IllegalArgumentException("Crypto threads must be at least 1");
+        }
+
+        this.cryptoThreads = cryptoThreads;
+        return this;
+    }
+
+
+    /**
+     * Sets the number of messages that may wait to be signed, verified, encrypted or decrypted.
+     *
+     * @param cryptoQueueCapacity the capacity of the crypto queue, at least 1
+     * @return this configuration
+     */
+    public SMMPConfiguration setCryptoQueueCapacity(int cryptoQueueCapacity)
+    {
+        if (cryptoQueueCapacity < 1)
+        {
+            throw new IllegalArgumentException("Crypto queue capacity must be at least 1");
+        }
+
+        this.cryptoQueueCapacity = cryptoQueueCapacity;
+        return this;
+    }
+
+
+    /**
+     * Sets what is done with a message once the crypto queue is full. {@link RejectionPolicy#BLOCK}, the default, blocks
+     * the thread of the application that sends, or the socket for received messages, until there is room.
+     * {@link RejectionPolicy#ABORT} never blocks, and fails the send, or drops the received message, instead.
+     *
+     * @param cryptoRejectionPolicy the policy
+     * @return this configuration
+     */
+    public SMMPConfiguration setCryptoRejectionPolicy(@NonNull RejectionPolicy cryptoRejectionPolicy)
+    {
+        this.cryptoRejectionPolicy = cryptoRejectionPolicy;
+        return this;
+    }
+
+
+    /**
+     * Sets the executor that the SMMP client runs its own stages and the callbacks of the application on, so none of
+     * them run on the threads that write to the socket or on the crypto pipeline. Signed messages are handed to the
+     * agent in the order they were sent, and received messages and acks are handled in the order they arrived, one at a
+     * time per connection. Messages requiring acks are tracked right before they are handed to the agent, and once the
+     * agent has written a message, the handlers and futures of the application are completed, on it.
+     *
+     * @param completionExecutor the completion executor
+     * @return this configuration
+     */
+    public SMMPConfiguration setCompletionExecutor(@NonNull Executor completionExecutor)
+    {
+        this.completionExecutor = completionExecutor;
+        return this;
+    }
+}
@@ -7,16 +7,19 @@ import Agent.ServiceDiscovery.IDiscoveryListener;
 import Agent.ServiceDiscovery.RouterInfo;
 import Agent.TLSConfiguration.TLSConfiguration;
 import Agent.TLSConfiguration.mTLSConfiguration;
+import Agent.Utils.WorkerPoolStatistics;
 import SMMPClient.Acks.AckTracker;
 import SMMPClient.Adapters.AnonymousAdapterImpl;
 import SMMPClient.Adapters.AuthenticatedAdapterImpl;
 import SMMPClient.Adapters.SMMPAnonAdapter;
 import SMMPClient.Adapters.SMMPAuthAdapter;
+import SMMPClient.Crypto.CryptoPipeline;
 import SMMPClient.Crypto.KeyringManager;
 import lombok.NonNull;
 
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 
 /**
@@ -25,11 +28,34 @@ import java.util.concurrent.CompletableFuture;
 public class SMMPConnectionHandler
 {
     private final AgentConnectionHandler agentConnectionHandler;
+    private final SMMPConfiguration configuration;
+    private final CryptoPipeline cryptoPipeline;
+    private final List<AuthenticatedAdapterImpl> authenticatedAdapters = new CopyOnWriteArrayList<>();
 
 
     public SMMPConnectionHandler(AgentConnectionHandler connectionHandler)
+    {
+        this(connectionHandler, new SMMPConfiguration());
+    }
+
+
+    public SMMPConnectionHandler(AgentConnectionHandler connectionHandler, @NonNull SMMPConfiguration configuration)
     {
         this.agentConnectionHandler = connectionHandler;
+        this.configuration = configuration;
+        this.cryptoPipeline = new CryptoPipeline(configuration.getCryptoThreads(), configuration.getCryptoQueueCapacity(), configuration.getCryptoRejectionPolicy());
+    }
+
+
+    /**
+     * Gets the queue depth, busy threads, task latency and rejections of the pipeline that signs, verifies, encrypts
+     * and decrypts the messages of the connections made by this handler.
+     *
+     * @return the crypto pipeline statistics
+     */
+    public WorkerPoolStatistics getCryptoStatistics()
+    {
+        return cryptoPipeline.getStatistics();
     }
 
 
@@ -47,7 +73,7 @@ public class SMMPConnectionHandler
 
     public void connectAnonymously(@NonNull RouterInfo routerInfo, @NonNull KeyringManager keyringManager, @NonNull SMMPAnonAdapter adapter)
     {
-        AnonymousAdapterImpl internalAdapter = new AnonymousAdapterImpl(keyringManager, adapter);
+        AnonymousAdapterImpl internalAdapter = new AnonymousAdapterImpl(keyringManager, adapter, configuration, cryptoPipeline);
         TLSConfiguration tlsConfiguration = new TLSConfiguration(keyringManager.getTruststorePath(), keyringManager.getTruststorePassword());
         agentConnectionHandler.connectAnonymously(routerInfo, tlsConfiguration, internalAdapter);
     }
@@ -55,8 +81,26 @@ public class SMMPConnectionHandler
 
     public void connectAuthenticated(@NonNull RouterInfo routerInfo, @NonNull KeyringManager keyringManager, @NonNull SMMPAuthAdapter adapter)
     {
-        AuthenticatedAdapterImpl internalAdapter = new AuthenticatedAdapterImpl(keyringManager, adapter);
+        AuthenticatedAdapterImpl internalAdapter = new AuthenticatedAdapterImpl(keyringManager, adapter, configuration, cryptoPipeline);
+        authenticatedAdapters.add(internalAdapter);
         mTLSConfiguration tlsConfiguration = new mTLSConfiguration(keyringManager.getTruststorePath(), keyringManager.getTruststorePassword(), keyringManager.getKeystorePath(), keyringManager.getKeystorePassword());
         agentConnectionHandler.connectAuthenticated(routerInfo, tlsConfiguration, internalAdapter);
     }
+
+
+    /**
+     * Closes the ack trackers of the authenticated connections made by this handler, which closes their ack journals,
+     * and shuts down the crypto pipeline. The connections themselves are closed by the {@link AgentConnectionHandler},
+     * which should be closed first.
+     */
+    public void close()
+    {
+        for (AuthenticatedAdapterImpl adapter : authenticatedAdapters)
+        {
+            adapter.close();
+        }
+
+        authenticatedAdapters.clear();
+        cryptoPipeline.shutdown();
+    }
 }
@@ -0,0 +1,293 @@
+package Agent.Outbox;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+/**
+ * Tests the crash recovery of {@link MappedSegmentLog}. A crash is simulated by opening a new log on the directory of
+ * a log that was never closed, as the mapped segments have already written everything to the page cache.
+ */
+class MappedSegmentLogTest
+{
+    private static final int HEADER_SIZE = 16;
+    private static final int RECORD_HEADER_SIZE = 16;
+    private static final int PAYLOAD_SIZE = 8;
+    private static final int RECORD_SIZE = RECORD_HEADER_SIZE + PAYLOAD_SIZE;
+    private static final int RECORDS_PER_SEGMENT = 4;
+    private static final int SEGMENT_SIZE = HEADER_SIZE + RECORDS_PER_SEGMENT * RECORD_SIZE;
+    private static final long MAX_BYTES = 16L * SEGMENT_SIZE;
+    private static final long NOW = 1_000_000;
+    private static final long NEVER = Long.MAX_VALUE;
+
+    @TempDir
+    Path directory;
+
+
+    @Test
+    void recoversAppendedRecordsAfterCrash() throws Exception
+    {
+        MappedSegmentLog log = open();
+        append(log, 0, 10, NEVER);
+
+        try (MappedSegmentLog recovered = open())
+        {
+            assertEquals(range(0, 10), readAll(recovered));
+        }
+    }
+
+
+    @Test
+    void scanStopsAtTornRecord() throws Exception
+    {
+        MappedSegmentLog log = open();
+        append(log, 0, 3, NEVER);
+        corrupt(segment(0), HEADER_SIZE + 2 * RECORD_SIZE + RECORD_HEADER_SIZE);
+
+        try (MappedSegmentLog recovered = open())
+        {
+            assertEquals(List.of(0, 1), readAll(recovered));
+
+            append(recovered, 10, 11, NEVER);
+            assertEquals(List.of(0, 1, 10), readAll(recovered));
+        }
+    }
+
+
+    @Test
+    void scanStopsAtRecordWithImpossibleLength() throws Exception
+    {
+        MappedSegmentLog log = open();
+        append(log, 0, 2, NEVER);
+        writeInt(segment(0), HEADER_SIZE + RECORD_SIZE, SEGMENT_SIZE);
+
+        try (MappedSegmentLog recovered = open())
+        {
+            assertEquals(List.of(0), readAll(recovered));
+        }
+    }
+
+
+    @Test
+    void recoversCommittedReadPosition() throws Exception
+    {
+        MappedSegmentLog log = open();
+        append(log, 0, 6, NEVER);
+        List<MappedSegmentLog.Entry> entries = log.read(NOW, 5);
+        log.commit(entries.get(4));
+
+        try (MappedSegmentLog recovered = open())
+        {
+            assertEquals(List.of(5), readAll(recovered));
+        }
+    }
+
+
+    @Test
+    void readsUncommittedRecordsAgainAfterCrash() throws Exception
+    {
+        MappedSegmentLog log = open();
+        append(log, 0, 6, NEVER);
+        log.commit(log.read(NOW, 2).get(1));
+        assertEquals(4, log.read(NOW, 10).size());
+
+        try (MappedSegmentLog recovered = open())
+        {
+            assertEquals(range(2, 6), readAll(recovered));
+        }
+    }
+
+
+    @Test
+    void recoversOnlyUnreadSegments() throws Exception
+    {
+        MappedSegmentLog log = open();
+        append(log, 0, 10, NEVER);
+        List<MappedSegmentLog.Entry> entries = log.read(NOW, 8);
+        log.commit(entries.get(7));
+
+        try (MappedSegmentLog recovered = open())
+        {
+            assertEquals(1, recovered.getSegmentCount());
+            assertEquals(List.of(8, 9), readAll(recovered));
+        }
+    }
+
+
+    @Test
+    void compactionDropsExpiredRecordsAndSurvivesReopen() throws Exception
+    {
+        MappedSegmentLog log = open();
+
+        for (int i = 0; i < 12; i++)
+        {
+            append(log, i, i + 1, i % 2 == 0 ? NOW - 1 : NEVER);
+        }
+
+        append(log, 12, 14, NEVER);
+
+        assertEquals(4, log.getSegmentCount());
+        assertTrue(log.compact(NOW));
+        assertTrue(log.getSegmentCount() < 4);
+        assertTrue(segmentFiles().stream().noneMatch(path -> path.toString().endsWith(".compact")));
+
+        try (MappedSegmentLog recovered = open())
+        {
+            assertEquals(List.of(1, 3, 5, 7, 9, 11, 12, 13), readAll(recovered));
+        }
+    }
+
+
+    @Test
+    void completesCompactionInterruptedAfterCommitMarker() throws Exception
+    {
+        MappedSegmentLog log = open();
+        append(log, 0, 10, NEVER);
+        assertEquals(3, log.getSegmentCount());
+
+        // The crash hit after the marker was written and the old segments deleted, before the new one was moved in place.
+        // The new segment holds the records of the second segment only, as if those of the first had all expired.
+        Files.copy(segment(1), compacted(0));
+        Files.write(directory.resolve("compaction.commit"), List.of("1 0 1"));
+        Files.delete(segment(1));
+
+        try (MappedSegmentLog recovered = open())
+        {
+            assertFalse(Files.exists(directory.resolve("compaction.commit")));
+            assertFalse(Files.exists(compacted(0)));
+            assertEquals(range(4, 10), readAll(recovered));
+        }
+    }
+
+
+    @Test
+    void deletesOldSegmentsLeftBehindByCommittedCompaction() throws Exception
+    {
+        MappedSegmentLog log = open();
+        append(log, 0, 10, NEVER);
+
+        // The crash hit after the marker was written, before any old segment was deleted.
+        Files.copy(segment(1), compacted(0));
+        Files.write(directory.resolve("compaction.commit"), List.of("1 0 1"));
+
+        try (MappedSegmentLog recovered = open())
+        {
+            assertFalse(Files.exists(segment(1)));
+            assertEquals(range(4, 10), readAll(recovered));
+        }
+    }
+
+
+    @Test
+    void rollsBackCompactionInterruptedBeforeCommitMarker() throws Exception
+    {
+        MappedSegmentLog log = open();
+        append(log, 0, 10, NEVER);
+        Files.copy(segment(1), compacted(0));
+
+        try (MappedSegmentLog recovered = open())
+        {
+            assertFalse(Files.exists(compacted(0)));
+            assertEquals(range(0, 10), readAll(recovered));
+        }
+    }
+
+
+    private MappedSegmentLog open() throws IOException
+    {
+        return new MappedSegmentLog(directory, SEGMENT_SIZE, MAX_BYTES);
+    }
+
+
+    private static void append(MappedSegmentLog log, int from, int to, long expiresMillis) throws Exception
+    {
+        for (int i = from; i < to; i++)
+        {
+            log.append(ByteBuffer.allocate(PAYLOAD_SIZE).putInt(0, i), expiresMillis);
+        }
+    }
+
+
+    private static List<Integer> readAll(MappedSegmentLog log)
+    {
+        List<Integer> values = new ArrayList<>();
+
+        for (MappedSegmentLog.Entry entry : log.read(NOW, Integer.MAX_VALUE))
+        {
+            values.add(entry.getPayload().getInt(0));
+        }
+
+        log.unpin();
+        return values;
+    }
+
+
+    private static List<Integer> range(int from, int to)
+    {
+        List<Integer> values = new ArrayList<>();
+
+        for (int i = from; i < to; i++)
+        {
+            values.add(i);
+        }
+
+        return values;
+    }
+
+
+    private Path segment(long id)
+    {
+        return directory.resolve(String.format("%016d", id) + ".seg");
+    }
+
+
+    private Path compacted(long id)
+    {
+        return directory.resolve(String.format("%016d", id) + ".seg.compact");
+    }
+
+
+    private List<Path> segmentFiles() throws IOException
+    {
+        try (Stream<Path> files = Files.list(directory))
+        {
+            return files.collect(Collectors.toList());
+        }
+    }
+
+
+    private static void corrupt(Path file, int position) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE))
+        {
+            ByteBuffer value = ByteBuffer.allocate(1);
+            channel.read(value, position);
+            value.put(0, (byte) (value.get(0) ^ 0xFF)).rewind();
+            channel.write(value, position);
+        }
+    }
+
+
+    private static void writeInt(Path file, int position, int value) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE))
+        {
+            channel.write(ByteBuffer.allocate(4).putInt(0, value), position);
+        }
+    }
+}
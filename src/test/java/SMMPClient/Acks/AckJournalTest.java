@@ -0,0 +1,267 @@
+package SMMPClient.Acks;
+
+import SMMPClient.Acks.AckEntry.DefaultEntryHandlers.LoggingMultiDestCompletionHandler;
+import SMMPClient.Acks.AckEntry.MultiDestAckEntry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+/**
+ * Tests the recovery of {@link AckJournal}. A journal holds the lock on its directory until it is closed, so a crash is
+ * simulated by copying the files of a journal that is still open into a new directory, and opening a journal there.
+ */
+class AckJournalTest
+{
+    private static final int SIZE = 64 * 1024;
+    private static final int HEADER_SIZE = 16;
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final String LOG_FILE = "acks.log";
+    private static final String CHECKPOINT_FILE = "acks.checkpoint";
+
+    @TempDir
+    Path root;
+
+    private Path directory;
+    private Path crashDirectory;
+
+
+    @BeforeEach
+    void createDirectories() throws IOException
+    {
+        directory = root.resolve("journal");
+        crashDirectory = Files.createDirectory(root.resolve("crash"));
+    }
+
+
+    @Test
+    void replaysLogOfSameGeneration() throws Exception
+    {
+        Instant expires = Instant.ofEpochMilli(1_700_000_000_000L);
+        MultiDestAckEntry first = entry("m1", List.of("a", "b"), expires);
+        first.scheduleRetransmit(250, 1_700_000_000_250L);
+
+        try (AckJournal journal = open(directory))
+        {
+            assertTrue(journal.recordEntry(first));
+            assertTrue(journal.recordEntry(entry("m2", List.of("a"), null)));
+            assertTrue(journal.recordEntry(entry("m3", List.of("c"), null)));
+            assertTrue(journal.recordAck("m1", "a"));
+            assertTrue(journal.recordAck("m1", "unknown"));
+            assertTrue(journal.recordDone("m2"));
+            assertTrue(journal.recordAck("m3", "c"));
+
+            crash(directory, crashDirectory);
+        }
+
+        try (AckJournal recovered = open(crashDirectory))
+        {
+            List<AckJournal.JournaledEntry> entries = recovered.getRecoveredEntries();
+            assertEquals(1, entries.size());
+
+            AckJournal.JournaledEntry entry = entries.get(0);
+            assertEquals("m1", entry.getMessageId());
+            assertEquals(List.of("a", "b"), entry.getDestinations());
+            assertEquals(List.of("a"), entry.getAcknowledgedDestinations());
+            assertArrayEquals(message("m1"), entry.getMessage());
+            assertEquals(expires, entry.getExpires());
+            assertEquals(250, entry.getRetransmitDelay());
+            assertEquals(1_700_000_000_250L, entry.getRetransmitAt());
+        }
+    }
+
+
+    @Test
+    void replaysLogOverCheckpoint() throws Exception
+    {
+        MultiDestAckEntry first = entry("m1", List.of("a", "b"), null);
+
+        try (AckJournal journal = open(directory))
+        {
+            assertTrue(journal.recordEntry(first));
+            journal.checkpoint(List.of(first));
+            assertTrue(journal.recordAck("m1", "b"));
+            assertTrue(journal.recordEntry(entry("m2", List.of("c"), null)));
+
+            crash(directory, crashDirectory);
+        }
+
+        try (AckJournal recovered = open(crashDirectory))
+        {
+            List<AckJournal.JournaledEntry> entries = recovered.getRecoveredEntries();
+            assertEquals(List.of("m1", "m2"), ids(entries));
+            assertEquals(List.of("b"), entries.get(0).getAcknowledgedDestinations());
+        }
+    }
+
+
+    @Test
+    void ignoresLogOfOlderGeneration() throws Exception
+    {
+        MultiDestAckEntry first = entry("m1", List.of("a"), null);
+        Path oldLog = crashDirectory.resolve("old.log");
+
+        try (AckJournal journal = open(directory))
+        {
+            assertTrue(journal.recordEntry(first));
+            assertTrue(journal.recordDone("m1"));
+            Files.copy(directory.resolve(LOG_FILE), oldLog);
+
+            // The crash hit after the new checkpoint was moved in place, before the log was cleared.
+            journal.checkpoint(List.of(first));
+            crash(directory, crashDirectory);
+            Files.move(oldLog, crashDirectory.resolve(LOG_FILE), StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        try (AckJournal recovered = open(crashDirectory))
+        {
+            assertEquals(List.of("m1"), ids(recovered.getRecoveredEntries()));
+        }
+    }
+
+
+    @Test
+    void stopsReplayAtTornRecord() throws Exception
+    {
+        try (AckJournal journal = open(directory))
+        {
+            assertTrue(journal.recordEntry(entry("m1", List.of("a", "b"), null)));
+            assertTrue(journal.recordEntry(entry("m2", List.of("a"), null)));
+            assertTrue(journal.recordAck("m1", "a"));
+
+            crash(directory, crashDirectory);
+        }
+
+        Path log = crashDirectory.resolve(LOG_FILE);
+        int second = HEADER_SIZE + RECORD_HEADER_SIZE + readInt(log, HEADER_SIZE);
+        corrupt(log, second + RECORD_HEADER_SIZE + 1);
+
+        try (AckJournal recovered = open(crashDirectory))
+        {
+            List<AckJournal.JournaledEntry> entries = recovered.getRecoveredEntries();
+            assertEquals(List.of("m1"), ids(entries));
+            assertEquals(List.of(), entries.get(0).getAcknowledgedDestinations());
+
+            // New records overwrite the torn one.
+            assertTrue(recovered.recordAck("m1", "b"));
+        }
+
+        try (AckJournal reopened = open(crashDirectory))
+        {
+            List<AckJournal.JournaledEntry> entries = reopened.getRecoveredEntries();
+            assertEquals(List.of("m1"), ids(entries));
+            assertEquals(List.of("b"), entries.get(0).getAcknowledgedDestinations());
+        }
+    }
+
+
+    @Test
+    void keepsEntriesWithoutExpiry() throws Exception
+    {
+        try (AckJournal journal = open(directory))
+        {
+            assertTrue(journal.recordEntry(entry("m1", List.of("a"), null)));
+        }
+
+        try (AckJournal reopened = open(directory))
+        {
+            assertNull(reopened.getRecoveredEntries().get(0).getExpires());
+        }
+    }
+
+
+    @Test
+    void locksDirectoryUntilClosed() throws Exception
+    {
+        AckJournal journal = open(directory);
+
+        assertThrows(IOException.class, () -> open(directory));
+
+        journal.close();
+        assertTrue(journal.recordDone("m1"));
+
+        try (AckJournal reopened = open(directory))
+        {
+            assertTrue(reopened.getRecoveredEntries().isEmpty());
+        }
+    }
+
+
+    private static AckJournal open(Path directory) throws IOException
+    {
+        return new AckJournal(directory, SIZE, 60_000);
+    }
+
+
+    private static MultiDestAckEntry entry(String messageId, List<String> destinations, Instant expires)
+    {
+        return new MultiDestAckEntry(messageId, destinations, message(messageId), expires, new LoggingMultiDestCompletionHandler());
+    }
+
+
+    private static byte[] message(String messageId)
+    {
+        return ("message " + messageId).getBytes(StandardCharsets.UTF_8);
+    }
+
+
+    private static List<String> ids(List<AckJournal.JournaledEntry> entries)
+    {
+        return entries.stream().map(AckJournal.JournaledEntry::getMessageId).collect(Collectors.toList());
+    }
+
+
+    /**
+     * Copies the log and the checkpoint of a journal as they are on disk.
+     */
+    private static void crash(Path from, Path to) throws IOException
+    {
+        Files.copy(from.resolve(LOG_FILE), to.resolve(LOG_FILE));
+
+        if (Files.exists(from.resolve(CHECKPOINT_FILE)))
+        {
+            Files.copy(from.resolve(CHECKPOINT_FILE), to.resolve(CHECKPOINT_FILE));
+        }
+    }
+
+
+    private static int readInt(Path file, int position) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ))
+        {
+            ByteBuffer value = ByteBuffer.allocate(4);
+            channel.read(value, position);
+            return value.getInt(0);
+        }
+    }
+
+
+    private static void corrupt(Path file, int position) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE))
+        {
+            ByteBuffer value = ByteBuffer.allocate(1);
+            channel.read(value, position);
+            value.put(0, (byte) (value.get(0) ^ 0xFF)).rewind();
+            channel.write(value, position);
+        }
+    }
+}